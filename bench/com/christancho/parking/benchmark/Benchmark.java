@@ -0,0 +1,61 @@
+package com.christancho.parking.benchmark;
+
+/**
+ * Operation measured by the BenchmarkRunner.
+ * <p/>
+ * The runner calls run with the number of operations of an iteration, from one or several threads at the
+ * same time. The value returned has to depend on the work done, the runner consumes it so the JIT can't
+ * remove the operations as dead code
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public abstract class Benchmark {
+
+    /**
+     * Name of the benchmark in the results
+     */
+    private final String name;
+
+    /**
+     * Creates a new instance of Benchmark
+     *
+     * @param name name of the benchmark in the results
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the value of name
+     *
+     * @return the value of name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the state of the benchmark, before the warmup
+     *
+     * @param threads number of threads that will call run at the same time
+     */
+    public void setUp(int threads) {
+    }
+
+    /**
+     * Executes the operations of an iteration in a thread
+     *
+     * @param thread     number of the thread, from 0 to threads - 1
+     * @param operations number of operations to execute
+     * @return a value that depends on all the operations
+     */
+    public abstract long run(int thread, int operations);
+
+    /**
+     * Restores the state changed by the benchmark, after the last iteration
+     */
+    public void tearDown() {
+    }
+}
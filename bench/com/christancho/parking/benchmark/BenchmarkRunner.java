@@ -0,0 +1,168 @@
+package com.christancho.parking.benchmark;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runner of Benchmarks, with the warmup and measurement iterations of a microbenchmark harness.
+ * <p/>
+ * The number of operations of an iteration is calibrated first, so every iteration lasts about the
+ * configured time. The warmup iterations let the JIT compile the code and are not reported. In every
+ * measured iteration all the threads start at the same time and the iteration ends when the last one
+ * finishes; the score is the average time of an operation in a thread
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Number of iterations discarded before measuring
+     */
+    private final int warmupIterations;
+    /**
+     * Number of iterations measured
+     */
+    private final int iterations;
+    /**
+     * Expected duration of an iteration, in milliseconds
+     */
+    private final long iterationMillis;
+    /**
+     * Where the results are printed
+     */
+    private final PrintStream out;
+    /**
+     * Values returned by the benchmarks, written so the operations are never dead code
+     */
+    private volatile long sink;
+
+    /**
+     * Creates a new instance of BenchmarkRunner
+     *
+     * @param warmupIterations number of iterations discarded before measuring
+     * @param iterations       number of iterations measured
+     * @param iterationMillis  expected duration of an iteration, in milliseconds
+     * @param out              where the results are printed
+     */
+    public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis, PrintStream out) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationMillis = iterationMillis;
+        this.out = out;
+    }
+
+    /**
+     * Prints the header of the table of results
+     */
+    public void printHeader() {
+        out.println(String.format(Locale.ROOT, "%-32s %7s %14s %12s %16s",
+                "Benchmark", "Threads", "Score(ns/op)", "Error", "Throughput(op/s)"));
+    }
+
+    /**
+     * Measures a benchmark and prints its result
+     *
+     * @param benchmark the benchmark
+     * @param threads   number of threads that run the benchmark at the same time
+     * @return the average time of an operation in a thread, in nanoseconds
+     */
+    public double run(Benchmark benchmark, int threads) {
+        benchmark.setUp(threads);
+        try {
+            int operations = calibrate(benchmark, threads);
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(benchmark, threads, operations);
+            }
+            double[] scores = new double[iterations];
+            double mean = 0;
+            for (int i = 0; i < iterations; i++) {
+                scores[i] = (double) iteration(benchmark, threads, operations) / operations;
+                mean += scores[i] / iterations;
+            }
+            double variance = 0;
+            for (double score : scores) {
+                variance += (score - mean) * (score - mean);
+            }
+            double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : Double.NaN;
+            out.println(String.format(Locale.ROOT, "%-32s %7d %14.1f %12.1f %16.0f",
+                    benchmark.getName(), threads, mean, error, threads * 1e9 / mean));
+            return mean;
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Finds the number of operations of an iteration, doubling it until an iteration lasts a tenth of the
+     * expected time
+     *
+     * @param benchmark the benchmark
+     * @param threads   number of threads
+     * @return the number of operations of each thread in an iteration
+     */
+    private int calibrate(Benchmark benchmark, int threads) {
+        long targetNanos = iterationMillis * 1000000L;
+        int operations = 1;
+        while (true) {
+            long nanos = iteration(benchmark, threads, operations);
+            if (nanos * 10 >= targetNanos || operations >= Integer.MAX_VALUE / 2) {
+                long scaled = (long) operations * targetNanos / Math.max(1, nanos);
+                return (int) Math.max(1, Math.min(Integer.MAX_VALUE, scaled));
+            }
+            operations *= 2;
+        }
+    }
+
+    /**
+     * Executes an iteration of a benchmark
+     *
+     * @param benchmark  the benchmark
+     * @param threads    number of threads
+     * @param operations number of operations of each thread
+     * @return the duration of the iteration, in nanoseconds
+     */
+    private long iteration(final Benchmark benchmark, int threads, final int operations) {
+        if (threads == 1) {
+            long start = System.nanoTime();
+            sink += benchmark.run(0, operations);
+            return System.nanoTime() - start;
+        }
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            workers[i] = new Thread("benchmark-" + i) {
+                @Override
+                public void run() {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    long result = benchmark.run(thread, operations);
+                    synchronized (BenchmarkRunner.this) {
+                        sink += result;
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return System.nanoTime() - start;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Benchmark interrupted", ex);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.christancho.parking.benchmark;
+
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingTypeAdapter;
+import com.christancho.parking.metrics.LatencyHistogram;
+import com.christancho.parking.service.ParkingHttpServer;
+import com.christancho.parking.service.RequestExecutor;
+import com.christancho.parking.service.ServerOptions;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.LogManager;
+
+/**
+ * HTTP load test of the ParkingHttpServer, started in the same process on a loopback port.
+ * <p/>
+ * The requests are sent at a fixed rate (open loop): the time of every request is planned before the test,
+ * and its latency is measured from that time, not from when a connection was free to send it. So when the
+ * server slows down the waiting requests count in the latency, like the users that keep arriving in
+ * production, instead of being hidden by a client that waits for the server.
+ * <p/>
+ * The options have the format --name=value: parkings (10000 of a SyntheticCity), seed (42), rate (1000
+ * requests per second), duration (30 seconds measured), warmup (5 seconds not measured), connections (64
+ * concurrent requests of the client), mix (weights of the operations, get:50,search:20,take:10,release:10,
+ * post:5,put:5) and output (file where the results are written in Json). The other options are options
+ * of the server, like --router or --executor
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class LoadTest {
+
+    /**
+     * Operations of the ParkingAPI sent by the load test
+     */
+    enum Operation {
+        GET, SEARCH, TAKE, RELEASE, POST, PUT
+    }
+
+    /**
+     * Beginning of the Json of the errors, {"code":...
+     */
+    private static final String ERROR_PREFIX = "{\"code\"";
+
+    private int parkings = 10000;
+    private long seed = 42;
+    private int rate = 1000;
+    private int duration = 30;
+    private int warmup = 5;
+    private int connections = 64;
+    private String mix = "get:50,search:20,take:10,release:10,post:5,put:5";
+    private String output;
+    private final List<String> serverArgs = new ArrayList<String>();
+
+    /**
+     * Weight of each operation in the mix
+     */
+    private final int[] weights = new int[Operation.values().length];
+    /**
+     * Results of each operation
+     */
+    private final Result[] results = new Result[Operation.values().length];
+    /**
+     * Results of all the operations
+     */
+    private final Result total = new Result("total");
+    /**
+     * Ids of the Parkings of the city
+     */
+    private int[] ids;
+    /**
+     * Base URL of the server, http://127.0.0.1:port/api
+     */
+    private String baseUrl;
+    /**
+     * Time from which the requests are measured, the ones planned before are the warmup
+     */
+    private volatile long measureStart;
+
+    /**
+     * Runs the load test
+     *
+     * @param args options in the format --name=value
+     */
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        try {
+            test.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+        test.run();
+        //the connections kept alive by HttpURLConnection would keep the process running
+        System.exit(0);
+    }
+
+    /**
+     * Reads the options from the arguments of the command line
+     *
+     * @param args arguments in the format --name=value
+     */
+    private void parse(String[] args) {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0)
+                throw new IllegalArgumentException("Invalid argument '" + arg + "', the format is --name=value");
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if ("parkings".equals(name)) {
+                parkings = (int) parseLong(name, value, 1, Integer.MAX_VALUE);
+            } else if ("seed".equals(name)) {
+                seed = parseLong(name, value, Long.MIN_VALUE, Long.MAX_VALUE);
+            } else if ("rate".equals(name)) {
+                rate = (int) parseLong(name, value, 1, 1000000);
+            } else if ("duration".equals(name)) {
+                duration = (int) parseLong(name, value, 1, 86400);
+            } else if ("warmup".equals(name)) {
+                warmup = (int) parseLong(name, value, 0, 86400);
+            } else if ("connections".equals(name)) {
+                connections = (int) parseLong(name, value, 1, 10000);
+            } else if ("mix".equals(name)) {
+                mix = value;
+            } else if ("output".equals(name)) {
+                output = value;
+            } else {
+                serverArgs.add(arg);
+            }
+        }
+        for (String entry : mix.split(",")) {
+            int separator = entry.indexOf(':');
+            Operation operation = null;
+            for (Operation candidate : Operation.values()) {
+                if (separator > 0 && candidate.name().equalsIgnoreCase(entry.substring(0, separator).trim()))
+                    operation = candidate;
+            }
+            if (operation == null)
+                throw new IllegalArgumentException("Invalid mix '" + entry + "', the format is operation:weight "
+                        + "with the operations get, search, take, release, post and put");
+            String weight = entry.substring(separator + 1).trim();
+            weights[operation.ordinal()] = (int) parseLong("mix", weight, 0, 1000000);
+        }
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight == 0)
+            throw new IllegalArgumentException("Invalid mix '" + mix + "', some operation needs a weight");
+    }
+
+    /**
+     * Parses a long option
+     *
+     * @param name    name of the option
+     * @param value   value of the option
+     * @param minimum minimum value allowed
+     * @param maximum maximum value allowed
+     * @return the value
+     */
+    private static long parseLong(String name, String value, long minimum, long maximum) {
+        try {
+            long result = Long.parseLong(value);
+            if (result >= minimum && result <= maximum)
+                return result;
+        } catch (NumberFormatException ex) {
+            //the error is thrown below
+        }
+        throw new IllegalArgumentException("Invalid value '" + value + "' for the option " + name);
+    }
+
+    /**
+     * Starts the server with the city, sends the requests and reports the results
+     */
+    private void run() throws Exception {
+        LogManager.getLogManager().reset();
+        ids = new SyntheticCity(seed, parkings).populate(ParkingCentral.getInstance());
+        boolean portSent = false;
+        for (String arg : serverArgs) {
+            portSent |= arg.startsWith("--port=");
+        }
+        if (!portSent)
+            serverArgs.add("--port=" + freePort());
+        ServerOptions options = ServerOptions.parse(serverArgs.toArray(new String[serverArgs.size()]));
+        HttpServer server = ParkingHttpServer.start(options);
+        baseUrl = "http://127.0.0.1:" + options.getPort() + "/api";
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+        for (Operation operation : Operation.values()) {
+            results[operation.ordinal()] = new Result(operation.name().toLowerCase());
+        }
+        System.out.println("   City of " + parkings + " Parkings, seed " + seed + ", " + rate
+                + " requests per second, " + warmup + " s of warmup and " + duration + " s measured");
+        try {
+            send();
+        } finally {
+            server.stop(0);
+            RequestExecutor.getInstance().shutdown();
+        }
+        report();
+        if (output != null)
+            export(new File(output), options);
+    }
+
+    /**
+     * Finds a free port of the loopback interface
+     *
+     * @return the port
+     */
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Sends the requests at the planned times, during the warmup and the measured duration
+     */
+    private void send() throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+        Random random = new Random(seed);
+        long totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        long interval = 1000000000L / rate;
+        long requests = (long) rate * (warmup + duration);
+        long start = System.nanoTime();
+        measureStart = start + warmup * 1000000000L;
+        for (long i = 0; i < requests; i++) {
+            final long planned = start + i * interval;
+            long wait = planned - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            long choice = (long) (random.nextDouble() * totalWeight);
+            int index = 0;
+            while (choice >= weights[index]) {
+                choice -= weights[index];
+                index++;
+            }
+            final Operation operation = Operation.values()[index];
+            final String path = path(operation, random);
+            final String body = body(operation, random);
+            clients.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(operation, path, body, planned);
+                }
+            });
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(60, TimeUnit.SECONDS))
+            System.err.println("   The requests didn't finish in 60 seconds");
+        long end = System.nanoTime();
+        for (Result result : results) {
+            result.setElapsed(end - measureStart);
+        }
+        total.setElapsed(end - measureStart);
+    }
+
+    /**
+     * Builds the path of a request
+     *
+     * @param operation the operation
+     * @param random    source of the random values
+     * @return the path, after /api
+     */
+    private String path(Operation operation, Random random) {
+        int id = ids[random.nextInt(ids.length)];
+        switch (operation) {
+            case GET:
+                return "/parking/" + id;
+            case SEARCH:
+                double[] point = SyntheticCity.randomPoint(random);
+                String search = String.format(Locale.ROOT,
+                        "/parking/search?latitude=%.6f&longitude=%.6f&distance=%.2f",
+                        point[0], point[1], 0.25 + random.nextDouble() * 1.75);
+                return random.nextBoolean() ? search : search + "&complete=" + random.nextBoolean();
+            case TAKE:
+                return "/parking/" + id + "/takePlace";
+            case RELEASE:
+                return "/parking/" + id + "/releasePlace";
+            case POST:
+                return "/parking";
+            default:
+                return "/parking/" + id;
+        }
+    }
+
+    /**
+     * Builds the body of a request
+     *
+     * @param operation the operation
+     * @param random    source of the random values
+     * @return the Json of a new Parking for POST and PUT, null for the other operations
+     */
+    private static String body(Operation operation, Random random) {
+        if (operation != Operation.POST && operation != Operation.PUT)
+            return null;
+        try {
+            return new ParkingTypeAdapter().toJson(SyntheticCity.newParking(random, random.nextInt(1000000)));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Sends a request and records its result
+     *
+     * @param operation the operation
+     * @param path      the path, after /api
+     * @param body      the body, null without body
+     * @param planned   time when the request had to be sent
+     */
+    private void execute(Operation operation, String path, String body, long planned) {
+        boolean error = false;
+        boolean failure = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(30000);
+            if (body != null) {
+                connection.setRequestMethod(operation == Operation.POST ? "POST" : "PUT");
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                OutputStream out = connection.getOutputStream();
+                out.write(body.getBytes("UTF-8"));
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            //the errors of the API are answered with 200 and the Json of the ParkingException
+            byte[] head = new byte[ERROR_PREFIX.length()];
+            int headLength = 0;
+            if (in != null) {
+                byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    int copied = Math.min(read, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
+                in.close();
+            }
+            failure = status >= 400;
+            error = !failure && new String(head, 0, headLength, "UTF-8").equals(ERROR_PREFIX);
+        } catch (IOException ex) {
+            failure = true;
+        }
+        long now = System.nanoTime();
+        if (planned >= measureStart) {
+            results[operation.ordinal()].record(now - planned, error, failure);
+            total.record(now - planned, error, failure);
+        }
+    }
+
+    /**
+     * Prints the results of the operations
+     */
+    private void report() {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-8s %9s %8s %8s %10s %10s %10s %10s %10s",
+                "", "requests", "errors", "failures", "req/s", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)"));
+        for (Result result : results) {
+            if (result.histogram.getCount() > 0)
+                report(result);
+        }
+        report(total);
+    }
+
+    /**
+     * Prints the results of an operation
+     *
+     * @param result the results
+     */
+    private static void report(Result result) {
+        LatencyHistogram histogram = result.histogram;
+        System.out.println(String.format(Locale.ROOT, "%-8s %9d %8d %8d %10.1f %10.3f %10.3f %10.3f %10.3f",
+                result.name, histogram.getCount(), result.errors.get(), result.failures.get(),
+                result.getThroughput(), histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6,
+                histogram.getPercentile(99.9) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * Writes the configuration and the results in a Json file
+     *
+     * @param file    the file
+     * @param options the options of the server
+     */
+    private void export(File file, ServerOptions options) throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("java").value(System.getProperty("java.version"));
+            writer.name("processors").value(Runtime.getRuntime().availableProcessors());
+            writer.name("router").value(options.getRouter().name().toLowerCase());
+            writer.name("executor").value(options.getExecutor().name().toLowerCase());
+            writer.name("serverThreads").value(options.getThreads());
+            writer.name("parkings").value(parkings);
+            writer.name("seed").value(seed);
+            writer.name("rate").value(rate);
+            writer.name("warmupSeconds").value(warmup);
+            writer.name("durationSeconds").value(duration);
+            writer.name("connections").value(connections);
+            writer.name("mix").value(mix);
+            writer.name("operations");
+            writer.beginObject();
+            for (Result result : results) {
+                if (result.histogram.getCount() > 0)
+                    export(writer, result);
+            }
+            writer.endObject();
+            writer.name("total");
+            writer.beginObject();
+            export(writer, total);
+            writer.endObject();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+        System.out.println("   Results written in " + file);
+    }
+
+    /**
+     * Writes the results of an operation, the latencies in milliseconds
+     *
+     * @param writer the writer
+     * @param result the results
+     */
+    private static void export(JsonWriter writer, Result result) throws IOException {
+        LatencyHistogram histogram = result.histogram;
+        if (!"total".equals(result.name)) {
+            writer.name(result.name);
+            writer.beginObject();
+        }
+        writer.name("requests").value(histogram.getCount());
+        writer.name("errors").value(result.errors.get());
+        writer.name("failures").value(result.failures.get());
+        writer.name("throughput").value(result.getThroughput());
+        writer.name("meanMs").value(histogram.getMean() / 1e6);
+        writer.name("p50Ms").value(histogram.getPercentile(50) / 1e6);
+        writer.name("p90Ms").value(histogram.getPercentile(90) / 1e6);
+        writer.name("p99Ms").value(histogram.getPercentile(99) / 1e6);
+        writer.name("p999Ms").value(histogram.getPercentile(99.9) / 1e6);
+        writer.name("maxMs").value(histogram.getMax() / 1e6);
+        if (!"total".equals(result.name))
+            writer.endObject();
+    }
+
+    /**
+     * Results of an operation
+     */
+    private static class Result {
+
+        /**
+         * Name of the operation
+         */
+        private final String name;
+        /**
+         * Latencies of the requests measured
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        /**
+         * Requests answered with the Json of an error
+         */
+        private final AtomicLong errors = new AtomicLong();
+        /**
+         * Requests without response or with an HTTP error
+         */
+        private final AtomicLong failures = new AtomicLong();
+        /**
+         * Nanoseconds measured
+         */
+        private long elapsed;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean error, boolean failure) {
+            histogram.record(nanos);
+            if (error)
+                errors.incrementAndGet();
+            if (failure)
+                failures.incrementAndGet();
+        }
+
+        void setElapsed(long elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        double getThroughput() {
+            return elapsed == 0 ? 0 : histogram.getCount() * 1e9 / elapsed;
+        }
+    }
+}
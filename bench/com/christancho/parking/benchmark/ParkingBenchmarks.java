@@ -0,0 +1,489 @@
+package com.christancho.parking.benchmark;
+
+import com.christancho.parking.GeoRadius;
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingBinaryWriter;
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingSerializer;
+import com.christancho.parking.ParkingTypeAdapter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks of the hot paths of the ParkingCentral, over a SyntheticCity.
+ * <p/>
+ * It measures the searchParkings with every combination of filters, isInsideRadius, the serialization
+ * of the Parkings (Json and binary), the allocation of ids after removing and adding Parkings, and
+ * takePlace/releasePlace on a few Parkings from 1 to N threads. The city and the queries are generated with
+ * a fixed seed, so the results of two versions of the code are comparable.
+ * <p/>
+ * The options have the format --name=value: parkings (100000), seed (42), threads (the processors),
+ * warmup (3 iterations), iterations (5), time (1000 milliseconds of an iteration) and filter (only the
+ * benchmarks whose name contains it)
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingBenchmarks {
+
+    /**
+     * Number of queries and Parkings cycled by the benchmarks, a power of two
+     */
+    private static final int SAMPLES = 1024;
+    /**
+     * Number of Parkings shared by the threads of the contended benchmark
+     */
+    private static final int HOT_PARKINGS = 8;
+
+    private int parkings = 100000;
+    private long seed = 42;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int warmup = 3;
+    private int iterations = 5;
+    private long time = 1000;
+    private String filter = "";
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args options in the format --name=value
+     */
+    public static void main(String[] args) {
+        ParkingBenchmarks benchmarks = new ParkingBenchmarks();
+        try {
+            benchmarks.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+        benchmarks.run();
+    }
+
+    /**
+     * Reads the options from the arguments of the command line
+     *
+     * @param args arguments in the format --name=value
+     */
+    private void parse(String[] args) {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0)
+                throw new IllegalArgumentException("Invalid argument '" + arg + "', the format is --name=value");
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if ("parkings".equals(name)) {
+                parkings = (int) parseLong(name, value, 1, Integer.MAX_VALUE);
+            } else if ("seed".equals(name)) {
+                seed = parseLong(name, value, Long.MIN_VALUE, Long.MAX_VALUE);
+            } else if ("threads".equals(name)) {
+                threads = (int) parseLong(name, value, 1, 1024);
+            } else if ("warmup".equals(name)) {
+                warmup = (int) parseLong(name, value, 0, Integer.MAX_VALUE);
+            } else if ("iterations".equals(name)) {
+                iterations = (int) parseLong(name, value, 1, Integer.MAX_VALUE);
+            } else if ("time".equals(name)) {
+                time = parseLong(name, value, 1, Long.MAX_VALUE);
+            } else if ("filter".equals(name)) {
+                filter = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option '" + name + "'");
+            }
+        }
+    }
+
+    /**
+     * Parses a long option
+     *
+     * @param name    name of the option
+     * @param value   value of the option
+     * @param minimum minimum value allowed
+     * @param maximum maximum value allowed
+     * @return the value
+     */
+    private static long parseLong(String name, String value, long minimum, long maximum) {
+        try {
+            long result = Long.parseLong(value);
+            if (result >= minimum && result <= maximum)
+                return result;
+        } catch (NumberFormatException ex) {
+            //the error is thrown below
+        }
+        throw new IllegalArgumentException("Invalid value '" + value + "' for the option " + name);
+    }
+
+    /**
+     * Generates the city and runs the benchmarks selected by the filter
+     */
+    private void run() {
+        System.out.println("Java " + System.getProperty("java.version") + ", "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.println("City of " + parkings + " Parkings, seed " + seed);
+        long start = System.nanoTime();
+        SyntheticCity city = new SyntheticCity(seed, parkings);
+        ParkingCentral central = city.newCentral();
+        System.out.println("Generated in " + (System.nanoTime() - start) / 1000000 + " ms");
+        System.out.println();
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, time, System.out);
+        runner.printHeader();
+        for (int mask = 0; mask < 8; mask++) {
+            run(runner, search(central, (mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0), 1);
+        }
+        List<Parking> located = new ArrayList<Parking>();
+        for (Parking parking : central.searchParkings(null, null, null, null, null)) {
+            if (parking.hasLocation() && located.size() < SAMPLES)
+                located.add(parking);
+        }
+        run(runner, insideGeoRadius(located), 1);
+        run(runner, insideCoordinates(located), 1);
+        run(runner, serialize(located), 1);
+        run(runner, deserialize(located), 1);
+        run(runner, adapterWrite(located), 1);
+        run(runner, adapterRead(located), 1);
+        run(runner, binaryWrite(located), 1);
+        Benchmark places = takeRelease(central);
+        for (int count = 1; count < threads; count *= 2) {
+            run(runner, places, count);
+        }
+        run(runner, places, threads);
+        //the churn changes the Parkings, so it is the last one
+        run(runner, churn(central), 1);
+    }
+
+    /**
+     * Runs a benchmark if its name contains the filter
+     *
+     * @param runner    the runner
+     * @param benchmark the benchmark
+     * @param count     number of threads
+     */
+    private void run(BenchmarkRunner runner, Benchmark benchmark, int count) {
+        if (benchmark.getName().contains(filter))
+            runner.run(benchmark, count);
+    }
+
+    /**
+     * searchParkings with a combination of filters, the values of the filters are random
+     *
+     * @param central  the central with the city
+     * @param byFull   filter by free places
+     * @param byDate   filter by date
+     * @param byRadius filter by radius
+     * @return the benchmark
+     */
+    private Benchmark search(final ParkingCentral central, boolean byFull, boolean byDate, boolean byRadius) {
+        Random random = new Random(seed);
+        final Boolean[] full = new Boolean[SAMPLES];
+        final String[] dates = new String[SAMPLES];
+        final Double[][] radius = new Double[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            full[i] = byFull ? random.nextBoolean() : null;
+            dates[i] = byDate ? SyntheticCity.randomDate(random) : null;
+            if (byRadius) {
+                double[] point = SyntheticCity.randomPoint(random);
+                radius[i] = new Double[]{point[0], point[1], 0.25 + random.nextDouble() * 1.75};
+            } else {
+                radius[i] = new Double[3];
+            }
+        }
+        StringBuilder name = new StringBuilder();
+        if (byFull)
+            name.append("+full");
+        if (byDate)
+            name.append("+date");
+        if (byRadius)
+            name.append("+radius");
+        return new Benchmark(name.length() == 0 ? "search.all" : "search." + name.substring(1)) {
+            @Override
+            public long run(int thread, int operations) {
+                long found = 0;
+                for (int i = 0; i < operations; i++) {
+                    int sample = i & (SAMPLES - 1);
+                    found += central.searchParkings(full[sample], dates[sample], radius[sample][0],
+                            radius[sample][1], radius[sample][2]).size();
+                }
+                return found;
+            }
+        };
+    }
+
+    /**
+     * isInsideRadius with a GeoRadius created once, like in the searchParkings
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark insideGeoRadius(final List<Parking> located) {
+        Random random = new Random(seed);
+        final GeoRadius[] radius = new GeoRadius[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            double[] point = SyntheticCity.randomPoint(random);
+            radius[i] = new GeoRadius(point[0], point[1], 0.25 + random.nextDouble() * 1.75);
+        }
+        return new Benchmark("radius.geoRadius") {
+            @Override
+            public long run(int thread, int operations) {
+                long inside = 0;
+                for (int i = 0; i < operations; i++) {
+                    if (located.get(i % located.size()).isInsideRadius(radius[(i >>> 3) & (SAMPLES - 1)]))
+                        inside++;
+                }
+                return inside;
+            }
+        };
+    }
+
+    /**
+     * isInsideRadius with the coordinates of the center, that creates a GeoRadius in every call
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark insideCoordinates(final List<Parking> located) {
+        Random random = new Random(seed);
+        final double[][] radius = new double[SAMPLES][];
+        for (int i = 0; i < SAMPLES; i++) {
+            double[] point = SyntheticCity.randomPoint(random);
+            radius[i] = new double[]{point[0], point[1], 0.25 + random.nextDouble() * 1.75};
+        }
+        return new Benchmark("radius.coordinates") {
+            @Override
+            public long run(int thread, int operations) {
+                long inside = 0;
+                for (int i = 0; i < operations; i++) {
+                    double[] center = radius[(i >>> 3) & (SAMPLES - 1)];
+                    if (located.get(i % located.size()).isInsideRadius(center[0], center[1], center[2]))
+                        inside++;
+                }
+                return inside;
+            }
+        };
+    }
+
+    /**
+     * Gson with the ParkingSerializer
+     *
+     * @return the Gson
+     */
+    private static Gson serializerGson() {
+        return new GsonBuilder().registerTypeAdapter(Parking.class, new ParkingSerializer()).create();
+    }
+
+    /**
+     * Parkings written to Json with the ParkingSerializer
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark serialize(final List<Parking> located) {
+        final Gson gson = serializerGson();
+        return new Benchmark("serializer.serialize") {
+            @Override
+            public long run(int thread, int operations) {
+                long length = 0;
+                for (int i = 0; i < operations; i++) {
+                    length += gson.toJson(located.get(i % located.size())).length();
+                }
+                return length;
+            }
+        };
+    }
+
+    /**
+     * Parkings read from Json with the ParkingSerializer
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark deserialize(List<Parking> located) {
+        final Gson gson = serializerGson();
+        final String[] json = new String[located.size()];
+        for (int i = 0; i < json.length; i++) {
+            json[i] = gson.toJson(located.get(i));
+        }
+        return new Benchmark("serializer.deserialize") {
+            @Override
+            public long run(int thread, int operations) {
+                long ids = 0;
+                for (int i = 0; i < operations; i++) {
+                    ids += gson.fromJson(json[i % json.length], Parking.class).getId();
+                }
+                return ids;
+            }
+        };
+    }
+
+    /**
+     * Parkings written to Json with the ParkingTypeAdapter, used by the service
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark adapterWrite(final List<Parking> located) {
+        final ParkingTypeAdapter adapter = new ParkingTypeAdapter();
+        return new Benchmark("adapter.write") {
+            @Override
+            public long run(int thread, int operations) {
+                long length = 0;
+                for (int i = 0; i < operations; i++) {
+                    length += toJson(adapter, located.get(i % located.size())).length();
+                }
+                return length;
+            }
+        };
+    }
+
+    /**
+     * Writes a Parking to Json with the ParkingTypeAdapter
+     *
+     * @param adapter the adapter
+     * @param parking the parking
+     * @return the Json
+     */
+    private static String toJson(ParkingTypeAdapter adapter, Parking parking) {
+        try {
+            return adapter.toJson(parking);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Parkings read from Json with the ParkingTypeAdapter, used by the service
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark adapterRead(List<Parking> located) {
+        final ParkingTypeAdapter adapter = new ParkingTypeAdapter();
+        final String[] json = new String[located.size()];
+        for (int i = 0; i < json.length; i++) {
+            json[i] = toJson(adapter, located.get(i));
+        }
+        return new Benchmark("adapter.read") {
+            @Override
+            public long run(int thread, int operations) {
+                long ids = 0;
+                try {
+                    for (int i = 0; i < operations; i++) {
+                        ids += adapter.fromJson(json[i % json.length]).getId();
+                    }
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return ids;
+            }
+        };
+    }
+
+    /**
+     * Parkings written in the binary format with the ParkingBinaryWriter, used by the service
+     *
+     * @param located Parkings with coordinates
+     * @return the benchmark
+     */
+    private Benchmark binaryWrite(final List<Parking> located) {
+        return new Benchmark("binary.write") {
+            @Override
+            public long run(int thread, int operations) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ParkingBinaryWriter writer = new ParkingBinaryWriter(bytes);
+                long length = 0;
+                try {
+                    for (int i = 0; i < operations; i++) {
+                        writer.writeParking(located.get(i % located.size()));
+                        writer.flush();
+                        length += bytes.size();
+                        bytes.reset();
+                    }
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return length;
+            }
+        };
+    }
+
+    /**
+     * takePlace and releasePlace of the same few Parkings from all the threads, so the threads compete for
+     * their places. Every thread releases the place it takes, the Parkings never get full or empty
+     *
+     * @param central the central with the city
+     * @return the benchmark
+     */
+    private Benchmark takeRelease(final ParkingCentral central) {
+        final int[] hot = new int[HOT_PARKINGS];
+        int found = 0;
+        for (Parking parking : central.searchParkings(null, null, null, null, null)) {
+            Integer total = parking.getTotalPlaces();
+            Integer free = parking.getFreePlaces();
+            if (found < hot.length && total != null && free != null && free > threads && total - free > threads)
+                hot[found++] = parking.getId();
+        }
+        if (found < hot.length)
+            throw new IllegalArgumentException("The city has not enough Parkings for " + threads + " threads");
+        return new Benchmark("places.takeRelease") {
+            @Override
+            public long run(int thread, int operations) {
+                long free = 0;
+                for (int i = 0; i < operations; i++) {
+                    int id = hot[(thread + i) & (HOT_PARKINGS - 1)];
+                    free += central.takePlace(id);
+                    free += central.releasePlace(id);
+                }
+                return free;
+            }
+        };
+    }
+
+    /**
+     * addParking, that allocates the id, and removeParking after removing and adding again a quarter of
+     * the city, so the slots and the table of ids have holes
+     *
+     * @param central the central with the city
+     * @return the benchmark
+     */
+    private Benchmark churn(final ParkingCentral central) {
+        return new Benchmark("ids.addRemoveAfterChurn") {
+            private Parking template;
+
+            @Override
+            public void setUp(int threads) {
+                Random random = new Random(seed);
+                List<Parking> all = new ArrayList<Parking>(central.searchParkings(null, null, null, null, null));
+                Collections.shuffle(all, random);
+                List<Parking> removed = new ArrayList<Parking>();
+                for (int i = 0; i < all.size() / 4; i++) {
+                    removed.add(central.removeParking(all.get(i).getId()));
+                }
+                for (Parking parking : removed) {
+                    parking.setId(null);
+                    central.addParking(parking);
+                }
+                template = all.get(0);
+            }
+
+            @Override
+            public long run(int thread, int operations) {
+                long ids = 0;
+                for (int i = 0; i < operations; i++) {
+                    Parking parking = new Parking(null, template.getName(), template.getOpenHour(),
+                            template.getCloseHour(), template.getTotalPlaces(), template.getFreePlaces(),
+                            template.getDaysOpen(), template.getLatitude(), template.getLongitude());
+                    int id = central.addParking(parking);
+                    central.removeParking(id);
+                    ids += id;
+                }
+                return ids;
+            }
+        };
+    }
+}
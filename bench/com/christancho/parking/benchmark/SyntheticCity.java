@@ -0,0 +1,217 @@
+package com.christancho.parking.benchmark;
+
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.WeekDay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of the Parkings of a city, used to run the benchmarks with the same data.
+ * <p/>
+ * The same seed and size always give the same Parkings, in the same order. The Parkings are grouped
+ * around a few districts, denser in the center, like the Parkings of a real city, and their schedules
+ * and places follow the usual kinds of Parking (open all day, shopping centers, offices and night)
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class SyntheticCity {
+
+    /**
+     * Kilometers of a degree of latitude
+     */
+    private static final double KMS_PER_DEGREE = 111.195;
+    /**
+     * Centers of the districts (latitude, longitude, spread in kilometers), around Barcelona
+     */
+    private static final double[][] DISTRICTS = {
+            {41.3870, 2.1700, 1.2},
+            {41.3980, 2.1600, 1.5},
+            {41.4040, 2.1900, 1.8},
+            {41.3750, 2.1480, 1.6},
+            {41.4170, 2.1400, 2.0},
+            {41.3590, 2.1300, 2.5},
+            {41.4360, 2.1800, 2.2},
+            {41.3900, 2.1150, 2.0}
+    };
+    /**
+     * Days of each kind of schedule
+     */
+    private static final List<WeekDay> ALL_WEEK = Arrays.asList(WeekDay.values());
+    private static final List<WeekDay> MONDAY_TO_SATURDAY = Arrays.asList(WeekDay.MONDAY, WeekDay.TUESDAY,
+            WeekDay.WEDNESDAY, WeekDay.THURSDAY, WeekDay.FRIDAY, WeekDay.SATURDAY);
+    private static final List<WeekDay> WORKING_DAYS = Arrays.asList(WeekDay.MONDAY, WeekDay.TUESDAY,
+            WeekDay.WEDNESDAY, WeekDay.THURSDAY, WeekDay.FRIDAY);
+    private static final List<WeekDay> WEEKEND_NIGHTS = Arrays.asList(WeekDay.THURSDAY, WeekDay.FRIDAY,
+            WeekDay.SATURDAY, WeekDay.SUNDAY);
+
+    /**
+     * Seed of the random values
+     */
+    private final long seed;
+    /**
+     * Number of Parkings of the city
+     */
+    private final int size;
+
+    /**
+     * Creates a new instance of SyntheticCity
+     *
+     * @param seed seed of the random values, the same seed gives the same city
+     * @param size number of Parkings of the city
+     */
+    public SyntheticCity(long seed, int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Invalid size " + size);
+        this.seed = seed;
+        this.size = size;
+    }
+
+    /**
+     * Get the value of seed
+     *
+     * @return the value of seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the value of size
+     *
+     * @return the value of size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Generates the Parkings of the city, without ids
+     *
+     * @return the list of Parkings
+     */
+    public List<Parking> generate() {
+        Random random = new Random(seed);
+        List<Parking> parkings = new ArrayList<Parking>(size);
+        for (int i = 0; i < size; i++) {
+            parkings.add(newParking(random, i));
+        }
+        return parkings;
+    }
+
+    /**
+     * Creates a new ParkingCentral with the Parkings of the city, the ids go from 0 to size - 1
+     *
+     * @return the ParkingCentral
+     */
+    public ParkingCentral newCentral() {
+        ParkingCentral central = new ParkingCentral();
+        populate(central);
+        return central;
+    }
+
+    /**
+     * Adds the Parkings of the city to a ParkingCentral
+     *
+     * @param central the central
+     * @return the ids given to the Parkings, in the order of the city
+     */
+    public int[] populate(ParkingCentral central) {
+        List<Parking> parkings = generate();
+        int[] ids = new int[parkings.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = central.addParking(parkings.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Gives a random point of the city, with the same distribution of the Parkings
+     *
+     * @param random source of the random values
+     * @return the latitude and the longitude of the point
+     */
+    public static double[] randomPoint(Random random) {
+        double[] district = DISTRICTS[random.nextInt(DISTRICTS.length)];
+        double northKms = random.nextGaussian() * district[2];
+        double eastKms = random.nextGaussian() * district[2];
+        double latitude = district[0] + northKms / KMS_PER_DEGREE;
+        double longitude = district[1] + eastKms / (KMS_PER_DEGREE * Math.cos(Math.toRadians(district[0])));
+        return new double[]{latitude, longitude};
+    }
+
+    /**
+     * Gives a random date for the searchParkings, in the format DD.MM.YYYY#hh. The dates are the 14 days
+     * from Monday 15.12.2014, so every day of the week appears
+     *
+     * @param random source of the random values
+     * @return the date
+     */
+    public static String randomDate(Random random) {
+        int day = 15 + random.nextInt(14);
+        int hour = random.nextInt(24);
+        return day + ".12.2014#" + (hour < 10 ? "0" : "") + hour;
+    }
+
+    /**
+     * Creates a random Parking, without id
+     *
+     * @param random source of the random values
+     * @param index  position of the Parking in the city
+     * @return the Parking
+     */
+    static Parking newParking(Random random, int index) {
+        int kind = random.nextInt(100);
+        Integer openHour;
+        Integer closeHour;
+        List<WeekDay> days;
+        int totalPlaces;
+        if (kind < 35) {
+            //open all day
+            openHour = 0;
+            closeHour = 24;
+            days = ALL_WEEK;
+            totalPlaces = 100 + random.nextInt(600);
+        } else if (kind < 75) {
+            //shopping centers and streets
+            openHour = 7 + random.nextInt(3);
+            closeHour = 21 + random.nextInt(3);
+            days = MONDAY_TO_SATURDAY;
+            totalPlaces = 200 + random.nextInt(1300);
+        } else if (kind < 90) {
+            //offices
+            openHour = 6 + random.nextInt(2);
+            closeHour = 19 + random.nextInt(3);
+            days = WORKING_DAYS;
+            totalPlaces = 30 + random.nextInt(200);
+        } else if (kind < 97) {
+            //nightlife and events
+            openHour = 17 + random.nextInt(3);
+            closeHour = 24;
+            days = WEEKEND_NIGHTS;
+            totalPlaces = 50 + random.nextInt(400);
+        } else {
+            //without a published schedule
+            openHour = null;
+            closeHour = null;
+            days = null;
+            totalPlaces = 20 + random.nextInt(100);
+        }
+        //one of ten is full, the rest have any occupation
+        int freePlaces = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(totalPlaces);
+        Double latitude = null;
+        Double longitude = null;
+        if (random.nextInt(100) != 0) {
+            double[] point = randomPoint(random);
+            latitude = point[0];
+            longitude = point[1];
+        }
+        return new Parking(null, "Parking " + index, openHour, closeHour, totalPlaces, freePlaces,
+                days == null ? null : new ArrayList<WeekDay>(days), latitude, longitude);
+    }
+}
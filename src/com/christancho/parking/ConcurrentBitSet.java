@@ -0,0 +1,217 @@
+package com.christancho.parking;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of bits that can be read and modified concurrently without locks.
+ * <p/>
+ * The bits are stored in chunks of CHUNK_BITS bits, growing only adds new chunks, so a bit modified while
+ * the set is growing is never lost. Only growing takes a lock.
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ConcurrentBitSet {
+
+    /**
+     * Number of longs in every chunk
+     */
+    private static final int CHUNK_WORDS = 64;
+    /**
+     * Number of bits in every chunk
+     */
+    public static final int CHUNK_BITS = CHUNK_WORDS * 64;
+
+    /**
+     * Chunks with the bits, replaced by a bigger copy when the set grows
+     */
+    private volatile AtomicLongArray[] chunks;
+
+    /**
+     * Creates a new instance of ConcurrentBitSet
+     */
+    public ConcurrentBitSet() {
+        chunks = new AtomicLongArray[0];
+    }
+
+    /**
+     * Makes sure the set can store the bit index
+     *
+     * @param index the bit index
+     */
+    public void ensureCapacity(int index) {
+        int chunk = index / CHUNK_BITS;
+        if (chunk >= chunks.length)
+            grow(chunk);
+    }
+
+    /**
+     * Replaces the chunks by a bigger copy, sharing the chunks already created
+     *
+     * @param chunk the chunk index that has to exist
+     */
+    private synchronized void grow(int chunk) {
+        AtomicLongArray[] actual = chunks;
+        if (chunk < actual.length)
+            return;
+        AtomicLongArray[] grown = new AtomicLongArray[Math.max(chunk + 1, actual.length * 2)];
+        System.arraycopy(actual, 0, grown, 0, actual.length);
+        for (int i = actual.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(CHUNK_WORDS);
+        }
+        chunks = grown;
+    }
+
+    /**
+     * Number of bits the set can store without growing
+     *
+     * @return the capacity in bits
+     */
+    public int capacity() {
+        return chunks.length * CHUNK_BITS;
+    }
+
+    /**
+     * Sets the bit to true, growing the set if needed
+     *
+     * @param index the bit index
+     */
+    public void set(int index) {
+        ensureCapacity(index);
+        AtomicLongArray chunk = chunks[index / CHUNK_BITS];
+        int word = (index % CHUNK_BITS) >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long value = chunk.get(word);
+            if ((value & mask) != 0 || chunk.compareAndSet(word, value, value | mask))
+                return;
+        }
+    }
+
+    /**
+     * Sets the bit to false
+     *
+     * @param index the bit index
+     */
+    public void clear(int index) {
+        AtomicLongArray[] actual = chunks;
+        if (index / CHUNK_BITS >= actual.length)
+            return;
+        AtomicLongArray chunk = actual[index / CHUNK_BITS];
+        int word = (index % CHUNK_BITS) >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long value = chunk.get(word);
+            if ((value & mask) == 0 || chunk.compareAndSet(word, value, value & ~mask))
+                return;
+        }
+    }
+
+    /**
+     * Sets the bit to the specified value
+     *
+     * @param index the bit index
+     * @param value new value for the bit
+     */
+    public void set(int index, boolean value) {
+        if (value)
+            set(index);
+        else
+            clear(index);
+    }
+
+    /**
+     * Gets the value of a bit
+     *
+     * @param index the bit index
+     * @return true if the bit is set
+     */
+    public boolean get(int index) {
+        AtomicLongArray[] actual = chunks;
+        if (index / CHUNK_BITS >= actual.length)
+            return false;
+        return (actual[index / CHUNK_BITS].get((index % CHUNK_BITS) >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Counts the bits set
+     *
+     * @return the number of bits set
+     */
+    public int cardinality() {
+        AtomicLongArray[] actual = chunks;
+        int count = 0;
+        for (AtomicLongArray chunk : actual) {
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                count += Long.bitCount(chunk.get(i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies the bits into an array of words, in the same layout used by java.util.BitSet.valueOf
+     *
+     * @param words number of words to copy
+     * @return the array with the words, the words beyond the capacity are 0
+     */
+    public long[] toWords(int words) {
+        long[] result = new long[words];
+        AtomicLongArray[] actual = chunks;
+        int length = Math.min(words, actual.length * CHUNK_WORDS);
+        for (int i = 0; i < length; i++) {
+            result[i] = actual[i / CHUNK_WORDS].get(i % CHUNK_WORDS);
+        }
+        return result;
+    }
+
+    /**
+     * Applies a logical AND of the bits with an array of words
+     *
+     * @param words the words to modify
+     */
+    public void andInto(long[] words) {
+        AtomicLongArray[] actual = chunks;
+        int length = Math.min(words.length, actual.length * CHUNK_WORDS);
+        for (int i = 0; i < length; i++) {
+            words[i] &= actual[i / CHUNK_WORDS].get(i % CHUNK_WORDS);
+        }
+        for (int i = length; i < words.length; i++) {
+            words[i] = 0;
+        }
+    }
+
+    /**
+     * Ask if a bit is set in an array of words
+     *
+     * @param words the words to evaluate
+     * @param index the bit index
+     * @return true if the bit is set
+     */
+    public static boolean isSet(long[] words, int index) {
+        int word = index >>> 6;
+        return word < words.length && (words[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Gets the next bit set in an array of words
+     *
+     * @param words     the words to evaluate
+     * @param fromIndex the first bit index to evaluate
+     * @return the index of the next bit set, -1 if there is none
+     */
+    public static int nextSetBit(long[] words, int fromIndex) {
+        int word = fromIndex >>> 6;
+        if (word >= words.length)
+            return -1;
+        long value = words[word] & (-1L << fromIndex);
+        while (true) {
+            if (value != 0)
+                return (word << 6) + Long.numberOfTrailingZeros(value);
+            if (++word >= words.length)
+                return -1;
+            value = words[word];
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.christancho.parking;
+
+/**
+ * Class that represents a circular area used to search Parkings.
+ * <p/>
+ * All the trigonometry of the center and the bounding box of the circle are computed once when it is created,
+ * so checking a Parking only costs a bounding box comparison and, for the Parkings inside the box, a haversine
+ * evaluation with the trigonometry cached in the Parking
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class GeoRadius {
+
+    /**
+     * Earth radius in kilometers
+     */
+    public static final double EARTH_RADIUS_KMS = 6373;
+    /**
+     * Kilometers in one degree of latitude
+     */
+    public static final double KMS_PER_DEGREE = Math.PI * EARTH_RADIUS_KMS / 180;
+
+    /**
+     * Formulas available to calculate the distance between the center and a Parking
+     */
+    public enum Formula {
+        /**
+         * Haversine formula, numerically stable for small and big distances
+         */
+        HAVERSINE,
+        /**
+         * Equirectangular projection centered in the latitude of the center. It avoids all the trigonometry
+         * for each Parking, the relative error is below 0.1% for radiuses up to 10 Km at latitudes up to
+         * 60 degrees, and it grows with the radius and near the poles
+         */
+        EQUIRECTANGULAR
+    }
+
+    /**
+     * Latitude coordinate for the center of the radius
+     */
+    private final double latitude;
+    /**
+     * Longitude coordinate for the center of the radius
+     */
+    private final double longitude;
+    /**
+     * Size for the radius in Kilometers
+     */
+    private final double radiusKms;
+    /**
+     * Formula used to evaluate the Parkings inside the bounding box
+     */
+    private final Formula formula;
+    /**
+     * Latitude of the center in radians
+     */
+    private final double latRadians;
+    /**
+     * Longitude of the center in radians
+     */
+    private final double lonRadians;
+    /**
+     * Cosine of the latitude of the center
+     */
+    private final double cosLatitude;
+    /**
+     * Half of the height of the bounding box, in degrees
+     */
+    private final double latDelta;
+    /**
+     * Half of the width of the bounding box, in degrees. 180 when the circle contains a pole
+     */
+    private final double lonDelta;
+    /**
+     * Maximum value of the haversine term (or the squared angular distance for the equirectangular
+     * formula) for a Parking inside the circle, so the distance is never calculated
+     */
+    private final double threshold;
+
+    /**
+     * Creates a new instance of GeoRadius that uses the haversine formula
+     *
+     * @param latitude  latitude coordinate for the center of the radius
+     * @param longitude longitude coordinate for the center of the radius
+     * @param radiusKms size for the radius in Kilometers
+     */
+    public GeoRadius(double latitude, double longitude, double radiusKms) {
+        this(latitude, longitude, radiusKms, Formula.HAVERSINE);
+    }
+
+    /**
+     * Creates a new instance of GeoRadius
+     *
+     * @param latitude  latitude coordinate for the center of the radius
+     * @param longitude longitude coordinate for the center of the radius
+     * @param radiusKms size for the radius in Kilometers
+     * @param formula   formula used to calculate the distances
+     */
+    public GeoRadius(double latitude, double longitude, double radiusKms, Formula formula) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusKms = radiusKms;
+        this.formula = formula;
+        this.latRadians = Math.toRadians(latitude);
+        this.lonRadians = Math.toRadians(longitude);
+        this.cosLatitude = Math.cos(latRadians);
+        this.latDelta = radiusKms / KMS_PER_DEGREE;
+        double maxAbsLatitude = Math.abs(latitude) + latDelta;
+        this.lonDelta = maxAbsLatitude >= 90 ? 180
+                : Math.min(180, latDelta / Math.cos(Math.toRadians(maxAbsLatitude)));
+        this.threshold = angleKey(radiusKms / EARTH_RADIUS_KMS);
+    }
+
+    /**
+     * Calculates the value of distanceKey for a Parking located at an angular distance from the center
+     *
+     * @param angle the angular distance in radians
+     * @return the value comparable with distanceKey
+     */
+    public double angleKey(double angle) {
+        if (formula == Formula.EQUIRECTANGULAR)
+            return angle * angle;
+        //haversine: the distance is inside the radius when sin^2(d/2R) <= sin^2(radius/2R)
+        double halfSin = Math.sin(Math.min(angle, Math.PI) / 2);
+        return halfSin * halfSin;
+    }
+
+    /**
+     * Ask if a Parking is located inside the circle
+     *
+     * @param parking the Parking to evaluate
+     * @return true if the parking is located inside the circle, false if it has no coordinates
+     */
+    public boolean contains(Parking parking) {
+        return insideBox(parking.getLatitudeValue(), parking.getLongitudeValue())
+                && distanceKey(parking) <= threshold;
+    }
+
+    /**
+     * Ask if a point is located inside the circle, used by the ParkingColumnStore that keeps no trigonometry
+     *
+     * @param pointLatitude  latitude of the point, NaN if it is not defined
+     * @param pointLongitude longitude of the point, NaN if it is not defined
+     * @return true if the point is located inside the circle, false if it has no coordinates
+     */
+    boolean contains(double pointLatitude, double pointLongitude) {
+        return insideBox(pointLatitude, pointLongitude) && distanceKey(pointLatitude, pointLongitude) <= threshold;
+    }
+
+    /**
+     * Ask if a point is inside the bounding box of the circle
+     *
+     * @param pointLatitude  latitude of the point
+     * @param pointLongitude longitude of the point
+     * @return true if the point is inside the box, false if it has no coordinates
+     */
+    private boolean insideBox(double pointLatitude, double pointLongitude) {
+        if (Double.isNaN(pointLatitude) || Double.isNaN(pointLongitude))
+            return false;
+        if (Math.abs(pointLatitude - latitude) > latDelta)
+            return false;
+        double lonDistance = Math.abs(pointLongitude - longitude);
+        if (lonDistance > 180)
+            lonDistance = 360 - lonDistance;
+        return lonDistance <= lonDelta;
+    }
+
+    /**
+     * Calculates a value that grows with the distance between the center and a Parking, used to sort by
+     * distance without calculating the distance itself. With the haversine formula it is the haversine term,
+     * with the equirectangular formula the squared angular distance
+     *
+     * @param parking the Parking to evaluate
+     * @return the value, Double.MAX_VALUE if the Parking has no coordinates
+     */
+    public double distanceKey(Parking parking) {
+        if (!parking.hasLocation())
+            return Double.MAX_VALUE;
+        return distanceKey(parking.getLatitudeRadians(), parking.getCosLatitude(), parking.getLongitudeRadians());
+    }
+
+    /**
+     * Calculates the distanceKey of a point, computing its trigonometry
+     *
+     * @param pointLatitude  latitude of the point, NaN if it is not defined
+     * @param pointLongitude longitude of the point, NaN if it is not defined
+     * @return the value, Double.MAX_VALUE if the point has no coordinates
+     */
+    double distanceKey(double pointLatitude, double pointLongitude) {
+        if (Double.isNaN(pointLatitude) || Double.isNaN(pointLongitude))
+            return Double.MAX_VALUE;
+        double pointLatRadians = Math.toRadians(pointLatitude);
+        return distanceKey(pointLatRadians, Math.cos(pointLatRadians), Math.toRadians(pointLongitude));
+    }
+
+    /**
+     * Calculates the distanceKey of a point from its trigonometry
+     *
+     * @param pointLatRadians  latitude of the point in radians
+     * @param pointCosLatitude cosine of the latitude of the point
+     * @param pointLonRadians  longitude of the point in radians
+     * @return the value
+     */
+    private double distanceKey(double pointLatRadians, double pointCosLatitude, double pointLonRadians) {
+        double deltaLat = pointLatRadians - latRadians;
+        double deltaLon = pointLonRadians - lonRadians;
+        if (formula == Formula.EQUIRECTANGULAR) {
+            if (deltaLon > Math.PI)
+                deltaLon -= 2 * Math.PI;
+            else if (deltaLon < -Math.PI)
+                deltaLon += 2 * Math.PI;
+            double x = deltaLon * cosLatitude;
+            return x * x + deltaLat * deltaLat;
+        }
+        double sinLat = Math.sin(deltaLat / 2);
+        double sinLon = Math.sin(deltaLon / 2);
+        return sinLat * sinLat + cosLatitude * pointCosLatitude * sinLon * sinLon;
+    }
+
+    /**
+     * Get the value of latitude
+     *
+     * @return the value of latitude
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Get the value of longitude
+     *
+     * @return the value of longitude
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get the value of radiusKms
+     *
+     * @return the value of radiusKms
+     */
+    public double getRadiusKms() {
+        return radiusKms;
+    }
+
+    /**
+     * Get the half of the height of the bounding box, in degrees
+     *
+     * @return the value of latDelta
+     */
+    public double getLatDelta() {
+        return latDelta;
+    }
+
+    /**
+     * Get the half of the width of the bounding box, in degrees
+     *
+     * @return the value of lonDelta
+     */
+    public double getLonDelta() {
+        return lonDelta;
+    }
+}
@@ -0,0 +1,148 @@
+package com.christancho.parking;
+
+/**
+ * Class that represents a list of occupancy events (parkingId, delta) sent together by a gate controller,
+ * with the result of every event after it is applied by the ParkingCentral.
+ * <p/>
+ * The events are stored in parallel arrays, so a batch of hundreds of events doesn't create an object
+ * per event
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class OccupancyBatch {
+
+    /**
+     * Ids of the Parkings of the events
+     */
+    private int[] parkingIds;
+    /**
+     * Places filled by every event, negative for places freed
+     */
+    private int[] deltas;
+    /**
+     * Free places after every event
+     */
+    private int[] freePlaces;
+    /**
+     * Error of every event, null if it was applied
+     */
+    private ParkingException[] errors;
+    /**
+     * Number of events
+     */
+    private int size;
+
+    /**
+     * Creates a new instance of OccupancyBatch
+     */
+    public OccupancyBatch() {
+        this(16);
+    }
+
+    /**
+     * Creates a new instance of OccupancyBatch
+     *
+     * @param capacity expected number of events
+     */
+    public OccupancyBatch(int capacity) {
+        parkingIds = new int[capacity];
+        deltas = new int[capacity];
+    }
+
+    /**
+     * Adds an event to the batch
+     *
+     * @param parkingId id of the Parking
+     * @param delta     places filled, negative to free places
+     */
+    public void add(int parkingId, int delta) {
+        if (size == parkingIds.length) {
+            int capacity = Math.max(16, size * 2);
+            int[] newIds = new int[capacity];
+            int[] newDeltas = new int[capacity];
+            System.arraycopy(parkingIds, 0, newIds, 0, size);
+            System.arraycopy(deltas, 0, newDeltas, 0, size);
+            parkingIds = newIds;
+            deltas = newDeltas;
+        }
+        parkingIds[size] = parkingId;
+        deltas[size] = delta;
+        size++;
+    }
+
+    /**
+     * Get the number of events
+     *
+     * @return the value of size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the id of the Parking of an event
+     *
+     * @param index position of the event
+     * @return the id of the Parking
+     */
+    public int getParkingId(int index) {
+        return parkingIds[index];
+    }
+
+    /**
+     * Get the places filled by an event
+     *
+     * @param index position of the event
+     * @return the places filled, negative for places freed
+     */
+    public int getDelta(int index) {
+        return deltas[index];
+    }
+
+    /**
+     * Get the free places after an event
+     *
+     * @param index position of the event
+     * @return the free places, only valid if the event has no error
+     */
+    public int getFreePlaces(int index) {
+        return freePlaces[index];
+    }
+
+    /**
+     * Get the error of an event
+     *
+     * @param index position of the event
+     * @return the error, null if the event was applied
+     */
+    public ParkingException getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Ask if the results of the events are available
+     *
+     * @return true if the batch was applied
+     */
+    public boolean isApplied() {
+        return errors != null;
+    }
+
+    /**
+     * Stores the result of an event, creating the arrays of results with the first one
+     *
+     * @param index      position of the event
+     * @param freePlaces free places after the event
+     * @param error      error of the event, null if it was applied
+     */
+    void setResult(int index, int freePlaces, ParkingException error) {
+        if (errors == null) {
+            this.freePlaces = new int[size];
+            this.errors = new ParkingException[size];
+        }
+        this.freePlaces[index] = freePlaces;
+        this.errors[index] = error;
+    }
+}
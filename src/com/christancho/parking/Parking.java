@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Class that represents the model Parking
@@ -14,49 +16,94 @@ import java.util.List;
  */
 public class Parking implements Serializable {
 
+    /**
+     * Value stored in the int fields while they have not been defined, also used by the ParkingStores
+     */
+    static final int UNDEFINED = Integer.MIN_VALUE;
+    /**
+     * Value stored in freePlaces while it has not been defined
+     */
+    private static final int UNDEFINED_PLACES = UNDEFINED;
+    /**
+     * Value stored in daysMask while the days have not been defined
+     */
+    private static final int UNDEFINED_DAYS = -1;
+    /**
+     * Updater used to modify the freePlaces with compare-and-set operations
+     */
+    private static final AtomicIntegerFieldUpdater<Parking> FREE_PLACES_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Parking.class, "freePlaces");
+    /**
+     * Updater used to advance the version
+     */
+    private static final AtomicLongFieldUpdater<Parking> VERSION_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Parking.class, "version");
+
     /**
      * Parking Id
      */
-    private Integer id;
+    private volatile Integer id;
     /**
      * Parking name
      */
-    private String name;
+    private volatile String name;
+    /**
+     * Hour of the day when the Parking open, UNDEFINED if it has not been set.
+     * The values are kept in primitive fields, so a Parking has no boxed values or lists inside
+     */
+    private volatile int openHour = UNDEFINED;
+    /**
+     * Hour of the day when the Parking close, UNDEFINED if it has not been set
+     */
+    private volatile int closeHour = UNDEFINED;
     /**
-     * Hour of the day when the Parking open
+     * Total number of cars that can occupy a place in the Parking, UNDEFINED if it has not been set
      */
-    private Integer openHour;
+    private volatile int totalPlaces = UNDEFINED;
     /**
-     * Hour of the day when the Parking close
+     * Actual number of free places in the Parking, UNDEFINED_PLACES if it has not been set.
+     * It is only modified through FREE_PLACES_UPDATER, so concurrent takePlace/releasePlace never lose updates
      */
-    private Integer closeHour;
+    private volatile int freePlaces = UNDEFINED_PLACES;
     /**
-     * Total number of cars that can occupy a place in the Parking
+     * Week days when the Parking is open, a bit per WeekDay ordinal, UNDEFINED_DAYS if they have not been set
      */
-    private Integer totalPlaces;
+    private volatile int daysMask = UNDEFINED_DAYS;
     /**
-     * Actual number of free places in the Parking
+     * Latitude coordinate of the Parking, NaN if it has not been set
      */
-    private Integer freePlaces;
+    private volatile double latitude = Double.NaN;
     /**
-     * List with the Week days when the Parking is open
+     * Longitude coordinate of the Parking, NaN if it has not been set
      */
-    private List<WeekDay> daysOpen;
+    private volatile double longitude = Double.NaN;
     /**
-     * Latitude coordinate of the Parking.
+     * Latitude in radians, cached when the latitude is set
      */
-    private Double latitude;
+    private volatile double latitudeRadians;
     /**
-     * Longitude coordinate of the Parking.
+     * Cosine of the latitude, cached when the latitude is set
      */
-    private Double longitude;
+    private volatile double cosLatitude;
+    /**
+     * Longitude in radians, cached when the longitude is set
+     */
+    private volatile double longitudeRadians;
+    /**
+     * Internal position of the Parking in the ParkingCentral indexes, -1 if it is not stored
+     */
+    private volatile int slot = -1;
+    /**
+     * Version of the Parking, advanced by the ParkingCentral to its own version after every modification
+     */
+    private volatile long version;
 
 
     /**
      * Creates a new instance of Parking
      */
     public Parking() {
-        daysOpen = new ArrayList<WeekDay>();
+        daysMask = 0;
     }
 
     /**
@@ -76,11 +123,43 @@ public class Parking implements Serializable {
                    Integer freePlaces, List<WeekDay> daysOpen, Double latitude, Double longitude) {
         this.id = id;
         this.name = name;
+        setOpenHour(openHour);
+        setCloseHour(closeHour);
+        setTotalPlaces(totalPlaces);
+        setFreePlaces(freePlaces);
+        setDaysOpen(daysOpen);
+        setLatitude(latitude);
+        setLongitude(longitude);
+    }
+
+    /**
+     * Creates a new instance of Parking with the values of a ParkingColumnStore, without boxing them
+     *
+     * @param id          the id
+     * @param name        the name
+     * @param openHour    the open hour, UNDEFINED if it is not defined
+     * @param closeHour   the close hour, UNDEFINED if it is not defined
+     * @param totalPlaces the total places, UNDEFINED if they are not defined
+     * @param freePlaces  the free places, UNDEFINED if they are not defined
+     * @param daysMask    a bit per WeekDay ordinal, -1 if the days are not defined
+     * @param latitude    the latitude, NaN if it is not defined
+     * @param longitude   the longitude, NaN if it is not defined
+     */
+    Parking(int id, String name, int openHour, int closeHour, int totalPlaces, int freePlaces, int daysMask,
+            double latitude, double longitude) {
+        this.id = id;
+        this.name = name;
         this.openHour = openHour;
         this.closeHour = closeHour;
         this.totalPlaces = totalPlaces;
         this.freePlaces = freePlaces;
-        this.daysOpen = daysOpen;
+        setDaysMask(daysMask);
+        if (!Double.isNaN(latitude)) {
+            latitudeRadians = Math.toRadians(latitude);
+            cosLatitude = Math.cos(latitudeRadians);
+        }
+        if (!Double.isNaN(longitude))
+            longitudeRadians = Math.toRadians(longitude);
         this.latitude = latitude;
         this.longitude = longitude;
     }
@@ -128,7 +207,7 @@ public class Parking implements Serializable {
      * @return the value of openHour
      */
     public Integer getOpenHour() {
-        return openHour;
+        return toInteger(openHour);
     }
 
     /**
@@ -137,7 +216,7 @@ public class Parking implements Serializable {
      * @param openHour new value of openHour
      */
     public void setOpenHour(Integer openHour) {
-        this.openHour = openHour;
+        this.openHour = openHour == null ? UNDEFINED : openHour;
     }
 
     /**
@@ -146,7 +225,7 @@ public class Parking implements Serializable {
      * @return the value of closeHour
      */
     public Integer getCloseHour() {
-        return closeHour;
+        return toInteger(closeHour);
     }
 
     /**
@@ -155,7 +234,7 @@ public class Parking implements Serializable {
      * @param closeHour new value of closeHour
      */
     public void setCloseHour(Integer closeHour) {
-        this.closeHour = closeHour;
+        this.closeHour = closeHour == null ? UNDEFINED : closeHour;
     }
 
     /**
@@ -164,7 +243,7 @@ public class Parking implements Serializable {
      * @return the value of totalPlaces
      */
     public Integer getTotalPlaces() {
-        return totalPlaces;
+        return toInteger(totalPlaces);
     }
 
     /**
@@ -173,7 +252,7 @@ public class Parking implements Serializable {
      * @param totalPlaces new value of totalPlaces
      */
     public void setTotalPlaces(Integer totalPlaces) {
-        this.totalPlaces = totalPlaces;
+        this.totalPlaces = totalPlaces == null ? UNDEFINED : totalPlaces;
     }
 
     /**
@@ -182,7 +261,7 @@ public class Parking implements Serializable {
      * @return the value of freePlaces
      */
     public Integer getFreePlaces() {
-        return freePlaces;
+        return toInteger(freePlaces);
     }
 
     /**
@@ -191,25 +270,42 @@ public class Parking implements Serializable {
      * @param freePlaces new value of freePlaces
      */
     public void setFreePlaces(Integer freePlaces) {
-        this.freePlaces = freePlaces;
+        FREE_PLACES_UPDATER.set(this, freePlaces == null ? UNDEFINED_PLACES : freePlaces);
     }
 
     /**
      * Get the value of daysOpen
      *
-     * @return the value of daysOpen
+     * @return a new list with the days open in the order of the week, null if they have not been set
      */
     public List<WeekDay> getDaysOpen() {
+        int days = daysMask;
+        if (days == UNDEFINED_DAYS)
+            return null;
+        List<WeekDay> daysOpen = new ArrayList<WeekDay>(Integer.bitCount(days));
+        for (WeekDay weekDay : WeekDay.values()) {
+            if ((days & (1 << weekDay.ordinal())) != 0)
+                daysOpen.add(weekDay);
+        }
         return daysOpen;
     }
 
     /**
      * Set the value of daysOpen
      *
-     * @param daysOpen new value of daysOpen
+     * @param daysOpen new value of daysOpen, the null days and the repeated ones are ignored
      */
     public void setDaysOpen(List<WeekDay> daysOpen) {
-        this.daysOpen = daysOpen;
+        if (daysOpen == null) {
+            daysMask = UNDEFINED_DAYS;
+            return;
+        }
+        int days = 0;
+        for (WeekDay weekDay : daysOpen) {
+            if (weekDay != null)
+                days |= 1 << weekDay.ordinal();
+        }
+        daysMask = days;
     }
 
     /**
@@ -217,10 +313,26 @@ public class Parking implements Serializable {
      * @param weekDay day to add
      */
     public void addDay(WeekDay weekDay) {
-        if (daysOpen == null && weekDay != null)
-            daysOpen = new ArrayList<WeekDay>();
-        if (weekDay != null && !daysOpen.contains(weekDay))
-            daysOpen.add(weekDay);
+        if (weekDay != null)
+            daysMask = (daysMask == UNDEFINED_DAYS ? 0 : daysMask) | (1 << weekDay.ordinal());
+    }
+
+    /**
+     * Get the days open as a mask
+     *
+     * @return a bit per WeekDay ordinal, -1 if the days have not been set
+     */
+    int getDaysMask() {
+        return daysMask;
+    }
+
+    /**
+     * Set the days open from a mask
+     *
+     * @param daysMask a bit per WeekDay ordinal, -1 if the days are not defined
+     */
+    void setDaysMask(int daysMask) {
+        this.daysMask = daysMask < 0 ? UNDEFINED_DAYS : daysMask & 0x7f;
     }
 
     /**
@@ -229,7 +341,8 @@ public class Parking implements Serializable {
      * @return the value of latitude
      */
     public Double getLatitude() {
-        return latitude;
+        double value = latitude;
+        return Double.isNaN(value) ? null : value;
     }
 
     /**
@@ -238,7 +351,11 @@ public class Parking implements Serializable {
      * @param latitude new value of latitude
      */
     public void setLatitude(Double latitude) {
-        this.latitude = latitude;
+        if (latitude != null) {
+            latitudeRadians = Math.toRadians(latitude);
+            cosLatitude = Math.cos(latitudeRadians);
+        }
+        this.latitude = latitude == null ? Double.NaN : latitude;
     }
 
     /**
@@ -247,7 +364,8 @@ public class Parking implements Serializable {
      * @return the value of longitude
      */
     public Double getLongitude() {
-        return longitude;
+        double value = longitude;
+        return Double.isNaN(value) ? null : value;
     }
 
     /**
@@ -256,7 +374,103 @@ public class Parking implements Serializable {
      * @param longitude new value of longitude
      */
     public void setLongitude(Double longitude) {
-        this.longitude = longitude;
+        if (longitude != null)
+            longitudeRadians = Math.toRadians(longitude);
+        this.longitude = longitude == null ? Double.NaN : longitude;
+    }
+
+    /**
+     * Get the latitude without boxing it, for the scans of the searches
+     *
+     * @return the latitude, NaN if it is not defined
+     */
+    double getLatitudeValue() {
+        return latitude;
+    }
+
+    /**
+     * Get the longitude without boxing it, for the scans of the searches
+     *
+     * @return the longitude, NaN if it is not defined
+     */
+    double getLongitudeValue() {
+        return longitude;
+    }
+
+    /**
+     * Ask if the Parking has coordinates, without boxing them
+     *
+     * @return true if the latitude and the longitude are defined
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * Get the latitude in radians
+     *
+     * @return the latitude in radians, 0 if the latitude is not defined
+     */
+    public double getLatitudeRadians() {
+        return latitudeRadians;
+    }
+
+    /**
+     * Get the cosine of the latitude
+     *
+     * @return the cosine of the latitude, 0 if the latitude is not defined
+     */
+    public double getCosLatitude() {
+        return cosLatitude;
+    }
+
+    /**
+     * Get the longitude in radians
+     *
+     * @return the longitude in radians, 0 if the longitude is not defined
+     */
+    public double getLongitudeRadians() {
+        return longitudeRadians;
+    }
+
+    /**
+     * Get the value of version
+     *
+     * @return the version of the Parking, it grows every time the Parking is modified
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Advances the version of the Parking, it never goes back if the updates arrive out of order
+     *
+     * @param newVersion the new version
+     */
+    void advanceVersion(long newVersion) {
+        while (true) {
+            long actual = version;
+            if (actual >= newVersion || VERSION_UPDATER.compareAndSet(this, actual, newVersion))
+                return;
+        }
+    }
+
+    /**
+     * Get the value of slot
+     *
+     * @return the internal position of the Parking in the ParkingCentral, -1 if it is not stored
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Set the value of slot
+     *
+     * @param slot new value of slot
+     */
+    void setSlot(int slot) {
+        this.slot = slot;
     }
 
     /**
@@ -268,13 +482,24 @@ public class Parking implements Serializable {
         return totalPlaces <= freePlaces;
     }
 
+    /**
+     * Ask if the total and the free places are defined, so isFull can be evaluated
+     *
+     * @return true if both values are defined
+     */
+    boolean hasPlaces() {
+        return totalPlaces != UNDEFINED && freePlaces != UNDEFINED_PLACES;
+    }
+
     /**
      * Ask if the Parking is open at a selected hour
      * @param hour hour to evaluate
      * @return true if the parking is open at the selected hour
      */
     public boolean isOpenInHour(int hour) {
-        return openHour <= hour && hour < closeHour;
+        int open = openHour;
+        int close = closeHour;
+        return open != UNDEFINED && close != UNDEFINED && open <= hour && hour < close;
     }
 
     /**
@@ -283,52 +508,95 @@ public class Parking implements Serializable {
      * @return true if the parking is open at the selected Date
      */
     public boolean isOpenInDay(Calendar calendar) {
-        return daysOpen.contains(WeekDay.getDayFromCalendar(calendar));
+        return isOpenInDay(WeekDay.getDayFromCalendar(calendar));
     }
 
     /**
-     * Fill one place
+     * Ask if the Parking is open at a selected WeekDay
+     * @param weekDay day to evaluate
+     * @return true if the parking is open at the selected day
      */
-    public void takePlace() {
-        if (freePlaces < 1)
-            throw new ParkingException(ParkingException.CODE_INVALID_ACTION,
-                    ParkingException.DESC_INVALID_ACTION,
-                    "The Parking is full");
-        freePlaces--;
+    public boolean isOpenInDay(WeekDay weekDay) {
+        int days = daysMask;
+        return days != UNDEFINED_DAYS && (days & (1 << weekDay.ordinal())) != 0;
     }
 
     /**
-     * Free one place
-     */
-    public void releasePlace() {
-        if (freePlaces >= totalPlaces)
-            throw new ParkingException(ParkingException.CODE_INVALID_ACTION,
-                    ParkingException.DESC_INVALID_ACTION,
-                    "The Parking is Empty");
-        freePlaces++;
+     * Fill one place. The counter is updated with compare-and-set, so it is safe to call it concurrently
+     *
+     * @return number of free places after filling the place
+     */
+    public int takePlace() {
+        while (true) {
+            int places = freePlaces;
+            if (places < 1)
+                throw ParkingException.PARKING_FULL;
+            if (FREE_PLACES_UPDATER.compareAndSet(this, places, places - 1))
+                return places - 1;
+        }
+    }
+
+    /**
+     * Free one place. The counter is updated with compare-and-set, so it is safe to call it concurrently
+     *
+     * @return number of free places after freeing the place
+     */
+    public int releasePlace() {
+        while (true) {
+            int places = freePlaces;
+            if (places == UNDEFINED_PLACES)
+                throw ParkingException.PLACES_UNDEFINED;
+            int total = totalPlaces;
+            if (total != UNDEFINED && places >= total)
+                throw ParkingException.PARKING_EMPTY;
+            if (FREE_PLACES_UPDATER.compareAndSet(this, places, places + 1))
+                return places + 1;
+        }
+    }
+
+    /**
+     * Fill or free several places at once. The counter is updated with a single compare-and-set, so
+     * either all the places are changed or none of them
+     *
+     * @param delta number of places to fill, negative to free places
+     * @return number of free places after the change
+     */
+    public int changePlaces(int delta) {
+        while (true) {
+            int places = freePlaces;
+            if (places == UNDEFINED_PLACES)
+                throw ParkingException.PLACES_UNDEFINED;
+            long updated = (long) places - delta;
+            if (updated < 0)
+                throw ParkingException.PARKING_FULL;
+            int total = totalPlaces;
+            if (delta < 0 && ((total != UNDEFINED && updated > total) || updated > Integer.MAX_VALUE))
+                throw ParkingException.PARKING_EMPTY;
+            if (delta == 0 || FREE_PLACES_UPDATER.compareAndSet(this, places, (int) updated))
+                return (int) updated;
+        }
     }
 
     /**
-     * Clone the values from the newParking, except the ID
+     * Clone the values from the newParking, except the ID and the free places
      * @param newParking the Parking to copy
      */
     public void copyParkingValues(Parking newParking) {
         if (newParking.name != null)
             name = newParking.name;
-        if (newParking.openHour != null)
+        if (newParking.openHour != UNDEFINED)
             openHour = newParking.openHour;
-        if (newParking.closeHour != null)
+        if (newParking.closeHour != UNDEFINED)
             closeHour = newParking.closeHour;
-        if (newParking.totalPlaces != null)
+        if (newParking.totalPlaces != UNDEFINED)
             totalPlaces = newParking.totalPlaces;
-        if (newParking.freePlaces != null)
-            freePlaces.equals(newParking.freePlaces);
-        if (newParking.daysOpen != null)
-            daysOpen = newParking.daysOpen;
-        if (newParking.latitude != null)
-            latitude = newParking.latitude;
-        if (newParking.longitude != null)
-            longitude = newParking.longitude;
+        //freePlaces is not copied, it is only modified through takePlace/releasePlace
+        if (newParking.daysMask != UNDEFINED_DAYS)
+            daysMask = newParking.daysMask;
+        if (!Double.isNaN(newParking.latitude))
+            setLatitude(newParking.latitude);
+        if (!Double.isNaN(newParking.longitude))
+            setLongitude(newParking.longitude);
     }
 
     /**
@@ -339,13 +607,16 @@ public class Parking implements Serializable {
      * @return true if the parking is located in the selected Radius
      */
     public boolean isInsideRadius(double latCenter, double lonCenter, double radiusKms) {
-        //Haversine Formula
-        double radius = Math.acos(Math.sin(Math.toRadians(latCenter)) * Math.sin(Math.toRadians(latitude))
-                + Math.cos(Math.toRadians(latCenter)) * Math.cos(Math.toRadians(latitude))
-                * Math.cos(Math.toRadians(longitude) - Math.toRadians(lonCenter)));
-        //earth radius in kilometers = 6373
-        radius = radius * 6373;
-        return (radius <= radiusKms);
+        return isInsideRadius(new GeoRadius(latCenter, lonCenter, radiusKms));
+    }
+
+    /**
+     * Ask if the Parking is located in a selected radius, reusing the trigonometry of the radius center
+     * @param radius the circular area to evaluate
+     * @return true if the parking is located in the selected Radius
+     */
+    public boolean isInsideRadius(GeoRadius radius) {
+        return radius.contains(this);
     }
 
     @Override
@@ -355,19 +626,15 @@ public class Parking implements Serializable {
 
         Parking parking = (Parking) o;
 
-        if (closeHour != null ? !closeHour.equals(parking.closeHour) : parking.closeHour != null)
-            return false;
-        if (daysOpen != null ? !daysOpen.equals(parking.daysOpen) : parking.daysOpen != null) return false;
-        if (freePlaces != null ? !freePlaces.equals(parking.freePlaces) : parking.freePlaces != null)
-            return false;
+        if (closeHour != parking.closeHour) return false;
+        if (daysMask != parking.daysMask) return false;
+        if (freePlaces != parking.freePlaces) return false;
         if (!id.equals(parking.id)) return false;
-        if (latitude != null ? !latitude.equals(parking.latitude) : parking.latitude != null) return false;
-        if (longitude != null ? !longitude.equals(parking.longitude) : parking.longitude != null)
-            return false;
+        if (Double.compare(latitude, parking.latitude) != 0) return false;
+        if (Double.compare(longitude, parking.longitude) != 0) return false;
         if (name != null ? !name.equals(parking.name) : parking.name != null) return false;
-        if (openHour != null ? !openHour.equals(parking.openHour) : parking.openHour != null) return false;
-        if (totalPlaces != null ? !totalPlaces.equals(parking.totalPlaces) : parking.totalPlaces != null)
-            return false;
+        if (openHour != parking.openHour) return false;
+        if (totalPlaces != parking.totalPlaces) return false;
 
         return true;
     }
@@ -376,13 +643,23 @@ public class Parking implements Serializable {
     public int hashCode() {
         int result = id.hashCode();
         result = 31 * result + (name != null ? name.hashCode() : 0);
-        result = 31 * result + (openHour != null ? openHour.hashCode() : 0);
-        result = 31 * result + (closeHour != null ? closeHour.hashCode() : 0);
-        result = 31 * result + (totalPlaces != null ? totalPlaces.hashCode() : 0);
-        result = 31 * result + (freePlaces != null ? freePlaces.hashCode() : 0);
-        result = 31 * result + (daysOpen != null ? daysOpen.hashCode() : 0);
-        result = 31 * result + (latitude != null ? latitude.hashCode() : 0);
-        result = 31 * result + (longitude != null ? longitude.hashCode() : 0);
+        result = 31 * result + (openHour != UNDEFINED ? openHour : 0);
+        result = 31 * result + (closeHour != UNDEFINED ? closeHour : 0);
+        result = 31 * result + (totalPlaces != UNDEFINED ? totalPlaces : 0);
+        result = 31 * result + (freePlaces != UNDEFINED_PLACES ? freePlaces : 0);
+        result = 31 * result + daysMask;
+        result = 31 * result + (!Double.isNaN(latitude) ? Double.valueOf(latitude).hashCode() : 0);
+        result = 31 * result + (!Double.isNaN(longitude) ? Double.valueOf(longitude).hashCode() : 0);
         return result;
     }
+
+    /**
+     * Boxes an int field
+     *
+     * @param value the value of the field
+     * @return the value, null if it is UNDEFINED
+     */
+    private static Integer toInteger(int value) {
+        return value == UNDEFINED ? null : value;
+    }
 }
@@ -0,0 +1,366 @@
+package com.christancho.parking;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Class that writes the Parkings and the other responses of the ParkingAPI in the compact binary format of
+ * the mobile clients, the media type application/x-parking. It is much shorter than the Json: the field names
+ * are not written, the numbers are varints, the coordinates are fixed point and the days open are a mask.
+ * <p/>
+ * Format, version 1. A varint is an unsigned LEB128 (7 bits per byte, the lowest first, the high bit set in
+ * all the bytes but the last), the int values are written with their 32 bits, so a negative one takes 5 bytes.
+ * A string is its length in bytes (varint) and the UTF-8 bytes.
+ * <pre>
+ * response:    format version (byte, 1), type of message (byte), message
+ * PARKING:     (1) parking
+ * PARKINGS:    (2) number of Parkings (varint), parking for each one
+ * FREE_PLACES: (3) freePlaces (varint)
+ * OCCUPANCY:   (4) number of results (varint), for each one: 0 and freePlaces (varint), or 1 and error
+ * ERROR:       (5) error
+ * parking:     id (varint), mask of the fields present (byte), and the fields present in this order:
+ *              name (string), openHour (varint), closeHour (varint), totalPlaces (varint), freePlaces (varint),
+ *              latitude (int, big-endian, 1e-7 degrees), longitude (int, big-endian, 1e-7 degrees),
+ *              daysOpen (byte, a bit per WeekDay, MONDAY is the lowest)
+ *              bits of the mask, from the lowest: name, openHour, closeHour, totalPlaces, freePlaces,
+ *              latitude, longitude, daysOpen
+ * error:       code (string), mask of the fields present (byte, 1 description, 2 detailMessage), the fields
+ *              present in this order: description (string), detailMessage (string)
+ * </pre>
+ * The bytes are kept in a buffer and written to the stream when it is full, so many small Parkings become a
+ * few writes
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingBinaryWriter {
+
+    /**
+     * Media type of the binary format
+     */
+    public static final String MEDIA_TYPE = "application/x-parking";
+    /**
+     * Version of the format, the first byte of every response
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    //Types of message
+    public static final int PARKING = 1;
+    public static final int PARKINGS = 2;
+    public static final int FREE_PLACES = 3;
+    public static final int OCCUPANCY = 4;
+    public static final int ERROR = 5;
+
+    //Bits of the mask of fields of a Parking
+    public static final int HAS_NAME = 1;
+    public static final int HAS_OPEN_HOUR = 1 << 1;
+    public static final int HAS_CLOSE_HOUR = 1 << 2;
+    public static final int HAS_TOTAL_PLACES = 1 << 3;
+    public static final int HAS_FREE_PLACES = 1 << 4;
+    public static final int HAS_LATITUDE = 1 << 5;
+    public static final int HAS_LONGITUDE = 1 << 6;
+    public static final int HAS_DAYS_OPEN = 1 << 7;
+
+    //Bits of the mask of fields of an error
+    public static final int HAS_DESCRIPTION = 1;
+    public static final int HAS_DETAIL_MESSAGE = 1 << 1;
+
+    /**
+     * Units of the coordinates in a degree
+     */
+    public static final double COORDINATE_SCALE = 1e7;
+
+    /**
+     * Charset of the strings
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Size of the buffer
+     */
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Maximum number of bytes of a varint
+     */
+    private static final int MAX_VARINT = 5;
+
+    /**
+     * Stream where the bytes are written
+     */
+    private final OutputStream out;
+    /**
+     * Bytes not written yet
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * Number of bytes in the buffer
+     */
+    private int position;
+
+    /**
+     * Creates a new instance of ParkingBinaryWriter
+     *
+     * @param out stream where the bytes are written
+     */
+    public ParkingBinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the response with a Parking
+     *
+     * @param parking the Parking
+     * @throws IOException if the stream fails
+     */
+    public void writeParking(Parking parking) throws IOException {
+        header(PARKING);
+        parking(parking);
+    }
+
+    /**
+     * Writes the response with a Parking List
+     *
+     * @param parkings the Parkings
+     * @throws IOException if the stream fails
+     */
+    public void writeParkings(List<Parking> parkings) throws IOException {
+        header(PARKINGS);
+        int size = parkings.size();
+        varint(size);
+        for (int i = 0; i < size; i++) {
+            parking(parkings.get(i));
+        }
+    }
+
+    /**
+     * Writes the response with the number of free places in a Parking
+     *
+     * @param freePlaces number of free places
+     * @throws IOException if the stream fails
+     */
+    public void writeFreePlaces(int freePlaces) throws IOException {
+        header(FREE_PLACES);
+        varint(freePlaces);
+    }
+
+    /**
+     * Writes the response with the results of a batch of occupancy events, in the order of the events
+     *
+     * @param batch the batch already applied
+     * @throws IOException if the stream fails
+     */
+    public void writeOccupancy(OccupancyBatch batch) throws IOException {
+        header(OCCUPANCY);
+        int size = batch.size();
+        varint(size);
+        for (int i = 0; i < size; i++) {
+            ParkingException error = batch.getError(i);
+            if (error != null) {
+                ensure(1);
+                buffer[position++] = 1;
+                error(error);
+            } else {
+                ensure(1);
+                buffer[position++] = 0;
+                varint(batch.getFreePlaces(i));
+            }
+        }
+    }
+
+    /**
+     * Writes the response with a ParkingException
+     *
+     * @param exception the exception
+     * @throws IOException if the stream fails
+     */
+    public void writeError(ParkingException exception) throws IOException {
+        header(ERROR);
+        error(exception);
+    }
+
+    /**
+     * Writes the bytes of the buffer into the stream, and flushes it
+     *
+     * @throws IOException if the stream fails
+     */
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the version of the format and the type of message
+     *
+     * @param type type of message
+     * @throws IOException if the stream fails
+     */
+    private void header(int type) throws IOException {
+        ensure(2);
+        buffer[position++] = FORMAT_VERSION;
+        buffer[position++] = (byte) type;
+    }
+
+    /**
+     * Writes a Parking
+     *
+     * @param parking the Parking
+     * @throws IOException if the stream fails
+     */
+    private void parking(Parking parking) throws IOException {
+        //the fields are read once, they can change while the Parking is written
+        String name = parking.getName();
+        Integer openHour = parking.getOpenHour();
+        Integer closeHour = parking.getCloseHour();
+        Integer totalPlaces = parking.getTotalPlaces();
+        Integer freePlaces = parking.getFreePlaces();
+        Double latitude = parking.getLatitude();
+        Double longitude = parking.getLongitude();
+        int daysOpen = parking.getDaysMask();
+        int mask = (name != null ? HAS_NAME : 0)
+                | (openHour != null ? HAS_OPEN_HOUR : 0)
+                | (closeHour != null ? HAS_CLOSE_HOUR : 0)
+                | (totalPlaces != null ? HAS_TOTAL_PLACES : 0)
+                | (freePlaces != null ? HAS_FREE_PLACES : 0)
+                | (latitude != null ? HAS_LATITUDE : 0)
+                | (longitude != null ? HAS_LONGITUDE : 0)
+                | (daysOpen >= 0 ? HAS_DAYS_OPEN : 0);
+        varint(parking.getId());
+        ensure(1);
+        buffer[position++] = (byte) mask;
+        if (name != null)
+            string(name);
+        ensure(4 * MAX_VARINT + 9);
+        //the hours are varints, an hour from 0 to 24 takes a byte and any other value is not truncated
+        if (openHour != null)
+            putVarint(openHour);
+        if (closeHour != null)
+            putVarint(closeHour);
+        if (totalPlaces != null)
+            putVarint(totalPlaces);
+        if (freePlaces != null)
+            putVarint(freePlaces);
+        if (latitude != null)
+            putInt(coordinate(latitude, parking, "latitude"));
+        if (longitude != null)
+            putInt(coordinate(longitude, parking, "longitude"));
+        if (daysOpen >= 0)
+            buffer[position++] = (byte) daysOpen;
+    }
+
+    /**
+     * Writes the fields of a ParkingException, the same ones than its Json
+     *
+     * @param exception the exception
+     * @throws IOException if the stream fails
+     */
+    private void error(ParkingException exception) throws IOException {
+        String description = exception.getMessage() != null ? exception.getDescription() : null;
+        String detailMessage = exception.getMessage();
+        string(exception.getCode() != null ? exception.getCode() : "");
+        ensure(1);
+        buffer[position++] = (byte) ((description != null ? HAS_DESCRIPTION : 0)
+                | (detailMessage != null ? HAS_DETAIL_MESSAGE : 0));
+        if (description != null)
+            string(description);
+        if (detailMessage != null)
+            string(detailMessage);
+    }
+
+    /**
+     * Converts a coordinate to fixed point
+     *
+     * @param degrees the coordinate
+     * @param parking the Parking, for the error
+     * @param field   name of the coordinate, for the error
+     * @return the coordinate in 1e-7 degrees
+     * @throws IOException if the coordinate doesn't fit in an int
+     */
+    private static int coordinate(double degrees, Parking parking, String field) throws IOException {
+        long value = Math.round(degrees * COORDINATE_SCALE);
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+            throw new IOException("The " + field + " of the Parking " + parking.getId() + " is out of range");
+        return (int) value;
+    }
+
+    /**
+     * Writes a string
+     *
+     * @param value the string
+     * @throws IOException if the stream fails
+     */
+    private void string(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        varint(bytes.length);
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes a varint
+     *
+     * @param value the value, negative values are written with their 32 bits
+     * @throws IOException if the stream fails
+     */
+    private void varint(int value) throws IOException {
+        ensure(MAX_VARINT);
+        putVarint(value);
+    }
+
+    /**
+     * Puts a varint in the buffer, it has to have room for it
+     *
+     * @param value the value, negative values are written with their 32 bits
+     */
+    private void putVarint(int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Puts an int in the buffer in big-endian, it has to have room for it
+     *
+     * @param value the value
+     */
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Makes room in the buffer, writing it into the stream if needed
+     *
+     * @param length number of bytes needed
+     * @throws IOException if the stream fails
+     */
+    private void ensure(int length) throws IOException {
+        if (buffer.length - position < length)
+            flushBuffer();
+    }
+
+    /**
+     * Writes the bytes of the buffer into the stream, without flushing it
+     *
+     * @throws IOException if the stream fails
+     */
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
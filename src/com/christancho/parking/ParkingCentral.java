@@ -1,13 +1,20 @@
 package com.christancho.parking;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Singleton Class used as BackEnd where store all the Parkings for the app
@@ -18,21 +25,133 @@ import java.util.Random;
  */
 public class ParkingCentral implements Serializable {
 
+    /**
+     * Ways of keeping the Parkings in memory
+     */
+    public enum Storage {
+        /**
+         * A Parking instance per Parking, the instances returned are the ones stored
+         */
+        OBJECTS,
+        /**
+         * Primitive columns in a ParkingColumnStore, the Parkings returned are copies built on every read.
+         * It needs a fraction of the heap of OBJECTS to keep millions of Parkings
+         */
+        COLUMNS
+    }
+
+    /**
+     * Maximum length of a name in UTF-8, the snapshot and the journal write it with a short
+     */
+    public static final int MAX_NAME_BYTES = 0xffff;
+    /**
+     * Charset of the names in the snapshot and the journal
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     /**
      * Singleton instance
      */
     public volatile static ParkingCentral instance;
 
     /**
-     * Map with all the Parkings, the key is the ParkingId
+     * Way of keeping the Parkings in memory
      */
-    private HashMap<Integer, Parking> parkingMap;
+    private final Storage storage;
 
     /**
-     * Creates a new instance of Parking
+     * All the Parkings by ParkingId and by slot.
+     * Reads (getParking, searchParkings) never lock, the occupancy of each Parking is updated with
+     * compare-and-set in the store. Like the indexes, it is not serialized: the Central is
+     * written as its SerializedForm and everything is built again from the Parkings
+     */
+    private final transient ParkingStore store;
+
+    /**
+     * Grid with the Parkings by location, used to search by radius without evaluating all the Parkings
+     */
+    private final transient SpatialIndex spatialIndex;
+
+    /**
+     * Index with the slots of the Parkings open at every hour of the week
+     */
+    private final transient ScheduleIndex scheduleIndex;
+
+    /**
+     * Slots of the Parkings that are full. With availableParkings they are only modified when a
+     * Parking crosses the full/not full boundary
+     */
+    private final transient ConcurrentBitSet fullParkings;
+
+    /**
+     * Slots of the Parkings that are not full
+     */
+    private final transient ConcurrentBitSet availableParkings;
+
+    /**
+     * Slots of the Parkings with at least a free place. With parkingsWithoutSpace they are only modified when
+     * the free places of a Parking cross zero
+     */
+    private final transient ConcurrentBitSet parkingsWithSpace;
+
+    /**
+     * Slots of the Parkings with no free places
+     */
+    private final transient ConcurrentBitSet parkingsWithoutSpace;
+
+    /**
+     * Formula used to evaluate the distances in the searches by radius
+     */
+    private volatile GeoRadius.Formula distanceFormula = GeoRadius.Formula.HAVERSINE;
+
+    /**
+     * Version of the whole Central, incremented after every modification of any Parking
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Journal where the modifications are written before they are acknowledged, null without journal
+     */
+    private transient volatile ParkingJournal journal;
+
+    /**
+     * Listeners of the modifications of the Parkings, iterated without locks by the writers
+     */
+    private final transient CopyOnWriteArrayList<ParkingChangeListener> listeners =
+            new CopyOnWriteArrayList<ParkingChangeListener>();
+
+    /**
+     * Number of exceptions thrown by the listeners
+     */
+    private final transient AtomicLong listenerFailures = new AtomicLong();
+
+    /**
+     * Lock used to serialize the structural changes (add, edit and remove), so two writers never
+     * obtain the same id or interleave the copy of values of the same Parking
+     */
+    private final transient Object writeLock = new Object();
+
+    /**
+     * Creates a new instance of Parking that keeps the Parkings as objects
      */
     public ParkingCentral() {
-        this.parkingMap = new HashMap<Integer, Parking>();
+        this(Storage.OBJECTS);
+    }
+
+    /**
+     * Creates a new instance of Parking
+     *
+     * @param storage way of keeping the Parkings in memory
+     */
+    public ParkingCentral(Storage storage) {
+        this.storage = storage;
+        this.store = storage == Storage.COLUMNS ? new ParkingColumnStore(16) : new ParkingObjectStore(16);
+        this.spatialIndex = new SpatialIndex(store);
+        this.scheduleIndex = new ScheduleIndex();
+        this.fullParkings = new ConcurrentBitSet();
+        this.availableParkings = new ConcurrentBitSet();
+        this.parkingsWithSpace = new ConcurrentBitSet();
+        this.parkingsWithoutSpace = new ConcurrentBitSet();
         initialize();
     }
 
@@ -74,17 +193,182 @@ public class ParkingCentral implements Serializable {
     }
 
     /**
-     * Generate a new unique Id
+     * Get the value of storage
+     *
+     * @return the way of keeping the Parkings in memory
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Get the version of the Central
+     *
+     * @return the version, it grows every time a Parking is added, edited, removed or its places change
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Get the number of Parkings in the Central
      *
-     * @return a valid Id
+     * @return the number of Parkings
      */
-    private int getNewParkingID() {
-        int id = parkingMap.size();
-        while (parkingMap.get(id) != null) {
-            Random random = new Random();
-            id = random.nextInt();
+    public int getParkingCount() {
+        return store.size();
+    }
+
+    /**
+     * Counts the places of all the Parkings, reading them without locks
+     *
+     * @param free true to count the free places, false to count the total places
+     * @return the sum of the places of the Parkings that have them defined
+     */
+    public long countPlaces(boolean free) {
+        long places = 0;
+        for (int slot = 0, slotLimit = store.getSlotLimit(); slot < slotLimit; slot++) {
+            int value = free ? store.getFreePlaces(slot) : store.getTotalPlaces(slot);
+            if (value != Parking.UNDEFINED)
+                places += value;
         }
-        return id;
+        return places;
+    }
+
+    /**
+     * Counts the Parkings that are full
+     *
+     * @return the number of Parkings without free places
+     */
+    public int countFullParkings() {
+        return parkingsWithoutSpace.cardinality();
+    }
+
+    /**
+     * Increments the version of the Central and advances the version of the modified Parking to it, so the
+     * versions of a Parking are never repeated even if its id is reused after a remove. Then the change is
+     * written in the journal and published to the listeners, the Parking is only built for them
+     *
+     * @param slot   the slot of the parking modified
+     * @param id     the id of the parking modified
+     * @param change ParkingJournal.PLACES or ParkingJournal.DEFINITION
+     */
+    private void modified(int slot, int id, int change) {
+        long newVersion = version.incrementAndGet();
+        store.advanceVersion(slot, id, newVersion);
+        ParkingJournal actualJournal = journal;
+        if (actualJournal == null && listeners.isEmpty())
+            return;
+        Parking parking = store.getBySlot(slot);
+        //the places of a Parking already removed or replaced are not written, its removal is newer
+        if (parking != null && parking.getId() == id)
+            publish(parking, change, newVersion, actualJournal);
+    }
+
+    /**
+     * Advances the versions like modified for a Parking already removed from the store, and publishes
+     * the removal
+     *
+     * @param parking the parking removed
+     */
+    private void removed(Parking parking) {
+        long newVersion = version.incrementAndGet();
+        parking.advanceVersion(newVersion);
+        publish(parking, ParkingJournal.REMOVED, newVersion, journal);
+    }
+
+    /**
+     * Writes a change in the journal and publishes it to the listeners. If the journal fails the
+     * modification is still published, it is already visible, and the error is thrown afterwards to the caller
+     *
+     * @param parking       the parking modified
+     * @param change        ParkingJournal.PLACES, ParkingJournal.DEFINITION or ParkingJournal.REMOVED
+     * @param newVersion    the version of the Central of the change
+     * @param actualJournal the journal, null without journal
+     */
+    private void publish(Parking parking, int change, long newVersion, ParkingJournal actualJournal) {
+        ParkingException journalError = null;
+        if (actualJournal != null) {
+            try {
+                actualJournal.write(change, parking, newVersion);
+            } catch (ParkingException ex) {
+                journalError = ex;
+            }
+        }
+        boolean removed = change == ParkingJournal.REMOVED;
+        for (ParkingChangeListener listener : listeners) {
+            try {
+                listener.parkingChanged(parking, removed);
+            } catch (RuntimeException ex) {
+                //a failing listener can't undo or stop a modification already done, it is only counted
+                listenerFailures.incrementAndGet();
+            }
+        }
+        if (journalError != null)
+            throw journalError;
+    }
+
+    /**
+     * Get the value of journal
+     *
+     * @return the journal of the modifications, null if the Central runs without journal
+     */
+    public ParkingJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Set the value of journal, used by the ParkingJournal when it is opened and closed
+     *
+     * @param journal the journal of the modifications, null to stop writing them
+     */
+    void setJournal(ParkingJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Registers a listener that receives all the modifications of the Parkings
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(ParkingChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with addChangeListener
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(ParkingChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Get the value of listenerFailures
+     *
+     * @return the number of exceptions thrown by the listeners, the modifications were applied anyway
+     */
+    public long getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    /**
+     * Get the value of distanceFormula
+     *
+     * @return the value of distanceFormula
+     */
+    public GeoRadius.Formula getDistanceFormula() {
+        return distanceFormula;
+    }
+
+    /**
+     * Set the formula used to evaluate the distances in the searches by radius
+     *
+     * @param distanceFormula new value of distanceFormula
+     */
+    public void setDistanceFormula(GeoRadius.Formula distanceFormula) {
+        this.distanceFormula = distanceFormula;
     }
 
     /**
@@ -99,15 +383,32 @@ public class ParkingCentral implements Serializable {
                     ParkingException.DESC_INVALID_ID,
                     "The ID can't be null");
         }
-        Parking parking = parkingMap.get(id);
+        Parking parking = store.get(id);
         if (parking == null) {
-            throw new ParkingException(ParkingException.CODE_NOT_FOUND,
-                    ParkingException.DESC_NOT_FOUND,
-                    "Parking id='" + id + "' Not Found");
+            throw ParkingException.notFound(id);
         }
         return parking;
     }
 
+    /**
+     * Gets the slot of the Parking for the specified id
+     *
+     * @param id the id for the Parking selected
+     * @return the slot of the Parking
+     */
+    private int getSlot(Integer id) {
+        if (id == null) {
+            throw new ParkingException(ParkingException.CODE_INVALID_ID,
+                    ParkingException.DESC_INVALID_ID,
+                    "The ID can't be null");
+        }
+        int slot = store.slotOf(id);
+        if (slot < 0) {
+            throw ParkingException.notFound(id);
+        }
+        return slot;
+    }
+
     /**
      * Adds a new Parking to the Map
      *
@@ -129,11 +430,67 @@ public class ParkingCentral implements Serializable {
                     ParkingException.DESC_INVALID_VALUE,
                     "The Name can't be null");
         }
-        parking.setId(getNewParkingID());
-        parkingMap.put(parking.getId(), parking);
+        validate(parking);
+        checkJournal();
+        synchronized (writeLock) {
+            parking.setId(store.allocateId());
+            insert(parking);
+        }
         return parking.getId();
     }
 
+    /**
+     * Checks the values of a Parking before it is stored. The snapshot and the journal keep the hours in a
+     * byte and the length of the name in a short, and the binary format keeps the coordinates in fixed point,
+     * so a value that doesn't fit is rejected before any change
+     *
+     * @param parking the Parking to check, its undefined values are not checked
+     */
+    private static void validate(Parking parking) {
+        Integer openHour = parking.getOpenHour();
+        Integer closeHour = parking.getCloseHour();
+        if ((openHour != null && (openHour < 0 || openHour > 24))
+                || (closeHour != null && (closeHour < 0 || closeHour > 24)))
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The hours have to be between 0 and 24");
+        Double latitude = parking.getLatitude();
+        Double longitude = parking.getLongitude();
+        if ((latitude != null && (latitude < -90 || latitude > 90))
+                || (longitude != null && (longitude < -180 || longitude > 180)))
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The latitude has to be between -90 and 90 and the longitude between -180 and 180");
+        String name = parking.getName();
+        //a char is never more than 3 bytes in UTF-8, only the long names are encoded
+        if (name != null && name.length() > MAX_NAME_BYTES / 3 && name.getBytes(UTF_8).length > MAX_NAME_BYTES)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The name can't be longer than " + MAX_NAME_BYTES + " bytes");
+    }
+
+    /**
+     * Rejects a modification before it is applied if the journal failed
+     */
+    private void checkJournal() {
+        ParkingJournal actualJournal = journal;
+        if (actualJournal != null)
+            actualJournal.checkWritable();
+    }
+
+    /**
+     * Stores a Parking with its id in the Map and the indexes. It has to be called with the writeLock
+     *
+     * @param parking the parking to store, with the COLUMNS storage its values are copied
+     */
+    private void insert(Parking parking) {
+        int slot = store.add(parking);
+        spatialIndex.add(slot, parking.getLatitudeValue(), parking.getLongitudeValue());
+        scheduleIndex.add(slot, parking);
+        updateAvailability(slot, parking.getId());
+        modified(slot, parking.getId(), ParkingJournal.DEFINITION);
+    }
+
     /**
      * Edits a parking in the Map
      *
@@ -141,9 +498,23 @@ public class ParkingCentral implements Serializable {
      * @return the parking edited
      */
     public Parking editParking(Parking parking) {
-        Parking oldParking = getParking(parking.getId());
-        oldParking.copyParkingValues(parking);
-        return oldParking;
+        validate(parking);
+        checkJournal();
+        synchronized (writeLock) {
+            int slot = getSlot(parking.getId());
+            int id = parking.getId();
+            double oldLatitude = store.getLatitude(slot);
+            double oldLongitude = store.getLongitude(slot);
+            store.edit(slot, parking);
+            double latitude = store.getLatitude(slot);
+            double longitude = store.getLongitude(slot);
+            if (Double.compare(oldLatitude, latitude) != 0 || Double.compare(oldLongitude, longitude) != 0)
+                spatialIndex.move(slot, oldLatitude, oldLongitude, latitude, longitude);
+            scheduleIndex.update(slot, store.getBySlot(slot));
+            updateAvailability(slot, id);
+            modified(slot, id, ParkingJournal.DEFINITION);
+            return store.getBySlot(slot);
+        }
     }
 
     /**
@@ -158,15 +529,71 @@ public class ParkingCentral implements Serializable {
                     ParkingException.DESC_INVALID_ID,
                     "The ID can't be null");
         }
-        Parking parking = parkingMap.remove(id);
+        checkJournal();
+        Parking parking;
+        synchronized (writeLock) {
+            parking = delete(id);
+        }
         if (parking == null) {
-            throw new ParkingException(ParkingException.CODE_NOT_FOUND,
-                    ParkingException.DESC_NOT_FOUND,
-                    "Parking id='" + id + "' Not Found");
+            throw ParkingException.notFound(id);
         }
         return parking;
     }
 
+    /**
+     * Removes a Parking from the Map and the indexes. It has to be called with the writeLock
+     *
+     * @param id the id for the Parking to remove
+     * @return the Parking removed, null if it doesn't exist
+     */
+    private Parking delete(Integer id) {
+        int slot = store.slotOf(id);
+        if (slot < 0)
+            return null;
+        spatialIndex.remove(slot, store.getLatitude(slot), store.getLongitude(slot));
+        scheduleIndex.remove(slot);
+        fullParkings.clear(slot);
+        availableParkings.clear(slot);
+        parkingsWithSpace.clear(slot);
+        parkingsWithoutSpace.clear(slot);
+        Parking parking = store.remove(id);
+        removed(parking);
+        return parking;
+    }
+
+    /**
+     * Replaces all the Parkings of the Central with the Parkings of a snapshot, keeping their ids and
+     * free places. The version of the Central never goes back, so the ETags given before the snapshot
+     * are not repeated
+     *
+     * @param parkings        the Parkings to restore, with their ids
+     * @param snapshotVersion the version of the Central when the snapshot was written
+     */
+    void restore(Collection<Parking> parkings, long snapshotVersion) {
+        Set<Integer> ids = new HashSet<Integer>(parkings.size() * 2);
+        for (Parking parking : parkings) {
+            if (parking.getId() == null || !ids.add(parking.getId()))
+                throw new ParkingException(ParkingException.CODE_INVALID_ID,
+                        ParkingException.DESC_INVALID_ID,
+                        "Invalid or repeated id '" + parking.getId() + "' in the snapshot");
+        }
+        synchronized (writeLock) {
+            for (int slot = store.getSlotLimit() - 1; slot >= 0; slot--) {
+                Parking parking = store.getBySlot(slot);
+                if (parking != null)
+                    delete(parking.getId());
+            }
+            while (true) {
+                long actual = version.get();
+                if (actual >= snapshotVersion || version.compareAndSet(actual, snapshotVersion))
+                    break;
+            }
+            for (Parking parking : parkings) {
+                insert(parking);
+            }
+        }
+    }
+
     /**
      * Fill a place in the Parking for the specified id.
      *
@@ -174,9 +601,16 @@ public class ParkingCentral implements Serializable {
      * @return number of free places in the Parking
      */
     public int takePlace(Integer id) {
-        Parking parking = getParking(id);
-        parking.takePlace();
-        return parking.getFreePlaces();
+        int slot = getSlot(id);
+        checkJournal();
+        int freePlaces = store.takePlace(slot, id);
+        //isFull is totalPlaces <= freePlaces, so it only changes when freePlaces goes below totalPlaces, and
+        //the space only changes when freePlaces reaches zero
+        int totalPlaces = store.getTotalPlaces(slot);
+        if ((totalPlaces != Parking.UNDEFINED && freePlaces == totalPlaces - 1) || freePlaces == 0)
+            updateAvailability(slot, id);
+        modified(slot, id, ParkingJournal.PLACES);
+        return freePlaces;
     }
 
     /**
@@ -186,9 +620,74 @@ public class ParkingCentral implements Serializable {
      * @return number of free places in the Parking
      */
     public int releasePlace(Integer id) {
-        Parking parking = getParking(id);
-        parking.releasePlace();
-        return parking.getFreePlaces();
+        int slot = getSlot(id);
+        checkJournal();
+        int freePlaces = store.releasePlace(slot, id);
+        int totalPlaces = store.getTotalPlaces(slot);
+        if ((totalPlaces != Parking.UNDEFINED && freePlaces == totalPlaces) || freePlaces == 1)
+            updateAvailability(slot, id);
+        modified(slot, id, ParkingJournal.PLACES);
+        return freePlaces;
+    }
+
+    /**
+     * Fill or free several places in the Parking for the specified id at once, all of them or none
+     *
+     * @param id    the id for the Parking
+     * @param delta number of places to fill, negative to free places
+     * @return number of free places in the Parking
+     */
+    public int changePlaces(Integer id, int delta) {
+        int slot = getSlot(id);
+        checkJournal();
+        int freePlaces = store.changePlaces(slot, id, delta);
+        if (delta != 0) {
+            int totalPlaces = store.getTotalPlaces(slot);
+            if ((totalPlaces != Parking.UNDEFINED
+                    && (freePlaces + (long) delta >= totalPlaces) != (freePlaces >= totalPlaces))
+                    || (freePlaces + (long) delta > 0) != (freePlaces > 0))
+                updateAvailability(slot, id);
+            modified(slot, id, ParkingJournal.PLACES);
+        }
+        return freePlaces;
+    }
+
+    /**
+     * Applies all the events of a batch in order. Every event is applied like changePlaces, and the
+     * errors are stored in the batch instead of stopping the batch
+     *
+     * @param batch the events to apply, the results are stored in it
+     */
+    public void applyOccupancy(OccupancyBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                batch.setResult(i, changePlaces(batch.getParkingId(i), batch.getDelta(i)), null);
+            } catch (ParkingException ex) {
+                batch.setResult(i, 0, ex);
+            }
+        }
+    }
+
+    /**
+     * Updates the fullParkings, availableParkings, parkingsWithSpace and parkingsWithoutSpace bitsets with the
+     * actual state of a Parking. The state is read again after writing the bits, so a concurrent change that
+     * crosses the boundary in the other direction can't leave the bits stale
+     *
+     * @param slot the slot of the parking to update
+     * @param id   the id of the parking, the update stops if it is removed from the slot
+     */
+    private void updateAvailability(int slot, int id) {
+        while (true) {
+            Boolean full = store.isFull(slot);
+            int freePlaces = store.getFreePlaces(slot);
+            fullParkings.set(slot, Boolean.TRUE.equals(full));
+            availableParkings.set(slot, Boolean.FALSE.equals(full));
+            parkingsWithSpace.set(slot, freePlaces > 0);
+            parkingsWithoutSpace.set(slot, freePlaces == 0);
+            if ((equalValues(full, store.isFull(slot)) && freePlaces == store.getFreePlaces(slot))
+                    || store.slotOf(id) != slot)
+                return;
+        }
     }
 
     /**
@@ -204,41 +703,220 @@ public class ParkingCentral implements Serializable {
      */
     public List<Parking> searchParkings(Boolean full, String date, Double latitude, Double longitude,
                                         Double distance) {
-        List<Parking> parkingList = new ArrayList<Parking>();
-        for (Parking parking : parkingMap.values()) {
-            if (full != null) {
-                if ((full && !parking.isFull()) || (!full && parking.isFull()))
-                    continue;
-            }
-            if (date != null) {
-                try {
-                    DateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy#HH");
-                    Calendar cal = Calendar.getInstance();
-                    cal.setTime(dateFormat.parse(date));
-                    if (!parking.isOpenInDay(cal) || !parking.isOpenInHour(cal.get(Calendar.HOUR_OF_DAY)))
-                        continue;
-                } catch (Exception e) {
-                    throw new ParkingException(e, ParkingException.CODE_FORMAT_DATE,
-                            "Error in the format for the Date");
+        return searchParkings(full, date, latitude, longitude, distance, null, null, null, null).getParkings();
+    }
+
+    /**
+     * Gets a page of the parkings in the Map, filtered like the other searchParkings and in the requested
+     * order. Only the Parkings of the page are sorted, never all the matches
+     *
+     * @param full      boolean that filter the Parkings with free places
+     * @param date      String in the format DD.MM.YYYY#hh, that filter the Parking closed at this Date
+     * @param latitude  latitude coordinate for a radius, that filter all the Parkings outside of it
+     * @param longitude longitude coordinate for a radius, that filter all the Parkings outside of it
+     * @param distance  distance in kilometers for a radius, that filter all the Parkings outside of it
+     * @param sort      order of the results, null for ascending ParkingId when paginating
+     * @param cursor    cursor returned with the previous page, null for the first page
+     * @param offset    number of Parkings skipped after the cursor, can be null
+     * @param limit     maximum number of Parkings of the page, null for all of them
+     * @return the page of Parkings that satisfy the criteria. Without sort, cursor, offset and limit the
+     * page has all the Parkings, in no particular order
+     */
+    public ParkingPage searchParkings(Boolean full, String date, Double latitude, Double longitude,
+                                      Double distance, ParkingSort sort, String cursor, Integer offset,
+                                      Integer limit) {
+        if (latitude == null && longitude != null) {
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid latitude parameter");
+        } else if (latitude != null && longitude == null) {
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid longitude parameter");
+        }
+        GeoRadius radius = null;
+        if (latitude != null)
+            radius = new GeoRadius(latitude, longitude, distance == null ? 0.0 : distance, distanceFormula);
+        ParkingPageCollector collector = new ParkingPageCollector(sort, radius, cursor, offset, limit);
+        //the indexed filters are combined in a mask of slots
+        int words = (store.getSlotLimit() + 63) >>> 6;
+        long[] mask = null;
+        if (date != null) {
+            Calendar cal = parseDate(date);
+            mask = scheduleIndex.getOpenSlots(WeekDay.getDayFromCalendar(cal), cal.get(Calendar.HOUR_OF_DAY))
+                    .toWords(words);
+        }
+        if (full != null) {
+            ConcurrentBitSet availability = full ? fullParkings : availableParkings;
+            if (mask == null)
+                mask = availability.toWords(words);
+            else
+                availability.andInto(mask);
+        }
+        if (radius != null) {
+            //with a radius only the Parkings in the overlapping cells of the grid can match, and only the
+            //matches are built as Parkings
+            for (int[] cell : spatialIndex.getCandidates(radius)) {
+                for (int slot : cell) {
+                    if ((mask == null || ConcurrentBitSet.isSet(mask, slot)) && store.isInsideRadius(radius, slot)) {
+                        Parking parking = store.getBySlot(slot);
+                        if (parking != null)
+                            collector.add(parking);
+                    }
                 }
             }
-            if (latitude != null && longitude != null) {
-                if (distance == null)
-                    distance = 0.0;
-                if (!parking.isInsideRadius(latitude, longitude, distance))
-                    continue;
-            } else if (latitude == null && longitude != null) {
-                throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
-                        ParkingException.DESC_INVALID_VALUE,
-                        "Invalid latitude parameter");
-            } else if (latitude != null && longitude == null) {
-                throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
-                        ParkingException.DESC_INVALID_VALUE,
-                        "Invalid longitude parameter");
+        } else if (mask != null) {
+            for (int slot = ConcurrentBitSet.nextSetBit(mask, 0); slot >= 0;
+                 slot = ConcurrentBitSet.nextSetBit(mask, slot + 1)) {
+                Parking parking = store.getBySlot(slot);
+                if (parking != null)
+                    collector.add(parking);
+            }
+        } else {
+            for (int slot = 0, slotLimit = store.getSlotLimit(); slot < slotLimit; slot++) {
+                Parking parking = store.getBySlot(slot);
+                if (parking != null)
+                    collector.add(parking);
             }
-            parkingList.add(parking);
         }
-        return parkingList;
+        return collector.toPage();
+    }
+
+    /**
+     * Gets the k Parkings closest to a point, expanding the search around the point through the spatial
+     * index until k Parkings that satisfy the filter are found. Parkings without coordinates are ignored
+     *
+     * @param latitude  latitude coordinate of the point
+     * @param longitude longitude coordinate of the point
+     * @param k         number of Parkings to find
+     * @param full      true for the Parkings without free places, false for the ones with at least a free place,
+     *                  null for all of them
+     * @return the list with at most k Parkings, from the closest to the farthest
+     */
+    public List<Parking> nearest(Double latitude, Double longitude, int k, Boolean full) {
+        if (latitude == null || latitude < -90 || latitude > 90) {
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid latitude parameter");
+        } else if (longitude == null) {
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid longitude parameter");
+        } else if (k < 1) {
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid k parameter");
+        }
+        long[] mask = null;
+        if (full != null)
+            mask = (full ? parkingsWithoutSpace : parkingsWithSpace).toWords((store.getSlotLimit() + 63) >>> 6);
+        List<Parking> parkings = new ArrayList<Parking>(Math.min(k, 1024));
+        for (int slot : spatialIndex.getNearest(new GeoRadius(latitude, longitude, 0, distanceFormula), k, mask)) {
+            Parking parking = store.getBySlot(slot);
+            if (parking != null)
+                parkings.add(parking);
+        }
+        return parkings;
+    }
+
+    /**
+     * Parses a date in the format DD.MM.YYYY#hh
+     *
+     * @param date the date to parse
+     * @return the Calendar with the date
+     */
+    private static Calendar parseDate(String date) {
+        try {
+            DateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy#HH");
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(dateFormat.parse(date));
+            return cal;
+        } catch (ParseException e) {
+            throw new ParkingException(e, ParkingException.CODE_FORMAT_DATE,
+                    "Error in the format for the Date");
+        }
+    }
+
+    /**
+     * Replaces the Central by its SerializedForm when it is serialized
+     *
+     * @return the SerializedForm with the Parkings and the version of the Central
+     */
+    private Object writeReplace() {
+        List<Parking> parkings = new ArrayList<Parking>(store.size());
+        for (int slot = 0, slotLimit = store.getSlotLimit(); slot < slotLimit; slot++) {
+            Parking parking = store.getBySlot(slot);
+            if (parking != null)
+                parkings.add(parking);
+        }
+        return new SerializedForm(parkings, version.get(), storage);
+    }
+
+    /**
+     * The Central is never read directly, only through its SerializedForm
+     *
+     * @param in the stream
+     * @throws InvalidObjectException always
+     */
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("The ParkingCentral is read from its SerializedForm");
+    }
+
+    /**
+     * Serialized form of the Central: only the Parkings and the version. The store and the indexes are
+     * derived from them, so they are built again when it is read
+     */
+    private static class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The Parkings, with their ids and free places
+         */
+        private final ArrayList<Parking> parkings;
+        /**
+         * Version of the Central when it was written
+         */
+        private final long version;
+        /**
+         * Way of keeping the Parkings, null in the forms written before it was added
+         */
+        private final Storage storage;
+
+        /**
+         * Creates a new instance of SerializedForm
+         *
+         * @param parkings the Parkings
+         * @param version  version of the Central
+         * @param storage  way of keeping the Parkings
+         */
+        SerializedForm(List<Parking> parkings, long version, Storage storage) {
+            this.parkings = new ArrayList<Parking>(parkings);
+            this.version = version;
+            this.storage = storage;
+        }
+
+        /**
+         * Builds a new Central with the Parkings, like a snapshot
+         *
+         * @return the Central
+         */
+        private Object readResolve() {
+            ParkingCentral central = new ParkingCentral(storage == null ? Storage.OBJECTS : storage);
+            central.restore(parkings, version);
+            return central;
+        }
+    }
+
+    /**
+     * Compares two values that can be null
+     *
+     * @param value1 first value
+     * @param value2 second value
+     * @return true if both values are null or equals
+     */
+    private static boolean equalValues(Object value1, Object value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
     }
 
 }
@@ -0,0 +1,22 @@
+package com.christancho.parking;
+
+/**
+ * Interface used to receive the modifications of the Parkings in the ParkingCentral.
+ * <p/>
+ * The listeners are called by the thread that modified the Parking, sometimes holding the write lock of
+ * the Central, so they must return quickly and never block
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public interface ParkingChangeListener {
+
+    /**
+     * Called after a Parking is added, edited, removed or its free places change
+     *
+     * @param parking the Parking modified, with its new values and version
+     * @param removed true if the Parking was removed from the Central
+     */
+    void parkingChanged(Parking parking, boolean removed);
+}
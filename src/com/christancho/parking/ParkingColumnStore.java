@@ -0,0 +1,377 @@
+package com.christancho.parking;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ParkingStore that keeps the values of the Parkings in primitive columns instead of a Parking per slot.
+ * <p/>
+ * The slots are grouped in pages of PAGE_SIZE slots with an array per value: ints for the places and the
+ * hours, doubles for the coordinates and a byte for the mask of days. A stored Parking costs around 50 bytes
+ * plus its name, without headers, boxed values or references to follow, and the scans of the searches read
+ * consecutive positions. The pages are never moved, so the compare-and-set of the occupancy is never lost
+ * while the store grows.
+ * <p/>
+ * The Parkings are only built by getBySlot, when a Parking has to be returned or serialized. They are copies:
+ * the modifications go through the store, never through the Parkings built
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+class ParkingColumnStore extends ParkingStore {
+
+    /**
+     * Number of bits of the position of a slot inside its page
+     */
+    private static final int PAGE_BITS = 10;
+    /**
+     * Number of slots of a page
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    /**
+     * Mask of the position of a slot inside its page
+     */
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    /**
+     * Value of the versions column while a slot is free
+     */
+    private static final long FREE = -1;
+
+    /**
+     * Pages of slots, replaced by a bigger copy when it is full. The pages created are never replaced
+     */
+    private volatile Page[] pages;
+
+    /**
+     * Creates a new instance of ParkingColumnStore
+     *
+     * @param capacity expected number of Parkings
+     */
+    ParkingColumnStore(int capacity) {
+        super(capacity);
+        this.pages = new Page[Math.max(1, (capacity + PAGE_MASK) >>> PAGE_BITS)];
+    }
+
+    @Override
+    void ensureCapacity(int slotCount) {
+        int pageCount = (slotCount + PAGE_MASK) >>> PAGE_BITS;
+        Page[] actual = pages;
+        if (pageCount <= actual.length && actual[pageCount - 1] != null)
+            return;
+        Page[] grown = actual;
+        if (pageCount > actual.length) {
+            grown = new Page[Math.max(pageCount, actual.length * 2)];
+            System.arraycopy(actual, 0, grown, 0, actual.length);
+        }
+        for (int i = 0; i < pageCount; i++) {
+            if (grown[i] == null)
+                grown[i] = new Page();
+        }
+        //written again even if it is the same array, so the new pages are published to the readers
+        pages = grown;
+    }
+
+    @Override
+    void store(int slot, Parking parking) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        page.names[index] = parking.getName();
+        page.openHours[index] = value(parking.getOpenHour());
+        page.closeHours[index] = value(parking.getCloseHour());
+        page.totalPlaces[index] = value(parking.getTotalPlaces());
+        page.days[index] = (byte) parking.getDaysMask();
+        page.latitudes[index] = parking.getLatitudeValue();
+        page.longitudes[index] = parking.getLongitudeValue();
+        page.places.set(index, pack(parking.getId(), value(parking.getFreePlaces())));
+        page.versions.set(index, parking.getVersion());
+    }
+
+    @Override
+    void clear(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        page.versions.set(index, FREE);
+        page.names[index] = null;
+    }
+
+    @Override
+    Parking getBySlot(int slot) {
+        Page page = page(slot);
+        if (page == null)
+            return null;
+        int index = slot & PAGE_MASK;
+        //the version is read first, the columns written before it are visible
+        long version = page.versions.get(index);
+        if (version == FREE)
+            return null;
+        long places = page.places.get(index);
+        Parking parking = new Parking(idOf(places), page.names[index], page.openHours[index],
+                page.closeHours[index], page.totalPlaces[index], freePlacesOf(places), page.days[index],
+                page.latitudes[index], page.longitudes[index]);
+        parking.setSlot(slot);
+        parking.advanceVersion(version);
+        return parking;
+    }
+
+    @Override
+    void edit(int slot, Parking values) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        //the same values that Parking.copyParkingValues copies
+        if (values.getName() != null)
+            page.names[index] = values.getName();
+        if (values.getOpenHour() != null)
+            page.openHours[index] = values.getOpenHour();
+        if (values.getCloseHour() != null)
+            page.closeHours[index] = values.getCloseHour();
+        if (values.getTotalPlaces() != null)
+            page.totalPlaces[index] = values.getTotalPlaces();
+        if (values.getDaysMask() >= 0)
+            page.days[index] = (byte) values.getDaysMask();
+        if (!Double.isNaN(values.getLatitudeValue()))
+            page.latitudes[index] = values.getLatitudeValue();
+        if (!Double.isNaN(values.getLongitudeValue()))
+            page.longitudes[index] = values.getLongitudeValue();
+    }
+
+    @Override
+    int takePlace(int slot, int id) {
+        Page page = page(slot, id);
+        int index = slot & PAGE_MASK;
+        while (true) {
+            long places = checkId(page, index, id);
+            int freePlaces = freePlacesOf(places);
+            if (freePlaces < 1)
+                throw ParkingException.PARKING_FULL;
+            if (page.places.compareAndSet(index, places, pack(id, freePlaces - 1)))
+                return freePlaces - 1;
+        }
+    }
+
+    @Override
+    int releasePlace(int slot, int id) {
+        Page page = page(slot, id);
+        int index = slot & PAGE_MASK;
+        while (true) {
+            long places = checkId(page, index, id);
+            int freePlaces = freePlacesOf(places);
+            if (freePlaces == Parking.UNDEFINED)
+                throw ParkingException.PLACES_UNDEFINED;
+            int total = page.totalPlaces[index];
+            if (total != Parking.UNDEFINED && freePlaces >= total)
+                throw ParkingException.PARKING_EMPTY;
+            if (page.places.compareAndSet(index, places, pack(id, freePlaces + 1)))
+                return freePlaces + 1;
+        }
+    }
+
+    @Override
+    int changePlaces(int slot, int id, int delta) {
+        Page page = page(slot, id);
+        int index = slot & PAGE_MASK;
+        while (true) {
+            long places = checkId(page, index, id);
+            int freePlaces = freePlacesOf(places);
+            if (freePlaces == Parking.UNDEFINED)
+                throw ParkingException.PLACES_UNDEFINED;
+            long updated = (long) freePlaces - delta;
+            if (updated < 0)
+                throw ParkingException.PARKING_FULL;
+            int total = page.totalPlaces[index];
+            if (delta < 0 && ((total != Parking.UNDEFINED && updated > total) || updated > Integer.MAX_VALUE))
+                throw ParkingException.PARKING_EMPTY;
+            if (delta == 0 || page.places.compareAndSet(index, places, pack(id, (int) updated)))
+                return (int) updated;
+        }
+    }
+
+    @Override
+    void advanceVersion(int slot, int id, long newVersion) {
+        Page page = page(slot);
+        if (page == null)
+            return;
+        int index = slot & PAGE_MASK;
+        while (true) {
+            long actual = page.versions.get(index);
+            //a free slot is never advanced, it would look stored again
+            if (actual == FREE || actual >= newVersion || idOf(page.places.get(index)) != id)
+                return;
+            if (page.versions.compareAndSet(index, actual, newVersion))
+                return;
+        }
+    }
+
+    @Override
+    int getTotalPlaces(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        return page == null || page.versions.get(index) == FREE ? Parking.UNDEFINED : page.totalPlaces[index];
+    }
+
+    @Override
+    int getFreePlaces(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        return page == null || page.versions.get(index) == FREE
+                ? Parking.UNDEFINED : freePlacesOf(page.places.get(index));
+    }
+
+    @Override
+    double getLatitude(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        return page == null || page.versions.get(index) == FREE ? Double.NaN : page.latitudes[index];
+    }
+
+    @Override
+    double getLongitude(int slot) {
+        Page page = page(slot);
+        int index = slot & PAGE_MASK;
+        return page == null || page.versions.get(index) == FREE ? Double.NaN : page.longitudes[index];
+    }
+
+    @Override
+    boolean isInsideRadius(GeoRadius radius, int slot) {
+        return radius.contains(getLatitude(slot), getLongitude(slot));
+    }
+
+    @Override
+    double distanceKey(GeoRadius center, int slot) {
+        return center.distanceKey(getLatitude(slot), getLongitude(slot));
+    }
+
+    /**
+     * Gets the page of a slot
+     *
+     * @param slot the slot
+     * @return the page, null if the slot has never been used
+     */
+    private Page page(int slot) {
+        Page[] actual = pages;
+        int pageIndex = slot >>> PAGE_BITS;
+        return pageIndex < actual.length ? actual[pageIndex] : null;
+    }
+
+    /**
+     * Gets the page of a slot that has to have an id
+     *
+     * @param slot the slot
+     * @param id   the id of the Parking
+     * @return the page
+     */
+    private Page page(int slot, int id) {
+        Page page = page(slot);
+        if (page == null)
+            throw ParkingException.notFound(id);
+        return page;
+    }
+
+    /**
+     * Reads the occupancy of a slot that has to have an id
+     *
+     * @param page  the page of the slot
+     * @param index the position of the slot in the page
+     * @param id    the id of the Parking
+     * @return the id and the free places of the slot
+     */
+    private static long checkId(Page page, int index, int id) {
+        long places = page.places.get(index);
+        if (idOf(places) != id || page.versions.get(index) == FREE)
+            throw ParkingException.notFound(id);
+        return places;
+    }
+
+    /**
+     * Joins an id and its free places in a long, so they are compared-and-set together
+     *
+     * @param id         the id
+     * @param freePlaces the free places
+     * @return the id in the high 32 bits and the free places in the low 32 bits
+     */
+    private static long pack(int id, int freePlaces) {
+        return ((long) id << 32) | (freePlaces & 0xffffffffL);
+    }
+
+    /**
+     * Get the id of an occupancy
+     *
+     * @param places value of the places column
+     * @return the id
+     */
+    private static int idOf(long places) {
+        return (int) (places >>> 32);
+    }
+
+    /**
+     * Get the free places of an occupancy
+     *
+     * @param places value of the places column
+     * @return the free places, Parking.UNDEFINED if they are not defined
+     */
+    private static int freePlacesOf(long places) {
+        return (int) places;
+    }
+
+    /**
+     * Unboxes a value of a Parking
+     *
+     * @param value the value
+     * @return the value, Parking.UNDEFINED if it is null
+     */
+    private static int value(Integer value) {
+        return value == null ? Parking.UNDEFINED : value;
+    }
+
+    /**
+     * Columns of PAGE_SIZE slots
+     */
+    private static class Page {
+
+        /**
+         * Id in the high 32 bits and free places in the low 32 bits of every slot. A change of the places
+         * compares the id too, so it never lands in a slot reused by another Parking
+         */
+        private final AtomicLongArray places = new AtomicLongArray(PAGE_SIZE);
+        /**
+         * Version of every slot, FREE while the slot is free. The other columns are written before it
+         */
+        private final AtomicLongArray versions = new AtomicLongArray(PAGE_SIZE);
+        /**
+         * Total places of every slot
+         */
+        private final int[] totalPlaces = new int[PAGE_SIZE];
+        /**
+         * Open hour of every slot
+         */
+        private final int[] openHours = new int[PAGE_SIZE];
+        /**
+         * Close hour of every slot
+         */
+        private final int[] closeHours = new int[PAGE_SIZE];
+        /**
+         * Days open of every slot, a bit per WeekDay ordinal, -1 if they are not defined
+         */
+        private final byte[] days = new byte[PAGE_SIZE];
+        /**
+         * Latitude of every slot
+         */
+        private final double[] latitudes = new double[PAGE_SIZE];
+        /**
+         * Longitude of every slot
+         */
+        private final double[] longitudes = new double[PAGE_SIZE];
+        /**
+         * Name of every slot
+         */
+        private final String[] names = new String[PAGE_SIZE];
+
+        /**
+         * Creates a new instance of Page with all its slots free
+         */
+        Page() {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                versions.set(i, FREE);
+            }
+        }
+    }
+}
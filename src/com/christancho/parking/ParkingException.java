@@ -1,12 +1,12 @@
 package com.christancho.parking;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Type;
 
 /**
  * Exception used in all the Parking Application.
@@ -34,6 +34,22 @@ public class ParkingException extends RuntimeException implements Serializable {
     public static String DESC_NOT_FOUND = "Parking Not Found";
     public static String DESC_INVALID_VALUE = "Invalid Value";
     public static String DESC_INVALID_ACTION = "Invalid Action";
+    //Expected outcomes, answered many times per second, so they are created without stack trace
+    /**
+     * Error when a place is filled in a Parking without free places
+     */
+    public static final ParkingException PARKING_FULL = new Expected(CODE_INVALID_ACTION, DESC_INVALID_ACTION,
+            "The Parking is full");
+    /**
+     * Error when a place is freed in a Parking with all the places free
+     */
+    public static final ParkingException PARKING_EMPTY = new Expected(CODE_INVALID_ACTION, DESC_INVALID_ACTION,
+            "The Parking is Empty");
+    /**
+     * Error when a place is freed in a Parking without free places defined
+     */
+    public static final ParkingException PLACES_UNDEFINED = new Expected(CODE_INVALID_VALUE, DESC_INVALID_VALUE,
+            "The free places are not defined");
     /**
      * Code that indicate the type of Error
      */
@@ -82,6 +98,16 @@ public class ParkingException extends RuntimeException implements Serializable {
         this.description = description;
     }
 
+    /**
+     * Creates the error of a Parking not found, without stack trace
+     *
+     * @param id the id of the Parking
+     * @return the error
+     */
+    public static ParkingException notFound(Integer id) {
+        return new Expected(CODE_NOT_FOUND, DESC_NOT_FOUND, "Parking id='" + id + "' Not Found");
+    }
+
     /**
      * Get the value of code
      *
@@ -126,19 +152,85 @@ public class ParkingException extends RuntimeException implements Serializable {
     }
 
     /**
-     * Class used to parsing the ParkingException class into a JsonObject
+     * ParkingException of an expected outcome, like a full Parking. It is not a failure of the application,
+     * so the stack trace is never filled, and its values can't be changed because it can be shared
+     */
+    private static class Expected extends ParkingException {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates a new instance of Expected
+         *
+         * @param code          code of the error
+         * @param description   description of the error
+         * @param detailMessage message of the error
+         */
+        Expected(String code, String description, String detailMessage) {
+            super(code, description, detailMessage);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        @Override
+        public void setCode(String code) {
+            throw new UnsupportedOperationException("The expected errors can't be modified");
+        }
+
+        @Override
+        public void setDescription(String description) {
+            throw new UnsupportedOperationException("The expected errors can't be modified");
+        }
+    }
+
+    /**
+     * Class used to parsing the ParkingException class into Json, written directly into a JsonWriter
      */
-    public static class ParkingExceptionSerializer implements JsonSerializer<ParkingException> {
+    public static class ParkingExceptionSerializer extends TypeAdapter<ParkingException> {
         @Override
-        public JsonElement serialize(ParkingException exception, Type type,
-                                     JsonSerializationContext context) {
-            final JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("code", exception.getCode());
+        public void write(JsonWriter out, ParkingException exception) throws IOException {
+            if (exception == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("code").value(exception.getCode());
             if (exception.getMessage() != null)
-                jsonObject.addProperty("description", exception.getDescription().replaceAll("\"", "'"));
+                out.name("description").value(exception.getDescription().replaceAll("\"", "'"));
             if (exception.getMessage() != null)
-                jsonObject.addProperty("detailMessage", exception.getMessage().replaceAll("\"", "'"));
-            return jsonObject;
+                out.name("detailMessage").value(exception.getMessage().replaceAll("\"", "'"));
+            out.endObject();
+        }
+
+        @Override
+        public ParkingException read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String code = null;
+            String description = null;
+            String detailMessage = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if ("code".equals(name)) {
+                    code = in.nextString();
+                } else if ("description".equals(name)) {
+                    description = in.nextString();
+                } else if ("detailMessage".equals(name)) {
+                    detailMessage = in.nextString();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ParkingException(code, description, detailMessage);
         }
     }
 }
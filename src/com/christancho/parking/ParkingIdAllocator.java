@@ -0,0 +1,62 @@
+package com.christancho.parking;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocator of the ParkingIds, an atomic sequence that starts at 0.
+ * <p/>
+ * Every allocation is a single compare-and-set, so it is O(1) and safe without locks. The ids stored
+ * from outside the sequence (a snapshot or a journal) are reserved, moving the sequence after them, so
+ * an id is never given twice. The ids of the removed Parkings are not reused, the clients could still
+ * have them; the internal slots are the ones reused by the ParkingStore
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+class ParkingIdAllocator {
+
+    /**
+     * Next id of the sequence
+     */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Gives a new id, never given or reserved before
+     *
+     * @return the id
+     */
+    int allocate() {
+        while (true) {
+            int id = nextId.get();
+            if (id == Integer.MAX_VALUE)
+                throw new ParkingException(ParkingException.CODE_INVALID_ID,
+                        ParkingException.DESC_INVALID_ID,
+                        "There are no more ids available");
+            if (nextId.compareAndSet(id, id + 1))
+                return id;
+        }
+    }
+
+    /**
+     * Reserves an id stored from outside the sequence, the next ids are allocated after it
+     *
+     * @param id the id stored
+     */
+    void reserve(int id) {
+        while (true) {
+            int actual = nextId.get();
+            if (id < actual || nextId.compareAndSet(actual, id == Integer.MAX_VALUE ? id : id + 1))
+                return;
+        }
+    }
+
+    /**
+     * Get the next id of the sequence, without allocating it
+     *
+     * @return the value of nextId
+     */
+    int getNextId() {
+        return nextId.get();
+    }
+}
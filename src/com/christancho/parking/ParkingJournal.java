@@ -0,0 +1,870 @@
+package com.christancho.parking;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the modifications of the ParkingCentral, so the free places survive a crash.
+ * <p/>
+ * Every modification is written as fixed records of 64 bytes into segment files mapped in memory. The
+ * free places are written as PLACES records, the added and edited Parkings as DEFINITION records followed
+ * by NAME records when the name doesn't fit, and the removed Parkings as REMOVED records. Every record has
+ * the version of the Central of its modification, so replaying keeps only the newest state of each Parking
+ * even if the records of concurrent modifications were appended out of order.
+ * <p/>
+ * Record, big-endian:
+ * <pre>
+ * 0  type (byte)      1  mask of the fields present (byte)   2  id (int)    6  version (long)
+ * PLACES:     14 freePlaces (int)
+ * DEFINITION: 14 openHour (byte), 15 closeHour (byte), 16 totalPlaces (int), 20 freePlaces (int),
+ *             24 latitude (double), 32 longitude (double), 40 daysOpen (byte), 41 length of the name
+ *             (short), 43 first bytes of the name
+ * NAME:       14 next bytes of the name
+ * 60 CRC32 of the bytes 0 to 59 (int)
+ * </pre>
+ * The hours fit in a byte and the length of the name in a short because the ParkingCentral rejects the
+ * hours outside 0-24 and the longer names before the modification, so a record never changes a value.
+ * The durability decides when the writers wait for the disk: EVENT waits until the records are forced, and
+ * the writers waiting at the same time share a single force (group commit); INTERVAL forces the records
+ * from a background thread every some milliseconds; OFF leaves it to the operating system.
+ * <p/>
+ * The segments are rotated when they are full, and compacted against a ParkingSnapshot: once a snapshot is
+ * written, the closed segments with all their records older than the snapshot are deleted.
+ * <p/>
+ * A record that can't be written (a segment that can't be created, the disk full) fails the journal: the
+ * modification is already applied in memory, so it is published and its caller receives the error, and the
+ * next modifications are rejected before they are applied until the server is restarted. The memory never
+ * runs ahead of the disk by more than the modification that failed
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingJournal {
+
+    /**
+     * Moments when the records are forced to the disk
+     */
+    public enum Durability {
+        /**
+         * Every modification waits until its record is forced, sharing the force with the concurrent ones
+         */
+        EVENT,
+        /**
+         * The records are forced every interval, the modifications of the last interval can be lost
+         */
+        INTERVAL,
+        /**
+         * The records are never forced, only the crash of the process is survived
+         */
+        OFF
+    }
+
+    //Types of records, also used by the ParkingCentral to tell the kind of modification
+    static final int PLACES = 1;
+    static final int DEFINITION = 2;
+    static final int REMOVED = 3;
+    private static final int NAME = 4;
+
+    /**
+     * Size of a record
+     */
+    static final int RECORD_BYTES = 64;
+    /**
+     * Default number of records of a segment, 16 MB
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 256 * 1024;
+    /**
+     * Default interval of the INTERVAL durability
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 50;
+
+    /**
+     * Bytes of the name in the DEFINITION record
+     */
+    private static final int FIRST_NAME_BYTES = 17;
+    /**
+     * Bytes of the name in every NAME record
+     */
+    private static final int NEXT_NAME_BYTES = 46;
+    /**
+     * Position of the checksum in the record
+     */
+    private static final int CHECKSUM = 60;
+
+    //Bits of the mask of fields
+    private static final int HAS_NAME = 1;
+    private static final int HAS_OPEN_HOUR = 1 << 1;
+    private static final int HAS_CLOSE_HOUR = 1 << 2;
+    private static final int HAS_TOTAL_PLACES = 1 << 3;
+    private static final int HAS_FREE_PLACES = 1 << 4;
+    private static final int HAS_LATITUDE = 1 << 5;
+    private static final int HAS_LONGITUDE = 1 << 6;
+    private static final int HAS_DAYS_OPEN = 1 << 7;
+
+    /**
+     * Charset of the names
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Prefix of the names of the segments, followed by their number
+     */
+    private static final String SEGMENT_PREFIX = "journal-";
+    /**
+     * Suffix of the names of the segments
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Directory of the segments
+     */
+    private final File directory;
+    /**
+     * Moment when the records are forced
+     */
+    private final Durability durability;
+    /**
+     * Interval of the INTERVAL durability
+     */
+    private final long intervalMillis;
+    /**
+     * Number of records of every segment
+     */
+    private final int segmentRecords;
+
+    /**
+     * Closed segments, in order
+     */
+    private final List<Segment> closedSegments = new ArrayList<Segment>();
+    /**
+     * Segment where the records are appended, null while the journal is closed
+     */
+    private Segment segment;
+    /**
+     * Number of the next segment
+     */
+    private long nextSegment = 1;
+    /**
+     * Number of records appended since the journal was opened
+     */
+    private long appended;
+
+    /**
+     * Lock of the forces, separated from the appends so the writers can append while the disk is forced
+     */
+    private final Object flushLock = new Object();
+    /**
+     * Number of records forced, guarded by flushLock
+     */
+    private long flushed;
+    /**
+     * true while a writer is forcing the segment, guarded by flushLock
+     */
+    private boolean flushing;
+    /**
+     * Number of forces done, guarded by flushLock
+     */
+    private long flushes;
+
+    /**
+     * First error writing a record, null while the journal works
+     */
+    private volatile ParkingException failure;
+
+    /**
+     * true after replaying the segments, so their versions are known
+     */
+    private boolean replayed;
+    /**
+     * Central whose modifications are written, null while the journal is closed
+     */
+    private ParkingCentral central;
+    /**
+     * Thread of the INTERVAL durability
+     */
+    private Thread flusher;
+
+    /**
+     * Creates a new instance of ParkingJournal
+     *
+     * @param directory      directory of the segments, created if it doesn't exist
+     * @param durability     moment when the records are forced
+     * @param intervalMillis interval of the INTERVAL durability
+     * @param segmentRecords number of records of every segment
+     */
+    public ParkingJournal(File directory, Durability durability, long intervalMillis, int segmentRecords) {
+        if (segmentRecords < 2048)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "A segment of the journal needs at least 2048 records");
+        this.directory = directory;
+        this.durability = durability;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.segmentRecords = segmentRecords;
+    }
+
+    /**
+     * Get the value of durability
+     *
+     * @return the value of durability
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Get the number of records appended since the journal was opened
+     *
+     * @return the value of appended
+     */
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    /**
+     * Get the number of forces done since the journal was opened, lower than the number of records when
+     * the modifications share the forces
+     *
+     * @return the value of flushes
+     */
+    public long getFlushes() {
+        synchronized (flushLock) {
+            return flushes;
+        }
+    }
+
+    /**
+     * Get the number of segments in the directory
+     *
+     * @return the closed segments and the actual one
+     */
+    public synchronized int getSegments() {
+        return closedSegments.size() + (segment == null ? 0 : 1);
+    }
+
+    /**
+     * Applies to a Central the records of all the segments newer than a version, the version of the
+     * snapshot loaded before or 0 without snapshot. It has to be called before opening the journal
+     *
+     * @param parkingCentral the Central to restore
+     * @param baseVersion    the records with this version or older are already in the Central
+     * @return the number of records applied
+     */
+    public synchronized int replay(ParkingCentral parkingCentral, long baseVersion) {
+        if (segment != null)
+            throw new ParkingException(ParkingException.CODE_INVALID_ACTION, "Journal Already Opened",
+                    "The journal has to be replayed before opening it");
+        Map<Integer, Parking> parkings = new LinkedHashMap<Integer, Parking>();
+        for (Parking parking : parkingCentral.searchParkings(null, null, null, null, null)) {
+            parkings.put(parking.getId(), copy(parking));
+        }
+        //the newest definition (null when removed) and the newest free places of every Parking
+        Map<Integer, Record> definitions = new HashMap<Integer, Record>();
+        Map<Integer, Record> places = new HashMap<Integer, Record>();
+        long maxVersion = baseVersion;
+        int applied = 0;
+        closedSegments.clear();
+        for (File file : listSegments()) {
+            Segment closed = new Segment(file, segmentNumber(file));
+            try {
+                for (Record record : readSegment(file)) {
+                    closed.maxVersion = Math.max(closed.maxVersion, record.version);
+                    if (record.version <= baseVersion)
+                        continue;
+                    applied++;
+                    maxVersion = Math.max(maxVersion, record.version);
+                    if (record.type != PLACES)
+                        newest(definitions, record);
+                    if (record.type != REMOVED)
+                        newest(places, record);
+                }
+            } catch (IOException ex) {
+                throw new ParkingException(ex, ParkingException.CODE_UNKNOWN, "Error Reading Journal");
+            }
+            closedSegments.add(closed);
+            nextSegment = Math.max(nextSegment, closed.number + 1);
+        }
+        for (Record record : definitions.values()) {
+            if (record.type == REMOVED)
+                parkings.remove(record.id);
+            else
+                parkings.put(record.id, record.parking);
+        }
+        for (Record record : places.values()) {
+            Parking parking = parkings.get(record.id);
+            Record definition = definitions.get(record.id);
+            if (parking != null && (definition == null || record.version > definition.version))
+                parking.setFreePlaces(record.parking.getFreePlaces());
+        }
+        replayed = true;
+        if (applied > 0)
+            parkingCentral.restore(parkings.values(), maxVersion);
+        return applied;
+    }
+
+    /**
+     * Opens a new segment and starts writing the modifications of a Central
+     *
+     * @param parkingCentral the Central to journal
+     */
+    public void open(ParkingCentral parkingCentral) {
+        synchronized (this) {
+            if (segment != null)
+                throw new ParkingException(ParkingException.CODE_INVALID_ACTION, "Journal Already Opened",
+                        "The journal is already opened");
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new ParkingException(ParkingException.CODE_UNKNOWN, "Error Opening Journal",
+                        "The directory " + directory + " can't be created");
+            if (!replayed) {
+                for (File file : listSegments()) {
+                    //segments not replayed are never compacted, their versions are unknown
+                    Segment closed = new Segment(file, segmentNumber(file));
+                    closed.maxVersion = Long.MAX_VALUE;
+                    closedSegments.add(closed);
+                    nextSegment = Math.max(nextSegment, closed.number + 1);
+                }
+            }
+            segment = newSegment();
+            central = parkingCentral;
+        }
+        if (durability == Durability.INTERVAL) {
+            flusher = new Thread("parking-journal") {
+                @Override
+                public void run() {
+                    while (!isInterrupted()) {
+                        try {
+                            Thread.sleep(intervalMillis);
+                        } catch (InterruptedException ex) {
+                            break;
+                        }
+                        commit(getAppended());
+                    }
+                }
+            };
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        parkingCentral.setJournal(this);
+    }
+
+    /**
+     * Stops writing the modifications and forces the records appended
+     */
+    public void close() {
+        ParkingCentral parkingCentral;
+        synchronized (this) {
+            parkingCentral = central;
+            central = null;
+        }
+        if (parkingCentral == null)
+            return;
+        parkingCentral.setJournal(null);
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher = null;
+        }
+        commit(getAppended());
+        synchronized (this) {
+            closedSegments.add(segment);
+            segment = null;
+        }
+    }
+
+    /**
+     * Deletes the segments with all their records in a snapshot. The actual segment is rotated first, so
+     * only the modifications after the snapshot are kept
+     *
+     * @param snapshotVersion the version of the Central in the snapshot
+     * @return the number of segments deleted
+     */
+    public synchronized int compact(long snapshotVersion) {
+        if (segment != null && segment.records > 0)
+            rotate();
+        int deleted = 0;
+        for (int i = closedSegments.size() - 1; i >= 0; i--) {
+            Segment closed = closedSegments.get(i);
+            if (closed.maxVersion <= snapshotVersion && closed.file.delete()) {
+                closedSegments.remove(i);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Writes the record of a modification, and waits until it is forced if the durability is EVENT. It is
+     * called by the ParkingCentral after the modification and before publishing it
+     *
+     * @param type    PLACES, DEFINITION or REMOVED
+     * @param parking the Parking modified
+     * @param version the version of the Central of the modification
+     */
+    void write(int type, Parking parking, long version) {
+        checkWritable();
+        long sequence;
+        synchronized (this) {
+            if (segment == null)
+                return;
+            try {
+                byte[] records = encode(type, parking, version);
+                int count = records.length / RECORD_BYTES;
+                //the records of a definition are never split between two segments
+                if (segment.records + count > segmentRecords)
+                    rotate();
+                segment.buffer.position(segment.records * RECORD_BYTES);
+                segment.buffer.put(records);
+                segment.records += count;
+                segment.maxVersion = Math.max(segment.maxVersion, version);
+                appended += count;
+                sequence = appended;
+            } catch (RuntimeException ex) {
+                failure = new ParkingException(ex, ParkingException.CODE_UNKNOWN, "Error Writing Journal");
+                throw failure;
+            }
+        }
+        if (durability == Durability.EVENT)
+            commit(sequence);
+    }
+
+    /**
+     * Checks that the journal can write records, called by the ParkingCentral before applying a modification
+     */
+    void checkWritable() {
+        ParkingException actual = failure;
+        if (actual != null)
+            throw new ParkingException(ParkingException.CODE_UNKNOWN, "Journal Failed",
+                    "The modifications are rejected until the server is restarted: " + actual.getMessage());
+    }
+
+    /**
+     * Ask if a record couldn't be written
+     *
+     * @return true if the journal failed and rejects the modifications
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Waits until the records appended up to a sequence are forced. Only one writer forces the segment at
+     * a time, the writers arriving meanwhile wait and are usually covered by the next force
+     *
+     * @param sequence number of records that have to be forced
+     */
+    private void commit(long sequence) {
+        boolean interrupted = false;
+        while (true) {
+            synchronized (flushLock) {
+                while (flushing && flushed < sequence) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (flushed >= sequence)
+                    break;
+                flushing = true;
+            }
+            long forced = 0;
+            try {
+                MappedByteBuffer buffer;
+                synchronized (this) {
+                    forced = appended;
+                    buffer = segment == null ? null : segment.buffer;
+                }
+                //the previous segments were forced when they were rotated
+                if (buffer != null)
+                    buffer.force();
+            } finally {
+                synchronized (flushLock) {
+                    flushing = false;
+                    flushed = Math.max(flushed, forced);
+                    flushes++;
+                    flushLock.notifyAll();
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Closes the actual segment and opens the next one. It has to be called with the lock of the journal
+     */
+    private void rotate() {
+        //the next segment is created first, if it fails the actual one is still the only one open
+        Segment next = newSegment();
+        segment.buffer.force();
+        closedSegments.add(segment);
+        segment = next;
+    }
+
+    /**
+     * Creates and maps the next segment. It has to be called with the lock of the journal
+     *
+     * @return the segment
+     */
+    private Segment newSegment() {
+        File file = new File(directory, SEGMENT_PREFIX + String.format("%016d", nextSegment) + SEGMENT_SUFFIX);
+        Segment created = new Segment(file, nextSegment++);
+        try {
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                output.setLength((long) segmentRecords * RECORD_BYTES);
+                created.buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                        (long) segmentRecords * RECORD_BYTES);
+            } finally {
+                //the mapping stays valid after closing the file
+                output.close();
+            }
+        } catch (IOException ex) {
+            throw new ParkingException(ex, ParkingException.CODE_UNKNOWN, "Error Opening Journal");
+        }
+        return created;
+    }
+
+    /**
+     * Lists the segments of the directory in order
+     *
+     * @return the files of the segments
+     */
+    private File[] listSegments() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Obtain the number of a segment from its name
+     *
+     * @param file the file of the segment
+     * @return the number of the segment
+     */
+    private static long segmentNumber(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Keeps the newest record of a Parking
+     *
+     * @param newest the newest records by id
+     * @param record the record read
+     */
+    private static void newest(Map<Integer, Record> newest, Record record) {
+        Record actual = newest.get(record.id);
+        if (actual == null || record.version > actual.version)
+            newest.put(record.id, record);
+    }
+
+    /**
+     * Copies the values of a Parking, so the replay never modifies the Parkings stored in the Central
+     *
+     * @param parking the Parking to copy
+     * @return the copy
+     */
+    private static Parking copy(Parking parking) {
+        return new Parking(parking.getId(), parking.getName(), parking.getOpenHour(), parking.getCloseHour(),
+                parking.getTotalPlaces(), parking.getFreePlaces(), parking.getDaysOpen(),
+                parking.getLatitude(), parking.getLongitude());
+    }
+
+    /**
+     * Encodes the records of a modification
+     *
+     * @param type    PLACES, DEFINITION or REMOVED
+     * @param parking the Parking modified
+     * @param version the version of the modification
+     * @return the records, a multiple of RECORD_BYTES
+     */
+    private static byte[] encode(int type, Parking parking, long version) {
+        Integer freePlaces = parking.getFreePlaces();
+        if (type != DEFINITION) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            header(record, type, type == PLACES && freePlaces != null ? HAS_FREE_PLACES : 0,
+                    parking.getId(), version);
+            if (type == PLACES && freePlaces != null)
+                record.putInt(freePlaces);
+            return seal(record, 0).array();
+        }
+        String name = parking.getName();
+        Integer openHour = parking.getOpenHour();
+        Integer closeHour = parking.getCloseHour();
+        Integer totalPlaces = parking.getTotalPlaces();
+        Double latitude = parking.getLatitude();
+        Double longitude = parking.getLongitude();
+        int daysOpen = parking.getDaysMask();
+        int mask = (name != null ? HAS_NAME : 0)
+                | (openHour != null ? HAS_OPEN_HOUR : 0)
+                | (closeHour != null ? HAS_CLOSE_HOUR : 0)
+                | (totalPlaces != null ? HAS_TOTAL_PLACES : 0)
+                | (freePlaces != null ? HAS_FREE_PLACES : 0)
+                | (latitude != null ? HAS_LATITUDE : 0)
+                | (longitude != null ? HAS_LONGITUDE : 0)
+                | (daysOpen >= 0 ? HAS_DAYS_OPEN : 0);
+        byte[] nameBytes = name == null ? new byte[0] : name.getBytes(UTF_8);
+        if (nameBytes.length > 0xffff)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The name of the Parking is too long");
+        int nameRecords = nameBytes.length <= FIRST_NAME_BYTES ? 0
+                : (nameBytes.length - FIRST_NAME_BYTES + NEXT_NAME_BYTES - 1) / NEXT_NAME_BYTES;
+        ByteBuffer records = ByteBuffer.allocate(RECORD_BYTES * (1 + nameRecords));
+        header(records, DEFINITION, mask, parking.getId(), version);
+        records.put((byte) (openHour == null ? 0 : openHour));
+        records.put((byte) (closeHour == null ? 0 : closeHour));
+        records.putInt(totalPlaces == null ? 0 : totalPlaces);
+        records.putInt(freePlaces == null ? 0 : freePlaces);
+        records.putDouble(latitude == null ? 0 : latitude);
+        records.putDouble(longitude == null ? 0 : longitude);
+        records.put((byte) Math.max(0, daysOpen));
+        records.putShort((short) nameBytes.length);
+        int written = Math.min(FIRST_NAME_BYTES, nameBytes.length);
+        records.put(nameBytes, 0, written);
+        seal(records, 0);
+        for (int i = 1; i <= nameRecords; i++) {
+            records.position(i * RECORD_BYTES);
+            header(records, NAME, 0, parking.getId(), version);
+            int length = Math.min(NEXT_NAME_BYTES, nameBytes.length - written);
+            records.put(nameBytes, written, length);
+            written += length;
+            seal(records, i * RECORD_BYTES);
+        }
+        return records.array();
+    }
+
+    /**
+     * Writes the header of a record
+     *
+     * @param buffer  the buffer, positioned at the record
+     * @param type    type of the record
+     * @param mask    mask of the fields present
+     * @param id      id of the Parking
+     * @param version version of the modification
+     */
+    private static void header(ByteBuffer buffer, int type, int mask, int id, long version) {
+        buffer.put((byte) type);
+        buffer.put((byte) mask);
+        buffer.putInt(id);
+        buffer.putLong(version);
+    }
+
+    /**
+     * Writes the checksum of a record
+     *
+     * @param buffer the buffer with the record
+     * @param offset position of the record
+     * @return the buffer
+     */
+    private static ByteBuffer seal(ByteBuffer buffer, int offset) {
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), offset, CHECKSUM);
+        buffer.putInt(offset + CHECKSUM, (int) checksum.getValue());
+        return buffer;
+    }
+
+    /**
+     * Reads the valid records of a segment. The reading stops at the first empty or corrupted record,
+     * the end of the records written before a crash
+     *
+     * @param file the segment
+     * @return the records, the NAME records are joined to their DEFINITION
+     * @throws IOException if the segment can't be read
+     */
+    private static List<Record> readSegment(File file) throws IOException {
+        List<Record> records = new ArrayList<Record>();
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[RECORD_BYTES];
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            int count = buffer.limit() / RECORD_BYTES;
+            int index = 0;
+            while (index < count) {
+                if (!readRecord(buffer, index++, bytes))
+                    break;
+                record.clear();
+                int type = record.get();
+                int mask = record.get() & 0xff;
+                Record read = new Record(type, record.getInt(), record.getLong());
+                if (type == PLACES) {
+                    read.parking = new Parking();
+                    if ((mask & HAS_FREE_PLACES) != 0)
+                        read.parking.setFreePlaces(record.getInt());
+                } else if (type == DEFINITION) {
+                    read.parking = decodeDefinition(read.id, mask, record);
+                    byte[] nameBytes = new byte[record.getShort() & 0xffff];
+                    int done = Math.min(FIRST_NAME_BYTES, nameBytes.length);
+                    record.get(nameBytes, 0, done);
+                    boolean complete = true;
+                    while (done < nameBytes.length) {
+                        if (index >= count || !readRecord(buffer, index++, bytes) || bytes[0] != NAME) {
+                            complete = false;
+                            break;
+                        }
+                        int length = Math.min(NEXT_NAME_BYTES, nameBytes.length - done);
+                        System.arraycopy(bytes, 14, nameBytes, done, length);
+                        done += length;
+                    }
+                    if (!complete)
+                        break;
+                    if ((mask & HAS_NAME) != 0)
+                        read.parking.setName(new String(nameBytes, UTF_8));
+                } else if (type != REMOVED) {
+                    break;
+                }
+                records.add(read);
+            }
+        } finally {
+            input.close();
+        }
+        return records;
+    }
+
+    /**
+     * Copies a record from the segment and checks it
+     *
+     * @param buffer the segment
+     * @param index  the number of the record
+     * @param bytes  the array where the record is copied
+     * @return false if the record is empty or corrupted
+     */
+    private static boolean readRecord(MappedByteBuffer buffer, int index, byte[] bytes) {
+        buffer.position(index * RECORD_BYTES);
+        buffer.get(bytes);
+        if (bytes[0] == 0)
+            return false;
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, CHECKSUM);
+        return ByteBuffer.wrap(bytes).getInt(CHECKSUM) == (int) checksum.getValue();
+    }
+
+    /**
+     * Decodes the fields of a DEFINITION record, except the name
+     *
+     * @param id     id of the Parking
+     * @param mask   mask of the fields present
+     * @param record the record, positioned after the header
+     * @return the Parking
+     */
+    private static Parking decodeDefinition(int id, int mask, ByteBuffer record) {
+        int openHour = record.get();
+        int closeHour = record.get();
+        int totalPlaces = record.getInt();
+        int freePlaces = record.getInt();
+        double latitude = record.getDouble();
+        double longitude = record.getDouble();
+        int days = record.get() & 0xff;
+        Parking parking = new Parking(id, null,
+                (mask & HAS_OPEN_HOUR) != 0 ? Integer.valueOf(openHour) : null,
+                (mask & HAS_CLOSE_HOUR) != 0 ? Integer.valueOf(closeHour) : null,
+                (mask & HAS_TOTAL_PLACES) != 0 ? Integer.valueOf(totalPlaces) : null,
+                (mask & HAS_FREE_PLACES) != 0 ? Integer.valueOf(freePlaces) : null,
+                null,
+                (mask & HAS_LATITUDE) != 0 ? Double.valueOf(latitude) : null,
+                (mask & HAS_LONGITUDE) != 0 ? Double.valueOf(longitude) : null);
+        parking.setDaysMask((mask & HAS_DAYS_OPEN) != 0 ? days : -1);
+        return parking;
+    }
+
+    /**
+     * A segment of the journal
+     */
+    private static class Segment {
+
+        /**
+         * File of the segment
+         */
+        private final File file;
+        /**
+         * Number of the segment
+         */
+        private final long number;
+        /**
+         * The file mapped, null for the closed segments read at the startup
+         */
+        private MappedByteBuffer buffer;
+        /**
+         * Number of records written
+         */
+        private int records;
+        /**
+         * Newest version written in the segment
+         */
+        private long maxVersion;
+
+        /**
+         * Creates a new instance of Segment
+         *
+         * @param file   file of the segment
+         * @param number number of the segment
+         */
+        Segment(File file, long number) {
+            this.file = file;
+            this.number = number;
+        }
+    }
+
+    /**
+     * A record read from a segment
+     */
+    private static class Record {
+
+        /**
+         * Type of the record
+         */
+        private final int type;
+        /**
+         * Id of the Parking
+         */
+        private final int id;
+        /**
+         * Version of the modification
+         */
+        private final long version;
+        /**
+         * The Parking defined, or the free places of a PLACES record
+         */
+        private Parking parking;
+
+        /**
+         * Creates a new instance of Record
+         *
+         * @param type    type of the record
+         * @param id      id of the Parking
+         * @param version version of the modification
+         */
+        Record(int type, int id, long version) {
+            this.type = type;
+            this.id = id;
+            this.version = version;
+        }
+    }
+}
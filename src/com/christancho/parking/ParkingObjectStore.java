@@ -0,0 +1,147 @@
+package com.christancho.parking;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ParkingStore that keeps a Parking instance per slot. The occupancy is modified with compare-and-set
+ * inside the Parking, and the Parkings given by getBySlot are the ones stored
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+class ParkingObjectStore extends ParkingStore {
+
+    /**
+     * Parkings by slot, replaced by a bigger copy when it is full
+     */
+    private volatile AtomicReferenceArray<Parking> slots;
+
+    /**
+     * Creates a new instance of ParkingObjectStore
+     *
+     * @param capacity expected number of Parkings
+     */
+    ParkingObjectStore(int capacity) {
+        super(capacity);
+        this.slots = new AtomicReferenceArray<Parking>(Math.max(16, capacity));
+    }
+
+    @Override
+    void ensureCapacity(int slotCount) {
+        AtomicReferenceArray<Parking> actualSlots = slots;
+        if (slotCount <= actualSlots.length())
+            return;
+        AtomicReferenceArray<Parking> grown =
+                new AtomicReferenceArray<Parking>(Math.max(slotCount, actualSlots.length() * 2));
+        for (int i = 0; i < actualSlots.length(); i++) {
+            grown.set(i, actualSlots.get(i));
+        }
+        slots = grown;
+    }
+
+    @Override
+    void store(int slot, Parking parking) {
+        slots.set(slot, parking);
+        parking.setSlot(slot);
+    }
+
+    @Override
+    void clear(int slot) {
+        slots.set(slot, null);
+    }
+
+    @Override
+    Parking getBySlot(int slot) {
+        AtomicReferenceArray<Parking> actualSlots = slots;
+        return slot < actualSlots.length() ? actualSlots.get(slot) : null;
+    }
+
+    @Override
+    void edit(int slot, Parking values) {
+        getBySlot(slot).copyParkingValues(values);
+    }
+
+    @Override
+    int takePlace(int slot, int id) {
+        return getParking(slot, id).takePlace();
+    }
+
+    @Override
+    int releasePlace(int slot, int id) {
+        return getParking(slot, id).releasePlace();
+    }
+
+    @Override
+    int changePlaces(int slot, int id, int delta) {
+        return getParking(slot, id).changePlaces(delta);
+    }
+
+    @Override
+    void advanceVersion(int slot, int id, long newVersion) {
+        Parking parking = getBySlot(slot);
+        if (parking != null && parking.getId() == id)
+            parking.advanceVersion(newVersion);
+    }
+
+    @Override
+    int getTotalPlaces(int slot) {
+        Parking parking = getBySlot(slot);
+        Integer totalPlaces = parking == null ? null : parking.getTotalPlaces();
+        return totalPlaces == null ? Parking.UNDEFINED : totalPlaces;
+    }
+
+    @Override
+    int getFreePlaces(int slot) {
+        Parking parking = getBySlot(slot);
+        Integer freePlaces = parking == null ? null : parking.getFreePlaces();
+        return freePlaces == null ? Parking.UNDEFINED : freePlaces;
+    }
+
+    @Override
+    double getLatitude(int slot) {
+        Parking parking = getBySlot(slot);
+        return parking == null ? Double.NaN : parking.getLatitudeValue();
+    }
+
+    @Override
+    double getLongitude(int slot) {
+        Parking parking = getBySlot(slot);
+        return parking == null ? Double.NaN : parking.getLongitudeValue();
+    }
+
+    @Override
+    boolean isInsideRadius(GeoRadius radius, int slot) {
+        Parking parking = getBySlot(slot);
+        return parking != null && radius.contains(parking);
+    }
+
+    @Override
+    double distanceKey(GeoRadius center, int slot) {
+        Parking parking = getBySlot(slot);
+        return parking == null ? Double.MAX_VALUE : center.distanceKey(parking);
+    }
+
+    @Override
+    Boolean isFull(int slot) {
+        //the places are read from the same Parking, without boxing them
+        Parking parking = getBySlot(slot);
+        if (parking == null || !parking.hasPlaces())
+            return null;
+        return parking.isFull();
+    }
+
+    /**
+     * Gets the Parking of a slot that has to have an id
+     *
+     * @param slot the slot
+     * @param id   the id of the Parking
+     * @return the Parking
+     */
+    private Parking getParking(int slot, int id) {
+        Parking parking = getBySlot(slot);
+        if (parking == null || parking.getId() != id)
+            throw ParkingException.notFound(id);
+        return parking;
+    }
+}
@@ -0,0 +1,66 @@
+package com.christancho.parking;
+
+import java.util.List;
+
+/**
+ * Class that represents a page of the search results
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingPage {
+
+    /**
+     * Parkings of the page, in the requested order
+     */
+    private final List<Parking> parkings;
+    /**
+     * Cursor to request the next page, null if this is the last one
+     */
+    private final String nextCursor;
+    /**
+     * Number of Parkings that match the search after the requested cursor
+     */
+    private final int total;
+
+    /**
+     * Creates a new instance of ParkingPage
+     *
+     * @param parkings   Parkings of the page
+     * @param nextCursor cursor to request the next page, null if this is the last one
+     * @param total      number of Parkings that match the search after the requested cursor
+     */
+    public ParkingPage(List<Parking> parkings, String nextCursor, int total) {
+        this.parkings = parkings;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    /**
+     * Get the value of parkings
+     *
+     * @return the value of parkings
+     */
+    public List<Parking> getParkings() {
+        return parkings;
+    }
+
+    /**
+     * Get the value of nextCursor
+     *
+     * @return the value of nextCursor, null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Get the value of total
+     *
+     * @return the value of total
+     */
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,277 @@
+package com.christancho.parking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Class that receives the Parkings that match a search and builds the requested page of results.
+ * <p/>
+ * Only the best offset + limit Parkings are kept, in a bounded heap whose head is the worst of them, so
+ * the whole set of matches is never sorted. The order is a total order on (sort key, ParkingId), and the
+ * cursors contain the key and the id of the last Parking of a page, so the next page starts right after it
+ * even if other Parkings were added or removed meanwhile
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+class ParkingPageCollector {
+
+    /**
+     * Orders the candidates from the best to the worst
+     */
+    private static final Comparator<Candidate> ORDER = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate first, Candidate second) {
+            return first.compareTo(second.key, second.id);
+        }
+    };
+
+    /**
+     * Orders the candidates from the worst to the best, used by the bounded heap
+     */
+    private static final Comparator<Candidate> REVERSE_ORDER = Collections.reverseOrder(ORDER);
+
+    /**
+     * Order of the results, null to keep the order of the indexes
+     */
+    private final ParkingSort sort;
+    /**
+     * Center of the search, used to sort by distance
+     */
+    private final GeoRadius radius;
+    /**
+     * true if a cursor was received
+     */
+    private final boolean hasCursor;
+    /**
+     * Key of the last Parking of the previous page
+     */
+    private final double cursorKey;
+    /**
+     * Id of the last Parking of the previous page
+     */
+    private final int cursorId;
+    /**
+     * Number of Parkings skipped after the cursor
+     */
+    private final int offset;
+    /**
+     * Maximum number of Parkings kept, offset + limit
+     */
+    private final int capacity;
+    /**
+     * Best Parkings found, the head is the worst of them. Null when there is no order
+     */
+    private final PriorityQueue<Candidate> heap;
+    /**
+     * Parkings found when there is no order
+     */
+    private final List<Parking> unordered;
+    /**
+     * Number of Parkings that match the search after the cursor
+     */
+    private int total;
+
+    /**
+     * Creates a new instance of ParkingPageCollector
+     *
+     * @param sort   order of the results, null for the default
+     * @param radius center of the search, needed to sort by distance
+     * @param cursor cursor returned with the previous page, null for the first page
+     * @param offset number of Parkings skipped after the cursor, it can be null
+     * @param limit  maximum number of Parkings of the page, null for all of them
+     */
+    ParkingPageCollector(ParkingSort sort, GeoRadius radius, String cursor, Integer offset, Integer limit) {
+        if (offset != null && offset < 0)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid offset parameter");
+        if (limit != null && limit < 1)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "Invalid limit parameter");
+        if (sort == ParkingSort.DISTANCE && radius == null)
+            throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The sort by distance needs latitude and longitude");
+        //without any pagination parameter the results keep the order of the indexes, like before
+        if (sort == null && cursor == null && offset == null && limit == null) {
+            this.sort = null;
+            this.unordered = new ArrayList<Parking>();
+            this.heap = null;
+        } else {
+            this.sort = sort == null ? ParkingSort.ID : sort;
+            this.unordered = null;
+            this.heap = new PriorityQueue<Candidate>(limit == null ? 16 : Math.min(limit, 1024) + 1,
+                    REVERSE_ORDER);
+        }
+        this.radius = radius;
+        this.offset = offset == null ? 0 : offset;
+        this.capacity = limit == null ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE,
+                (long) this.offset + limit);
+        this.hasCursor = cursor != null;
+        if (cursor != null) {
+            //the cursor is "<sort code><key bits in hex>.<id>"
+            int separator = cursor.indexOf('.');
+            try {
+                if (cursor.charAt(0) != this.sort.getCode() || separator < 2)
+                    throw new IllegalArgumentException();
+                this.cursorKey = Double.longBitsToDouble(parseHexLong(cursor.substring(1, separator)));
+                this.cursorId = Integer.parseInt(cursor.substring(separator + 1));
+            } catch (RuntimeException ex) {
+                throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                        ParkingException.DESC_INVALID_VALUE,
+                        "Invalid cursor parameter");
+            }
+        } else {
+            this.cursorKey = 0;
+            this.cursorId = 0;
+        }
+    }
+
+    /**
+     * Receives a Parking that matches the search
+     *
+     * @param parking the Parking
+     */
+    void add(Parking parking) {
+        if (unordered != null) {
+            unordered.add(parking);
+            total++;
+            return;
+        }
+        Integer id = parking.getId();
+        if (id == null)
+            return;
+        double key = key(parking);
+        if (hasCursor && compare(key, id, cursorKey, cursorId) <= 0)
+            return;
+        total++;
+        if (heap.size() < capacity) {
+            heap.add(new Candidate(key, id, parking));
+        } else if (heap.peek().compareTo(key, id) > 0) {
+            heap.poll();
+            heap.add(new Candidate(key, id, parking));
+        }
+    }
+
+    /**
+     * Builds the page with the Parkings received
+     *
+     * @return the page
+     */
+    ParkingPage toPage() {
+        if (unordered != null)
+            return new ParkingPage(unordered, null, total);
+        Candidate[] candidates = heap.toArray(new Candidate[heap.size()]);
+        Arrays.sort(candidates, ORDER);
+        List<Parking> parkings = new ArrayList<Parking>(Math.max(0, candidates.length - offset));
+        for (int i = offset; i < candidates.length; i++) {
+            parkings.add(candidates[i].parking);
+        }
+        String nextCursor = null;
+        if (total > capacity && candidates.length > offset) {
+            Candidate last = candidates[candidates.length - 1];
+            nextCursor = sort.getCode() + Long.toHexString(Double.doubleToLongBits(last.key)) + "." + last.id;
+        }
+        return new ParkingPage(parkings, nextCursor, total);
+    }
+
+    /**
+     * Calculates the sort key of a Parking, the smaller the better
+     *
+     * @param parking the Parking
+     * @return the key
+     */
+    private double key(Parking parking) {
+        switch (sort) {
+            case DISTANCE:
+                return radius.distanceKey(parking);
+            case FREE_PLACES:
+                //descending free places, the Parkings with undefined places go last
+                Integer freePlaces = parking.getFreePlaces();
+                return freePlaces == null ? Double.MAX_VALUE : -freePlaces;
+            default:
+                return parking.getId();
+        }
+    }
+
+    /**
+     * Compares two positions of the order
+     *
+     * @return a negative number if the first position goes before the second one
+     */
+    private static int compare(double key, int id, double otherKey, int otherId) {
+        int result = Double.compare(key, otherKey);
+        if (result != 0)
+            return result;
+        return id < otherId ? -1 : (id == otherId ? 0 : 1);
+    }
+
+    /**
+     * Parses the unsigned hexadecimal representation of a long
+     *
+     * @param hex the hexadecimal digits
+     * @return the value
+     */
+    private static long parseHexLong(String hex) {
+        if (hex.length() > 16)
+            throw new NumberFormatException(hex);
+        long value = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0)
+                throw new NumberFormatException(hex);
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parking found with its position in the order
+     */
+    private static class Candidate {
+
+        /**
+         * Sort key of the Parking
+         */
+        private final double key;
+        /**
+         * Id of the Parking when it was found
+         */
+        private final int id;
+        /**
+         * The Parking
+         */
+        private final Parking parking;
+
+        /**
+         * Creates a new instance of Candidate
+         *
+         * @param key     sort key of the Parking
+         * @param id      id of the Parking
+         * @param parking the Parking
+         */
+        Candidate(double key, int id, Parking parking) {
+            this.key = key;
+            this.id = id;
+            this.parking = parking;
+        }
+
+        /**
+         * Compares the position of the candidate with another position of the order
+         *
+         * @param otherKey the key of the other position
+         * @param otherId  the id of the other position
+         * @return a negative number if the candidate goes before the other position
+         */
+        int compareTo(double otherKey, int otherId) {
+            return compare(key, id, otherKey, otherId);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.christancho.parking;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Class that writes all the Parkings of the ParkingCentral into a compact binary file, and loads them
+ * back mapping the file in memory.
+ * <p/>
+ * Format, big-endian:
+ * <pre>
+ * header:  magic "PKSN" (int), format version (short), Central version (long), number of Parkings (int)
+ * Parking: id (int), mask of the fields present (byte), and the fields present in this order:
+ *          name (short length + UTF-8 bytes), openHour (byte), closeHour (byte), totalPlaces (int),
+ *          freePlaces (int), latitude (double), longitude (double), daysOpen (byte, a bit per WeekDay)
+ * trailer: CRC32 of the header and the Parkings (int)
+ * </pre>
+ * The file is written into a temporary file and then renamed, so a snapshot is never half written
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingSnapshot {
+
+    /**
+     * First bytes of the file, "PKSN"
+     */
+    private static final int MAGIC = 0x504b534e;
+    /**
+     * Version of the format
+     */
+    private static final short FORMAT_VERSION = 1;
+    /**
+     * Charset of the names
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Bits of the mask of fields
+    private static final int HAS_NAME = 1;
+    private static final int HAS_OPEN_HOUR = 1 << 1;
+    private static final int HAS_CLOSE_HOUR = 1 << 2;
+    private static final int HAS_TOTAL_PLACES = 1 << 3;
+    private static final int HAS_FREE_PLACES = 1 << 4;
+    private static final int HAS_LATITUDE = 1 << 5;
+    private static final int HAS_LONGITUDE = 1 << 6;
+    private static final int HAS_DAYS_OPEN = 1 << 7;
+
+    /**
+     * File of the snapshot
+     */
+    private final File file;
+    /**
+     * Version of the Central in the last snapshot written or loaded, 0 before
+     */
+    private volatile long version;
+
+    /**
+     * Creates a new instance of ParkingSnapshot
+     *
+     * @param file file of the snapshot
+     */
+    public ParkingSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the value of file
+     *
+     * @return the value of file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the value of version
+     *
+     * @return the version of the Central in the last snapshot written or loaded, 0 before
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Ask if the snapshot was already written
+     *
+     * @return true if the file exists
+     */
+    public boolean exists() {
+        return file.isFile();
+    }
+
+    /**
+     * Writes all the Parkings of a Central with their free places. The writes of the same snapshot are
+     * serialized, they share the temporary file and the version
+     *
+     * @param central the Central to write
+     * @return the number of Parkings written
+     */
+    public synchronized int write(ParkingCentral central) {
+        //the version is read first, so the snapshot never claims changes it doesn't have
+        long centralVersion = central.getVersion();
+        List<Parking> parkings = central.searchParkings(null, null, null, null, null);
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            FileOutputStream fileOutput = new FileOutputStream(temporary);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(fileOutput, checksum), 64 * 1024));
+            try {
+                output.writeInt(MAGIC);
+                output.writeShort(FORMAT_VERSION);
+                output.writeLong(centralVersion);
+                output.writeInt(parkings.size());
+                for (Parking parking : parkings) {
+                    writeParking(output, parking);
+                }
+                output.flush();
+                output.writeInt((int) checksum.getValue());
+                output.flush();
+                fileOutput.getFD().sync();
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file)) {
+                //some platforms can't rename over an existing file
+                if (!file.delete() || !temporary.renameTo(file))
+                    throw new IOException("The snapshot can't be renamed to " + file);
+            }
+        } catch (IOException ex) {
+            temporary.delete();
+            throw new ParkingException(ex, ParkingException.CODE_UNKNOWN, "Error Writing Snapshot");
+        }
+        version = centralVersion;
+        return parkings.size();
+    }
+
+    /**
+     * Writes the snapshot and deletes the segments of the journal of the Central already contained in it, in
+     * the same critical section, so a concurrent write can't compact the changes of a snapshot not written
+     *
+     * @param central the Central to write
+     * @return the number of Parkings written
+     */
+    public synchronized int checkpoint(ParkingCentral central) {
+        int parkings = write(central);
+        ParkingJournal journal = central.getJournal();
+        if (journal != null)
+            journal.compact(version);
+        return parkings;
+    }
+
+    /**
+     * Loads the Parkings of the snapshot, replacing all the Parkings of a Central
+     *
+     * @param central the Central to restore
+     * @return the number of Parkings loaded
+     */
+    public synchronized int load(ParkingCentral central) {
+        List<Parking> parkings;
+        long centralVersion;
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() < 22 || buffer.getInt() != MAGIC)
+                    throw new IOException("The file is not a Parking snapshot");
+                if (buffer.getShort() != FORMAT_VERSION)
+                    throw new IOException("Unknown version of the snapshot format");
+                centralVersion = buffer.getLong();
+                int count = buffer.getInt();
+                parkings = new ArrayList<Parking>(count);
+                for (int i = 0; i < count; i++) {
+                    parkings.add(readParking(buffer));
+                }
+                int end = buffer.position();
+                int expected = buffer.getInt();
+                CRC32 checksum = new CRC32();
+                byte[] chunk = new byte[64 * 1024];
+                buffer.position(0);
+                while (buffer.position() < end) {
+                    int length = Math.min(chunk.length, end - buffer.position());
+                    buffer.get(chunk, 0, length);
+                    checksum.update(chunk, 0, length);
+                }
+                if ((int) checksum.getValue() != expected)
+                    throw new IOException("The checksum of the snapshot doesn't match");
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            throw new ParkingException(ex, ParkingException.CODE_UNKNOWN, "Error Loading Snapshot");
+        } catch (BufferUnderflowException ex) {
+            throw new ParkingException(ParkingException.CODE_UNKNOWN, "Error Loading Snapshot",
+                    "The snapshot is truncated");
+        }
+        central.restore(parkings, centralVersion);
+        version = centralVersion;
+        return parkings.size();
+    }
+
+    /**
+     * Writes a Parking
+     *
+     * @param output  the stream of the file
+     * @param parking the Parking to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeParking(DataOutputStream output, Parking parking) throws IOException {
+        //the fields are read once, they can change while the snapshot is written
+        String name = parking.getName();
+        Integer openHour = parking.getOpenHour();
+        Integer closeHour = parking.getCloseHour();
+        Integer totalPlaces = parking.getTotalPlaces();
+        Integer freePlaces = parking.getFreePlaces();
+        Double latitude = parking.getLatitude();
+        Double longitude = parking.getLongitude();
+        int daysOpen = parking.getDaysMask();
+        int mask = (name != null ? HAS_NAME : 0)
+                | (openHour != null ? HAS_OPEN_HOUR : 0)
+                | (closeHour != null ? HAS_CLOSE_HOUR : 0)
+                | (totalPlaces != null ? HAS_TOTAL_PLACES : 0)
+                | (freePlaces != null ? HAS_FREE_PLACES : 0)
+                | (latitude != null ? HAS_LATITUDE : 0)
+                | (longitude != null ? HAS_LONGITUDE : 0)
+                | (daysOpen >= 0 ? HAS_DAYS_OPEN : 0);
+        output.writeInt(parking.getId());
+        output.writeByte(mask);
+        if (name != null) {
+            byte[] bytes = name.getBytes(UTF_8);
+            if (bytes.length > 0xffff)
+                throw new IOException("The name of the Parking " + parking.getId() + " is too long");
+            output.writeShort(bytes.length);
+            output.write(bytes);
+        }
+        if (openHour != null)
+            output.writeByte(openHour);
+        if (closeHour != null)
+            output.writeByte(closeHour);
+        if (totalPlaces != null)
+            output.writeInt(totalPlaces);
+        if (freePlaces != null)
+            output.writeInt(freePlaces);
+        if (latitude != null)
+            output.writeDouble(latitude);
+        if (longitude != null)
+            output.writeDouble(longitude);
+        if (daysOpen >= 0)
+            output.writeByte(daysOpen);
+    }
+
+    /**
+     * Reads a Parking
+     *
+     * @param buffer the mapped file, positioned at the Parking
+     * @return the Parking read
+     */
+    private static Parking readParking(MappedByteBuffer buffer) {
+        Parking parking = new Parking();
+        parking.setId(buffer.getInt());
+        int mask = buffer.get() & 0xff;
+        if ((mask & HAS_NAME) != 0) {
+            byte[] bytes = new byte[buffer.getShort() & 0xffff];
+            buffer.get(bytes);
+            parking.setName(new String(bytes, UTF_8));
+        }
+        if ((mask & HAS_OPEN_HOUR) != 0)
+            parking.setOpenHour((int) buffer.get());
+        if ((mask & HAS_CLOSE_HOUR) != 0)
+            parking.setCloseHour((int) buffer.get());
+        if ((mask & HAS_TOTAL_PLACES) != 0)
+            parking.setTotalPlaces(buffer.getInt());
+        if ((mask & HAS_FREE_PLACES) != 0)
+            parking.setFreePlaces(buffer.getInt());
+        if ((mask & HAS_LATITUDE) != 0)
+            parking.setLatitude(buffer.getDouble());
+        if ((mask & HAS_LONGITUDE) != 0)
+            parking.setLongitude(buffer.getDouble());
+        parking.setDaysMask((mask & HAS_DAYS_OPEN) != 0 ? buffer.get() & 0xff : -1);
+        return parking;
+    }
+}
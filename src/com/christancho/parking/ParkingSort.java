@@ -0,0 +1,80 @@
+package com.christancho.parking;
+
+/**
+ * Enum that represents the orders available for the search results
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public enum ParkingSort {
+
+    /**
+     * Ascending ParkingId, used to paginate when no order is requested
+     */
+    ID('i', "id"),
+    /**
+     * Ascending distance to the center of the search, it needs latitude and longitude
+     */
+    DISTANCE('d', "distance"),
+    /**
+     * Descending number of free places
+     */
+    FREE_PLACES('f', "freePlaces");
+
+    /**
+     * Character that identifies the order in the cursors
+     */
+    private final char code;
+    /**
+     * Name of the order in the API
+     */
+    private final String parameter;
+
+    /**
+     * Creates a new instance of ParkingSort
+     *
+     * @param code      character that identifies the order in the cursors
+     * @param parameter name of the order in the API
+     */
+    ParkingSort(char code, String parameter) {
+        this.code = code;
+        this.parameter = parameter;
+    }
+
+    /**
+     * Get the value of code
+     *
+     * @return the value of code
+     */
+    public char getCode() {
+        return code;
+    }
+
+    /**
+     * Get the value of parameter
+     *
+     * @return the value of parameter
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Obtains the order for a name of the API
+     *
+     * @param parameter the name of the order, it can be null
+     * @return the order, null if the parameter is null
+     */
+    public static ParkingSort fromParameter(String parameter) {
+        if (parameter == null)
+            return null;
+        for (ParkingSort sort : values()) {
+            if (sort.parameter.equalsIgnoreCase(parameter))
+                return sort;
+        }
+        throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                ParkingException.DESC_INVALID_VALUE,
+                "Invalid sort parameter '" + parameter + "'");
+    }
+}
@@ -0,0 +1,420 @@
+package com.christancho.parking;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Storage of the Parkings of the ParkingCentral by id and by slot.
+ * <p/>
+ * The slot is the compact internal position of a Parking used by the bitset indexes. The ids are found
+ * with an open addressing table of primitive ints (id to slot), so a lookup never boxes the id and the
+ * table costs a few bytes per Parking instead of a node of a HashMap.
+ * <p/>
+ * The new ids are given by a ParkingIdAllocator, so they are dense and never collide with the ids stored.
+ * <p/>
+ * The values of the slots are kept by the subclasses: ParkingObjectStore keeps a Parking per slot and
+ * ParkingColumnStore keeps the values in primitive columns. The occupancy and the versions are modified
+ * by slot, and the reads that need a Parking get it with getBySlot.
+ * <p/>
+ * The reads never lock. The writes (add, edit and remove) have to be serialized by the caller, the
+ * ParkingCentral does it with its write lock
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+abstract class ParkingStore {
+
+    /**
+     * Value of a position of the table never used, the probing stops there
+     */
+    private static final int EMPTY = -1;
+    /**
+     * Value of a position of the table whose id was removed, the probing continues
+     */
+    private static final int REMOVED = -2;
+
+    /**
+     * Sequence of the new ids
+     */
+    private final ParkingIdAllocator idAllocator = new ParkingIdAllocator();
+    /**
+     * Table of ids, replaced by a new one when it is too full
+     */
+    private volatile Table table;
+    /**
+     * Slots released by remove, reused by add
+     */
+    private final Deque<Integer> releasedSlots = new ArrayDeque<Integer>();
+    /**
+     * First slot that has never been used
+     */
+    private volatile int nextSlot;
+    /**
+     * Number of Parkings stored
+     */
+    private volatile int size;
+
+    /**
+     * Creates a new instance of ParkingStore
+     *
+     * @param capacity expected number of Parkings
+     */
+    ParkingStore(int capacity) {
+        this.table = new Table(tableCapacity(capacity));
+    }
+
+    /**
+     * Gets the Parking of an id
+     *
+     * @param id the id of the Parking
+     * @return the Parking, null if it is not stored
+     */
+    Parking get(int id) {
+        int slot = slotOf(id);
+        if (slot < 0)
+            return null;
+        //the slot can be reused meanwhile, the Parking of the slot confirms the id
+        Parking parking = getBySlot(slot);
+        return parking != null && parking.getId() == id ? parking : null;
+    }
+
+    /**
+     * Gets the slot of an id
+     *
+     * @param id the id of the Parking
+     * @return the slot, -1 if the id is not stored
+     */
+    int slotOf(int id) {
+        Table actual = table;
+        int last = actual.keys.length() - 1;
+        for (int index = hash(id) & last; ; index = (index + 1) & last) {
+            //the slot is written after the id, so a slot read here always has its id written
+            int slot = actual.slots.get(index);
+            if (slot == EMPTY)
+                return -1;
+            if (slot >= 0 && actual.keys.get(index) == id)
+                return slot;
+        }
+    }
+
+    /**
+     * Gives a new id for a Parking, never stored before
+     *
+     * @return the id
+     */
+    int allocateId() {
+        return idAllocator.allocate();
+    }
+
+    /**
+     * Stores a Parking with its id, assigning it a slot. The id must not be stored
+     *
+     * @param parking the parking to store
+     * @return the slot of the Parking
+     */
+    int add(Parking parking) {
+        int slot = assignSlot();
+        store(slot, parking);
+        //the ids restored from outside the sequence are never allocated again
+        idAllocator.reserve(parking.getId());
+        Table actual = table;
+        if ((actual.used + 1) * 2 > actual.keys.length()) {
+            //the removed positions are dropped when the table is copied
+            actual = rehash(actual, tableCapacity(size + 1));
+            table = actual;
+        }
+        int id = parking.getId();
+        int last = actual.keys.length() - 1;
+        int index = hash(id) & last;
+        while (actual.slots.get(index) >= 0) {
+            index = (index + 1) & last;
+        }
+        if (actual.slots.get(index) == EMPTY)
+            actual.used++;
+        actual.keys.set(index, id);
+        actual.slots.set(index, slot);
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes the Parking of an id, releasing its slot
+     *
+     * @param id the id of the Parking
+     * @return the Parking removed, null if it is not stored
+     */
+    Parking remove(int id) {
+        Table actual = table;
+        int last = actual.keys.length() - 1;
+        for (int index = hash(id) & last; ; index = (index + 1) & last) {
+            int slot = actual.slots.get(index);
+            if (slot == EMPTY)
+                return null;
+            if (slot >= 0 && actual.keys.get(index) == id) {
+                actual.slots.set(index, REMOVED);
+                Parking parking = getBySlot(slot);
+                clear(slot);
+                parking.setSlot(-1);
+                releasedSlots.push(slot);
+                size--;
+                return parking;
+            }
+        }
+    }
+
+    /**
+     * Get the number of Parkings stored
+     *
+     * @return the value of size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the first slot never used, all the slots used are lower
+     *
+     * @return the value of nextSlot
+     */
+    int getSlotLimit() {
+        return nextSlot;
+    }
+
+    /**
+     * Assigns a slot to a new Parking, reusing the slots released
+     *
+     * @return the slot
+     */
+    private int assignSlot() {
+        if (!releasedSlots.isEmpty())
+            return releasedSlots.pop();
+        int slot = nextSlot;
+        ensureCapacity(slot + 1);
+        nextSlot = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Makes room for the values of a number of slots, called before a slot is used the first time
+     *
+     * @param slotCount number of slots
+     */
+    abstract void ensureCapacity(int slotCount);
+
+    /**
+     * Stores the values of a Parking in a slot, before the slot is published with its id
+     *
+     * @param slot    the slot
+     * @param parking the parking with the values
+     */
+    abstract void store(int slot, Parking parking);
+
+    /**
+     * Releases the values of a slot, after the id of the slot is removed
+     *
+     * @param slot the slot
+     */
+    abstract void clear(int slot);
+
+    /**
+     * Gets the Parking of a slot
+     *
+     * @param slot the slot
+     * @return the Parking, null if the slot is free
+     */
+    abstract Parking getBySlot(int slot);
+
+    /**
+     * Copies the defined values of a Parking into a slot, except the id and the free places
+     *
+     * @param slot   the slot
+     * @param values the parking with the new values
+     */
+    abstract void edit(int slot, Parking values);
+
+    /**
+     * Fill one place in the Parking of a slot, like Parking.takePlace
+     *
+     * @param slot the slot
+     * @param id   the id of the Parking, if the slot has another id the Parking was removed
+     * @return number of free places after filling the place
+     */
+    abstract int takePlace(int slot, int id);
+
+    /**
+     * Free one place in the Parking of a slot, like Parking.releasePlace
+     *
+     * @param slot the slot
+     * @param id   the id of the Parking, if the slot has another id the Parking was removed
+     * @return number of free places after freeing the place
+     */
+    abstract int releasePlace(int slot, int id);
+
+    /**
+     * Fill or free several places at once in the Parking of a slot, like Parking.changePlaces
+     *
+     * @param slot  the slot
+     * @param id    the id of the Parking, if the slot has another id the Parking was removed
+     * @param delta number of places to fill, negative to free places
+     * @return number of free places after the change
+     */
+    abstract int changePlaces(int slot, int id, int delta);
+
+    /**
+     * Advances the version of the Parking of a slot, like Parking.advanceVersion
+     *
+     * @param slot       the slot
+     * @param id         the id of the Parking, nothing is advanced if the slot has another id
+     * @param newVersion the new version
+     */
+    abstract void advanceVersion(int slot, int id, long newVersion);
+
+    /**
+     * Get the total places of a slot
+     *
+     * @param slot the slot
+     * @return the total places, Parking.UNDEFINED if they are not defined or the slot is free
+     */
+    abstract int getTotalPlaces(int slot);
+
+    /**
+     * Get the free places of a slot
+     *
+     * @param slot the slot
+     * @return the free places, Parking.UNDEFINED if they are not defined or the slot is free
+     */
+    abstract int getFreePlaces(int slot);
+
+    /**
+     * Get the latitude of a slot
+     *
+     * @param slot the slot
+     * @return the latitude, NaN if it is not defined
+     */
+    abstract double getLatitude(int slot);
+
+    /**
+     * Get the longitude of a slot
+     *
+     * @param slot the slot
+     * @return the longitude, NaN if it is not defined
+     */
+    abstract double getLongitude(int slot);
+
+    /**
+     * Ask if the Parking of a slot is located inside a circle, like GeoRadius.contains
+     *
+     * @param radius the circle
+     * @param slot   the slot
+     * @return true if the parking is located inside the circle, false if it has no coordinates
+     */
+    abstract boolean isInsideRadius(GeoRadius radius, int slot);
+
+    /**
+     * Calculates the GeoRadius.distanceKey of the Parking of a slot
+     *
+     * @param center the center of the search
+     * @param slot   the slot
+     * @return the value, Double.MAX_VALUE if the Parking has no coordinates
+     */
+    abstract double distanceKey(GeoRadius center, int slot);
+
+    /**
+     * Ask if the Parking of a slot is full without failing when the places are not defined
+     *
+     * @param slot the slot
+     * @return the value of isFull, null if the places are not defined
+     */
+    Boolean isFull(int slot) {
+        int totalPlaces = getTotalPlaces(slot);
+        int freePlaces = getFreePlaces(slot);
+        if (totalPlaces == Parking.UNDEFINED || freePlaces == Parking.UNDEFINED)
+            return null;
+        return totalPlaces <= freePlaces;
+    }
+
+    /**
+     * Copies the ids of a table into a new one, without the removed positions
+     *
+     * @param actual   the table to copy
+     * @param capacity capacity of the new table
+     * @return the new table
+     */
+    private static Table rehash(Table actual, int capacity) {
+        Table copy = new Table(capacity);
+        int last = capacity - 1;
+        for (int i = 0; i < actual.keys.length(); i++) {
+            int slot = actual.slots.get(i);
+            if (slot < 0)
+                continue;
+            int id = actual.keys.get(i);
+            int index = hash(id) & last;
+            while (copy.slots.get(index) != EMPTY) {
+                index = (index + 1) & last;
+            }
+            copy.keys.set(index, id);
+            copy.slots.set(index, slot);
+            copy.used++;
+        }
+        return copy;
+    }
+
+    /**
+     * Calculates the capacity of a table, a power of two with at least twice the positions of the ids
+     *
+     * @param ids number of ids
+     * @return the capacity
+     */
+    private static int tableCapacity(int ids) {
+        int capacity = 16;
+        while (capacity < ids * 4L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of an id, the consecutive ids would fill consecutive positions otherwise
+     *
+     * @param id the id
+     * @return the hash
+     */
+    private static int hash(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Open addressing table with linear probing, ids in keys and their slots (or EMPTY/REMOVED) in slots
+     */
+    private static class Table {
+
+        /**
+         * Ids of the positions
+         */
+        private final AtomicIntegerArray keys;
+        /**
+         * Slots of the positions, EMPTY or REMOVED when they have no id
+         */
+        private final AtomicIntegerArray slots;
+        /**
+         * Number of positions that are not EMPTY, including the REMOVED ones
+         */
+        private int used;
+
+        /**
+         * Creates a new instance of Table
+         *
+         * @param capacity number of positions, a power of two
+         */
+        Table(int capacity) {
+            keys = new AtomicIntegerArray(capacity);
+            slots = new AtomicIntegerArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                slots.set(i, EMPTY);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.christancho.parking;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Class used to write and read the Parking class directly with a JsonWriter/JsonReader, without building
+ * a JsonObject.
+ * <p/>
+ * It generates and accepts the same Json than ParkingSerializer, with the same error codes
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingTypeAdapter extends TypeAdapter<Parking> {
+
+    @Override
+    public void write(JsonWriter out, Parking parking) throws IOException {
+        if (parking == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeProperty(out, "id", parking.getId());
+        writeProperty(out, "name", parking.getName());
+        writeProperty(out, "openHour", parking.getOpenHour());
+        writeProperty(out, "closeHour", parking.getCloseHour());
+        writeProperty(out, "totalPlaces", parking.getTotalPlaces());
+        writeProperty(out, "freePlaces", parking.getFreePlaces());
+        writeProperty(out, "latitude", parking.getLatitude());
+        writeProperty(out, "longitude", parking.getLongitude());
+        out.name("daysOpen").beginArray();
+        //the days are read from the mask, without building the list
+        int days = parking.getDaysMask();
+        if (days > 0) {
+            for (WeekDay weekDay : WeekDay.values()) {
+                if ((days & (1 << weekDay.ordinal())) != 0)
+                    out.value(weekDay.name());
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public Parking read(JsonReader in) throws IOException {
+        final Parking parking = new Parking();
+        boolean hasDays = false;
+        try {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if ("id".equals(name)) {
+                    parking.setId(in.nextInt());
+                } else if ("name".equals(name)) {
+                    parking.setName(in.nextString());
+                } else if ("openHour".equals(name)) {
+                    parking.setOpenHour(in.nextInt());
+                } else if ("closeHour".equals(name)) {
+                    parking.setCloseHour(in.nextInt());
+                } else if ("totalPlaces".equals(name)) {
+                    parking.setTotalPlaces(in.nextInt());
+                } else if ("freePlaces".equals(name)) {
+                    parking.setFreePlaces(in.nextInt());
+                } else if ("latitude".equals(name)) {
+                    parking.setLatitude(in.nextDouble());
+                } else if ("longitude".equals(name)) {
+                    parking.setLongitude(in.nextDouble());
+                } else if ("daysOpen".equals(name)) {
+                    hasDays = true;
+                    readDays(in, parking);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        } catch (ParkingException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
+                    "Error Parsing Parking JsonObject");
+        }
+        if (!hasDays)
+            parking.setDaysOpen(null);
+        return parking;
+    }
+
+    /**
+     * Reads the array with the days the Parking is open
+     *
+     * @param in      the reader positioned in the array
+     * @param parking the parking where add the days
+     * @throws IOException if the reader fails
+     */
+    private static void readDays(JsonReader in, Parking parking) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            String dayName = in.nextString();
+            WeekDay weekDay = WeekDay.fromName(dayName);
+            if (weekDay == null)
+                throw new ParkingException(ParkingException.CODE_PARSING_JSON,
+                        ParkingException.DESC_INVALID_VALUE,
+                        "Invalid Week Day '" + dayName + "'");
+            parking.addDay(weekDay);
+        }
+        in.endArray();
+    }
+
+    /**
+     * Writes a Number property, the null values are skipped like in JsonObject
+     *
+     * @param out   the writer
+     * @param name  name of the property
+     * @param value value of the property
+     * @throws IOException if the writer fails
+     */
+    private static void writeProperty(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null)
+            out.name(name).value(value);
+    }
+
+    /**
+     * Writes a String property, the null values are skipped like in JsonObject
+     *
+     * @param out   the writer
+     * @param name  name of the property
+     * @param value value of the property
+     * @throws IOException if the writer fails
+     */
+    private static void writeProperty(JsonWriter out, String name, String value) throws IOException {
+        if (value != null)
+            out.name(name).value(value);
+    }
+}
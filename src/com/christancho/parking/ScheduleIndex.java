@@ -0,0 +1,105 @@
+package com.christancho.parking;
+
+/**
+ * Inverted index with the Parkings open at every hour of the week.
+ * <p/>
+ * There is one ConcurrentBitSet for each of the 168 hours of the week, with a bit set for every Parking
+ * slot open at that hour, so "open at date" is a single bitset lookup
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ScheduleIndex {
+
+    /**
+     * Number of hours in a day
+     */
+    public static final int HOURS_PER_DAY = 24;
+    /**
+     * Number of hours in a week
+     */
+    public static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+
+    /**
+     * Bitsets with the Parking slots open at every hour of the week, starting at MONDAY 00h
+     */
+    private final ConcurrentBitSet[] openSlots;
+
+    /**
+     * Creates a new instance of ScheduleIndex
+     */
+    public ScheduleIndex() {
+        openSlots = new ConcurrentBitSet[HOURS_PER_WEEK];
+        for (int i = 0; i < HOURS_PER_WEEK; i++) {
+            openSlots[i] = new ConcurrentBitSet();
+        }
+    }
+
+    /**
+     * Adds the schedule of a Parking. Parkings without days or hours are never open
+     *
+     * @param slot    the slot of the Parking
+     * @param parking the parking to add
+     */
+    public void add(int slot, Parking parking) {
+        int days = parking.getDaysMask();
+        Integer openHour = parking.getOpenHour();
+        Integer closeHour = parking.getCloseHour();
+        if (days <= 0 || openHour == null || closeHour == null)
+            return;
+        int firstHour = Math.max(0, openHour);
+        int lastHour = Math.min(HOURS_PER_DAY, closeHour);
+        for (WeekDay day : WeekDay.values()) {
+            if ((days & (1 << day.ordinal())) == 0)
+                continue;
+            for (int hour = firstHour; hour < lastHour; hour++) {
+                openSlots[hourOfWeek(day, hour)].set(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes the schedule of a Parking slot
+     *
+     * @param slot the slot of the Parking
+     */
+    public void remove(int slot) {
+        for (ConcurrentBitSet bitSet : openSlots) {
+            bitSet.clear(slot);
+        }
+    }
+
+    /**
+     * Replaces the schedule of a Parking slot by the actual values of the Parking
+     *
+     * @param slot    the slot of the Parking
+     * @param parking the parking edited
+     */
+    public void update(int slot, Parking parking) {
+        remove(slot);
+        add(slot, parking);
+    }
+
+    /**
+     * Gets the bitset with the Parking slots open at the selected hour
+     *
+     * @param day  day of the week
+     * @param hour hour of the day, between 0 and 23
+     * @return the bitset with the slots open, it must not be modified
+     */
+    public ConcurrentBitSet getOpenSlots(WeekDay day, int hour) {
+        return openSlots[hourOfWeek(day, hour)];
+    }
+
+    /**
+     * Obtains the position of an hour in the week
+     *
+     * @param day  day of the week
+     * @param hour hour of the day
+     * @return the hour of the week, starting at MONDAY 00h
+     */
+    private static int hourOfWeek(WeekDay day, int hour) {
+        return day.ordinal() * HOURS_PER_DAY + hour;
+    }
+}
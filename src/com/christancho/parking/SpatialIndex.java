@@ -0,0 +1,332 @@
+package com.christancho.parking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-cell grid over latitude/longitude used to find the Parkings close to a point without
+ * evaluating every Parking in the Central.
+ * <p/>
+ * Each cell covers cellSize degrees of latitude and longitude, only the cells with Parkings are stored.
+ * The cells keep the slots of the Parkings and the coordinates are read from the ParkingStore, so the index
+ * works the same with the Parkings kept as objects or as columns.
+ * The index is safe to read while it is modified, the writers must be serialized by the caller.
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+class SpatialIndex {
+
+    /**
+     * Default size of the cells in degrees, around 1.1 Km of latitude
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+    /**
+     * Size of the cells in degrees
+     */
+    private final double cellSize;
+    /**
+     * Number of cells needed to cover all the longitudes
+     */
+    private final int lonCells;
+    /**
+     * Store with the coordinates of the slots
+     */
+    private final ParkingStore store;
+    /**
+     * Map with the slots of every not empty cell, the key is the cell key. The arrays are never modified,
+     * a cell is replaced by a new array when a slot is added or removed
+     */
+    private final ConcurrentHashMap<Long, int[]> cells;
+
+    /**
+     * Creates a new instance of SpatialIndex with the default cell size
+     *
+     * @param store the store with the coordinates of the slots
+     */
+    SpatialIndex(ParkingStore store) {
+        this(store, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates a new instance of SpatialIndex
+     *
+     * @param store    the store with the coordinates of the slots
+     * @param cellSize size of the cells in degrees
+     */
+    SpatialIndex(ParkingStore store, double cellSize) {
+        this.store = store;
+        this.cellSize = cellSize;
+        this.lonCells = (int) Math.ceil(360 / cellSize);
+        this.cells = new ConcurrentHashMap<Long, int[]>();
+    }
+
+    /**
+     * Adds a slot to the cell of its coordinates. Slots without coordinates are not indexed
+     *
+     * @param slot      the slot to add
+     * @param latitude  latitude coordinate of the slot, NaN if it is not defined
+     * @param longitude longitude coordinate of the slot, NaN if it is not defined
+     */
+    void add(int slot, double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude))
+            return;
+        Long key = cellKey(latIndex(latitude), lonIndex(longitude));
+        int[] cell = cells.get(key);
+        int[] grown;
+        if (cell == null) {
+            grown = new int[]{slot};
+        } else {
+            grown = Arrays.copyOf(cell, cell.length + 1);
+            grown[cell.length] = slot;
+        }
+        cells.put(key, grown);
+    }
+
+    /**
+     * Removes a slot from the cell of the specified coordinates
+     *
+     * @param slot      the slot to remove
+     * @param latitude  latitude coordinate used when the slot was added, NaN if it was not defined
+     * @param longitude longitude coordinate used when the slot was added, NaN if it was not defined
+     */
+    void remove(int slot, double latitude, double longitude) {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude))
+            return;
+        Long key = cellKey(latIndex(latitude), lonIndex(longitude));
+        int[] cell = cells.get(key);
+        if (cell == null)
+            return;
+        for (int i = 0; i < cell.length; i++) {
+            if (cell[i] != slot)
+                continue;
+            if (cell.length == 1) {
+                cells.remove(key);
+            } else {
+                int[] shrunk = new int[cell.length - 1];
+                System.arraycopy(cell, 0, shrunk, 0, i);
+                System.arraycopy(cell, i + 1, shrunk, i, shrunk.length - i);
+                cells.put(key, shrunk);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Moves a slot from the cell of its old coordinates to the cell of the actual ones
+     *
+     * @param slot         the slot to move
+     * @param oldLatitude  latitude coordinate used when the slot was added
+     * @param oldLongitude longitude coordinate used when the slot was added
+     * @param latitude     actual latitude coordinate of the slot
+     * @param longitude    actual longitude coordinate of the slot
+     */
+    void move(int slot, double oldLatitude, double oldLongitude, double latitude, double longitude) {
+        remove(slot, oldLatitude, oldLongitude);
+        add(slot, latitude, longitude);
+    }
+
+    /**
+     * Gets the cells that overlap the bounding box of a radius. The cells can contain slots outside the
+     * radius, so they still have to be filtered with ParkingStore.isInsideRadius
+     *
+     * @param radius the circular area to search
+     * @return the list with the cells, arrays of slots that must not be modified
+     */
+    List<int[]> getCandidates(GeoRadius radius) {
+        double latCenter = radius.getLatitude();
+        double lonCenter = radius.getLongitude();
+        int minLat = latIndex(Math.max(-90, latCenter - radius.getLatDelta()));
+        int maxLat = latIndex(Math.min(90, latCenter + radius.getLatDelta()));
+        int minLon;
+        int maxLon;
+        if (radius.getLonDelta() >= 180) {
+            minLon = 0;
+            maxLon = lonCells - 1;
+        } else {
+            minLon = lonIndex(lonCenter - radius.getLonDelta());
+            maxLon = lonIndex(lonCenter + radius.getLonDelta());
+            if (maxLon < minLon)
+                maxLon += lonCells;
+        }
+        List<int[]> candidates = new ArrayList<int[]>();
+        long cellsToVisit = (long) (maxLat - minLat + 1) * (maxLon - minLon + 1);
+        if (cellsToVisit > cells.size()) {
+            //big radius, it is cheaper to check the cells that are not empty
+            for (Map.Entry<Long, int[]> entry : cells.entrySet()) {
+                int lat = (int) (entry.getKey() >> 32);
+                int lon = (int) (long) entry.getKey();
+                if (lat >= minLat && lat <= maxLat
+                        && ((lon >= minLon && lon <= maxLon) || (lon + lonCells >= minLon && lon + lonCells <= maxLon)))
+                    candidates.add(entry.getValue());
+            }
+            return candidates;
+        }
+        for (int lat = minLat; lat <= maxLat; lat++) {
+            for (int lon = minLon; lon <= maxLon; lon++) {
+                int[] cell = cells.get(cellKey(lat, lon % lonCells));
+                if (cell != null)
+                    candidates.add(cell);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the k Parkings closest to the center of a radius, visiting the cells in rings around the cell
+     * of the center. The search stops as soon as no cell outside the visited rings can contain a Parking
+     * closer than the k found, or scans the not empty cells if the rings would visit more cells than exist
+     *
+     * @param center the center of the search, its radius is ignored
+     * @param k      number of Parkings to find
+     * @param mask   words with the slots of the Parkings that qualify, null to accept all of them
+     * @return the slots of at most k Parkings, from the closest to the farthest
+     */
+    int[] getNearest(GeoRadius center, int k, long[] mask) {
+        PriorityQueue<Neighbor> nearest = new PriorityQueue<Neighbor>(Math.min(k, 1024) + 1, FARTHEST_FIRST);
+        int centerLat = latIndex(center.getLatitude());
+        int centerLon = lonIndex(center.getLongitude());
+        int maxLatIndex = latIndex(90);
+        double cosLatitude = Math.cos(Math.toRadians(center.getLatitude()));
+        long visited = 0;
+        for (int ring = 0; ; ring++) {
+            if (2 * ring + 1 > lonCells || visited > cells.size()) {
+                //the rings are more expensive than checking all the cells that are not empty
+                nearest.clear();
+                for (int[] cell : cells.values()) {
+                    offer(nearest, cell, center, k, mask);
+                }
+                break;
+            }
+            for (int lat = centerLat - ring; lat <= centerLat + ring; lat++) {
+                if (lat < 0 || lat > maxLatIndex)
+                    continue;
+                //the first and last rows of the ring are complete, the others only have the two sides
+                int step = lat == centerLat - ring || lat == centerLat + ring ? 1 : Math.max(1, 2 * ring);
+                for (int lon = centerLon - ring; lon <= centerLon + ring; lon += step) {
+                    visited++;
+                    int[] cell = cells.get(cellKey(lat, ((lon % lonCells) + lonCells) % lonCells));
+                    if (cell != null)
+                        offer(nearest, cell, center, k, mask);
+                }
+            }
+            if (centerLat - ring <= 0 && centerLat + ring >= maxLatIndex && 2 * ring + 1 >= lonCells)
+                break;
+            if (nearest.size() == k) {
+                //the cells outside the ring are at least ring cells away in latitude or in longitude
+                double gap = Math.toRadians(ring * cellSize);
+                double lonGap = Math.asin(Math.min(1, cosLatitude * Math.sin(Math.min(gap, Math.PI / 2))));
+                if (nearest.peek().key <= center.angleKey(Math.min(gap, lonGap)))
+                    break;
+            }
+        }
+        Neighbor[] sorted = nearest.toArray(new Neighbor[nearest.size()]);
+        Arrays.sort(sorted, Collections.reverseOrder(FARTHEST_FIRST));
+        int[] result = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            result[i] = sorted[i].slot;
+        }
+        return result;
+    }
+
+    /**
+     * Offers the slots of a cell to the k nearest found
+     *
+     * @param nearest the nearest slots found, the head is the farthest
+     * @param cell    the slots of the cell
+     * @param center  the center of the search
+     * @param k       number of Parkings to find
+     * @param mask    words with the slots of the Parkings that qualify, null to accept all of them
+     */
+    private void offer(PriorityQueue<Neighbor> nearest, int[] cell, GeoRadius center, int k, long[] mask) {
+        for (int slot : cell) {
+            if (mask != null && !ConcurrentBitSet.isSet(mask, slot))
+                continue;
+            double key = store.distanceKey(center, slot);
+            //a slot released after the cell was read has no coordinates
+            if (key == Double.MAX_VALUE)
+                continue;
+            if (nearest.size() < k) {
+                nearest.add(new Neighbor(key, slot));
+            } else if (key < nearest.peek().key) {
+                nearest.poll();
+                nearest.add(new Neighbor(key, slot));
+            }
+        }
+    }
+
+    /**
+     * Obtains the row of cells for a latitude
+     *
+     * @param latitude the latitude to evaluate
+     * @return the row index
+     */
+    private int latIndex(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellSize);
+    }
+
+    /**
+     * Obtains the column of cells for a longitude, normalized between 0 and lonCells - 1
+     *
+     * @param longitude the longitude to evaluate
+     * @return the column index
+     */
+    private int lonIndex(double longitude) {
+        int index = (int) Math.floor((longitude + 180) / cellSize) % lonCells;
+        return index < 0 ? index + lonCells : index;
+    }
+
+    /**
+     * Orders the neighbors from the farthest to the closest
+     */
+    private static final Comparator<Neighbor> FARTHEST_FIRST = new Comparator<Neighbor>() {
+        @Override
+        public int compare(Neighbor first, Neighbor second) {
+            return Double.compare(second.key, first.key);
+        }
+    };
+
+    /**
+     * Builds the key of a cell
+     *
+     * @param latIndex row of the cell
+     * @param lonIndex column of the cell
+     * @return the key for the cells Map
+     */
+    private static Long cellKey(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    /**
+     * Slot found by getNearest with its distance to the center
+     */
+    private static class Neighbor {
+
+        /**
+         * Value of GeoRadius.distanceKey for the Parking of the slot
+         */
+        private final double key;
+        /**
+         * The slot
+         */
+        private final int slot;
+
+        /**
+         * Creates a new instance of Neighbor
+         *
+         * @param key  value of GeoRadius.distanceKey for the Parking of the slot
+         * @param slot the slot
+         */
+        Neighbor(double key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+}
@@ -19,6 +19,26 @@ public enum WeekDay {
     SATURDAY,
     SUNDAY;
 
+    /**
+     * Cached copy of values(), that creates a new array in every call
+     */
+    private static final WeekDay[] VALUES = values();
+
+    /**
+     * Obtains the WeekDay with the specified name, ignoring the case and without creating new Strings
+     *
+     * @param name the name of the day
+     * @return the WeekDay with the name, null if there is no day with that name
+     */
+    public static WeekDay fromName(String name) {
+        for (WeekDay day : VALUES) {
+            String dayName = day.name();
+            if (dayName.length() == name.length() && dayName.regionMatches(true, 0, name, 0, name.length()))
+                return day;
+        }
+        return null;
+    }
+
     /**
      * Obtains the valid WeekDay for a specified date
      *
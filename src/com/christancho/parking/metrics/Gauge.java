@@ -0,0 +1,18 @@
+package com.christancho.parking.metrics;
+
+/**
+ * Value sampled when the metrics are read, like the number of Parkings of the central
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public interface Gauge {
+
+    /**
+     * Reads the actual value
+     *
+     * @return the value
+     */
+    double getValue();
+}
@@ -0,0 +1,179 @@
+package com.christancho.parking.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded without locks.
+ * <p/>
+ * The values are counted in buckets with a logarithmic scale: every power of two is divided in 32 linear
+ * buckets, so a percentile is known with an error lower than 3% at any scale, from nanoseconds to minutes,
+ * with a fixed array of counters. Recording a value is an increment of its bucket and of the totals, so
+ * many threads can record at the same time and the readers see the values recorded until then
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class LatencyHistogram {
+
+    /**
+     * Bits of the linear buckets of each power of two
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Highest value counted in its own bucket, about 18 minutes. The higher values go to the last bucket
+     */
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    /**
+     * Number of buckets to count from 0 to MAX_VALUE
+     */
+    private static final int BUCKETS = bucket(MAX_VALUE) + 1;
+
+    /**
+     * Number of values of each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of values recorded
+     */
+    private final AtomicLong count = new AtomicLong();
+    /**
+     * Sum of the values recorded
+     */
+    private final AtomicLong sum = new AtomicLong();
+    /**
+     * Highest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency
+     *
+     * @param nanos the latency in nanoseconds, the negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        //the count is incremented before the bucket, so a reader that reads the buckets and then the count never
+        //sees a count lower than the sum of the buckets
+        count.incrementAndGet();
+        counts.incrementAndGet(bucket(Math.min(value, MAX_VALUE)));
+        sum.addAndGet(value);
+        while (true) {
+            long actual = max.get();
+            if (value <= actual || max.compareAndSet(actual, value))
+                break;
+        }
+    }
+
+    /**
+     * Get the number of values recorded
+     *
+     * @return the value of count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the sum of the values recorded, in nanoseconds
+     *
+     * @return the value of sum
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Get the highest value recorded, in nanoseconds
+     *
+     * @return the value of max
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the average of the values recorded
+     *
+     * @return the average in nanoseconds, 0 without values
+     */
+    public double getMean() {
+        long values = count.get();
+        return values == 0 ? 0 : (double) sum.get() / values;
+    }
+
+    /**
+     * Gets the value below which a percentage of the values recorded are
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return the highest value of the bucket of the percentile in nanoseconds, never higher than the max.
+     * 0 without values
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank))
+                return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the number of values recorded lower or equal than a value, with the precision of the buckets
+     *
+     * @param nanos the value in nanoseconds
+     * @return the number of values of the buckets whose highest value is lower or equal
+     */
+    public long getCountAtOrBelow(long nanos) {
+        if (nanos < 0)
+            return 0;
+        int last = bucket(Math.min(nanos, MAX_VALUE));
+        if (nanos < MAX_VALUE && highestValue(last) > nanos)
+            last--;
+        long values = 0;
+        for (int i = 0; i <= last; i++) {
+            values += counts.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Calculates the bucket of a value
+     *
+     * @param value the value, from 0 to MAX_VALUE
+     * @return the bucket
+     */
+    private static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        //the highest bits of the value select the bucket inside its power of two
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Calculates the highest value of a bucket
+     *
+     * @param bucket the bucket
+     * @return the value
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.christancho.parking.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of an operation of the service: requests, errors by code and latencies.
+ * <p/>
+ * Every value is recorded with atomic increments, so the requests never wait for each other or for the
+ * scrapes that read the metrics
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class OperationMetrics {
+
+    /**
+     * Name of the operation
+     */
+    private final String name;
+    /**
+     * Number of requests finished
+     */
+    private final AtomicLong requests = new AtomicLong();
+    /**
+     * Number of errors by code, the codes are added the first time they happen
+     */
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+    /**
+     * Latencies of the requests
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Creates a new instance of OperationMetrics
+     *
+     * @param name name of the operation
+     */
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a request finished
+     *
+     * @param nanos latency of the request in nanoseconds
+     */
+    public void record(long nanos) {
+        requests.incrementAndGet();
+        latency.record(nanos);
+    }
+
+    /**
+     * Records an error of a request
+     *
+     * @param code code of the error
+     */
+    public void error(String code) {
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(code, created);
+            if (counter == null)
+                counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Get the value of name
+     *
+     * @return the value of name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of requests finished
+     *
+     * @return the value of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Get the number of errors by code
+     *
+     * @return the value of errors
+     */
+    public Map<String, AtomicLong> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Get the latencies of the requests
+     *
+     * @return the value of latency
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,234 @@
+package com.christancho.parking.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the metrics of the service, written in the text format of Prometheus.
+ * <p/>
+ * It has the OperationMetrics of every operation, the sizes of the search results and the gauges sampled
+ * at every read (Parkings, places, executor, journal...). Recording never locks, the operations are
+ * created once and found without locks after that; only the scrapes iterate the metrics
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingMetrics {
+
+    /**
+     * Content type of the text format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * Prefix of the names of the metrics
+     */
+    private static final String PREFIX = "parking_";
+    /**
+     * Upper bounds of the buckets of the latencies, in seconds
+     */
+    private static final double[] LATENCY_BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025,
+            0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    /**
+     * Upper bounds of the buckets of the sizes of the search results
+     */
+    private static final long[] RESULT_BUCKETS = {0, 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000,
+            100000};
+
+    /**
+     * Singleton instance
+     */
+    private static final ParkingMetrics instance = new ParkingMetrics();
+
+    /**
+     * Metrics of the operations by name
+     */
+    private final ConcurrentMap<String, OperationMetrics> operations =
+            new ConcurrentSkipListMap<String, OperationMetrics>();
+    /**
+     * Number of Parkings of the search results. The histogram counts any non negative value, here Parkings
+     */
+    private final LatencyHistogram searchResults = new LatencyHistogram();
+    /**
+     * Gauges and counters sampled at every read, by name
+     */
+    private final ConcurrentMap<String, Sample> samples = new ConcurrentSkipListMap<String, Sample>();
+
+    /**
+     * Obtain the instance used by the service
+     *
+     * @return the instance
+     */
+    public static ParkingMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the metrics of an operation, creating them the first time
+     *
+     * @param name name of the operation
+     * @return the metrics
+     */
+    public OperationMetrics getOperation(String name) {
+        OperationMetrics operation = operations.get(name);
+        if (operation == null) {
+            OperationMetrics created = new OperationMetrics(name);
+            operation = operations.putIfAbsent(name, created);
+            if (operation == null)
+                operation = created;
+        }
+        return operation;
+    }
+
+    /**
+     * Get the histogram of the number of Parkings of the search results
+     *
+     * @return the value of searchResults
+     */
+    public LatencyHistogram getSearchResults() {
+        return searchResults;
+    }
+
+    /**
+     * Adds a gauge, replacing the gauge with the same name
+     *
+     * @param name  name of the metric, without the prefix
+     * @param help  description of the metric
+     * @param gauge the value
+     */
+    public void addGauge(String name, String help, Gauge gauge) {
+        samples.put(name, new Sample("gauge", help, gauge));
+    }
+
+    /**
+     * Adds a counter read from another class, replacing the one with the same name
+     *
+     * @param name    name of the metric, without the prefix
+     * @param help    description of the metric
+     * @param counter the value, it never decreases
+     */
+    public void addCounter(String name, String help, Gauge counter) {
+        samples.put(name, new Sample("counter", help, counter));
+    }
+
+    /**
+     * Writes all the metrics in the text format of Prometheus
+     *
+     * @param out where the metrics are written
+     * @throws IOException if the writer fails
+     */
+    public void write(Writer out) throws IOException {
+        header(out, "requests_total", "counter", "Requests finished by operation");
+        for (OperationMetrics operation : operations.values()) {
+            out.write(PREFIX + "requests_total{operation=\"" + operation.getName() + "\"} "
+                    + operation.getRequests() + "\n");
+        }
+        header(out, "errors_total", "counter",
+                "Errors by operation and code, the ParkingException code or the HTTP status");
+        for (OperationMetrics operation : operations.values()) {
+            for (Map.Entry<String, AtomicLong> error : operation.getErrors().entrySet()) {
+                out.write(PREFIX + "errors_total{operation=\"" + operation.getName() + "\",code=\""
+                        + error.getKey() + "\"} " + error.getValue().get() + "\n");
+            }
+        }
+        header(out, "request_duration_seconds", "histogram", "Latency of the requests by operation");
+        for (OperationMetrics operation : operations.values()) {
+            LatencyHistogram latency = operation.getLatency();
+            String labels = "operation=\"" + operation.getName() + "\",";
+            for (double bucket : LATENCY_BUCKETS) {
+                out.write(PREFIX + "request_duration_seconds_bucket{" + labels + "le=\"" + format(bucket) + "\"} "
+                        + latency.getCountAtOrBelow((long) (bucket * 1e9)) + "\n");
+            }
+            //the count is read after the buckets and recorded before them, so the last bucket is never lower than
+            //the others
+            long count = latency.getCount();
+            out.write(PREFIX + "request_duration_seconds_bucket{" + labels + "le=\"+Inf\"} " + count + "\n");
+            out.write(PREFIX + "request_duration_seconds_sum{operation=\"" + operation.getName() + "\"} "
+                    + format(latency.getSum() / 1e9) + "\n");
+            out.write(PREFIX + "request_duration_seconds_count{operation=\"" + operation.getName() + "\"} "
+                    + count + "\n");
+        }
+        header(out, "search_results", "histogram", "Number of Parkings that match the searches");
+        for (long bucket : RESULT_BUCKETS) {
+            out.write(PREFIX + "search_results_bucket{le=\"" + bucket + "\"} "
+                    + searchResults.getCountAtOrBelow(bucket) + "\n");
+        }
+        long searches = searchResults.getCount();
+        out.write(PREFIX + "search_results_bucket{le=\"+Inf\"} " + searches + "\n");
+        out.write(PREFIX + "search_results_sum " + searchResults.getSum() + "\n");
+        out.write(PREFIX + "search_results_count " + searches + "\n");
+        for (Map.Entry<String, Sample> entry : samples.entrySet()) {
+            Sample sample = entry.getValue();
+            header(out, entry.getKey(), sample.type, sample.help);
+            out.write(PREFIX + entry.getKey() + " " + format(sample.gauge.getValue()) + "\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric
+     *
+     * @param out  where the lines are written
+     * @param name name of the metric, without the prefix
+     * @param type type of the metric
+     * @param help description of the metric
+     * @throws IOException if the writer fails
+     */
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    /**
+     * Formats a value, the integers without decimals
+     *
+     * @param value the value
+     * @return the text of the value
+     */
+    private static String format(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long) value);
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    /**
+     * Gauge or counter sampled at every read
+     */
+    private static class Sample {
+
+        /**
+         * Type of the metric, gauge or counter
+         */
+        private final String type;
+        /**
+         * Description of the metric
+         */
+        private final String help;
+        /**
+         * The value
+         */
+        private final Gauge gauge;
+
+        /**
+         * Creates a new instance of Sample
+         *
+         * @param type  type of the metric
+         * @param help  description of the metric
+         * @param gauge the value
+         */
+        Sample(String type, String help, Gauge gauge) {
+            this.type = type;
+            this.help = help;
+            this.gauge = gauge;
+        }
+    }
+}
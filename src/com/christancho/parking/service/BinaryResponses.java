@@ -0,0 +1,160 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.OccupancyBatch;
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingBinaryWriter;
+import com.christancho.parking.ParkingException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Class that builds the responses of the ParkingAPI in the binary format of the ParkingBinaryWriter, for the
+ * clients that send it in the Accept header. The responses are the same than the JsonResponses ones
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class BinaryResponses {
+
+    /**
+     * Utility class, it can't be instantiated
+     */
+    private BinaryResponses() {
+    }
+
+    /**
+     * Ask if the binary format is the one preferred by an Accept header. It has to be listed, and the
+     * Json can't have a higher quality, so the Json is still the response of the clients that don't ask
+     *
+     * @param accept the value of the Accept header, it can be null
+     * @return true to answer in the binary format
+     */
+    public static boolean accepts(String accept) {
+        if (accept == null || !accept.contains(ParkingBinaryWriter.MEDIA_TYPE))
+            return false;
+        double binary = 0;
+        double json = 0;
+        for (String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+            String type = parameters[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException ex) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (ParkingBinaryWriter.MEDIA_TYPE.equals(type))
+                binary = Math.max(binary, quality);
+            else if ("application/json".equals(type) || "application/*".equals(type) || "*/*".equals(type))
+                json = Math.max(json, quality);
+        }
+        return binary > 0 && binary >= json;
+    }
+
+    /**
+     * Builds the response with a Parking
+     *
+     * @param parking the parking to write
+     * @return the StreamingOutput that writes it
+     */
+    public static StreamingOutput parking(final Parking parking) {
+        return new BinaryStreamingOutput() {
+            @Override
+            protected void write(ParkingBinaryWriter writer) throws IOException {
+                writer.writeParking(parking);
+            }
+        };
+    }
+
+    /**
+     * Builds the response with a Parking List
+     *
+     * @param parkings the parkings to write
+     * @return the StreamingOutput that writes them
+     */
+    public static StreamingOutput parkings(final List<Parking> parkings) {
+        return new BinaryStreamingOutput() {
+            @Override
+            protected void write(ParkingBinaryWriter writer) throws IOException {
+                writer.writeParkings(parkings);
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the number of free places in a Parking
+     *
+     * @param freePlaces number of free places
+     * @return the StreamingOutput that writes it
+     */
+    public static StreamingOutput freePlaces(final int freePlaces) {
+        return new BinaryStreamingOutput() {
+            @Override
+            protected void write(ParkingBinaryWriter writer) throws IOException {
+                writer.writeFreePlaces(freePlaces);
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the results of a batch of occupancy events, in the order of the events
+     *
+     * @param batch the batch already applied
+     * @return the StreamingOutput that writes it
+     */
+    public static StreamingOutput occupancy(final OccupancyBatch batch) {
+        return new BinaryStreamingOutput() {
+            @Override
+            protected void write(ParkingBinaryWriter writer) throws IOException {
+                writer.writeOccupancy(batch);
+            }
+        };
+    }
+
+    /**
+     * Builds the response with a ParkingException, recording the error in the metrics of the request
+     *
+     * @param exception the exception to write
+     * @return the StreamingOutput that writes it
+     */
+    public static StreamingOutput error(final ParkingException exception) {
+        MetricsFilter.error(exception);
+        return new BinaryStreamingOutput() {
+            @Override
+            protected void write(ParkingBinaryWriter writer) throws IOException {
+                writer.writeError(exception);
+            }
+        };
+    }
+
+    /**
+     * StreamingOutput that writes the binary format into the response OutputStream
+     */
+    private abstract static class BinaryStreamingOutput implements StreamingOutput {
+
+        @Override
+        public void write(OutputStream output) throws IOException, WebApplicationException {
+            ParkingBinaryWriter writer = new ParkingBinaryWriter(output);
+            write(writer);
+            writer.flush();
+        }
+
+        /**
+         * Writes the content of the response
+         *
+         * @param writer the writer of the response
+         * @throws IOException if the stream fails
+         */
+        protected abstract void write(ParkingBinaryWriter writer) throws IOException;
+    }
+}
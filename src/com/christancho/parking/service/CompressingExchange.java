@@ -0,0 +1,370 @@
+package com.christancho.parking.service;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * HttpExchange given by the CompressionFilter to the resources. It decides when the status is sent if the
+ * response is compressed, and for the responses of unknown length it keeps the first bytes until the
+ * threshold before deciding. Everything else is done by the original exchange
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+class CompressingExchange extends HttpExchange {
+
+    /**
+     * The response body is not started, the status is not sent
+     */
+    private static final int PENDING = 0;
+    /**
+     * The status is not sent yet, the body is kept until the threshold
+     */
+    private static final int BUFFERING = 1;
+    /**
+     * The body is written as it is into the original exchange
+     */
+    private static final int DIRECT = 2;
+    /**
+     * The body is compressed into the original exchange
+     */
+    private static final int COMPRESSING = 3;
+    /**
+     * The response is finished
+     */
+    private static final int CLOSED = 4;
+
+    /**
+     * The original exchange
+     */
+    private final HttpExchange exchange;
+    /**
+     * The filter, with the threshold and the pool of GzipOutput
+     */
+    private final CompressionFilter filter;
+    /**
+     * If-None-Match sent by the client, with the suffixes of the compressed ETags
+     */
+    private final String ifNoneMatch;
+    /**
+     * Headers of the request, without the suffixes of the compressed ETags in If-None-Match
+     */
+    private final Headers requestHeaders;
+    /**
+     * Stream of the response given to the resources
+     */
+    private final ResponseBody responseBody = new ResponseBody();
+    /**
+     * State of the response body
+     */
+    private int state = PENDING;
+    /**
+     * Status of the response while it is buffered
+     */
+    private int status;
+    /**
+     * First bytes of the response while it is buffered
+     */
+    private byte[] buffer;
+    /**
+     * Number of bytes in the buffer
+     */
+    private int buffered;
+    /**
+     * Stream that compresses the response, taken from the pool of the filter
+     */
+    private GzipOutput gzip;
+
+    /**
+     * Creates a new instance of CompressingExchange
+     *
+     * @param exchange the original exchange
+     * @param filter   the filter, with the threshold and the pool of GzipOutput
+     */
+    CompressingExchange(HttpExchange exchange, CompressionFilter filter) {
+        this.exchange = exchange;
+        this.filter = filter;
+        Headers headers = exchange.getRequestHeaders();
+        this.ifNoneMatch = headers.getFirst("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(CompressionFilter.ETAG_SUFFIX + "\"")) {
+            this.requestHeaders = new Headers();
+            this.requestHeaders.putAll(headers);
+            this.requestHeaders.set("If-None-Match", removeSuffixes(ifNoneMatch));
+        } else {
+            this.requestHeaders = headers;
+        }
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return exchange.getResponseHeaders();
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return exchange.getRequestURI();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return exchange.getRequestMethod();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return exchange.getHttpContext();
+    }
+
+    @Override
+    public void close() {
+        try {
+            finish();
+        } catch (IOException ex) {
+            //the original exchange is closed anyway, like the JDK does with the errors of the stream
+        }
+        exchange.close();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return exchange.getRequestBody();
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (state != PENDING)
+            throw new IOException("The headers were already sent");
+        Headers headers = exchange.getResponseHeaders();
+        if (responseLength < 0 || rCode == 304 || rCode == 204) {
+            //without body, the 304 keeps the representation the client has. Jersey sends it with length 0
+            if (rCode == 304) {
+                headers.add("Vary", "Accept-Encoding");
+                String etag = headers.getFirst("ETag");
+                if (etag != null && ifNoneMatch != null && ifNoneMatch.contains(withSuffix(etag)))
+                    headers.set("ETag", withSuffix(etag));
+            }
+            send(rCode, responseLength, DIRECT);
+        } else if (!CompressionFilter.isCompressible(headers.getFirst("Content-Type"))
+                || headers.containsKey("Content-Encoding")) {
+            send(rCode, responseLength, DIRECT);
+        } else if (responseLength == 0) {
+            status = rCode;
+            buffer = new byte[filter.getThreshold()];
+            state = BUFFERING;
+        } else if (responseLength < filter.getThreshold()) {
+            headers.add("Vary", "Accept-Encoding");
+            send(rCode, responseLength, DIRECT);
+        } else {
+            startCompressing(rCode);
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return exchange.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return state == BUFFERING ? status : exchange.getResponseCode();
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return exchange.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return exchange.getProtocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return exchange.getAttribute(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        exchange.setAttribute(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        exchange.setStreams(i, o);
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return exchange.getPrincipal();
+    }
+
+    /**
+     * Finishes the response: the buffered body is sent, the compression is finished and the GzipOutput is
+     * returned to the pool. It is called by the filter after the resources, so it can be called twice
+     *
+     * @throws IOException if the stream fails
+     */
+    void finish() throws IOException {
+        int actual = state;
+        state = CLOSED;
+        if (actual == BUFFERING) {
+            //the response ended before the threshold, it is sent as it is
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+            exchange.sendResponseHeaders(status, buffered == 0 ? -1 : buffered);
+            OutputStream output = exchange.getResponseBody();
+            output.write(buffer, 0, buffered);
+            output.close();
+        } else if (actual == COMPRESSING) {
+            try {
+                long written = gzip.finish();
+                filter.compressed(gzip.getBytesRead(), written);
+                exchange.getResponseBody().close();
+            } finally {
+                filter.release(gzip);
+                gzip = null;
+            }
+        } else if (actual == DIRECT) {
+            exchange.getResponseBody().close();
+        }
+        buffer = null;
+    }
+
+    /**
+     * Sends the status and the headers to the client
+     *
+     * @param rCode          the status
+     * @param responseLength the length of the body, like HttpExchange.sendResponseHeaders
+     * @param newState       the state of the body after sending them
+     * @throws IOException if the stream fails
+     */
+    private void send(int rCode, long responseLength, int newState) throws IOException {
+        exchange.sendResponseHeaders(rCode, responseLength);
+        state = newState;
+    }
+
+    /**
+     * Starts the compression of the body, sending the headers of the compressed representation
+     *
+     * @param rCode the status
+     * @throws IOException if the stream fails
+     */
+    private void startCompressing(int rCode) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Encoding", "gzip");
+        headers.add("Vary", "Accept-Encoding");
+        List<String> etags = headers.get("ETag");
+        if (etags != null && !etags.isEmpty())
+            headers.set("ETag", withSuffix(etags.get(0)));
+        send(rCode, 0, COMPRESSING);
+        gzip = filter.acquire();
+        try {
+            gzip.open(exchange.getResponseBody());
+        } catch (IOException ex) {
+            filter.release(gzip);
+            gzip = null;
+            state = CLOSED;
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds the suffix of the compressed representations to an ETag
+     *
+     * @param etag the ETag, quoted and maybe weak
+     * @return the ETag with the suffix inside the quotes
+     */
+    private static String withSuffix(String etag) {
+        if (etag.endsWith("\""))
+            return etag.substring(0, etag.length() - 1) + CompressionFilter.ETAG_SUFFIX + "\"";
+        return etag + CompressionFilter.ETAG_SUFFIX;
+    }
+
+    /**
+     * Removes the suffix of the compressed representations from the ETags of an If-None-Match
+     *
+     * @param ifNoneMatch the value of the header
+     * @return the value with the ETags of the uncompressed representations
+     */
+    private static String removeSuffixes(String ifNoneMatch) {
+        return ifNoneMatch.replace(CompressionFilter.ETAG_SUFFIX + "\"", "\"");
+    }
+
+    /**
+     * Stream of the response given to the resources, it writes into the buffer, the original stream or the
+     * GzipOutput depending on the state
+     */
+    private class ResponseBody extends OutputStream {
+
+        /**
+         * Buffer of the single byte writes
+         */
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (state == BUFFERING) {
+                if (buffered + length <= buffer.length) {
+                    System.arraycopy(bytes, offset, buffer, buffered, length);
+                    buffered += length;
+                    return;
+                }
+                //the threshold is passed, the bytes kept are compressed first
+                startCompressing(status);
+                gzip.write(buffer, 0, buffered);
+                buffer = null;
+            }
+            if (state == COMPRESSING) {
+                gzip.write(bytes, offset, length);
+            } else if (state == DIRECT) {
+                exchange.getResponseBody().write(bytes, offset, length);
+            } else {
+                throw new IOException(state == CLOSED ? "The response is closed" : "The headers are not sent");
+            }
+        }
+
+        /**
+         * Flushes the response. While the body is buffered it does nothing, the size is not known yet
+         *
+         * @throws IOException if the stream fails
+         */
+        @Override
+        public void flush() throws IOException {
+            if (state == COMPRESSING)
+                gzip.flush();
+            else if (state == DIRECT)
+                exchange.getResponseBody().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingBinaryWriter;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Filter that compresses with gzip the responses of the clients that send Accept-Encoding: gzip.
+ * <p/>
+ * The responses shorter than the threshold are sent without compression, because the gzip header and the
+ * chunks would take more than they save. The responses of unknown length are buffered until the threshold:
+ * if they end before it they are sent as they are, if not they are compressed while they are written, so a
+ * long search is never kept whole in memory. The streams of events are never compressed.
+ * <p/>
+ * A compressed response has its own representation, so its ETag gets the suffix -gzip. The suffix is
+ * removed from the If-None-Match of the request before the resources compare it, and put back in the 304.
+ * The GzipOutput used to compress are kept in a pool with one for every worker
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class CompressionFilter extends Filter {
+
+    /**
+     * Default minimum number of bytes of a response to compress it
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+    /**
+     * Suffix of the ETags of the compressed representations
+     */
+    static final String ETAG_SUFFIX = "-gzip";
+
+    /**
+     * Minimum number of bytes of a response to compress it
+     */
+    private final int threshold;
+    /**
+     * Level of compression of the Deflaters
+     */
+    private final int level;
+    /**
+     * GzipOutput not used by any response
+     */
+    private final BlockingQueue<GzipOutput> idle;
+    /**
+     * Number of responses compressed
+     */
+    private final AtomicLong compressed = new AtomicLong();
+    /**
+     * Number of bytes of the compressed responses before the compression
+     */
+    private final AtomicLong bytesIn = new AtomicLong();
+    /**
+     * Number of bytes of the compressed responses after the compression
+     */
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /**
+     * Creates a new instance of CompressionFilter with the default level of compression
+     *
+     * @param threshold minimum number of bytes of a response to compress it
+     * @param workers   number of workers of the server, the pool keeps one GzipOutput for each one
+     */
+    public CompressionFilter(int threshold, int workers) {
+        this(threshold, workers, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new instance of CompressionFilter
+     *
+     * @param threshold minimum number of bytes of a response to compress it
+     * @param workers   number of workers of the server, the pool keeps one GzipOutput for each one
+     * @param level     level of compression of the Deflaters, from 1 to 9
+     */
+    public CompressionFilter(int threshold, int workers, int level) {
+        this.threshold = threshold;
+        this.level = level;
+        this.idle = new ArrayBlockingQueue<GzipOutput>(Math.max(workers, 1));
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())
+                || !acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+            chain.doFilter(exchange);
+            return;
+        }
+        CompressingExchange compressing = new CompressingExchange(exchange, this);
+        try {
+            chain.doFilter(compressing);
+        } finally {
+            compressing.finish();
+        }
+    }
+
+    /**
+     * Ask if an Accept-Encoding header accepts gzip
+     *
+     * @param acceptEncoding the value of the header, it can be null
+     * @return true if gzip (or any encoding) is accepted with a quality above 0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            boolean gzip = "gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name);
+            if (!gzip && !"*".equals(name))
+                continue;
+            boolean zeroQuality = false;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        zeroQuality = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException ex) {
+                        zeroQuality = true;
+                    }
+                }
+            }
+            //an explicit gzip wins over the wildcard
+            if (gzip)
+                return !zeroQuality;
+            accepted = !zeroQuality;
+        }
+        return accepted;
+    }
+
+    /**
+     * Ask if a response can be compressed by its content type, Json, the binary format of the Parkings (the
+     * names still compress) and text but not the streams of events
+     *
+     * @param contentType the content type of the response, it can be null
+     * @return true if it can be compressed
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null)
+            return false;
+        String type = contentType.toLowerCase();
+        return type.startsWith("application/json") || type.startsWith(ParkingBinaryWriter.MEDIA_TYPE)
+                || (type.startsWith("text/") && !type.startsWith("text/event-stream"));
+    }
+
+    /**
+     * Get the value of threshold
+     *
+     * @return the value of threshold
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Get the number of responses compressed
+     *
+     * @return the number of responses
+     */
+    public long getCompressed() {
+        return compressed.get();
+    }
+
+    /**
+     * Get the number of bytes of the compressed responses before the compression
+     *
+     * @return the number of bytes
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Get the number of bytes of the compressed responses after the compression
+     *
+     * @return the number of bytes
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Takes a GzipOutput of the pool, creating it when all of them are used
+     *
+     * @return the GzipOutput, ready to be opened
+     */
+    GzipOutput acquire() {
+        GzipOutput gzip = idle.poll();
+        return gzip != null ? gzip : new GzipOutput(level);
+    }
+
+    /**
+     * Returns a GzipOutput to the pool, releasing it when the pool is already full
+     *
+     * @param gzip the GzipOutput, finished or not
+     */
+    void release(GzipOutput gzip) {
+        gzip.reset();
+        if (!idle.offer(gzip))
+            gzip.end();
+    }
+
+    /**
+     * Records a compressed response
+     *
+     * @param uncompressed number of bytes before the compression
+     * @param written      number of bytes after the compression
+     */
+    void compressed(long uncompressed, long written) {
+        compressed.incrementAndGet();
+        bytesIn.addAndGet(uncompressed);
+        bytesOut.addAndGet(written);
+    }
+
+    @Override
+    public String description() {
+        return "Compresses with gzip the responses longer than " + threshold + " bytes";
+    }
+}
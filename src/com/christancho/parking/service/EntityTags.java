@@ -0,0 +1,69 @@
+package com.christancho.parking.service;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * Class that builds and compares the ETags of the ParkingAPI responses.
+ * <p/>
+ * The ETags are built from the versions of the ParkingCentral, so a request with a matching If-None-Match
+ * can be answered with 304 Not Modified before serializing anything
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class EntityTags {
+
+    /**
+     * Utility class, it can't be instantiated
+     */
+    private EntityTags() {
+    }
+
+    /**
+     * Builds the ETag of a Parking representation
+     *
+     * @param parkingId the id of the Parking
+     * @param version   the version of the Parking
+     * @param variant   name of the representation (pretty, compact...)
+     * @return the ETag
+     */
+    public static EntityTag parking(int parkingId, long version, String variant) {
+        return new EntityTag("p" + parkingId + "-" + version + "-" + variant);
+    }
+
+    /**
+     * Builds the ETag of a search. The search only depends on the url and the version of the Central
+     *
+     * @param centralVersion the version of the ParkingCentral
+     * @param variant        name of the representation (pretty, compact...)
+     * @return the ETag
+     */
+    public static EntityTag search(long centralVersion, String variant) {
+        return new EntityTag("s" + centralVersion + "-" + variant);
+    }
+
+    /**
+     * Ask if the If-None-Match header of a request matches an ETag
+     *
+     * @param ifNoneMatch the value of the If-None-Match header, it can be null
+     * @param tag         the actual ETag of the resource
+     * @return true if the client already has the actual representation
+     */
+    public static boolean matches(String ifNoneMatch, EntityTag tag) {
+        if (ifNoneMatch == null)
+            return false;
+        String value = tag.getValue();
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*"))
+                return true;
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if (candidate.length() == value.length() + 2 && candidate.charAt(0) == '"'
+                    && candidate.regionMatches(1, value, 0, value.length()))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,168 @@
+package com.christancho.parking.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Stream that writes the gzip format into the stream of a response, reused by many responses.
+ * <p/>
+ * The GZIPOutputStream of the JDK creates a new Deflater (and its native memory) for every stream, so the
+ * CompressionFilter keeps a pool of GzipOutput: every one has its Deflater, its CRC32 and its buffer, and it
+ * is attached to the stream of a response with open and detached with finish
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+class GzipOutput extends OutputStream {
+
+    /**
+     * Header of the gzip format: magic number, deflate method, no flags, no time, no extra flags, unknown OS
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    /**
+     * Size of the buffer of the compressed bytes
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Compressor without the zlib wrapper, the header and the trailer are the gzip ones
+     */
+    private final Deflater deflater;
+    /**
+     * Checksum of the uncompressed bytes
+     */
+    private final CRC32 crc = new CRC32();
+    /**
+     * Buffer of the compressed bytes
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * Buffer of the single byte writes
+     */
+    private final byte[] single = new byte[1];
+    /**
+     * Stream of the response, null when it is not attached
+     */
+    private OutputStream out;
+
+    /**
+     * Creates a new instance of GzipOutput
+     *
+     * @param level level of compression of the Deflater
+     */
+    GzipOutput(int level) {
+        deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Attaches the stream of a response, writing the gzip header
+     *
+     * @param out the stream of the response
+     * @throws IOException if the stream fails
+     */
+    void open(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return;
+        crc.update(bytes, offset, length);
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * Flushes the stream of the response. The bytes kept by the Deflater are written with the next ones
+     *
+     * @throws IOException if the stream fails
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the compressed bytes left and the gzip trailer, and detaches the stream of the response
+     * without closing it
+     *
+     * @return number of compressed bytes written, with the header and the trailer
+     * @throws IOException if the stream fails
+     */
+    long finish() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        //the trailer is written at once: the checksum and the uncompressed size, in little endian
+        putInt((int) crc.getValue(), 0);
+        putInt(deflater.getTotalIn(), 4);
+        out.write(buffer, 0, 8);
+        out.flush();
+        long written = HEADER.length + deflater.getBytesWritten() + 8;
+        out = null;
+        return written;
+    }
+
+    /**
+     * Get the number of uncompressed bytes written since the stream was opened
+     *
+     * @return the number of bytes
+     */
+    long getBytesRead() {
+        return deflater.getBytesRead();
+    }
+
+    /**
+     * Prepares the stream to be opened again, discarding the state of the last response
+     */
+    void reset() {
+        deflater.reset();
+        crc.reset();
+        out = null;
+    }
+
+    /**
+     * Releases the native memory of the Deflater, the stream can't be used again
+     */
+    void end() {
+        deflater.end();
+    }
+
+    /**
+     * Writes the bytes compressed by the Deflater into the stream of the response
+     *
+     * @throws IOException if the stream fails
+     */
+    private void deflate() throws IOException {
+        int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0)
+            out.write(buffer, 0, length);
+    }
+
+    /**
+     * Puts an int of the trailer in the buffer, in little endian
+     *
+     * @param value    the value
+     * @param position position in the buffer
+     */
+    private void putInt(int value, int position) {
+        buffer[position] = (byte) value;
+        buffer[position + 1] = (byte) (value >>> 8);
+        buffer[position + 2] = (byte) (value >>> 16);
+        buffer[position + 3] = (byte) (value >>> 24);
+    }
+}
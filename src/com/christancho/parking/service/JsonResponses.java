@@ -0,0 +1,327 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.OccupancyBatch;
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.ParkingSnapshot;
+import com.christancho.parking.ParkingTypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that builds the responses of the ParkingAPI as streams, so the Json is written directly into the
+ * response OutputStream without building a JsonObject tree or a String.
+ * <p/>
+ * The compact Json of the Parkings is taken from the ParkingJsonCache, so a response is just the
+ * concatenation of the cached bytes
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class JsonResponses {
+
+    /**
+     * Charset used in all the responses
+     */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Indentation used when the pretty printing is requested
+     */
+    private static final String PRETTY_INDENT = "  ";
+
+    /**
+     * Adapter used to write the Parkings
+     */
+    private static final ParkingTypeAdapter parkingAdapter = new ParkingTypeAdapter();
+    /**
+     * Adapter used to write the Exceptions
+     */
+    private static final ParkingException.ParkingExceptionSerializer exceptionAdapter =
+            new ParkingException.ParkingExceptionSerializer();
+    /**
+     * Compact Json of the expected errors, encoded once because they are the most frequent responses of
+     * takePlace and releasePlace
+     */
+    private static final Map<ParkingException, byte[]> encodedErrors = encode(ParkingException.PARKING_FULL,
+            ParkingException.PARKING_EMPTY, ParkingException.PLACES_UNDEFINED);
+
+    /**
+     * Size of the buffer used to write the lists
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Utility class, it can't be instantiated
+     */
+    private JsonResponses() {
+    }
+
+    /**
+     * Builds the response with a Parking
+     *
+     * @param parking the parking to write
+     * @param pretty  true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput parking(final Parking parking, final boolean pretty) {
+        return parking(parking, pretty, true);
+    }
+
+    /**
+     * Builds the response with a Parking
+     *
+     * @param parking the parking to write
+     * @param pretty  true to indent the Json
+     * @param cached  true to use the ParkingJsonCache for the compact Json, false for Parkings that are
+     *                not going to be read again, like the removed ones
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput parking(final Parking parking, final boolean pretty, boolean cached) {
+        if (!pretty && cached) {
+            return new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    output.write(ParkingJsonCache.getInstance().get(parking));
+                    output.flush();
+                }
+            };
+        }
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                parkingAdapter.write(writer, parking);
+            }
+        };
+    }
+
+    /**
+     * Builds the response with a Parking List, each Parking is written as soon as it is encoded
+     *
+     * @param parkings the parkings to write
+     * @param pretty   true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput parkings(final List<Parking> parkings, final boolean pretty) {
+        if (!pretty) {
+            return new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    ParkingJsonCache cache = ParkingJsonCache.getInstance();
+                    OutputStream buffered = new BufferedOutputStream(output, BUFFER_SIZE);
+                    buffered.write('[');
+                    for (int i = 0; i < parkings.size(); i++) {
+                        if (i > 0)
+                            buffered.write(',');
+                        buffered.write(cache.get(parkings.get(i)));
+                    }
+                    buffered.write(']');
+                    buffered.flush();
+                }
+            };
+        }
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                writer.beginArray();
+                for (Parking parking : parkings) {
+                    parkingAdapter.write(writer, parking);
+                }
+                writer.endArray();
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the number of free places in a Parking
+     *
+     * @param freePlaces number of free places
+     * @param pretty     true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput freePlaces(final int freePlaces, final boolean pretty) {
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("freePlaces").value(freePlaces);
+                writer.endObject();
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the results of a batch of occupancy events, in the order of the events.
+     * Every result is written like the response of takePlace/releasePlace: the free places or the error
+     *
+     * @param batch  the batch already applied
+     * @param pretty true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput occupancy(final OccupancyBatch batch, final boolean pretty) {
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                writer.beginArray();
+                for (int i = 0; i < batch.size(); i++) {
+                    ParkingException error = batch.getError(i);
+                    if (error != null) {
+                        exceptionAdapter.write(writer, error);
+                    } else {
+                        writer.beginObject();
+                        writer.name("freePlaces").value(batch.getFreePlaces(i));
+                        writer.endObject();
+                    }
+                }
+                writer.endArray();
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the state of the executor of the requests
+     *
+     * @param executor the executor of the server
+     * @param pretty   true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput executor(final RequestExecutor executor, final boolean pretty) {
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("mode").value(executor.getMode().name().toLowerCase());
+                writer.name("workers").value(executor.getWorkers());
+                writer.name("activeWorkers").value(executor.getActiveWorkers());
+                writer.name("queueDepth").value(executor.getQueueDepth());
+                writer.name("queueCapacity").value(executor.getQueueCapacity());
+                writer.name("rejected").value(executor.getRejected());
+                writer.name("completed").value(executor.getCompleted());
+                writer.endObject();
+            }
+        };
+    }
+
+    /**
+     * Builds the response with the result of writing a snapshot
+     *
+     * @param snapshot the snapshot written
+     * @param parkings number of Parkings written
+     * @param millis   milliseconds spent writing it
+     * @param pretty   true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput snapshot(final ParkingSnapshot snapshot, final int parkings, final long millis,
+                                           final boolean pretty) {
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("file").value(snapshot.getFile().getPath());
+                writer.name("parkings").value(parkings);
+                writer.name("bytes").value(snapshot.getFile().length());
+                writer.name("millis").value(millis);
+                writer.endObject();
+            }
+        };
+    }
+
+    /**
+     * Builds the response with a ParkingException, recording the error in the metrics of the request
+     *
+     * @param exception the exception to write
+     * @param pretty    true to indent the Json
+     * @return the StreamingOutput that writes the Json
+     */
+    public static StreamingOutput error(final ParkingException exception, final boolean pretty) {
+        MetricsFilter.error(exception);
+        final byte[] encoded = pretty ? null : encodedErrors.get(exception);
+        if (encoded != null) {
+            return new StreamingOutput() {
+                @Override
+                public void write(OutputStream output) throws IOException, WebApplicationException {
+                    output.write(encoded);
+                    output.flush();
+                }
+            };
+        }
+        return new JsonStreamingOutput(pretty) {
+            @Override
+            protected void write(JsonWriter writer) throws IOException {
+                exceptionAdapter.write(writer, exception);
+            }
+        };
+    }
+
+    /**
+     * Encodes the compact Json of several exceptions, with the same JsonWriter options than the responses
+     *
+     * @param exceptions the exceptions to encode
+     * @return the Json of every exception, by identity
+     */
+    private static Map<ParkingException, byte[]> encode(ParkingException... exceptions) {
+        Map<ParkingException, byte[]> encoded = new IdentityHashMap<ParkingException, byte[]>();
+        try {
+            for (ParkingException exception : exceptions) {
+                StringWriter json = new StringWriter();
+                JsonWriter writer = new JsonWriter(json);
+                writer.setHtmlSafe(false);
+                exceptionAdapter.write(writer, exception);
+                writer.flush();
+                encoded.put(exception, json.toString().getBytes(UTF_8));
+            }
+        } catch (IOException ex) {
+            throw new ParkingException(ex, ParkingException.CODE_PARSING_JSON, "Error Encoding the Errors");
+        }
+        return encoded;
+    }
+
+    /**
+     * StreamingOutput that writes Json into the response OutputStream with a JsonWriter
+     */
+    private abstract static class JsonStreamingOutput implements StreamingOutput {
+
+        /**
+         * true to indent the Json
+         */
+        private final boolean pretty;
+
+        /**
+         * Creates a new instance of JsonStreamingOutput
+         *
+         * @param pretty true to indent the Json
+         */
+        JsonStreamingOutput(boolean pretty) {
+            this.pretty = pretty;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException, WebApplicationException {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, UTF_8));
+            writer.setHtmlSafe(false);
+            if (pretty)
+                writer.setIndent(PRETTY_INDENT);
+            write(writer);
+            writer.flush();
+        }
+
+        /**
+         * Writes the content of the response
+         *
+         * @param writer the writer of the response
+         * @throws IOException if the writer fails
+         */
+        protected abstract void write(JsonWriter writer) throws IOException;
+    }
+}
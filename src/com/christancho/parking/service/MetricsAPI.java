@@ -0,0 +1,45 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.metrics.ParkingMetrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Class where defines the service with the ParkingMetrics, in the text format scraped by Prometheus
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+@Path("/api/metrics")
+public class MetricsAPI {
+
+    /**
+     * Service GET to obtain the requests, errors and latencies of every operation, the sizes of the search
+     * results and the gauges of the ParkingCentral, the executor and the journal
+     *
+     * @return the Response with the metrics in text
+     */
+    @GET
+    @Produces("text/plain")
+    public Response metrics() {
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+                Writer writer = new OutputStreamWriter(outputStream, JsonResponses.UTF_8);
+                ParkingMetrics.getInstance().write(writer);
+                writer.flush();
+            }
+        };
+        return Response.ok(output, ParkingMetrics.CONTENT_TYPE).build();
+    }
+}
@@ -0,0 +1,129 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.metrics.OperationMetrics;
+import com.christancho.parking.metrics.ParkingMetrics;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Filter that records the ParkingMetrics of every request: the operation of the ParkingAPI or the ServerAPI,
+ * its latency until the response is written, and its errors.
+ * <p/>
+ * The errors of the API are answered with 200 and the Json of a ParkingException, so they are recorded by
+ * JsonResponses.error through error(ParkingException), in the thread of the request. The requests answered
+ * with an HTTP error without a ParkingException (404, 405, 503...) are recorded with the status as code
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class MetricsFilter extends Filter {
+
+    /**
+     * Operation of the request executed by every thread, null when its error was already recorded
+     */
+    private static final ThreadLocal<OperationMetrics> current = new ThreadLocal<OperationMetrics>();
+
+    /**
+     * Metrics where the requests are recorded
+     */
+    private final ParkingMetrics metrics;
+
+    /**
+     * Creates a new instance of MetricsFilter that records in the ParkingMetrics instance
+     */
+    public MetricsFilter() {
+        this(ParkingMetrics.getInstance());
+    }
+
+    /**
+     * Creates a new instance of MetricsFilter
+     *
+     * @param metrics metrics where the requests are recorded
+     */
+    MetricsFilter(ParkingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        OperationMetrics operation = metrics.getOperation(operation(exchange.getRequestMethod(),
+                exchange.getRequestURI().getRawPath()));
+        current.set(operation);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            if (current.get() != null && exchange.getResponseCode() >= 400)
+                operation.error(String.valueOf(exchange.getResponseCode()));
+            current.remove();
+            operation.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the error answered to the request of the actual thread, only the first one of every request
+     *
+     * @param exception the error
+     */
+    static void error(ParkingException exception) {
+        OperationMetrics operation = current.get();
+        if (operation != null) {
+            operation.error(exception.getCode());
+            current.set(null);
+        }
+    }
+
+    /**
+     * Finds the operation of a request, named like the method of the ParkingAPI or the ServerAPI
+     *
+     * @param method the HTTP method
+     * @param path   the path of the request
+     * @return the name of the operation, unknown for the paths without operation
+     */
+    static String operation(String method, String path) {
+        String[] segments = ParkingRouter.split(path);
+        int length = segments.length;
+        if (length < 2 || !"api".equals(segments[0])) {
+            return "unknown";
+        } else if (length == 2 && "metrics".equals(segments[1])) {
+            return "metrics";
+        } else if (length == 3 && "server".equals(segments[1])) {
+            //only the known names, the labels can't grow with the paths sent by the clients
+            if ("executor".equals(segments[2]) || "snapshot".equals(segments[2]))
+                return segments[2];
+            return "unknown";
+        } else if (!"parking".equals(segments[1])) {
+            return "unknown";
+        } else if (length == 2) {
+            return "POST".equals(method) ? "add" : "edit";
+        } else if (length == 3 && "search".equals(segments[2])) {
+            return "searchParkings";
+        } else if (length == 3 && "nearest".equals(segments[2])) {
+            return "nearest";
+        } else if (length == 3 && "events".equals(segments[2])) {
+            return "events";
+        } else if (length == 3) {
+            if ("GET".equals(method))
+                return "get";
+            return "DELETE".equals(method) ? "remove" : "edit";
+        } else if (length == 4 && "occupancy".equals(segments[2]) && "batch".equals(segments[3])) {
+            return "applyOccupancy";
+        } else if (length == 4 && "takePlace".equals(segments[3])) {
+            return "takePlace";
+        } else if (length == 4 && "releasePlace".equals(segments[3])) {
+            return "releasePlace";
+        } else if (length == 4 && "occupancy".equals(segments[3])) {
+            return "changePlaces";
+        }
+        return "unknown";
+    }
+
+    @Override
+    public String description() {
+        return "Records the requests, errors and latencies of every operation in the ParkingMetrics";
+    }
+}
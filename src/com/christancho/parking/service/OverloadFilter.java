@@ -0,0 +1,75 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingException;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Filter that answers with 503 Service Unavailable the requests rejected by the RequestExecutor, without
+ * calling the ParkingAPI. The body is the usual Json of a ParkingException
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class OverloadFilter extends Filter {
+
+    /**
+     * Seconds the client should wait before retrying
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * Json of the response, it is always the same
+     */
+    private static final byte[] BODY = body("Too many requests, retry later");
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!RequestExecutor.isRejecting()) {
+            chain.doFilter(exchange);
+            return;
+        }
+        reject(exchange, BODY);
+    }
+
+    /**
+     * Builds the Json of a 503 response
+     *
+     * @param detailMessage the detail of the error
+     * @return the bytes of the Json
+     */
+    static byte[] body(String detailMessage) {
+        return ("{\"code\":\"" + ParkingException.CODE_SERVER_HTTP
+                + "\",\"description\":\"Server Overloaded\",\"detailMessage\":\"" + detailMessage + "\"}")
+                .getBytes(JsonResponses.UTF_8);
+    }
+
+    /**
+     * Answers a request with 503 Service Unavailable and closes the exchange
+     *
+     * @param exchange the exchange of the request
+     * @param body     the Json of the response
+     * @throws IOException if the stream fails
+     */
+    static void reject(HttpExchange exchange, byte[] body) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            exchange.sendResponseHeaders(503, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.flush();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Answers with 503 the requests rejected by the RequestExecutor";
+    }
+}
@@ -1,25 +1,46 @@
 package com.christancho.parking.service;
 
+import com.christancho.parking.GeoRadius;
+import com.christancho.parking.OccupancyBatch;
 import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingBinaryWriter;
 import com.christancho.parking.ParkingCentral;
 import com.christancho.parking.ParkingException;
-import com.christancho.parking.ParkingSerializer;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
+import com.christancho.parking.ParkingPage;
+import com.christancho.parking.ParkingSort;
+import com.christancho.parking.ParkingTypeAdapter;
+import com.christancho.parking.metrics.ParkingMetrics;
+import com.google.gson.stream.JsonReader;
 
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
- * Class where defines all the ParkingCentral methods as a REST API
+ * Class where defines all the ParkingCentral methods as a REST API.
+ * <p/>
+ * All the responses are written as streams directly into the response OutputStream, in compact Json unless
+ * the parameter pretty=true is sent. The clients that prefer application/x-parking in the Accept header get
+ * the binary format of the ParkingBinaryWriter instead, the Json is the default. The GET of a Parking and the
+ * search send an ETag, and answer 304 Not Modified without serializing anything when the If-None-Match header
+ * matches it
  *
  * @author Christian Delgado
  * @version 1.0
@@ -29,106 +50,136 @@ import javax.ws.rs.QueryParam;
 public class ParkingAPI {
 
     /**
-     * Class used to parse all the objects as JsonObject
+     * Header with the cursor of the next page of a search, only sent when there are more results
      */
-    private static final Gson gson = new GsonBuilder()
-            .setPrettyPrinting()
-            .disableHtmlEscaping()
-            .registerTypeAdapter(Parking.class, new ParkingSerializer())
-            .registerTypeAdapter(ParkingException.class, new ParkingException.ParkingExceptionSerializer())
-            .create();
+    public static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+    /**
+     * Header with the number of Parkings that match a search after the requested cursor
+     */
+    public static final String HEADER_TOTAL_COUNT = "X-Total-Count";
+    /**
+     * Maximum number of Parkings returned by the nearest service
+     */
+    public static final int MAX_NEAREST = 1000;
+    /**
+     * Maximum number of events in a batch of occupancy changes
+     */
+    public static final int MAX_BATCH_EVENTS = 10000;
+
+    /**
+     * Adapter used to read the Parkings of the requests directly from the request stream
+     */
+    private static final ParkingTypeAdapter parkingAdapter = new ParkingTypeAdapter();
+    /**
+     * Media type of the Json responses
+     */
+    private static final String JSON = "application/json";
 
     /**
      * Service GET to obtain an specified Parking
      *
-     * @param parkingId the id for the Parking selected
-     * @return the String with the Json representation of the Parking selected
+     * @param parkingId   the id for the Parking selected
+     * @param pretty      true to indent the Json
+     * @param ifNoneMatch the ETags the client already has
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking selected
      */
     @GET
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/{parkingId}")
-    public String get(@PathParam("parkingId") Integer parkingId) {
+    public Response get(@PathParam("parkingId") Integer parkingId,
+                        @QueryParam("pretty") boolean pretty,
+                        @HeaderParam("If-None-Match") String ifNoneMatch,
+                        @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
             Parking parking = ParkingCentral.getInstance().getParking(parkingId);
-            return gson.toJson(parking);
+            //the version is read before writing, so the ETag is never newer than the body
+            EntityTag tag = EntityTags.parking(parking.getId(), parking.getVersion(), variant(pretty, binary));
+            if (EntityTags.matches(ifNoneMatch, tag))
+                return Response.notModified(tag).build();
+            StreamingOutput body = binary ? BinaryResponses.parking(parking) : JsonResponses.parking(parking, pretty);
+            return Response.ok(body, mediaType(binary)).tag(tag).build();
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
     /**
      * Service POST to add a new Parking in the Central
      *
-     * @param parkingJson the new parking to add
-     * @return the String with the Json representation of the Parking added
+     * @param parkingJson the stream with the Json of the new parking to add
+     * @param pretty      true to indent the Json
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking added
      */
     @POST
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking")
-    public String add(String parkingJson) {
+    public Response add(InputStream parkingJson, @QueryParam("pretty") boolean pretty,
+                        @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
-            if (parkingJson == null || parkingJson.trim().isEmpty())
-                throw new ParkingException(ParkingException.CODE_PARSING_JSON,
-                        ParkingException.DESC_INVALID_VALUE,
-                        "The Parking can't be null");
-            Parking parking = gson.fromJson(parkingJson, Parking.class);
+            Parking parking = readParking(parkingJson);
             int parkingId = ParkingCentral.getInstance().addParking(parking);
             parking = ParkingCentral.getInstance().getParking(parkingId);
-            return gson.toJson(parking);
+            return ok(binary ? BinaryResponses.parking(parking) : JsonResponses.parking(parking, pretty), binary);
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
-        } catch (JsonSyntaxException ex) {
-            return gson.toJson(new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
-                    "Error Parsing Parking JsonObject"));
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
     /**
      * Service PUT to edit an specified Parking
      *
-     * @param parkingJson the parking to edit
-     * @return the String with the Json representation of the Parking edited
+     * @param parkingJson the stream with the Json of the parking to edit
+     * @param pretty      true to indent the Json
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking edited
      */
     @PUT
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking")
-    public String edit(String parkingJson) {
-        return edit(parkingJson, null);
+    public Response edit(InputStream parkingJson, @QueryParam("pretty") boolean pretty,
+                         @HeaderParam("Accept") String accept) {
+        return edit(parkingJson, null, pretty, accept);
     }
 
 
     /**
      * Service PUT to edit an specified Parking Id
      *
-     * @param parkingJson the parking to edit
+     * @param parkingJson the stream with the Json of the parking to edit
      * @param parkingId   the id for the Parking selected
-     * @return the String with the Json representation of the Parking edited
+     * @param pretty      true to indent the Json
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking edited
      */
     @PUT
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/{parkingId}")
-    public String edit(String parkingJson, @PathParam("parkingId") Integer parkingId) {
+    public Response edit(InputStream parkingJson, @PathParam("parkingId") Integer parkingId,
+                         @QueryParam("pretty") boolean pretty,
+                         @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
-            if (parkingJson == null || parkingJson.trim().isEmpty())
-                throw new ParkingException(ParkingException.CODE_PARSING_JSON,
+            Parking parking = readParking(parkingJson);
+            if (parking == null)
+                throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
                         ParkingException.DESC_INVALID_VALUE,
                         "The Parking can't be null");
-            Parking parking = gson.fromJson(parkingJson, Parking.class);
             if (parkingId != null)
                 parking.setId(parkingId);
             parking = ParkingCentral.getInstance().editParking(parking);
-            return gson.toJson(parking);
+            return ok(binary ? BinaryResponses.parking(parking) : JsonResponses.parking(parking, pretty), binary);
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
-        } catch (JsonSyntaxException ex) {
-            return gson.toJson(new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
-                    "Error Parsing Parking JsonObject"));
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
@@ -137,69 +188,259 @@ public class ParkingAPI {
      * Service DELETE to remove an specified Parking
      *
      * @param parkingId the id for the Parking to remove
-     * @return the String with the Json representation of the Parking removed
+     * @param pretty    true to indent the Json
+     * @param accept    the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking removed
      */
     @DELETE
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/{parkingId}")
-    public String remove(@PathParam("parkingId") Integer parkingId) {
+    public Response remove(@PathParam("parkingId") Integer parkingId,
+                           @QueryParam("pretty") boolean pretty,
+                           @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
             Parking parking = ParkingCentral.getInstance().removeParking(parkingId);
-            return gson.toJson(parking);
+            return ok(binary ? BinaryResponses.parking(parking) : JsonResponses.parking(parking, pretty, false),
+                    binary);
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
     /**
-     * Service GET to obtain an specified Parking List
+     * Service GET to obtain an specified Parking List. The list is streamed with chunked transfer, one
+     * Parking at a time. With sort, cursor, offset or limit only a page is returned, and the header
+     * X-Next-Cursor has the cursor of the next one
      *
      * @param complete
      * @param date
      * @param latitude
      * @param longitude
      * @param distance
-     * @return the String with the Json representation of the Parking List selected
+     * @param sort        order of the results: id, distance or freePlaces
+     * @param cursor      the X-Next-Cursor of the previous page
+     * @param offset      number of Parkings skipped after the cursor
+     * @param limit       maximum number of Parkings of the page
+     * @param pretty      true to indent the Json
+     * @param ifNoneMatch the ETags the client already has
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking List selected
      */
     @GET
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/search")
-    public String searchParkings(@QueryParam("complete") Boolean complete,
-                                 @QueryParam("date") String date,
-                                 @QueryParam("latitude") Double latitude,
-                                 @QueryParam("longitude") Double longitude,
-                                 @QueryParam("distance") Double distance) {
+    public Response searchParkings(@QueryParam("complete") Boolean complete,
+                                   @QueryParam("date") String date,
+                                   @QueryParam("latitude") Double latitude,
+                                   @QueryParam("longitude") Double longitude,
+                                   @QueryParam("distance") Double distance,
+                                   @QueryParam("sort") String sort,
+                                   @QueryParam("cursor") String cursor,
+                                   @QueryParam("offset") Integer offset,
+                                   @QueryParam("limit") Integer limit,
+                                   @QueryParam("pretty") boolean pretty,
+                                   @HeaderParam("If-None-Match") String ifNoneMatch,
+                                   @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
+        try {
+            ParkingCentral central = ParkingCentral.getInstance();
+            EntityTag tag = EntityTags.search(central.getVersion(), variant(pretty, binary));
+            if (EntityTags.matches(ifNoneMatch, tag))
+                return Response.notModified(tag).build();
+            ParkingPage page = central.searchParkings(complete, date, latitude, longitude, distance,
+                    ParkingSort.fromParameter(sort), cursor, offset, limit);
+            ParkingMetrics.getInstance().getSearchResults().record(page.getTotal());
+            StreamingOutput body = binary ? BinaryResponses.parkings(page.getParkings())
+                    : JsonResponses.parkings(page.getParkings(), pretty);
+            Response.ResponseBuilder response = Response.ok(body, mediaType(binary))
+                    .tag(tag).header(HEADER_TOTAL_COUNT, page.getTotal());
+            if (page.getNextCursor() != null)
+                response.header(HEADER_NEXT_CURSOR, page.getNextCursor());
+            return response.build();
+        } catch (ParkingException ex) {
+            return error(ex, pretty, binary);
+        } catch (Exception ex) {
+            return error(new ParkingException(ex), pretty, binary);
+        }
+    }
+
+
+    /**
+     * Service GET to obtain the Parkings closest to a point, from the closest to the farthest. By default only
+     * the Parkings with free places, the closest ones where a car can park
+     *
+     * @param latitude    latitude coordinate of the point
+     * @param longitude   longitude coordinate of the point
+     * @param k           number of Parkings to obtain, 1 by default
+     * @param complete    boolean that filter the Parkings with free places, false by default (only the
+     *                    Parkings with at least a free place), true for the ones without free places
+     * @param pretty      true to indent the Json
+     * @param ifNoneMatch the ETags the client already has
+     * @param accept      the Accept header, application/x-parking for the binary format
+     * @return the Response with the Json representation of the Parking List selected
+     */
+    @GET
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
+    @Path("/parking/nearest")
+    public Response nearest(@QueryParam("latitude") Double latitude,
+                            @QueryParam("longitude") Double longitude,
+                            @DefaultValue("1") @QueryParam("k") int k,
+                            @DefaultValue("false") @QueryParam("complete") boolean complete,
+                            @QueryParam("pretty") boolean pretty,
+                            @HeaderParam("If-None-Match") String ifNoneMatch,
+                            @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
+        try {
+            if (k > MAX_NEAREST)
+                throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                        ParkingException.DESC_INVALID_VALUE,
+                        "The parameter k can't be bigger than " + MAX_NEAREST);
+            ParkingCentral central = ParkingCentral.getInstance();
+            EntityTag tag = EntityTags.search(central.getVersion(), variant(pretty, binary));
+            if (EntityTags.matches(ifNoneMatch, tag))
+                return Response.notModified(tag).build();
+            List<Parking> parkings = central.nearest(latitude, longitude, k, complete);
+            StreamingOutput body = binary ? BinaryResponses.parkings(parkings)
+                    : JsonResponses.parkings(parkings, pretty);
+            return Response.ok(body, mediaType(binary)).tag(tag).build();
+        } catch (ParkingException ex) {
+            return error(ex, pretty, binary);
+        } catch (Exception ex) {
+            return error(new ParkingException(ex), pretty, binary);
+        }
+    }
+
+    /**
+     * Service POST to fill or free several places in the Parking for the specified id at once. Either all
+     * the places are changed or none of them
+     *
+     * @param parkingId the id for the Parking selected
+     * @param delta     number of places to fill, negative to free places
+     * @param pretty    true to indent the Json
+     * @param accept    the Accept header, application/x-parking for the binary format
+     * @return the Response of a JsonObject with the number of free places in the Parking
+     */
+    @POST
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
+    @Path("/parking/{parkingId}/occupancy")
+    public Response changePlaces(@PathParam("parkingId") Integer parkingId,
+                                 @QueryParam("delta") int delta,
+                                 @QueryParam("pretty") boolean pretty,
+                                 @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
-            return gson.toJson(ParkingCentral.getInstance().searchParkings(complete, date, latitude,
-                    longitude, distance));
+            return freePlaces(ParkingCentral.getInstance().changePlaces(parkingId, delta), pretty, binary);
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
+    /**
+     * Service POST to apply a batch of occupancy events, a Json array of [parkingId, delta] arrays where
+     * delta is the number of places filled (negative for places freed). The events are applied in order,
+     * and the response has the result of every event in the same position: the free places or the error
+     *
+     * @param eventsJson the Json array with the events
+     * @param pretty     true to indent the Json
+     * @param accept     the Accept header, application/x-parking for the binary format
+     * @return the Response of a Json array with the result of every event
+     */
+    @POST
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
+    @Path("/parking/occupancy/batch")
+    public Response applyOccupancy(InputStream eventsJson,
+                                   @QueryParam("pretty") boolean pretty,
+                                   @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
+        try {
+            OccupancyBatch batch = readOccupancy(eventsJson);
+            ParkingCentral.getInstance().applyOccupancy(batch);
+            return ok(binary ? BinaryResponses.occupancy(batch) : JsonResponses.occupancy(batch, pretty), binary);
+        } catch (ParkingException ex) {
+            return error(ex, pretty, binary);
+        } catch (Exception ex) {
+            return error(new ParkingException(ex), pretty, binary);
+        }
+    }
+
+    /**
+     * Service GET that opens a stream of Server-Sent Events with the changes of the Parkings selected by
+     * ids, or by the area of latitude, longitude and distance. The actual state of the Parkings is sent
+     * first, and then a "parking" event for every modification or a "removed" event when a Parking is
+     * removed. The bursts of changes are coalesced, sending only the last state of every Parking
+     *
+     * @param ids       the ids of the Parkings separated by commas
+     * @param latitude  latitude coordinate of the area
+     * @param longitude longitude coordinate of the area
+     * @param distance  distance in kilometers of the area
+     * @return the Response with the stream of events
+     */
+    @GET
+    @Produces("text/event-stream")
+    @Path("/parking/events")
+    public Response events(@QueryParam("ids") String ids,
+                           @QueryParam("latitude") Double latitude,
+                           @QueryParam("longitude") Double longitude,
+                           @QueryParam("distance") Double distance) {
+        try {
+            Set<Integer> parkingIds = null;
+            if (ids != null) {
+                parkingIds = new HashSet<Integer>();
+                for (String id : ids.split(",")) {
+                    try {
+                        parkingIds.add(Integer.valueOf(id.trim()));
+                    } catch (NumberFormatException ex) {
+                        throw new ParkingException(ParkingException.CODE_INVALID_ID,
+                                ParkingException.DESC_INVALID_ID,
+                                "Invalid id '" + id + "'");
+                    }
+                }
+            }
+            GeoRadius area = null;
+            if (latitude != null || longitude != null || distance != null) {
+                if (latitude == null || longitude == null || distance == null)
+                    throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                            ParkingException.DESC_INVALID_VALUE,
+                            "The area needs latitude, longitude and distance");
+                area = new GeoRadius(latitude, longitude, distance,
+                        ParkingCentral.getInstance().getDistanceFormula());
+            }
+            return Response.ok(new ParkingEventStream(parkingIds, area))
+                    .header("Cache-Control", "no-cache")
+                    .build();
+        } catch (ParkingException ex) {
+            return Response.ok(JsonResponses.error(ex, false), JSON).build();
+        } catch (Exception ex) {
+            return Response.ok(JsonResponses.error(new ParkingException(ex), false), JSON).build();
+        }
+    }
 
     /**
      * Service GET to free a place in the Parking for the specified id.
      *
      * @param parkingId the id for the Parking selected
-     * @return the String of a JsonObject with the number of free places in the Parking
+     * @param pretty    true to indent the Json
+     * @param accept    the Accept header, application/x-parking for the binary format
+     * @return the Response of a JsonObject with the number of free places in the Parking
      */
     @GET
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/{parkingId}/releasePlace")
-    public String releasePlace(@PathParam("parkingId") Integer parkingId) {
+    public Response releasePlace(@PathParam("parkingId") Integer parkingId,
+                                 @QueryParam("pretty") boolean pretty,
+                                 @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
         try {
-            JsonObject response = new JsonObject();
-            response.addProperty("freePlaces", ParkingCentral.getInstance().releasePlace(parkingId));
-            return response.toString();
+            return freePlaces(ParkingCentral.getInstance().releasePlace(parkingId), pretty, binary);
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
+            return error(ex, pretty, binary);
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            return error(new ParkingException(ex), pretty, binary);
         }
     }
 
@@ -207,20 +448,146 @@ public class ParkingAPI {
      * Service GET to fill a place in the Parking for the specified id.
      *
      * @param parkingId the id for the Parking selected
-     * @return the String of a JsonObject with the number of free places in the Parking
+     * @param pretty    true to indent the Json
+     * @param accept    the Accept header, application/x-parking for the binary format
+     * @return the Response of a JsonObject with the number of free places in the Parking
      */
     @GET
-    @Produces("application/json")
+    @Produces({"application/json", ParkingBinaryWriter.MEDIA_TYPE})
     @Path("/parking/{parkingId}/takePlace")
-    public String takePlace(@PathParam("parkingId") Integer parkingId) {
+    public Response takePlace(@PathParam("parkingId") Integer parkingId,
+                              @QueryParam("pretty") boolean pretty,
+                              @HeaderParam("Accept") String accept) {
+        boolean binary = BinaryResponses.accepts(accept);
+        try {
+            return freePlaces(ParkingCentral.getInstance().takePlace(parkingId), pretty, binary);
+        } catch (ParkingException ex) {
+            return error(ex, pretty, binary);
+        } catch (Exception ex) {
+            return error(new ParkingException(ex), pretty, binary);
+        }
+    }
+
+    /**
+     * Name of the representation used in the ETags
+     *
+     * @param pretty true if the Json is indented
+     * @param binary true for the binary format, the pretty is ignored
+     * @return the name of the representation
+     */
+    private static String variant(boolean pretty, boolean binary) {
+        if (binary)
+            return "binary";
+        return pretty ? "json-pretty" : "json";
+    }
+
+    /**
+     * Media type of the responses
+     *
+     * @param binary true for the binary format
+     * @return the media type
+     */
+    private static String mediaType(boolean binary) {
+        return binary ? ParkingBinaryWriter.MEDIA_TYPE : JSON;
+    }
+
+    /**
+     * Reads a batch of occupancy events, an array of [parkingId, delta] arrays, token by token
+     *
+     * @param eventsJson the stream with the Json of the events
+     * @return the batch read
+     */
+    private static OccupancyBatch readOccupancy(InputStream eventsJson) {
+        OccupancyBatch batch = new OccupancyBatch();
         try {
-            JsonObject response = new JsonObject();
-            response.addProperty("freePlaces", ParkingCentral.getInstance().takePlace(parkingId));
-            return response.toString();
+            JsonReader reader = new JsonReader(new InputStreamReader(eventsJson, JsonResponses.UTF_8));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (batch.size() == MAX_BATCH_EVENTS)
+                    throw new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                            ParkingException.DESC_INVALID_VALUE,
+                            "The batch can't have more than " + MAX_BATCH_EVENTS + " events");
+                reader.beginArray();
+                int parkingId = reader.nextInt();
+                int delta = reader.nextInt();
+                reader.endArray();
+                batch.add(parkingId, delta);
+            }
+            reader.endArray();
         } catch (ParkingException ex) {
-            return gson.toJson(ex);
+            throw ex;
         } catch (Exception ex) {
-            return gson.toJson(new ParkingException(ex));
+            throw new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
+                    "Error Parsing Occupancy Events");
         }
+        return batch;
+    }
+
+    /**
+     * Reads a Parking from the stream of a request, token by token
+     *
+     * @param parkingJson the stream with the Json of the Parking
+     * @return the Parking read, null if the Json is null
+     */
+    private static Parking readParking(InputStream parkingJson) {
+        if (parkingJson == null)
+            throw new ParkingException(ParkingException.CODE_PARSING_JSON,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The Parking can't be null");
+        JsonReader reader = new JsonReader(new InputStreamReader(parkingJson, JsonResponses.UTF_8));
+        reader.setLenient(true);
+        try {
+            reader.peek();
+        } catch (EOFException ex) {
+            throw new ParkingException(ParkingException.CODE_PARSING_JSON,
+                    ParkingException.DESC_INVALID_VALUE,
+                    "The Parking can't be null");
+        } catch (IOException ex) {
+            throw new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
+                    "Error Parsing Parking JsonObject");
+        }
+        try {
+            return parkingAdapter.read(reader);
+        } catch (IOException ex) {
+            throw new ParkingException(ex, ParkingException.CODE_PARSING_JSON,
+                    "Error Parsing Parking JsonObject");
+        }
+    }
+
+    /**
+     * Builds a 200 Response with the Json or binary stream. The errors are also sent with 200, the mobile
+     * apps read the code inside the Json or the binary message
+     *
+     * @param entity the stream with the Json or the binary format
+     * @param binary true for the binary format
+     * @return the Response
+     */
+    private static Response ok(StreamingOutput entity, boolean binary) {
+        return Response.ok(entity, mediaType(binary)).build();
+    }
+
+    /**
+     * Builds the Response with the number of free places in a Parking
+     *
+     * @param freePlaces number of free places
+     * @param pretty     true to indent the Json
+     * @param binary     true for the binary format
+     * @return the Response
+     */
+    private static Response freePlaces(int freePlaces, boolean pretty, boolean binary) {
+        return ok(binary ? BinaryResponses.freePlaces(freePlaces) : JsonResponses.freePlaces(freePlaces, pretty),
+                binary);
+    }
+
+    /**
+     * Builds the Response with a ParkingException
+     *
+     * @param exception the exception
+     * @param pretty    true to indent the Json
+     * @param binary    true for the binary format
+     * @return the Response
+     */
+    private static Response error(ParkingException exception, boolean pretty, boolean binary) {
+        return ok(binary ? BinaryResponses.error(exception) : JsonResponses.error(exception, pretty), binary);
     }
 }
@@ -0,0 +1,277 @@
+package com.christancho.parking.service;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds the open ParkingEventStreams of the ParkingHttpServer without keeping a worker of the RequestExecutor
+ * per client.
+ * <p/>
+ * The request of a stream only sends the headers and leaves the exchange open. A single flusher thread checks
+ * every FLUSH_INTERVAL_MILLIS which streams have changes or need a heartbeat, and a small pool of writers
+ * writes them, one write at a time per stream. A client that doesn't read only keeps a writer while its
+ * connection is blocked. The number of open streams is capped, the next ones are answered with 503
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingEventHub {
+
+    /**
+     * Default maximum number of open streams
+     */
+    public static final int DEFAULT_MAX_STREAMS = 1000;
+    /**
+     * Maximum number of threads writing the events
+     */
+    public static final int WRITERS = 16;
+
+    /**
+     * Instance used by the running server, null if the server is not started
+     */
+    private static volatile ParkingEventHub instance;
+
+    /**
+     * Json of the responses above the cap
+     */
+    private static final byte[] REJECTED = OverloadFilter.body("Too many streams of events, retry later");
+
+    /**
+     * Maximum number of open streams
+     */
+    private final int maxStreams;
+    /**
+     * Streams open
+     */
+    private final Set<Subscription> subscriptions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+    /**
+     * Number of streams open, counted before the subscription so the cap is never exceeded
+     */
+    private final AtomicInteger open = new AtomicInteger();
+    /**
+     * Number of streams rejected because of the cap
+     */
+    private final AtomicLong rejected = new AtomicLong();
+    /**
+     * Thread that looks for the streams to write
+     */
+    private final ScheduledExecutorService flusher;
+    /**
+     * Threads that write the events
+     */
+    private final ThreadPoolExecutor writers;
+
+    /**
+     * Creates a new instance of ParkingEventHub and starts its flusher
+     *
+     * @param maxStreams maximum number of open streams
+     */
+    public ParkingEventHub(int maxStreams) {
+        this.maxStreams = maxStreams;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                new RequestExecutor.NamedThreadFactory("events-flusher"));
+        //there is at most a write per stream, so the queue never has more than maxStreams tasks
+        this.writers = new ThreadPoolExecutor(WRITERS, WRITERS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new RequestExecutor.NamedThreadFactory("events-writer"));
+        this.writers.allowCoreThreadTimeOut(true);
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, ParkingEventStream.FLUSH_INTERVAL_MILLIS, ParkingEventStream.FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtain the instance used by the running server
+     *
+     * @return the instance, null if the server is not started
+     */
+    public static ParkingEventHub getInstance() {
+        return instance;
+    }
+
+    /**
+     * Changes the instance used by the running server
+     *
+     * @param hub the instance
+     */
+    static void setInstance(ParkingEventHub hub) {
+        instance = hub;
+    }
+
+    /**
+     * Opens a stream: sends the headers of the response, already set in the exchange, and leaves the exchange
+     * open to the hub. Above the cap the request is answered with 503 and the exchange is closed
+     *
+     * @param exchange the exchange of the request
+     * @param stream   the stream of events
+     * @return true if the stream was opened, the caller must not close the exchange
+     * @throws IOException if the headers can't be sent
+     */
+    public boolean open(HttpExchange exchange, ParkingEventStream stream) throws IOException {
+        if (open.incrementAndGet() > maxStreams) {
+            open.decrementAndGet();
+            rejected.incrementAndGet();
+            OverloadFilter.reject(exchange, REJECTED);
+            return false;
+        }
+        try {
+            exchange.sendResponseHeaders(200, 0);
+        } catch (IOException ex) {
+            open.decrementAndGet();
+            throw ex;
+        }
+        Subscription subscription = new Subscription(exchange, stream);
+        stream.start();
+        subscriptions.add(subscription);
+        //the actual state is sent at once, without waiting for the flusher
+        subscription.writing.set(true);
+        writers.execute(subscription);
+        return true;
+    }
+
+    /**
+     * Submits a write for every stream with changes or without writes during the heartbeat interval
+     */
+    private void flush() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.stream.hasPending()
+                    || now - subscription.lastWrite >= ParkingEventStream.HEARTBEAT_MILLIS)
+                    && subscription.writing.compareAndSet(false, true))
+                writers.execute(subscription);
+        }
+    }
+
+    /**
+     * Closes a stream and releases its place
+     *
+     * @param subscription the stream to close
+     */
+    private void close(Subscription subscription) {
+        if (!subscription.closed.compareAndSet(false, true))
+            return;
+        subscriptions.remove(subscription);
+        open.decrementAndGet();
+        subscription.stream.stop();
+        subscription.exchange.close();
+    }
+
+    /**
+     * Closes all the streams and stops the threads of the hub
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        writers.shutdown();
+        for (Subscription subscription : subscriptions) {
+            close(subscription);
+        }
+    }
+
+    /**
+     * Get the value of maxStreams
+     *
+     * @return the value of maxStreams
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * Get the number of streams open
+     *
+     * @return the number of streams open
+     */
+    public int getOpenStreams() {
+        return open.get();
+    }
+
+    /**
+     * Get the value of rejected
+     *
+     * @return the number of streams rejected because of the cap
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Open stream and its connection, it is also the task that writes its pending events
+     */
+    private class Subscription implements Runnable {
+
+        /**
+         * The exchange of the request, open while the stream is open
+         */
+        private final HttpExchange exchange;
+        /**
+         * The stream with the changes
+         */
+        private final ParkingEventStream stream;
+        /**
+         * Buffer of the response, only used by the writer that has the flag writing
+         */
+        private final OutputStream output;
+        /**
+         * true while a write of the stream is submitted or running
+         */
+        private final AtomicBoolean writing = new AtomicBoolean();
+        /**
+         * true when the stream is closed
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+        /**
+         * Time of the last write, to send the heartbeats
+         */
+        private volatile long lastWrite = System.currentTimeMillis();
+
+        /**
+         * Creates a new instance of Subscription
+         *
+         * @param exchange the exchange of the request
+         * @param stream   the stream with the changes
+         */
+        Subscription(HttpExchange exchange, ParkingEventStream stream) {
+            this.exchange = exchange;
+            this.stream = stream;
+            this.output = new BufferedOutputStream(exchange.getResponseBody(), 8192);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (closed.get())
+                    return;
+                stream.writePending(output, ParkingJsonCache.getInstance());
+                //an IOException here means the client closed the connection
+                output.flush();
+                lastWrite = System.currentTimeMillis();
+            } catch (IOException ex) {
+                close(this);
+            } catch (RuntimeException ex) {
+                close(this);
+                throw ex;
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+}
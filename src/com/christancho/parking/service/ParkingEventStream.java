@@ -0,0 +1,303 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.GeoRadius;
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingChangeListener;
+import com.christancho.parking.ParkingException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stream of Server-Sent Events with the modifications of a set of Parkings, selected by id or by area.
+ * <p/>
+ * The changes are coalesced per subscriber: while the connection is busy or waiting for the next flush,
+ * only the last state of every Parking is kept, so a burst of changes in the same Parking is sent as a
+ * single event and a slow connection never accumulates more than one pending event per Parking.
+ * A comment is sent as heartbeat when there are no changes, so the dead connections are detected.
+ * <p/>
+ * A stream of an area remembers the Parkings it has sent inside the area. When one of them is moved outside
+ * or removed, a removed event is sent, so the client stops showing it in the area.
+ * <p/>
+ * In the ParkingHttpServer the streams are fed by the ParkingEventHub, without keeping a worker per client.
+ * The method write keeps the thread until the client closes the connection, it is only used when the stream
+ * is served by a container without the hub
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingEventStream implements StreamingOutput, ParkingChangeListener {
+
+    /**
+     * Minimum time between two flushes of events, the changes received meanwhile are coalesced
+     */
+    public static final long FLUSH_INTERVAL_MILLIS = 250;
+    /**
+     * Time without changes after which a heartbeat is sent
+     */
+    public static final long HEARTBEAT_MILLIS = 15000;
+
+    /**
+     * Bytes of the event name of a modified Parking
+     */
+    private static final byte[] EVENT_PARKING = "event: parking\nid: ".getBytes(JsonResponses.UTF_8);
+    /**
+     * Bytes of the event name of a removed Parking
+     */
+    private static final byte[] EVENT_REMOVED = "event: removed\nid: ".getBytes(JsonResponses.UTF_8);
+    /**
+     * Bytes of the start of the data line
+     */
+    private static final byte[] DATA = "\ndata: ".getBytes(JsonResponses.UTF_8);
+    /**
+     * Bytes of the end of an event
+     */
+    private static final byte[] END = "\n\n".getBytes(JsonResponses.UTF_8);
+    /**
+     * Bytes of the heartbeat comment
+     */
+    private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(JsonResponses.UTF_8);
+
+    /**
+     * Ids of the Parkings subscribed, null to use the area
+     */
+    private final Set<Integer> parkingIds;
+    /**
+     * Area subscribed, null to use the ids
+     */
+    private final GeoRadius area;
+    /**
+     * Changes not sent yet, the last state of every Parking by ParkingId. Protected by this
+     */
+    private Map<Integer, Change> pending = new LinkedHashMap<Integer, Change>();
+    /**
+     * Ids of the Parkings sent or pending inside the area, null to use the ids. Protected by this
+     */
+    private final Set<Integer> insideArea;
+    /**
+     * true when the initial state of the Parkings is queued. Protected by this
+     */
+    private boolean started;
+
+    /**
+     * Creates a new instance of ParkingEventStream. If both filters are null all the Parkings are sent
+     *
+     * @param parkingIds ids of the Parkings subscribed, can be null
+     * @param area       area subscribed, can be null
+     */
+    public ParkingEventStream(Set<Integer> parkingIds, GeoRadius area) {
+        this.parkingIds = parkingIds;
+        this.area = area;
+        this.insideArea = parkingIds == null && area != null ? new HashSet<Integer>() : null;
+    }
+
+    /**
+     * Ask if a Parking is subscribed
+     *
+     * @param parking the Parking to evaluate
+     * @return true if the changes of the Parking have to be sent
+     */
+    private boolean accepts(Parking parking) {
+        if (parkingIds != null)
+            return parkingIds.contains(parking.getId());
+        return area == null || isInsideArea(parking);
+    }
+
+    /**
+     * Ask if a Parking is inside the area subscribed
+     *
+     * @param parking the Parking to evaluate
+     * @return true if the Parking has coordinates inside the area
+     */
+    private boolean isInsideArea(Parking parking) {
+        return parking.getLatitude() != null && parking.getLongitude() != null && parking.isInsideRadius(area);
+    }
+
+    @Override
+    public void parkingChanged(Parking parking, boolean removed) {
+        if (insideArea != null) {
+            areaChanged(parking, !removed && isInsideArea(parking));
+            return;
+        }
+        if (!accepts(parking))
+            return;
+        synchronized (this) {
+            pending.put(parking.getId(), new Change(parking, removed));
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queues the change of a Parking for a stream of an area. A Parking that leaves the area, or is removed,
+     * is sent as removed if it was sent inside the area
+     *
+     * @param parking the Parking modified
+     * @param inside  true if the Parking exists and is inside the area
+     */
+    private synchronized void areaChanged(Parking parking, boolean inside) {
+        if (inside) {
+            insideArea.add(parking.getId());
+        } else if (!insideArea.remove(parking.getId()) && started) {
+            //it was never sent inside the area. Before the start it is queued anyway, so the initial state
+            //read after it doesn't send it inside the area
+            return;
+        }
+        pending.put(parking.getId(), new Change(parking, !inside));
+        notifyAll();
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        start();
+        try {
+            OutputStream buffered = new BufferedOutputStream(output, 8192);
+            ParkingJsonCache cache = ParkingJsonCache.getInstance();
+            while (true) {
+                synchronized (this) {
+                    if (pending.isEmpty())
+                        wait(HEARTBEAT_MILLIS);
+                }
+                writePending(buffered, cache);
+                //an IOException here means the client closed the connection
+                buffered.flush();
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Subscribes the stream to the changes of the ParkingCentral, and queues the actual state of the Parkings
+     * subscribed, so no GET is needed before
+     */
+    void start() {
+        ParkingCentral central = ParkingCentral.getInstance();
+        central.addChangeListener(this);
+        Collection<Parking> initial;
+        if (parkingIds != null) {
+            initial = new ArrayList<Parking>(parkingIds.size());
+            for (Integer parkingId : parkingIds) {
+                try {
+                    initial.add(central.getParking(parkingId));
+                } catch (ParkingException ex) {
+                    //the Parking doesn't exist yet, its events are sent if it is added
+                }
+            }
+        } else if (area != null) {
+            initial = central.searchParkings(null, null, area.getLatitude(), area.getLongitude(),
+                    area.getRadiusKms());
+        } else {
+            initial = central.searchParkings(null, null, null, null, null);
+        }
+        synchronized (this) {
+            for (Parking parking : initial) {
+                if (!pending.containsKey(parking.getId())) {
+                    pending.put(parking.getId(), new Change(parking, false));
+                    if (insideArea != null)
+                        insideArea.add(parking.getId());
+                }
+            }
+            started = true;
+        }
+    }
+
+    /**
+     * Unsubscribes the stream from the changes of the ParkingCentral
+     */
+    void stop() {
+        ParkingCentral.getInstance().removeChangeListener(this);
+    }
+
+    /**
+     * Ask if there are changes not sent yet
+     *
+     * @return true if there are pending changes
+     */
+    synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Writes the changes not sent yet, or a heartbeat if there are no changes. The stream is not flushed
+     *
+     * @param output the stream of the response
+     * @param cache  the cache with the Json of the Parkings
+     * @throws IOException if the stream fails
+     */
+    void writePending(OutputStream output, ParkingJsonCache cache) throws IOException {
+        Map<Integer, Change> changes;
+        synchronized (this) {
+            changes = pending;
+            if (!changes.isEmpty())
+                pending = new LinkedHashMap<Integer, Change>();
+        }
+        if (changes.isEmpty()) {
+            output.write(HEARTBEAT);
+        } else {
+            for (Change change : changes.values()) {
+                writeEvent(output, cache, change);
+            }
+        }
+    }
+
+    /**
+     * Writes the event of a change, with the version of the Parking as event id
+     *
+     * @param output the stream of the response
+     * @param cache  the cache with the Json of the Parkings
+     * @param change the change to write
+     * @throws IOException if the stream fails
+     */
+    private static void writeEvent(OutputStream output, ParkingJsonCache cache, Change change)
+            throws IOException {
+        Parking parking = change.parking;
+        output.write(change.removed ? EVENT_REMOVED : EVENT_PARKING);
+        output.write(Long.toString(parking.getVersion()).getBytes(JsonResponses.UTF_8));
+        output.write(DATA);
+        if (change.removed)
+            output.write(("{\"id\":" + parking.getId() + "}").getBytes(JsonResponses.UTF_8));
+        else
+            output.write(cache.get(parking));
+        output.write(END);
+    }
+
+    /**
+     * Last change of a Parking not sent yet
+     */
+    private static class Change {
+
+        /**
+         * The Parking modified, its values are read when the event is written
+         */
+        private final Parking parking;
+        /**
+         * true if the Parking was removed
+         */
+        private final boolean removed;
+
+        /**
+         * Creates a new instance of Change
+         *
+         * @param parking the Parking modified
+         * @param removed true if the Parking was removed
+         */
+        Change(Parking parking, boolean removed) {
+            this.parking = parking;
+            this.removed = removed;
+        }
+    }
+}
@@ -1,47 +1,307 @@
-package com.christancho.parking.service;
-
-import com.christancho.parking.ParkingException;
-import com.sun.jersey.api.container.httpserver.HttpServerFactory;
-import com.sun.jersey.api.core.PackagesResourceConfig;
-import com.sun.jersey.api.core.ResourceConfig;
-import com.sun.net.httpserver.HttpServer;
-
-import javax.ws.rs.core.UriBuilder;
-import java.net.InetAddress;
-import java.net.URI;
-import java.net.UnknownHostException;
-import java.util.logging.LogManager;
-
-/**
- * Class that generate a HttpServer where the ParkingAPI is deployed
- *
- * @author Christian Delgado
- * @version 1.0
- * @date 12/11/14
- */
-public class ParkingHttpServer {
-
-    public static void main(String[] args) {
-        try {
-            LogManager.getLogManager().reset();
-            System.out.println("\n\n   Starting HTTPServer.");
-            ResourceConfig resourceConfig = new PackagesResourceConfig("com.christancho.parking.service");
-            String hostName = "localhost";
-            try {
-                hostName = InetAddress.getLocalHost().getCanonicalHostName();
-            } catch (UnknownHostException e) {
-                e.printStackTrace();
-            }
-            URI uri = UriBuilder.fromUri("http://" + hostName + "/").port(8085).build();
-
-            HttpServer httpServer = HttpServerFactory.create(uri, resourceConfig);
-
-            httpServer.start();
-            System.out.println("   HTTPServer started with WADL available at http://"
-                    + hostName + ":8085/application.wadl");
-            System.out.println("   Started HTTPServer Successfully!");
-        } catch (Exception e) {
-            throw new ParkingException(e, ParkingException.CODE_SERVER_HTTP, "Error starting the HTTPServer");
-        }
-    }
-}
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.ParkingJournal;
+import com.christancho.parking.ParkingSnapshot;
+import com.christancho.parking.metrics.Gauge;
+import com.christancho.parking.metrics.ParkingMetrics;
+import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.logging.LogManager;
+
+/**
+ * Class that generate a HttpServer where the ParkingAPI is deployed.
+ * <p/>
+ * The requests are executed by a RequestExecutor configured with the ServerOptions received as arguments.
+ * With the option --snapshot the Parkings are loaded from the ParkingSnapshot before accepting requests, and
+ * written again when the server is stopped. With the option --journal the modifications after the snapshot
+ * are replayed from the ParkingJournal, and every modification is written in it. The responses of the clients
+ * that accept gzip are compressed by the CompressionFilter, unless --compression=off. The streams of events
+ * are fed by the ParkingEventHub, up to --max-streams at the same time
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingHttpServer {
+
+    public static void main(String[] args) {
+        try {
+            LogManager.getLogManager().reset();
+            start(ServerOptions.parse(args));
+        } catch (Exception e) {
+            throw new ParkingException(e, ParkingException.CODE_SERVER_HTTP, "Error starting the HTTPServer");
+        }
+    }
+
+    /**
+     * Starts the HttpServer with the ParkingAPI, serving the Parkings of the ParkingCentral instance
+     *
+     * @param options the options of the server
+     * @return the HttpServer started, its executor is the RequestExecutor instance
+     * @throws IOException if the port can't be opened
+     */
+    public static HttpServer start(ServerOptions options) throws IOException {
+        System.out.println("\n\n   Starting HTTPServer.");
+        String hostName = options.getHost();
+        if (hostName == null) {
+            hostName = "localhost";
+            try {
+                hostName = InetAddress.getLocalHost().getCanonicalHostName();
+            } catch (UnknownHostException e) {
+                e.printStackTrace();
+            }
+        }
+        if (options.getJsonCacheBytes() != null)
+            ParkingJsonCache.getInstance().setMaxBytes(options.getJsonCacheBytes());
+        //the Central is replaced before the snapshot and the journal are loaded into it
+        if (ParkingCentral.getInstance().getStorage() != options.getStorage())
+            ParkingCentral.instance = new ParkingCentral(options.getStorage());
+        ParkingSnapshot snapshot = null;
+        if (options.getSnapshot() != null)
+            snapshot = new ParkingSnapshot(new File(options.getSnapshot()));
+        ParkingJournal journal = null;
+        if (options.getJournal() != null)
+            journal = new ParkingJournal(new File(options.getJournal()), options.getJournalDurability(),
+                    options.getJournalInterval(), ParkingJournal.DEFAULT_SEGMENT_RECORDS);
+        if (snapshot != null || journal != null)
+            startPersistence(snapshot, journal);
+
+        HttpHandler handler;
+        if (options.getRouter() == ServerOptions.Router.DIRECT) {
+            handler = new ParkingRouter();
+        } else {
+            //the server is built like HttpServerFactory does, but keeping the context to add the filters
+            ResourceConfig resourceConfig = new PackagesResourceConfig("com.christancho.parking.service");
+            handler = ContainerFactory.createContainer(HttpHandler.class, resourceConfig);
+        }
+        //the headers and the body are written in several packets, with Nagle every response waited for the
+        //delayed ACK of the client (40 ms). The property is read when the first HttpServer is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(options.getPort()), 0);
+        HttpContext context = httpServer.createContext("/", handler);
+        //the metrics go first, so they also count the requests rejected by the OverloadFilter
+        context.getFilters().add(new MetricsFilter());
+        context.getFilters().add(new OverloadFilter());
+        CompressionFilter compression = null;
+        if (options.getCompression() == ServerOptions.Compression.GZIP) {
+            compression = new CompressionFilter(options.getCompressionThreshold(), options.getThreads());
+            context.getFilters().add(compression);
+        }
+        //the streams of events are answered by the router without the compression, which closes the response
+        //when the handler returns, and left open to the ParkingEventHub
+        HttpContext events = httpServer.createContext("/api/parking/events",
+                options.getRouter() == ServerOptions.Router.DIRECT ? handler : new ParkingRouter());
+        events.getFilters().add(new MetricsFilter());
+        events.getFilters().add(new OverloadFilter());
+        ParkingEventHub hub = new ParkingEventHub(options.getMaxStreams());
+        ParkingEventHub.setInstance(hub);
+        RequestExecutor executor = new RequestExecutor(options.getExecutor(), options.getThreads(),
+                options.getQueue());
+        RequestExecutor.setInstance(executor);
+        httpServer.setExecutor(executor);
+        addGauges(ParkingCentral.getInstance(), executor, compression, hub);
+
+        httpServer.start();
+        System.out.println("   Requests dispatched by " + options.getRouter().name().toLowerCase()
+                + " and executed by " + executor.getMode().name().toLowerCase()
+                + (executor.getMode() == RequestExecutor.Mode.POOL
+                ? " (" + executor.getWorkers() + " workers, queue of " + executor.getQueueCapacity() + ")" : ""));
+        if (options.getRouter() == ServerOptions.Router.JERSEY)
+            System.out.println("   HTTPServer started with WADL available at http://"
+                    + hostName + ":" + options.getPort() + "/application.wadl");
+        System.out.println("   Started HTTPServer Successfully!");
+        return httpServer;
+    }
+
+    /**
+     * Publishes in the ParkingMetrics the gauges of the central, the executor, the compression, the streams of
+     * events and the journal
+     *
+     * @param central     the central of the service
+     * @param executor    the executor of the requests
+     * @param compression the filter that compresses the responses, null without compression
+     * @param hub         the hub of the streams of events
+     */
+    private static void addGauges(final ParkingCentral central, final RequestExecutor executor,
+                                  final CompressionFilter compression, final ParkingEventHub hub) {
+        ParkingMetrics metrics = ParkingMetrics.getInstance();
+        metrics.addGauge("parkings", "Parkings in the central", new Gauge() {
+            @Override
+            public double getValue() {
+                return central.getParkingCount();
+            }
+        });
+        metrics.addGauge("parkings_full", "Parkings without free places", new Gauge() {
+            @Override
+            public double getValue() {
+                return central.countFullParkings();
+            }
+        });
+        metrics.addGauge("places_total", "Total places of all the Parkings", new Gauge() {
+            @Override
+            public double getValue() {
+                return central.countPlaces(false);
+            }
+        });
+        metrics.addGauge("places_free", "Free places of all the Parkings", new Gauge() {
+            @Override
+            public double getValue() {
+                return central.countPlaces(true);
+            }
+        });
+        metrics.addCounter("modifications_total", "Modifications of the Parkings, the version of the central",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return central.getVersion();
+                    }
+                });
+        metrics.addCounter("listener_failures_total", "Exceptions thrown by the listeners of the modifications",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return central.getListenerFailures();
+                    }
+                });
+        metrics.addGauge("executor_active_workers", "Workers executing a request", new Gauge() {
+            @Override
+            public double getValue() {
+                return executor.getActiveWorkers();
+            }
+        });
+        metrics.addGauge("executor_queue_depth", "Requests waiting for a worker", new Gauge() {
+            @Override
+            public double getValue() {
+                return executor.getQueueDepth();
+            }
+        });
+        metrics.addCounter("executor_rejected_total", "Requests rejected with 503", new Gauge() {
+            @Override
+            public double getValue() {
+                return executor.getRejected();
+            }
+        });
+        metrics.addGauge("event_streams_open", "Streams of events open", new Gauge() {
+            @Override
+            public double getValue() {
+                return hub.getOpenStreams();
+            }
+        });
+        metrics.addCounter("event_streams_rejected_total", "Streams of events rejected with 503", new Gauge() {
+            @Override
+            public double getValue() {
+                return hub.getRejected();
+            }
+        });
+        if (compression != null) {
+            metrics.addCounter("compressed_responses_total", "Responses compressed with gzip", new Gauge() {
+                @Override
+                public double getValue() {
+                    return compression.getCompressed();
+                }
+            });
+            metrics.addCounter("compressed_bytes_in_total", "Bytes of the compressed responses before the gzip",
+                    new Gauge() {
+                        @Override
+                        public double getValue() {
+                            return compression.getBytesIn();
+                        }
+                    });
+            metrics.addCounter("compressed_bytes_out_total", "Bytes of the compressed responses after the gzip",
+                    new Gauge() {
+                        @Override
+                        public double getValue() {
+                            return compression.getBytesOut();
+                        }
+                    });
+        }
+        final ParkingJournal journal = central.getJournal();
+        if (journal == null)
+            return;
+        metrics.addCounter("journal_appended_total", "Records written in the journal", new Gauge() {
+            @Override
+            public double getValue() {
+                return journal.getAppended();
+            }
+        });
+        metrics.addCounter("journal_flushes_total", "Forces of the journal to the disk", new Gauge() {
+            @Override
+            public double getValue() {
+                return journal.getFlushes();
+            }
+        });
+        metrics.addGauge("journal_segments", "Segment files of the journal", new Gauge() {
+            @Override
+            public double getValue() {
+                return journal.getSegments();
+            }
+        });
+        metrics.addGauge("journal_failed", "1 if a record couldn't be written and the modifications are rejected",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return journal.isFailed() ? 1 : 0;
+                    }
+                });
+    }
+
+    /**
+     * Loads the snapshot if it was already written and replays the journal after it, and registers the hook
+     * that writes the snapshot and closes the journal at the shutdown
+     *
+     * @param snapshot the snapshot configured, null without snapshot
+     * @param journal  the journal configured, null without journal
+     */
+    private static void startPersistence(final ParkingSnapshot snapshot, final ParkingJournal journal) {
+        final ParkingCentral central = ParkingCentral.getInstance();
+        if (snapshot != null && snapshot.exists()) {
+            long start = System.currentTimeMillis();
+            int parkings = snapshot.load(central);
+            System.out.println("   Loaded " + parkings + " Parkings from the snapshot " + snapshot.getFile()
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        if (journal != null) {
+            long start = System.currentTimeMillis();
+            int records = journal.replay(central, snapshot == null ? 0 : snapshot.getVersion());
+            journal.open(central);
+            System.out.println("   Replayed " + records + " records of the journal in "
+                    + (System.currentTimeMillis() - start) + " ms, durability "
+                    + journal.getDurability().name().toLowerCase());
+            //the records replayed are compacted into a new snapshot
+            if (snapshot != null && records > 0)
+                snapshot.checkpoint(central);
+        }
+        ServerAPI.setSnapshot(snapshot);
+        Runtime.getRuntime().addShutdownHook(new Thread("parking-snapshot") {
+            @Override
+            public void run() {
+                try {
+                    if (snapshot != null) {
+                        //the same critical section than the POST of the ServerAPI, they can't overlap
+                        int parkings = snapshot.checkpoint(central);
+                        System.out.println("   Written " + parkings + " Parkings in the snapshot "
+                                + snapshot.getFile());
+                    }
+                } catch (ParkingException ex) {
+                    ex.printStackTrace();
+                } finally {
+                    if (journal != null)
+                        journal.close();
+                }
+            }
+        });
+    }
+}
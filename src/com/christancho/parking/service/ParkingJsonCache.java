@@ -0,0 +1,271 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.ParkingTypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache with the compact Json of the Parkings, already encoded in UTF-8.
+ * <p/>
+ * Every entry keeps the version of the Parking it was encoded from, so any modification of the Parking
+ * invalidates it. The memory is bounded by a maximum number of bytes, and the least recently read entries
+ * are evicted first. The cache is divided in segments by ParkingId so concurrent readers rarely share a lock
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingJsonCache {
+
+    /**
+     * System property with the maximum number of bytes of the cache
+     */
+    public static final String PROPERTY_MAX_BYTES = "parking.jsonCache.maxBytes";
+    /**
+     * Default maximum number of bytes of the cache
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    /**
+     * Number of segments
+     */
+    private static final int SEGMENTS = 16;
+    /**
+     * Approximated memory used by every entry besides the Json bytes
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * Singleton instance
+     */
+    private static final ParkingJsonCache instance =
+            new ParkingJsonCache(Long.getLong(PROPERTY_MAX_BYTES, DEFAULT_MAX_BYTES));
+
+    /**
+     * Adapter used to encode the Parkings
+     */
+    private final ParkingTypeAdapter parkingAdapter = new ParkingTypeAdapter();
+    /**
+     * Segments of the cache
+     */
+    private final Segment[] segments;
+    /**
+     * Number of reads served from the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * Number of reads that had to encode the Parking
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new instance of ParkingJsonCache
+     *
+     * @param maxBytes maximum number of bytes of the cache, 0 to disable it
+     */
+    public ParkingJsonCache(long maxBytes) {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Obtain the instance used by the ParkingAPI
+     *
+     * @return the instance
+     */
+    public static ParkingJsonCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Changes the maximum number of bytes of the cache, evicting entries if needed
+     *
+     * @param maxBytes maximum number of bytes of the cache, 0 to disable it
+     */
+    public void setMaxBytes(long maxBytes) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.maxBytes = maxBytes / SEGMENTS;
+                segment.evict();
+            }
+        }
+    }
+
+    /**
+     * Gets the compact Json of a Parking, encoding it if it is not cached or the Parking changed
+     *
+     * @param parking the parking to encode
+     * @return the UTF-8 bytes of the Json, they must not be modified
+     */
+    public byte[] get(Parking parking) {
+        //the version is read before encoding, so the cached bytes are never older than their version
+        long version = parking.getVersion();
+        Integer id = parking.getId();
+        Segment segment = segments[(id.hashCode() & 0x7fffffff) % SEGMENTS];
+        synchronized (segment) {
+            Entry entry = segment.entries.get(id);
+            if (entry != null && entry.version == version) {
+                hits.incrementAndGet();
+                return entry.json;
+            }
+        }
+        misses.incrementAndGet();
+        byte[] json = encode(parking);
+        synchronized (segment) {
+            Entry entry = segment.entries.get(id);
+            if (entry == null || entry.version < version) {
+                if (entry != null)
+                    segment.bytes -= entry.size();
+                entry = new Entry(version, json);
+                if (entry.size() <= segment.maxBytes) {
+                    segment.entries.put(id, entry);
+                    segment.bytes += entry.size();
+                    segment.evict();
+                } else {
+                    segment.entries.remove(id);
+                }
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Removes all the entries
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes used by the cache
+     *
+     * @return the approximated number of bytes
+     */
+    public long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the number of reads served from the cache
+     *
+     * @return the value of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of reads that had to encode the Parking
+     *
+     * @return the value of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Encodes a Parking into compact Json
+     *
+     * @param parking the parking to encode
+     * @return the UTF-8 bytes of the Json
+     */
+    private byte[] encode(Parking parking) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, JsonResponses.UTF_8));
+            writer.setHtmlSafe(false);
+            parkingAdapter.write(writer, parking);
+            writer.flush();
+            return output.toByteArray();
+        } catch (IOException ex) {
+            throw new ParkingException(ex);
+        }
+    }
+
+    /**
+     * Segment of the cache, a LinkedHashMap in access order protected by its own lock
+     */
+    private static class Segment {
+
+        /**
+         * Entries in access order, the first one is the least recently read
+         */
+        private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(64, 0.75f, true);
+        /**
+         * Maximum number of bytes of the segment
+         */
+        private long maxBytes;
+        /**
+         * Number of bytes used by the segment
+         */
+        private long bytes;
+
+        /**
+         * Removes the least recently read entries until the segment fits in maxBytes
+         */
+        void evict() {
+            Iterator<Map.Entry<Integer, Entry>> iterator = entries.entrySet().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Json of a Parking encoded at a version
+     */
+    private static class Entry {
+
+        /**
+         * Version of the Parking when it was encoded
+         */
+        private final long version;
+        /**
+         * UTF-8 bytes of the Json
+         */
+        private final byte[] json;
+
+        /**
+         * Creates a new instance of Entry
+         *
+         * @param version version of the Parking when it was encoded
+         * @param json    UTF-8 bytes of the Json
+         */
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        /**
+         * Approximated memory used by the entry
+         *
+         * @return the size in bytes
+         */
+        long size() {
+            return json.length + ENTRY_OVERHEAD;
+        }
+    }
+}
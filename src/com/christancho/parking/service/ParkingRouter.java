@@ -0,0 +1,599 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.metrics.ParkingMetrics;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpHandler that dispatches the requests to the ParkingAPI, the ServerAPI and the MetricsAPI with a route
+ * table built at startup, without the annotation scanning and the parameter injection of Jersey.
+ * <p/>
+ * The routes call the same methods than Jersey, with the parameters converted like Jersey does (an invalid
+ * path or query parameter is a 404), so the URLs and the Json are identical in both modes, also the binary
+ * format negotiated with the Accept header. The Response of the methods is written directly into the HttpExchange.
+ * Like Jersey, a HEAD is answered by the GET route with the same headers and without the body
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingRouter implements HttpHandler {
+
+    /**
+     * Media type of the Json responses
+     */
+    private static final String JSON = "application/json";
+    /**
+     * Media type of the streams of events
+     */
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Resource with the Parking services
+     */
+    private final ParkingAPI parkingAPI = new ParkingAPI();
+    /**
+     * Resource with the server services
+     */
+    private final ServerAPI serverAPI = new ServerAPI();
+    /**
+     * Resource with the metrics
+     */
+    private final MetricsAPI metricsAPI = new MetricsAPI();
+    /**
+     * Templates of the routes by number of segments, the literal templates before the ones with parameters
+     */
+    private final Map<Integer, List<Template>> templates = new HashMap<Integer, List<Template>>();
+
+    /**
+     * Creates a new instance of ParkingRouter with the routes of all the services
+     */
+    public ParkingRouter() {
+        add("GET", "/api/parking/search", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.searchParkings(request.queryBoolean("complete"), request.query("date"),
+                        request.queryDouble("latitude"), request.queryDouble("longitude"),
+                        request.queryDouble("distance"), request.query("sort"), request.query("cursor"),
+                        request.queryInteger("offset"), request.queryInteger("limit"),
+                        request.queryFlag("pretty"), request.header("If-None-Match"), request.header("Accept"));
+            }
+        });
+        add("GET", "/api/parking/nearest", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                Integer k = request.queryInteger("k");
+                //like the @DefaultValue of Jersey, only the Parkings with free places by default
+                Boolean complete = request.queryBoolean("complete");
+                return parkingAPI.nearest(request.queryDouble("latitude"), request.queryDouble("longitude"),
+                        k == null ? 1 : k, complete != null && complete, request.queryFlag("pretty"),
+                        request.header("If-None-Match"), request.header("Accept"));
+            }
+        });
+        add("GET", "/api/parking/events", EVENT_STREAM, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.events(request.query("ids"), request.queryDouble("latitude"),
+                        request.queryDouble("longitude"), request.queryDouble("distance"));
+            }
+        });
+        add("POST", "/api/parking/occupancy/batch", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.applyOccupancy(request.body(), request.queryFlag("pretty"),
+                        request.header("Accept"));
+            }
+        });
+        add("POST", "/api/parking", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.add(request.body(), request.queryFlag("pretty"), request.header("Accept"));
+            }
+        });
+        add("PUT", "/api/parking", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.edit(request.body(), request.queryFlag("pretty"), request.header("Accept"));
+            }
+        });
+        add("GET", "/api/parking/{parkingId}", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.get(request.pathInteger(2), request.queryFlag("pretty"),
+                        request.header("If-None-Match"), request.header("Accept"));
+            }
+        });
+        add("PUT", "/api/parking/{parkingId}", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.edit(request.body(), request.pathInteger(2), request.queryFlag("pretty"),
+                        request.header("Accept"));
+            }
+        });
+        add("DELETE", "/api/parking/{parkingId}", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.remove(request.pathInteger(2), request.queryFlag("pretty"),
+                        request.header("Accept"));
+            }
+        });
+        add("GET", "/api/parking/{parkingId}/takePlace", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.takePlace(request.pathInteger(2), request.queryFlag("pretty"),
+                        request.header("Accept"));
+            }
+        });
+        add("GET", "/api/parking/{parkingId}/releasePlace", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return parkingAPI.releasePlace(request.pathInteger(2), request.queryFlag("pretty"),
+                        request.header("Accept"));
+            }
+        });
+        add("POST", "/api/parking/{parkingId}/occupancy", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                Integer delta = request.queryInteger("delta");
+                return parkingAPI.changePlaces(request.pathInteger(2), delta == null ? 0 : delta,
+                        request.queryFlag("pretty"), request.header("Accept"));
+            }
+        });
+        add("GET", "/api/server/executor", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return serverAPI.executor(request.queryFlag("pretty"));
+            }
+        });
+        add("POST", "/api/server/snapshot", JSON, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return serverAPI.snapshot(request.queryFlag("pretty"));
+            }
+        });
+        add("GET", "/api/metrics", ParkingMetrics.CONTENT_TYPE, new Action() {
+            @Override
+            public Response handle(Request request) {
+                return metricsAPI.metrics();
+            }
+        });
+    }
+
+    /**
+     * Adds a route to the table
+     *
+     * @param method    the HTTP method
+     * @param path      the path, the parameters are segments between braces
+     * @param mediaType media type of the response when the Response doesn't set it
+     * @param action    the call to the resource
+     */
+    private void add(String method, String path, String mediaType, Action action) {
+        String[] segments = split(path);
+        List<Template> sameSize = templates.get(segments.length);
+        if (sameSize == null) {
+            sameSize = new ArrayList<Template>();
+            templates.put(segments.length, sameSize);
+        }
+        Template template = null;
+        for (Template candidate : sameSize) {
+            if (candidate.path.equals(path))
+                template = candidate;
+        }
+        if (template == null) {
+            template = new Template(path, segments);
+            //like Jersey, the templates with more literal segments are matched first
+            int position = 0;
+            while (position < sameSize.size() && sameSize.get(position).literals >= template.literals) {
+                position++;
+            }
+            sameSize.add(position, template);
+        }
+        template.routes.put(method, new Route(mediaType, action));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        boolean streaming = false;
+        try {
+            String[] segments = split(exchange.getRequestURI().getRawPath());
+            Template template = null;
+            List<Template> sameSize = templates.get(segments.length);
+            if (sameSize != null) {
+                for (Template candidate : sameSize) {
+                    if (candidate.matches(segments)) {
+                        template = candidate;
+                        break;
+                    }
+                }
+            }
+            if (template == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            Route route = template.routes.get(method);
+            boolean head = route == null && "HEAD".equals(method);
+            if (head)
+                route = template.routes.get("GET");
+            if (route == null) {
+                exchange.getResponseHeaders().set("Allow", template.allow());
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Response response;
+            try {
+                response = route.action.handle(new Request(exchange, segments));
+            } catch (InvalidParameterException ex) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            streaming = write(exchange, response, route.mediaType, head);
+        } finally {
+            //the streams of events are closed by the ParkingEventHub
+            if (!streaming)
+                exchange.close();
+        }
+    }
+
+    /**
+     * Writes a Response into the HttpExchange. The streams of events are passed to the ParkingEventHub of the
+     * server, if it is started, which keeps the exchange open without keeping the thread
+     *
+     * @param exchange  the exchange of the request
+     * @param response  the Response of the resource
+     * @param mediaType media type of the response when the Response doesn't set it
+     * @param head      true to write only the headers, the body is never generated
+     * @return true if the exchange was left open to the ParkingEventHub
+     * @throws IOException if the stream fails
+     */
+    private static boolean write(HttpExchange exchange, Response response, String mediaType, boolean head)
+            throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        for (Map.Entry<String, List<Object>> header : response.getMetadata().entrySet()) {
+            for (Object value : header.getValue()) {
+                headers.add(header.getKey(), value.toString());
+            }
+        }
+        Object entity = response.getEntity();
+        if (entity == null) {
+            exchange.sendResponseHeaders(response.getStatus(), -1);
+            return false;
+        }
+        if (!headers.containsKey("Content-Type"))
+            headers.set("Content-Type", mediaType);
+        if (head) {
+            exchange.sendResponseHeaders(response.getStatus(), -1);
+            return false;
+        }
+        ParkingEventHub hub = ParkingEventHub.getInstance();
+        if (entity instanceof ParkingEventStream && hub != null)
+            return hub.open(exchange, (ParkingEventStream) entity);
+        if (entity instanceof StreamingOutput) {
+            exchange.sendResponseHeaders(response.getStatus(), 0);
+            OutputStream output = exchange.getResponseBody();
+            ((StreamingOutput) entity).write(output);
+            output.close();
+            return false;
+        }
+        byte[] body;
+        if (entity instanceof byte[])
+            body = (byte[]) entity;
+        else if (entity instanceof String)
+            body = ((String) entity).getBytes(JsonResponses.UTF_8);
+        else
+            throw new IllegalStateException("Entity not supported: " + entity.getClass());
+        exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+        return false;
+    }
+
+    /**
+     * Splits a path in segments, ignoring the empty ones
+     *
+     * @param path the path
+     * @return the segments
+     */
+    static String[] split(String path) {
+        List<String> segments = new ArrayList<String>(6);
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = path.length();
+            if (end > start)
+                segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    /**
+     * Decodes a part of an URL
+     *
+     * @param value the encoded value
+     * @return the decoded value
+     */
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidParameterException();
+        }
+    }
+
+    /**
+     * Call to a method of a resource
+     */
+    private interface Action {
+
+        /**
+         * Calls the method with the parameters of the request
+         *
+         * @param request the request
+         * @return the Response of the method
+         */
+        Response handle(Request request);
+    }
+
+    /**
+     * Route of a method of a template
+     */
+    private static class Route {
+
+        /**
+         * Media type of the response when the Response doesn't set it
+         */
+        private final String mediaType;
+        /**
+         * The call to the resource
+         */
+        private final Action action;
+
+        /**
+         * Creates a new instance of Route
+         *
+         * @param mediaType media type of the response
+         * @param action    the call to the resource
+         */
+        Route(String mediaType, Action action) {
+            this.mediaType = mediaType;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Path template with the routes of every HTTP method
+     */
+    private static class Template {
+
+        /**
+         * The path of the template
+         */
+        private final String path;
+        /**
+         * The segments, null for the parameters
+         */
+        private final String[] segments;
+        /**
+         * Number of literal segments
+         */
+        private final int literals;
+        /**
+         * Routes by HTTP method
+         */
+        private final Map<String, Route> routes = new LinkedHashMap<String, Route>();
+
+        /**
+         * Creates a new instance of Template
+         *
+         * @param path     the path of the template
+         * @param segments the segments of the path
+         */
+        Template(String path, String[] segments) {
+            this.path = path;
+            this.segments = new String[segments.length];
+            int count = 0;
+            for (int i = 0; i < segments.length; i++) {
+                if (!segments[i].startsWith("{")) {
+                    this.segments[i] = segments[i];
+                    count++;
+                }
+            }
+            this.literals = count;
+        }
+
+        /**
+         * Ask if a path matches the template
+         *
+         * @param requestSegments the segments of the path, with the same length than the template
+         * @return true if all the literal segments are equal
+         */
+        boolean matches(String[] requestSegments) {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] != null && !segments[i].equals(requestSegments[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Builds the Allow header of the template
+         *
+         * @return the methods separated by commas
+         */
+        String allow() {
+            StringBuilder allow = new StringBuilder();
+            for (String method : routes.keySet()) {
+                if (allow.length() > 0)
+                    allow.append(',');
+                allow.append(method);
+            }
+            //the HEAD is answered by the GET route
+            if (routes.containsKey("GET") && !routes.containsKey("HEAD"))
+                allow.append(",HEAD");
+            return allow.toString();
+        }
+    }
+
+    /**
+     * Request with the conversions of the parameters
+     */
+    private static class Request {
+
+        /**
+         * The exchange of the request
+         */
+        private final HttpExchange exchange;
+        /**
+         * The segments of the path
+         */
+        private final String[] segments;
+        /**
+         * First value of every query parameter, parsed when the first one is read
+         */
+        private Map<String, String> queryParameters;
+
+        /**
+         * Creates a new instance of Request
+         *
+         * @param exchange the exchange of the request
+         * @param segments the segments of the path
+         */
+        Request(HttpExchange exchange, String[] segments) {
+            this.exchange = exchange;
+            this.segments = segments;
+        }
+
+        /**
+         * Gets a path parameter as Integer
+         *
+         * @param index position of the segment
+         * @return the value
+         */
+        Integer pathInteger(int index) {
+            try {
+                return Integer.valueOf(decode(segments[index]));
+            } catch (NumberFormatException ex) {
+                throw new InvalidParameterException();
+            }
+        }
+
+        /**
+         * Gets the first value of a query parameter
+         *
+         * @param name name of the parameter
+         * @return the value, null if it is not sent
+         */
+        String query(String name) {
+            if (queryParameters == null) {
+                queryParameters = new HashMap<String, String>();
+                String query = exchange.getRequestURI().getRawQuery();
+                if (query != null) {
+                    for (String parameter : query.split("&")) {
+                        int separator = parameter.indexOf('=');
+                        String key = decode(separator < 0 ? parameter : parameter.substring(0, separator));
+                        if (!queryParameters.containsKey(key))
+                            queryParameters.put(key, separator < 0 ? "" : decode(parameter.substring(separator + 1)));
+                    }
+                }
+            }
+            return queryParameters.get(name);
+        }
+
+        /**
+         * Gets a query parameter as primitive boolean, false if it is not sent
+         *
+         * @param name name of the parameter
+         * @return the value
+         */
+        boolean queryFlag(String name) {
+            return Boolean.valueOf(query(name));
+        }
+
+        /**
+         * Gets a query parameter as Boolean
+         *
+         * @param name name of the parameter
+         * @return the value, null if it is not sent
+         */
+        Boolean queryBoolean(String name) {
+            String value = query(name);
+            return value == null ? null : Boolean.valueOf(value);
+        }
+
+        /**
+         * Gets a query parameter as Integer
+         *
+         * @param name name of the parameter
+         * @return the value, null if it is not sent
+         */
+        Integer queryInteger(String name) {
+            String value = query(name);
+            try {
+                return value == null ? null : Integer.valueOf(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new InvalidParameterException();
+            }
+        }
+
+        /**
+         * Gets a query parameter as Double
+         *
+         * @param name name of the parameter
+         * @return the value, null if it is not sent
+         */
+        Double queryDouble(String name) {
+            String value = query(name);
+            try {
+                return value == null ? null : Double.valueOf(value);
+            } catch (NumberFormatException ex) {
+                throw new InvalidParameterException();
+            }
+        }
+
+        /**
+         * Gets the first value of a header
+         *
+         * @param name name of the header
+         * @return the value, null if it is not sent
+         */
+        String header(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+
+        /**
+         * Gets the body of the request
+         *
+         * @return the stream of the body
+         */
+        InputStream body() {
+            return exchange.getRequestBody();
+        }
+    }
+
+    /**
+     * Parameter that can't be converted, answered with 404 like Jersey does
+     */
+    private static class InvalidParameterException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
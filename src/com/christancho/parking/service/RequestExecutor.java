@@ -0,0 +1,336 @@
+package com.christancho.parking.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor of the requests of the ParkingHttpServer.
+ * <p/>
+ * In POOL mode the requests are executed by a bounded pool of workers with a bounded queue. When the queue is
+ * full the request is not executed by the pool: it is passed to a single overflow thread, marked as rejected,
+ * and the OverloadFilter answers it with 503 without calling the ParkingAPI. In VIRTUAL mode every request
+ * has its own virtual thread, only available in the JDKs that support them.
+ * <p/>
+ * The number of active workers and the queue depth are counted so they can be exposed by the ServerAPI
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class RequestExecutor implements Executor {
+
+    /**
+     * Models of execution of the requests
+     */
+    public enum Mode {
+        /**
+         * Bounded pool of workers with a bounded queue
+         */
+        POOL,
+        /**
+         * A virtual thread per request
+         */
+        VIRTUAL
+    }
+
+    /**
+     * Instance used by the running server, null if the server is not started
+     */
+    private static volatile RequestExecutor instance;
+
+    /**
+     * Requests executed by the overflow thread, they have to be rejected
+     */
+    private static final ThreadLocal<Boolean> rejecting = new ThreadLocal<Boolean>();
+
+    /**
+     * Model of execution
+     */
+    private final Mode mode;
+    /**
+     * Executor of the requests accepted
+     */
+    private final ExecutorService workers;
+    /**
+     * Pool of workers in POOL mode, null in VIRTUAL mode
+     */
+    private final ThreadPoolExecutor pool;
+    /**
+     * Thread that answers the requests rejected by the pool
+     */
+    private final ThreadPoolExecutor overflow;
+    /**
+     * Maximum number of requests waiting in the queue
+     */
+    private final int queueCapacity;
+    /**
+     * Number of requests being executed
+     */
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    /**
+     * Number of requests rejected because the queue was full
+     */
+    private final AtomicLong rejected = new AtomicLong();
+    /**
+     * Number of requests executed
+     */
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * Creates a new instance of RequestExecutor
+     *
+     * @param mode          model of execution, the POOL mode is used if VIRTUAL is not supported
+     * @param threads       number of workers in POOL mode
+     * @param queueCapacity maximum number of requests waiting for a worker in POOL mode
+     */
+    public RequestExecutor(Mode mode, int threads, int queueCapacity) {
+        ExecutorService virtual = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        this.overflow = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new NamedThreadFactory("overflow"),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable request, ThreadPoolExecutor executor) {
+                        //even the overflow queue is full, the dispatcher answers the 503 itself
+                        request.run();
+                    }
+                });
+        if (virtual != null) {
+            this.mode = Mode.VIRTUAL;
+            this.workers = virtual;
+            this.pool = null;
+            this.queueCapacity = 0;
+        } else {
+            this.mode = Mode.POOL;
+            this.queueCapacity = queueCapacity;
+            this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new NamedThreadFactory("worker"),
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable request, ThreadPoolExecutor executor) {
+                            rejected.incrementAndGet();
+                            overflow.execute(new Rejection(((Task) request).request));
+                        }
+                    });
+            this.pool.allowCoreThreadTimeOut(true);
+            this.workers = pool;
+        }
+    }
+
+    /**
+     * Obtain the instance used by the running server
+     *
+     * @return the instance, null if the server is not started
+     */
+    public static RequestExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Changes the instance used by the running server
+     *
+     * @param executor the instance
+     */
+    static void setInstance(RequestExecutor executor) {
+        instance = executor;
+    }
+
+    /**
+     * Ask if the actual thread is answering a request rejected by the pool
+     *
+     * @return true if the request has to be answered with 503
+     */
+    public static boolean isRejecting() {
+        return Boolean.TRUE.equals(rejecting.get());
+    }
+
+    @Override
+    public void execute(Runnable request) {
+        workers.execute(new Task(request));
+    }
+
+    /**
+     * Stops accepting requests, the requests already accepted are finished
+     */
+    public void shutdown() {
+        workers.shutdown();
+        overflow.shutdown();
+    }
+
+    /**
+     * Get the value of mode
+     *
+     * @return the value of mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the number of workers, 0 in VIRTUAL mode
+     *
+     * @return the number of threads of the pool
+     */
+    public int getWorkers() {
+        return pool == null ? 0 : pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Get the number of requests being executed
+     *
+     * @return the value of activeWorkers
+     */
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    /**
+     * Get the number of requests waiting for a worker
+     *
+     * @return the size of the queue, 0 in VIRTUAL mode
+     */
+    public int getQueueDepth() {
+        return pool == null ? 0 : pool.getQueue().size();
+    }
+
+    /**
+     * Get the value of queueCapacity
+     *
+     * @return the value of queueCapacity, 0 in VIRTUAL mode
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get the number of requests rejected because the queue was full
+     *
+     * @return the value of rejected
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Get the number of requests executed
+     *
+     * @return the value of completed
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Creates the executor of virtual threads with reflection, so the server still runs in older JDKs
+     *
+     * @return the executor, null if the JDK doesn't support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception ex) {
+            System.out.println("   Virtual threads are not supported by this JDK, using the pool of workers.");
+            return null;
+        }
+    }
+
+    /**
+     * Request accepted by the executor, counted while it is executed
+     */
+    private class Task implements Runnable {
+
+        /**
+         * The request
+         */
+        private final Runnable request;
+
+        /**
+         * Creates a new instance of Task
+         *
+         * @param request the request
+         */
+        Task(Runnable request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            activeWorkers.incrementAndGet();
+            try {
+                request.run();
+            } finally {
+                activeWorkers.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Request rejected by the pool, executed with the rejecting mark so the OverloadFilter answers it
+     */
+    private static class Rejection implements Runnable {
+
+        /**
+         * The request rejected
+         */
+        private final Runnable request;
+
+        /**
+         * Creates a new instance of Rejection
+         *
+         * @param request the request rejected
+         */
+        Rejection(Runnable request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            rejecting.set(Boolean.TRUE);
+            try {
+                request.run();
+            } finally {
+                rejecting.remove();
+            }
+        }
+    }
+
+    /**
+     * Factory of the threads of the executor, with readable names for the thread dumps
+     */
+    static class NamedThreadFactory implements ThreadFactory {
+
+        /**
+         * Prefix of the names
+         */
+        private final String prefix;
+        /**
+         * Number of threads created
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Creates a new instance of NamedThreadFactory
+         *
+         * @param prefix prefix of the names
+         */
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "parking-" + prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.ParkingSnapshot;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Class where defines the services about the state of the server, used to size the RequestExecutor and to
+ * write the snapshot of the ParkingCentral
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+@Path("/api/server")
+public class ServerAPI {
+
+    /**
+     * Snapshot configured at the startup, null if the server runs without snapshot
+     */
+    private static volatile ParkingSnapshot snapshot;
+
+    /**
+     * Changes the snapshot configured at the startup
+     *
+     * @param parkingSnapshot the snapshot, null to disable it
+     */
+    static void setSnapshot(ParkingSnapshot parkingSnapshot) {
+        snapshot = parkingSnapshot;
+    }
+
+    /**
+     * Service GET to obtain the state of the executor of the requests: model of execution, workers, active
+     * workers, depth and capacity of the queue, and requests rejected and completed
+     *
+     * @param pretty true to indent the Json
+     * @return the Response with the Json of the state
+     */
+    @GET
+    @Produces("application/json")
+    @Path("/executor")
+    public Response executor(@QueryParam("pretty") boolean pretty) {
+        RequestExecutor executor = RequestExecutor.getInstance();
+        if (executor == null)
+            return Response.ok(JsonResponses.error(new ParkingException(ParkingException.CODE_SERVER_HTTP,
+                    "Executor Not Available", "The server was not started by ParkingHttpServer"), pretty)).build();
+        return Response.ok(JsonResponses.executor(executor, pretty)).build();
+    }
+
+    /**
+     * Service POST to write the snapshot of the ParkingCentral now, so the next startup loads the actual
+     * Parkings and free places, and to compact the journal
+     *
+     * @param pretty true to indent the Json
+     * @return the Response with the Json of the file, Parkings, bytes and milliseconds of the snapshot
+     */
+    @POST
+    @Produces("application/json")
+    @Path("/snapshot")
+    public Response snapshot(@QueryParam("pretty") boolean pretty) {
+        ParkingSnapshot parkingSnapshot = snapshot;
+        if (parkingSnapshot == null)
+            return Response.ok(JsonResponses.error(new ParkingException(ParkingException.CODE_INVALID_ACTION,
+                    "Snapshot Not Configured", "The server was started without the option --snapshot"),
+                    pretty)).build();
+        try {
+            long start = System.currentTimeMillis();
+            //the segments of the journal already in the snapshot are not needed anymore
+            int parkings = parkingSnapshot.checkpoint(ParkingCentral.getInstance());
+            long millis = System.currentTimeMillis() - start;
+            return Response.ok(JsonResponses.snapshot(parkingSnapshot, parkings, millis, pretty)).build();
+        } catch (ParkingException ex) {
+            return Response.ok(JsonResponses.error(ex, pretty)).build();
+        }
+    }
+}
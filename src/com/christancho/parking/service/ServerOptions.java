@@ -0,0 +1,441 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingException;
+import com.christancho.parking.ParkingJournal;
+
+/**
+ * Class with the startup options of the ParkingHttpServer, read from arguments in the format --name=value
+ * <p/>
+ * Options:
+ * <ul>
+ * <li>--port: port of the server, 8085 by default</li>
+ * <li>--host: host name of the server, the canonical name of the local host by default</li>
+ * <li>--executor: pool (bounded pool of workers) or virtual (a virtual thread per request)</li>
+ * <li>--threads: number of workers of the pool, 64 by default</li>
+ * <li>--queue: maximum number of requests waiting for a worker, the next ones are answered with 503</li>
+ * <li>--max-streams: maximum number of streams of events open, the next ones are answered with 503</li>
+ * <li>--json-cache-bytes: maximum number of bytes of the ParkingJsonCache</li>
+ * <li>--storage: objects (a Parking instance per Parking) or columns (primitive columns), objects by default</li>
+ * <li>--router: jersey (annotated resources) or direct (precompiled ParkingRouter), jersey by default</li>
+ * <li>--snapshot: file of the ParkingSnapshot, loaded at the startup and written at the shutdown</li>
+ * <li>--journal: directory of the ParkingJournal, replayed at the startup, without journal by default</li>
+ * <li>--journal-durability: event, interval or off, interval by default</li>
+ * <li>--journal-interval: milliseconds between the forces of the interval durability</li>
+ * <li>--compression: gzip (the responses of the clients that accept it) or off, gzip by default</li>
+ * <li>--compression-threshold: minimum number of bytes of a response to compress it, 1024 by default</li>
+ * </ul>
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ServerOptions {
+
+    /**
+     * Dispatchers of the requests to the resources
+     */
+    public enum Router {
+        /**
+         * Jersey with the annotations of the resources
+         */
+        JERSEY,
+        /**
+         * The precompiled route table of ParkingRouter
+         */
+        DIRECT
+    }
+
+    /**
+     * Encodings of the responses
+     */
+    public enum Compression {
+        /**
+         * gzip for the clients that send Accept-Encoding: gzip
+         */
+        GZIP,
+        /**
+         * The responses are never compressed
+         */
+        OFF
+    }
+
+    /**
+     * Default port of the server
+     */
+    public static final int DEFAULT_PORT = 8085;
+    /**
+     * Default number of workers
+     */
+    public static final int DEFAULT_THREADS = 64;
+    /**
+     * Default maximum number of requests waiting for a worker
+     */
+    public static final int DEFAULT_QUEUE = 1000;
+
+    /**
+     * Port of the server
+     */
+    private int port = DEFAULT_PORT;
+    /**
+     * Host name of the server, null for the local host
+     */
+    private String host;
+    /**
+     * Model of execution of the requests
+     */
+    private RequestExecutor.Mode executor = RequestExecutor.Mode.POOL;
+    /**
+     * Number of workers of the pool
+     */
+    private int threads = DEFAULT_THREADS;
+    /**
+     * Maximum number of requests waiting for a worker
+     */
+    private int queue = DEFAULT_QUEUE;
+    /**
+     * Maximum number of streams of events open
+     */
+    private int maxStreams = ParkingEventHub.DEFAULT_MAX_STREAMS;
+    /**
+     * Maximum number of bytes of the ParkingJsonCache, null to keep its configuration
+     */
+    private Long jsonCacheBytes;
+    /**
+     * Way of keeping the Parkings of the ParkingCentral in memory
+     */
+    private ParkingCentral.Storage storage = ParkingCentral.Storage.OBJECTS;
+    /**
+     * Dispatcher of the requests
+     */
+    private Router router = Router.JERSEY;
+    /**
+     * File of the snapshot, null to start without snapshot
+     */
+    private String snapshot;
+    /**
+     * Directory of the journal, null to start without journal
+     */
+    private String journal;
+    /**
+     * Moment when the records of the journal are forced
+     */
+    private ParkingJournal.Durability journalDurability = ParkingJournal.Durability.INTERVAL;
+    /**
+     * Milliseconds between the forces of the INTERVAL durability
+     */
+    private long journalInterval = ParkingJournal.DEFAULT_INTERVAL_MILLIS;
+    /**
+     * Encoding of the responses
+     */
+    private Compression compression = Compression.GZIP;
+    /**
+     * Minimum number of bytes of a response to compress it
+     */
+    private int compressionThreshold = CompressionFilter.DEFAULT_THRESHOLD;
+
+    /**
+     * Reads the options from the arguments of the command line
+     *
+     * @param args arguments in the format --name=value
+     * @return the options, with the default values for the options not sent
+     */
+    public static ServerOptions parse(String[] args) {
+        ServerOptions options = new ServerOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0)
+                throw invalid("Invalid argument '" + arg + "', the format is --name=value");
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if ("port".equals(name)) {
+                options.port = parseInt(name, value, 1);
+            } else if ("host".equals(name)) {
+                options.host = value;
+            } else if ("executor".equals(name)) {
+                options.executor = parseMode(value);
+            } else if ("threads".equals(name)) {
+                options.threads = parseInt(name, value, 1);
+            } else if ("queue".equals(name)) {
+                options.queue = parseInt(name, value, 1);
+            } else if ("max-streams".equals(name)) {
+                options.maxStreams = parseInt(name, value, 1);
+            } else if ("storage".equals(name)) {
+                options.storage = parseStorage(value);
+            } else if ("router".equals(name)) {
+                options.router = parseRouter(value);
+            } else if ("snapshot".equals(name)) {
+                if (value.length() == 0)
+                    throw invalid("Invalid value '' for the option snapshot, it has to be a file");
+                options.snapshot = value;
+            } else if ("journal".equals(name)) {
+                if (value.length() == 0)
+                    throw invalid("Invalid value '' for the option journal, it has to be a directory");
+                options.journal = value;
+            } else if ("journal-durability".equals(name)) {
+                options.journalDurability = parseDurability(value);
+            } else if ("journal-interval".equals(name)) {
+                options.journalInterval = parseLong(name, value, 1, Long.MAX_VALUE);
+            } else if ("compression".equals(name)) {
+                options.compression = parseCompression(value);
+            } else if ("compression-threshold".equals(name)) {
+                options.compressionThreshold = parseInt(name, value, 0);
+            } else if ("json-cache-bytes".equals(name)) {
+                options.jsonCacheBytes = parseLong(name, value, 0, Long.MAX_VALUE);
+            } else {
+                throw invalid("Unknown option '" + name + "'");
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Parses an integer option
+     *
+     * @param name    name of the option
+     * @param value   value of the option
+     * @param minimum minimum value allowed
+     * @return the value
+     */
+    private static int parseInt(String name, String value, int minimum) {
+        return (int) parseLong(name, value, minimum, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses a long option
+     *
+     * @param name    name of the option
+     * @param value   value of the option
+     * @param minimum minimum value allowed
+     * @param maximum maximum value allowed
+     * @return the value
+     */
+    private static long parseLong(String name, String value, long minimum, long maximum) {
+        try {
+            long result = Long.parseLong(value);
+            if (result >= minimum && result <= maximum)
+                return result;
+        } catch (NumberFormatException ex) {
+            //the error is thrown below
+        }
+        throw invalid("Invalid value '" + value + "' for the option " + name);
+    }
+
+    /**
+     * Parses the model of execution
+     *
+     * @param value value of the option
+     * @return the model of execution
+     */
+    private static RequestExecutor.Mode parseMode(String value) {
+        for (RequestExecutor.Mode mode : RequestExecutor.Mode.values()) {
+            if (mode.name().equalsIgnoreCase(value))
+                return mode;
+        }
+        throw invalid("Invalid value '" + value + "' for the option executor, it has to be pool or virtual");
+    }
+
+    /**
+     * Parses the way of keeping the Parkings in memory
+     *
+     * @param value value of the option
+     * @return the storage
+     */
+    private static ParkingCentral.Storage parseStorage(String value) {
+        for (ParkingCentral.Storage storage : ParkingCentral.Storage.values()) {
+            if (storage.name().equalsIgnoreCase(value))
+                return storage;
+        }
+        throw invalid("Invalid value '" + value + "' for the option storage, it has to be objects or columns");
+    }
+
+    /**
+     * Parses the dispatcher of the requests
+     *
+     * @param value value of the option
+     * @return the dispatcher
+     */
+    private static Router parseRouter(String value) {
+        for (Router router : Router.values()) {
+            if (router.name().equalsIgnoreCase(value))
+                return router;
+        }
+        throw invalid("Invalid value '" + value + "' for the option router, it has to be jersey or direct");
+    }
+
+    /**
+     * Parses the durability of the journal
+     *
+     * @param value value of the option
+     * @return the durability
+     */
+    private static ParkingJournal.Durability parseDurability(String value) {
+        for (ParkingJournal.Durability durability : ParkingJournal.Durability.values()) {
+            if (durability.name().equalsIgnoreCase(value))
+                return durability;
+        }
+        throw invalid("Invalid value '" + value
+                + "' for the option journal-durability, it has to be event, interval or off");
+    }
+
+    /**
+     * Parses the encoding of the responses
+     *
+     * @param value value of the option
+     * @return the encoding
+     */
+    private static Compression parseCompression(String value) {
+        for (Compression compression : Compression.values()) {
+            if (compression.name().equalsIgnoreCase(value))
+                return compression;
+        }
+        throw invalid("Invalid value '" + value + "' for the option compression, it has to be gzip or off");
+    }
+
+    /**
+     * Builds the exception of an invalid option
+     *
+     * @param detailMessage the error
+     * @return the exception
+     */
+    private static ParkingException invalid(String detailMessage) {
+        return new ParkingException(ParkingException.CODE_INVALID_VALUE,
+                ParkingException.DESC_INVALID_VALUE,
+                detailMessage);
+    }
+
+    /**
+     * Get the value of port
+     *
+     * @return the value of port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the value of host
+     *
+     * @return the value of host, null for the local host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the value of executor
+     *
+     * @return the value of executor
+     */
+    public RequestExecutor.Mode getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the value of threads
+     *
+     * @return the value of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the value of queue
+     *
+     * @return the value of queue
+     */
+    public int getQueue() {
+        return queue;
+    }
+
+    /**
+     * Get the value of maxStreams
+     *
+     * @return the value of maxStreams
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * Get the value of jsonCacheBytes
+     *
+     * @return the value of jsonCacheBytes, null to keep the configuration of the cache
+     */
+    public Long getJsonCacheBytes() {
+        return jsonCacheBytes;
+    }
+
+    /**
+     * Get the value of storage
+     *
+     * @return the value of storage
+     */
+    public ParkingCentral.Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Get the value of router
+     *
+     * @return the value of router
+     */
+    public Router getRouter() {
+        return router;
+    }
+
+    /**
+     * Get the value of snapshot
+     *
+     * @return the value of snapshot, null to start without snapshot
+     */
+    public String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Get the value of journal
+     *
+     * @return the value of journal, null to start without journal
+     */
+    public String getJournal() {
+        return journal;
+    }
+
+    /**
+     * Get the value of journalDurability
+     *
+     * @return the value of journalDurability
+     */
+    public ParkingJournal.Durability getJournalDurability() {
+        return journalDurability;
+    }
+
+    /**
+     * Get the value of journalInterval
+     *
+     * @return the value of journalInterval
+     */
+    public long getJournalInterval() {
+        return journalInterval;
+    }
+
+    /**
+     * Get the value of compression
+     *
+     * @return the value of compression
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Get the value of compressionThreshold
+     *
+     * @return the value of compressionThreshold
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+}
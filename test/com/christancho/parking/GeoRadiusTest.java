@@ -0,0 +1,137 @@
+package com.christancho.parking;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the GeoRadius at the edges of the threshold and the bounding box
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class GeoRadiusTest {
+
+    @Test
+    public void testHaversineThreshold() throws Exception {
+        Random random = new Random(7);
+        for (double latitude : new double[]{0, 41.38, -60, 85}) {
+            for (double radius : new double[]{0.5, 10, 500}) {
+                GeoRadius geoRadius = new GeoRadius(latitude, 2.17, radius);
+                for (int i = 0; i < 2000; i++) {
+                    double distance = random.nextDouble() * 2 * radius;
+                    Parking parking = destination(latitude, 2.17, distance, random.nextDouble() * 360);
+                    double reference = distance(latitude, 2.17, parking);
+                    //the points on the border can fall on any side with the rounding
+                    if (Math.abs(reference - radius) > 1e-6)
+                        assertEquals(latitude + " " + radius + " " + reference, reference <= radius,
+                                geoRadius.contains(parking));
+                }
+                for (int bearing = 0; bearing < 360; bearing += 15) {
+                    assertTrue(geoRadius.contains(destination(latitude, 2.17, radius * 0.999, bearing)));
+                    assertTrue(!geoRadius.contains(destination(latitude, 2.17, radius * 1.001, bearing)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBoundingBoxAntimeridian() throws Exception {
+        GeoRadius east = new GeoRadius(0, 179.99, 5);
+        assertTrue(east.contains(location(0, -179.99)));
+        assertTrue(east.contains(location(0.01, 180)));
+        assertTrue(!east.contains(location(0, -179.9)));
+        GeoRadius west = new GeoRadius(-30, -179.995, 5);
+        assertTrue(west.contains(location(-30, 179.995)));
+        assertTrue(!west.contains(location(-30, 179.9)));
+        //the Parkings beyond the box are rejected before the distance
+        assertTrue(!east.contains(location(0, 0)));
+        assertTrue(!east.contains(location(0.1, 179.99)));
+    }
+
+    @Test
+    public void testBoundingBoxPole() throws Exception {
+        GeoRadius north = new GeoRadius(89.99, 0, 5);
+        //the circle contains the pole, so all the longitudes are in the box
+        assertEquals(180, north.getLonDelta(), 0);
+        assertTrue(north.contains(location(89.99, 180)));
+        assertTrue(north.contains(location(89.995, -90)));
+        assertTrue(north.contains(location(90, 45)));
+        assertTrue(!north.contains(location(89.9, 180)));
+        GeoRadius south = new GeoRadius(-89.98, 120, 3);
+        assertEquals(180, south.getLonDelta(), 0);
+        assertTrue(south.contains(location(-89.995, -60)));
+        assertTrue(!south.contains(location(-89.98, -60)));
+        //close to the pole but without containing it the box is still narrow
+        GeoRadius near = new GeoRadius(80, 0, 5);
+        assertTrue(near.getLonDelta() < 1);
+        for (int bearing = 0; bearing < 360; bearing += 10) {
+            assertTrue(near.contains(destination(80, 0, 4.99, bearing)));
+        }
+    }
+
+    @Test
+    public void testEquirectangularErrorBound() throws Exception {
+        //the javadoc of the formula promises a relative error below 0.1% up to 10 Km and 60 degrees
+        double worst = 0;
+        for (double latitude = -60; latitude <= 60; latitude += 10) {
+            for (double distance = 0.1; distance <= 10; distance += 0.7) {
+                GeoRadius geoRadius = new GeoRadius(latitude, 2.17, distance, GeoRadius.Formula.EQUIRECTANGULAR);
+                for (int bearing = 0; bearing < 360; bearing += 5) {
+                    Parking parking = destination(latitude, 2.17, distance, bearing);
+                    double approximation = Math.sqrt(geoRadius.distanceKey(parking)) * GeoRadius.EARTH_RADIUS_KMS;
+                    worst = Math.max(worst, Math.abs(approximation - distance) / distance);
+                }
+            }
+        }
+        assertTrue("relative error " + worst, worst < 0.001);
+        GeoRadius geoRadius = new GeoRadius(59, 179.99, 10, GeoRadius.Formula.EQUIRECTANGULAR);
+        for (int bearing = 0; bearing < 360; bearing += 15) {
+            assertTrue(geoRadius.contains(destination(59, 179.99, 9.98, bearing)));
+            assertTrue(!geoRadius.contains(destination(59, 179.99, 10.02, bearing)));
+        }
+    }
+
+    /**
+     * Builds a Parking located at a distance and a bearing from a point, over the sphere of the GeoRadius
+     */
+    private static Parking destination(double latitude, double longitude, double kms, double bearing) {
+        double angle = kms / GeoRadius.EARTH_RADIUS_KMS;
+        double lat = Math.toRadians(latitude);
+        double theta = Math.toRadians(bearing);
+        double lat2 = Math.asin(Math.sin(lat) * Math.cos(angle)
+                + Math.cos(lat) * Math.sin(angle) * Math.cos(theta));
+        double lon2 = Math.toRadians(longitude) + Math.atan2(Math.sin(theta) * Math.sin(angle) * Math.cos(lat),
+                Math.cos(angle) - Math.sin(lat) * Math.sin(lat2));
+        double lonDegrees = Math.toDegrees(lon2);
+        if (lonDegrees > 180)
+            lonDegrees -= 360;
+        else if (lonDegrees < -180)
+            lonDegrees += 360;
+        return location(Math.toDegrees(lat2), lonDegrees);
+    }
+
+    /**
+     * Great circle distance in kilometers between a point and a Parking, with the atan2 form
+     */
+    private static double distance(double latitude, double longitude, Parking parking) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(parking.getLatitude());
+        double deltaLon = Math.toRadians(parking.getLongitude() - longitude);
+        double y = Math.sqrt(Math.pow(Math.cos(lat2) * Math.sin(deltaLon), 2)
+                + Math.pow(Math.cos(lat1) * Math.sin(lat2) - Math.sin(lat1) * Math.cos(lat2) * Math.cos(deltaLon), 2));
+        double x = Math.sin(lat1) * Math.sin(lat2) + Math.cos(lat1) * Math.cos(lat2) * Math.cos(deltaLon);
+        return Math.atan2(y, x) * GeoRadius.EARTH_RADIUS_KMS;
+    }
+
+    private static Parking location(double latitude, double longitude) {
+        Parking parking = new Parking();
+        parking.setLatitude(latitude);
+        parking.setLongitude(longitude);
+        return parking;
+    }
+}
@@ -0,0 +1,175 @@
+package com.christancho.parking;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference decoder of the binary format of the ParkingBinaryWriter, the one the mobile clients have to
+ * implement. It only uses the public setters of the Parking, and reads byte by byte without buffers
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingBinaryReader {
+
+    /**
+     * Stream of the response
+     */
+    private final InputStream in;
+
+    /**
+     * Creates a new instance of ParkingBinaryReader
+     *
+     * @param in stream of the response
+     */
+    public ParkingBinaryReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a whole response
+     *
+     * @return a Parking, a List of Parkings, the free places (Integer), the results of an occupancy batch
+     * (a List of Integer and ParkingException) or a ParkingException
+     * @throws IOException if the response is not valid
+     */
+    public Object read() throws IOException {
+        int version = readByte();
+        if (version != ParkingBinaryWriter.FORMAT_VERSION)
+            throw new IOException("Unknown version of the format " + version);
+        int type = readByte();
+        if (type == ParkingBinaryWriter.PARKING) {
+            return readParking();
+        } else if (type == ParkingBinaryWriter.PARKINGS) {
+            int size = readVarint();
+            List<Parking> parkings = new ArrayList<Parking>(size);
+            for (int i = 0; i < size; i++) {
+                parkings.add(readParking());
+            }
+            return parkings;
+        } else if (type == ParkingBinaryWriter.FREE_PLACES) {
+            return readVarint();
+        } else if (type == ParkingBinaryWriter.OCCUPANCY) {
+            int size = readVarint();
+            List<Object> results = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                if (readByte() == 0)
+                    results.add(readVarint());
+                else
+                    results.add(readError());
+            }
+            return results;
+        } else if (type == ParkingBinaryWriter.ERROR) {
+            return readError();
+        }
+        throw new IOException("Unknown type of message " + type);
+    }
+
+    /**
+     * Reads a Parking
+     *
+     * @return the Parking
+     * @throws IOException if the response is not valid
+     */
+    private Parking readParking() throws IOException {
+        Parking parking = new Parking();
+        parking.setId(readVarint());
+        int mask = readByte();
+        if ((mask & ParkingBinaryWriter.HAS_NAME) != 0)
+            parking.setName(readString());
+        if ((mask & ParkingBinaryWriter.HAS_OPEN_HOUR) != 0)
+            parking.setOpenHour(readVarint());
+        if ((mask & ParkingBinaryWriter.HAS_CLOSE_HOUR) != 0)
+            parking.setCloseHour(readVarint());
+        if ((mask & ParkingBinaryWriter.HAS_TOTAL_PLACES) != 0)
+            parking.setTotalPlaces(readVarint());
+        if ((mask & ParkingBinaryWriter.HAS_FREE_PLACES) != 0)
+            parking.setFreePlaces(readVarint());
+        if ((mask & ParkingBinaryWriter.HAS_LATITUDE) != 0)
+            parking.setLatitude(readInt() / ParkingBinaryWriter.COORDINATE_SCALE);
+        if ((mask & ParkingBinaryWriter.HAS_LONGITUDE) != 0)
+            parking.setLongitude(readInt() / ParkingBinaryWriter.COORDINATE_SCALE);
+        if ((mask & ParkingBinaryWriter.HAS_DAYS_OPEN) != 0) {
+            int days = readByte();
+            List<WeekDay> daysOpen = new ArrayList<WeekDay>();
+            for (WeekDay day : WeekDay.values()) {
+                if ((days & (1 << day.ordinal())) != 0)
+                    daysOpen.add(day);
+            }
+            parking.setDaysOpen(daysOpen);
+        }
+        return parking;
+    }
+
+    /**
+     * Reads a ParkingException
+     *
+     * @return the exception
+     * @throws IOException if the response is not valid
+     */
+    private ParkingException readError() throws IOException {
+        String code = readString();
+        int mask = readByte();
+        String description = (mask & ParkingBinaryWriter.HAS_DESCRIPTION) != 0 ? readString() : null;
+        String detailMessage = (mask & ParkingBinaryWriter.HAS_DETAIL_MESSAGE) != 0 ? readString() : null;
+        return new ParkingException(code, description, detailMessage);
+    }
+
+    /**
+     * Reads a string, its length in bytes and the UTF-8 bytes
+     *
+     * @return the string
+     * @throws IOException if the response is not valid
+     */
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarint()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) readByte();
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Reads a varint of 32 bits
+     *
+     * @return the value
+     * @throws IOException if the response is not valid
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint longer than 5 bytes");
+    }
+
+    /**
+     * Reads a big-endian int
+     *
+     * @return the value
+     * @throws IOException if the response is not valid
+     */
+    private int readInt() throws IOException {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    /**
+     * Reads a byte
+     *
+     * @return the byte, from 0 to 255
+     * @throws IOException if the response ended
+     */
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException("The response ended before the message");
+        return b;
+    }
+}
@@ -0,0 +1,121 @@
+package com.christancho.parking;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test that the ParkingBinaryWriter and the reference ParkingBinaryReader agree, and that the
+ * binary format keeps the same content than the Json
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingBinaryTest {
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Parking.class, new ParkingTypeAdapter())
+            .create();
+
+    @Test
+    public void testParkingRoundTrip() throws Exception {
+        Parking parking = new Parking(300000, "Parking Plaça d'Espanya ñ", 9, 18, 500, 3,
+                new ArrayList<WeekDay>(Arrays.asList(WeekDay.MONDAY, WeekDay.SUNDAY)), 41.3749, -2.1492);
+        Parking empty = new Parking();
+        empty.setId(1);
+        Parking noDays = new Parking(2, "", 0, 24, 10, -1, new ArrayList<WeekDay>(), -90.0, 180.0);
+        //hours that don't fit in a byte are not truncated
+        Parking wideHours = new Parking(3, "Parking", 200, 1000, 10, 5, new ArrayList<WeekDay>(), 41.0, 2.0);
+        for (Parking expected : new Parking[]{parking, empty, noDays, wideHours}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ParkingBinaryWriter writer = new ParkingBinaryWriter(bytes);
+            writer.writeParking(expected);
+            writer.flush();
+            Parking actual = (Parking) read(bytes);
+            //the Json of both is the same, so nothing is lost with the coordinates of 7 decimals
+            assertEquals(gson.toJson(expected), gson.toJson(actual));
+        }
+    }
+
+    @Test
+    public void testParkingsSmallerThanJson() throws Exception {
+        List<Parking> parkings = new ArrayList<Parking>();
+        for (int i = 0; i < 200; i++) {
+            parkings.add(new Parking(i + 1, "Parking " + i, 8, 22, 100 + i, i % 50,
+                    new ArrayList<WeekDay>(Arrays.asList(WeekDay.MONDAY, WeekDay.TUESDAY, WeekDay.FRIDAY)),
+                    (413000 + i) / 10000.0, (21000 + i) / 10000.0));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ParkingBinaryWriter writer = new ParkingBinaryWriter(bytes);
+        writer.writeParkings(parkings);
+        writer.flush();
+        int binarySize = bytes.size();
+        @SuppressWarnings("unchecked")
+        List<Parking> actual = (List<Parking>) read(bytes);
+        assertEquals(gson.toJson(parkings), gson.toJson(actual));
+        int jsonSize = gson.toJson(parkings).getBytes("UTF-8").length;
+        assertTrue("binary " + binarySize + " json " + jsonSize, binarySize * 4 < jsonSize);
+    }
+
+    @Test
+    public void testOtherMessages() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ParkingBinaryWriter writer = new ParkingBinaryWriter(bytes);
+        writer.writeFreePlaces(1000);
+        writer.flush();
+        assertEquals(1000, read(bytes));
+
+        OccupancyBatch batch = new OccupancyBatch();
+        batch.add(1, 1);
+        batch.add(2, 1);
+        batch.add(1, -1);
+        batch.setResult(0, 4, null);
+        batch.setResult(1, 0, ParkingException.notFound(2));
+        batch.setResult(2, 5, null);
+        bytes.reset();
+        writer.writeOccupancy(batch);
+        writer.flush();
+        List<?> results = (List<?>) read(bytes);
+        assertEquals(3, results.size());
+        assertEquals(4, results.get(0));
+        assertError(ParkingException.notFound(2), (ParkingException) results.get(1));
+        assertEquals(5, results.get(2));
+
+        bytes.reset();
+        writer.writeError(ParkingException.PARKING_FULL);
+        writer.flush();
+        assertError(ParkingException.PARKING_FULL, (ParkingException) read(bytes));
+        //the Json doesn't have the description of an exception without detail, neither the binary format
+        bytes.reset();
+        writer.writeError(new ParkingException(ParkingException.CODE_UNKNOWN, "Unknown", null));
+        writer.flush();
+        ParkingException error = (ParkingException) read(bytes);
+        assertEquals(ParkingException.CODE_UNKNOWN, error.getCode());
+        assertNull(error.getDescription());
+        assertNull(error.getMessage());
+    }
+
+    private static Object read(ByteArrayOutputStream bytes) throws Exception {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        Object message = new ParkingBinaryReader(in).read();
+        assertEquals("Bytes left after the message", -1, in.read());
+        return message;
+    }
+
+    private static void assertError(ParkingException expected, ParkingException actual) {
+        assertEquals(expected.getCode(), actual.getCode());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+}
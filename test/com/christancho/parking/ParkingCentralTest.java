@@ -6,7 +6,23 @@ import com.google.gson.JsonObject;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Class used to Test the ParkingCentral Methods
@@ -89,4 +105,477 @@ public class ParkingCentralTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTakePlaceConcurrently() throws Exception {
+        final int threads = 8;
+        final int placesPerThread = 500;
+        Parking parking = new Parking(null, "Parking Concurrent", 0, 24, threads * placesPerThread,
+                threads * placesPerThread, null, 41.38, 2.17);
+        final int id = parkingCentral.addParking(parking);
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        //every thread tries to take one more place than its share
+                        for (int j = 0; j <= placesPerThread; j++) {
+                            try {
+                                parkingCentral.takePlace(id);
+                            } catch (ParkingException ex) {
+                                rejected.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(0, parkingCentral.getParking(id).getFreePlaces().intValue());
+        assertEquals(threads, rejected.get());
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testSearchParkingsByRadius() throws Exception {
+        Random random = new Random(42);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 500; i++) {
+            Parking parking = new Parking(null, "Parking Radius " + i, 0, 24, 10, 5, null,
+                    41.3 + random.nextDouble() * 0.2, 2.0 + random.nextDouble() * 0.3);
+            ids.add(parkingCentral.addParking(parking));
+        }
+        //move one of them, the index has to follow the new coordinates
+        Parking moved = new Parking(ids.get(0), null, null, null, null, null, null, 41.385, 2.165);
+        parkingCentral.editParking(moved);
+
+        List<Parking> all = parkingCentral.searchParkings(null, null, null, null, null);
+        double[] distances = {0.1, 0.6, 2.5, 30};
+        for (double distance : distances) {
+            List<Parking> found = parkingCentral.searchParkings(null, null, 41.385, 2.165, distance);
+            int expected = 0;
+            for (Parking parking : all) {
+                if (parking.getLatitude() != null && parking.isInsideRadius(41.385, 2.165, distance))
+                    expected++;
+            }
+            assertEquals("distance " + distance, expected, found.size());
+        }
+        assertTrue(parkingCentral.searchParkings(null, null, 41.385, 2.165, 0.01)
+                .contains(parkingCentral.getParking(ids.get(0))));
+        for (Integer id : ids) {
+            parkingCentral.removeParking(id);
+        }
+        assertEquals(0, parkingCentral.searchParkings(null, null, 41.4, 2.15, 0.001).size());
+    }
+
+    @Test
+    public void testSearchParkingsPaginated() throws Exception {
+        Random random = new Random(7);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 300; i++) {
+            Parking parking = new Parking(null, "Parking Page " + i, 0, 24, 50, random.nextInt(50), null,
+                    40.3 + random.nextDouble() * 0.2, -3.8 + random.nextDouble() * 0.2);
+            ids.add(parkingCentral.addParking(parking));
+        }
+        GeoRadius center = new GeoRadius(40.4, -3.7, 50);
+        List<Parking> expected = parkingCentral.searchParkings(null, null, 40.4, -3.7, 50.0);
+        //walk all the pages with the cursors, they have to be in order and without repetitions
+        List<Parking> paged = new ArrayList<Parking>();
+        String cursor = null;
+        do {
+            ParkingPage page = parkingCentral.searchParkings(null, null, 40.4, -3.7, 50.0,
+                    ParkingSort.DISTANCE, cursor, null, 40);
+            assertTrue(page.getParkings().size() <= 40);
+            assertEquals(expected.size() - paged.size(), page.getTotal());
+            paged.addAll(page.getParkings());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(expected.size(), paged.size());
+        assertTrue(paged.containsAll(expected));
+        for (int i = 1; i < paged.size(); i++) {
+            assertTrue(center.distanceKey(paged.get(i - 1)) <= center.distanceKey(paged.get(i)));
+        }
+        //the offset skips the first Parkings of the same order
+        ParkingPage second = parkingCentral.searchParkings(null, null, 40.4, -3.7, 50.0,
+                ParkingSort.DISTANCE, null, 10, 5);
+        assertEquals(paged.subList(10, 15), second.getParkings());
+
+        ParkingPage byPlaces = parkingCentral.searchParkings(null, null, null, null, null,
+                ParkingSort.FREE_PLACES, null, null, 20);
+        assertEquals(20, byPlaces.getParkings().size());
+        for (int i = 1; i < byPlaces.getParkings().size(); i++) {
+            assertTrue(byPlaces.getParkings().get(i - 1).getFreePlaces()
+                    >= byPlaces.getParkings().get(i).getFreePlaces());
+        }
+        for (Integer id : ids) {
+            parkingCentral.removeParking(id);
+        }
+    }
+
+    @Test(expected = ParkingException.class)
+    public void testSearchParkingsInvalidCursor() throws Exception {
+        parkingCentral.searchParkings(null, null, null, null, null, ParkingSort.FREE_PLACES, "i3ff0.1", null, 10);
+    }
+
+    @Test
+    public void testNearest() throws Exception {
+        Random random = new Random(11);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 400; i++) {
+            int freePlaces = new int[]{0, 4, 10}[random.nextInt(3)];
+            Parking parking = new Parking(null, "Parking Nearest " + i, 0, 24, 10, freePlaces, null,
+                    48.8 + random.nextDouble() * 0.1, 2.3 + random.nextDouble() * 0.1);
+            ids.add(parkingCentral.addParking(parking));
+        }
+        List<Parking> all = parkingCentral.searchParkings(null, null, null, null, null);
+        double[][] points = {{48.85, 2.35}, {48.7, 2.2}, {-33.9, 151.2}};
+        for (double[] point : points) {
+            GeoRadius center = new GeoRadius(point[0], point[1], 0);
+            for (Boolean full : new Boolean[]{null, true, false}) {
+                List<Parking> expected = new ArrayList<Parking>();
+                for (Parking parking : all) {
+                    if (parking.getLatitude() != null && (full == null || full == (parking.getFreePlaces() == 0)))
+                        expected.add(parking);
+                }
+                List<Parking> found = parkingCentral.nearest(point[0], point[1], 7, full);
+                assertEquals(7, found.size());
+                //the farthest Parking found has to be closer than any Parking not found
+                double farthest = center.distanceKey(found.get(found.size() - 1));
+                for (Parking parking : expected) {
+                    if (!found.contains(parking))
+                        assertTrue(center.distanceKey(parking) >= farthest);
+                }
+                for (int i = 1; i < found.size(); i++) {
+                    assertTrue(center.distanceKey(found.get(i - 1)) <= center.distanceKey(found.get(i)));
+                    if (full != null)
+                        assertEquals(full, found.get(i).getFreePlaces() == 0);
+                }
+            }
+        }
+        for (Integer id : ids) {
+            parkingCentral.removeParking(id);
+        }
+    }
+
+    @Test
+    public void testApplyOccupancy() throws Exception {
+        int id = parkingCentral.addParking(new Parking(null, "Parking Gate", 0, 24, 10, 10, null, 41.4, 2.1));
+        assertEquals(4, parkingCentral.changePlaces(id, 6));
+        OccupancyBatch batch = new OccupancyBatch();
+        batch.add(id, 3);
+        batch.add(id, 2);
+        batch.add(-12345, 1);
+        batch.add(id, -7);
+        batch.add(id, -1);
+        parkingCentral.applyOccupancy(batch);
+        assertEquals(1, batch.getFreePlaces(0));
+        //the second event would leave -1 free places, so it changes nothing
+        assertEquals(ParkingException.CODE_INVALID_ACTION, batch.getError(1).getCode());
+        assertEquals(ParkingException.CODE_NOT_FOUND, batch.getError(2).getCode());
+        //the expected outcomes are answered without filling a stack trace
+        assertSame(ParkingException.PARKING_FULL, batch.getError(1));
+        assertEquals(0, batch.getError(2).getStackTrace().length);
+        assertEquals(8, batch.getFreePlaces(3));
+        assertEquals(9, batch.getFreePlaces(4));
+        assertEquals(Integer.valueOf(9), parkingCentral.getParking(id).getFreePlaces());
+        //back to all the places free, the Parking is full again for the availability index
+        assertEquals(10, parkingCentral.changePlaces(id, -1));
+        assertTrue(parkingCentral.searchParkings(true, null, null, null, null)
+                .contains(parkingCentral.getParking(id)));
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testInvalidHours() throws Exception {
+        try {
+            parkingCentral.addParking(new Parking(null, "Parking Hours", 8, 800, 10, 5, null, 41.38, 2.17));
+            fail("The close hour is out of range");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        int id = parkingCentral.addParking(new Parking(null, "Parking Hours", 8, 24, 10, 5, null, 41.38, 2.17));
+        try {
+            parkingCentral.editParking(new Parking(id, null, -1, null, null, null, null, null, null));
+            fail("The open hour is out of range");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        //the Parking is not modified by the edit rejected
+        assertEquals(Integer.valueOf(8), parkingCentral.getParking(id).getOpenHour());
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testInvalidCoordinates() throws Exception {
+        try {
+            parkingCentral.addParking(new Parking(null, "Parking Coordinates", 8, 20, 10, 5, null, 41.38, 300.0));
+            fail("The longitude is out of range");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        int id = parkingCentral.addParking(new Parking(null, "Parking Coordinates", 8, 20, 10, 5, null, 90.0, -180.0));
+        try {
+            parkingCentral.editParking(new Parking(id, null, null, null, null, null, null, -91.0, null));
+            fail("The latitude is out of range");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        //the Parking is not modified by the edit rejected
+        assertEquals(Double.valueOf(90.0), parkingCentral.getParking(id).getLatitude());
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testCountFullParkings() throws Exception {
+        for (ParkingCentral.Storage storage : ParkingCentral.Storage.values()) {
+            ParkingCentral central = new ParkingCentral(storage);
+            int initial = central.countFullParkings();
+            int full = central.addParking(new Parking(null, "Parking Full", 0, 24, 10, 0, null, 41.38, 2.17));
+            int empty = central.addParking(new Parking(null, "Parking Empty", 0, 24, 10, 10, null, 41.38, 2.17));
+            assertEquals(initial + 1, central.countFullParkings());
+            central.releasePlace(full);
+            central.changePlaces(empty, 10);
+            assertEquals(initial + 1, central.countFullParkings());
+            central.takePlace(full);
+            assertEquals(initial + 2, central.countFullParkings());
+            central.removeParking(empty);
+            assertEquals(initial + 1, central.countFullParkings());
+        }
+    }
+
+    @Test
+    public void testChangeListener() throws Exception {
+        final List<String> changes = new ArrayList<String>();
+        ParkingChangeListener listener = new ParkingChangeListener() {
+            @Override
+            public void parkingChanged(Parking parking, boolean removed) {
+                changes.add(parking.getName() + (removed ? " removed" : " " + parking.getFreePlaces()));
+            }
+        };
+        //a failing listener is counted, without stopping the modifications or the next listeners
+        ParkingChangeListener failing = new ParkingChangeListener() {
+            @Override
+            public void parkingChanged(Parking parking, boolean removed) {
+                throw new IllegalStateException("Listener failure");
+            }
+        };
+        long failures = parkingCentral.getListenerFailures();
+        parkingCentral.addChangeListener(failing);
+        parkingCentral.addChangeListener(listener);
+        try {
+            int id = parkingCentral.addParking(new Parking(null, "Parking Feed", 0, 24, 10, 10, null, 41.4, 2.1));
+            parkingCentral.takePlace(id);
+            parkingCentral.changePlaces(id, -1);
+            parkingCentral.removeParking(id);
+        } finally {
+            parkingCentral.removeChangeListener(listener);
+            parkingCentral.removeChangeListener(failing);
+        }
+        assertEquals(Arrays.asList("Parking Feed 10", "Parking Feed 9", "Parking Feed 10", "Parking Feed removed"),
+                changes);
+        assertEquals(failures + 4, parkingCentral.getListenerFailures());
+    }
+
+    @Test
+    public void testSearchParkingsByDate() throws Exception {
+        Parking weekend = new Parking(null, "Parking Weekend", 20, 24, 10, 5,
+                new ArrayList<WeekDay>(Arrays.asList(WeekDay.SATURDAY, WeekDay.SUNDAY)), 41.38, 2.17);
+        int id = parkingCentral.addParking(weekend);
+        List<Parking> all = parkingCentral.searchParkings(null, null, null, null, null);
+        //01.12.2014 is Monday
+        for (int day = 1; day <= 7; day++) {
+            for (int hour = 0; hour < 24; hour++) {
+                String date = String.format("%02d.12.2014#%02d", day, hour);
+                Calendar cal = Calendar.getInstance();
+                cal.set(2014, Calendar.DECEMBER, day, hour, 0);
+                int expected = 0;
+                for (Parking parking : all) {
+                    if (parking.getDaysOpen() != null && parking.isOpenInDay(cal) && parking.isOpenInHour(hour))
+                        expected++;
+                }
+                assertEquals(date, expected, parkingCentral.searchParkings(null, date, null, null, null).size());
+            }
+        }
+        assertTrue(parkingCentral.searchParkings(null, "06.12.2014#20", null, null, null)
+                .contains(parkingCentral.getParking(id)));
+        Parking edited = new Parking(id, null, 8, 10, null, null, null, null, null);
+        parkingCentral.editParking(edited);
+        assertTrue(!parkingCentral.searchParkings(null, "06.12.2014#20", null, null, null)
+                .contains(parkingCentral.getParking(id)));
+        assertTrue(parkingCentral.searchParkings(null, "06.12.2014#09", null, null, null)
+                .contains(parkingCentral.getParking(id)));
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testSearchParkingsByAvailability() throws Exception {
+        Parking parking = new Parking(null, "Parking Availability", 0, 24, 2, 1, null, 41.38, 2.17);
+        int id = parkingCentral.addParking(parking);
+        parking = parkingCentral.getParking(id);
+        assertTrue(parkingCentral.searchParkings(false, null, null, null, null).contains(parking));
+        parkingCentral.releasePlace(id);
+        assertTrue(parkingCentral.searchParkings(true, null, null, null, null).contains(parking));
+        assertTrue(!parkingCentral.searchParkings(false, null, null, null, null).contains(parking));
+        parkingCentral.takePlace(id);
+        parkingCentral.takePlace(id);
+        assertTrue(!parkingCentral.searchParkings(true, null, null, null, null).contains(parking));
+        assertTrue(parkingCentral.searchParkings(false, null, null, null, null).contains(parking));
+        //editing the total places also moves the Parking between the bitsets
+        parkingCentral.editParking(new Parking(id, null, null, null, 0, null, null, null, null));
+        assertTrue(parkingCentral.searchParkings(true, null, null, null, null).contains(parking));
+        for (Parking found : parkingCentral.searchParkings(true, null, null, null, null)) {
+            assertTrue(found.isFull());
+        }
+        for (Parking found : parkingCentral.searchParkings(false, null, null, null, null)) {
+            assertTrue(!found.isFull());
+        }
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Parking parking = new Parking(null, "Parking Snapshot \u00f1", 7, 21, 20, 5, null, 41.39, 2.16);
+        parking.addDay(WeekDay.MONDAY);
+        parking.addDay(WeekDay.SUNDAY);
+        int id = parkingCentral.addParking(parking);
+        File file = File.createTempFile("parking", ".snap");
+        try {
+            ParkingSnapshot snapshot = new ParkingSnapshot(file);
+            int written = snapshot.write(parkingCentral);
+            assertEquals(parkingCentral.searchParkings(null, null, null, null, null).size(), written);
+            parkingCentral.takePlace(id);
+            int other = parkingCentral.addParking(new Parking(null, "Not In Snapshot", 0, 24, 1, 0, null,
+                    41.0, 2.0));
+            long version = parkingCentral.getVersion();
+
+            assertEquals(written, snapshot.load(parkingCentral));
+            assertTrue(parkingCentral.getVersion() > version);
+            Parking restored = parkingCentral.getParking(id);
+            assertEquals(parking.getName(), restored.getName());
+            assertEquals(Integer.valueOf(5), restored.getFreePlaces());
+            assertEquals(Arrays.asList(WeekDay.MONDAY, WeekDay.SUNDAY), restored.getDaysOpen());
+            assertTrue(parkingCentral.searchParkings(false, null, 41.39, 2.16, 0.1).contains(restored));
+            assertTrue(parkingCentral.searchParkings(null, null, null, null, null).size() == written);
+            try {
+                parkingCentral.getParking(other);
+                assertTrue(false);
+            } catch (ParkingException ex) {
+                assertEquals(ParkingException.CODE_NOT_FOUND, ex.getCode());
+            }
+        } finally {
+            file.delete();
+            parkingCentral.removeParking(id);
+        }
+    }
+
+    @Test
+    public void testColumnStorage() throws Exception {
+        //the same modifications in both storages have to give the same results
+        ParkingCentral objects = new ParkingCentral();
+        ParkingCentral columns = new ParkingCentral(ParkingCentral.Storage.COLUMNS);
+        assertEquals(ParkingCentral.Storage.COLUMNS, columns.getStorage());
+        Random random = new Random(5);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            List<WeekDay> days = new ArrayList<WeekDay>();
+            for (WeekDay day : WeekDay.values()) {
+                if (random.nextBoolean())
+                    days.add(day);
+            }
+            int totalPlaces = random.nextInt(20);
+            Parking parking = new Parking(null, "Parking Columns " + i, random.nextInt(12), 12 + random.nextInt(13),
+                    totalPlaces, random.nextInt(totalPlaces + 1), days, 41.3 + random.nextDouble() * 0.2,
+                    2.0 + random.nextDouble() * 0.3);
+            int id = objects.addParking(parking);
+            parking.setId(null);
+            assertEquals(id, columns.addParking(parking));
+            ids.add(id);
+        }
+        for (int i = 0; i < 5000; i++) {
+            int id = ids.get(random.nextInt(ids.size()));
+            int action = random.nextInt(10);
+            if (action == 0) {
+                Parking values = new Parking(id, null, null, null, random.nextInt(20), null, null,
+                        41.3 + random.nextDouble() * 0.2, null);
+                assertEquals(objects.editParking(values), columns.editParking(values));
+            } else if (action == 1 && ids.size() > 1000) {
+                assertEquals(objects.removeParking(id), columns.removeParking(id));
+                ids.remove(Integer.valueOf(id));
+            } else {
+                int delta = random.nextInt(5) - 2;
+                try {
+                    assertEquals(objects.changePlaces(id, delta), columns.changePlaces(id, delta));
+                } catch (ParkingException ex) {
+                    try {
+                        columns.changePlaces(id, delta);
+                        fail();
+                    } catch (ParkingException columnsEx) {
+                        assertSame(ex, columnsEx);
+                    }
+                }
+            }
+        }
+        assertEquals(objects.getParkingCount(), columns.getParkingCount());
+        assertEquals(objects.countPlaces(true), columns.countPlaces(true));
+        assertEquals(objects.countFullParkings(), columns.countFullParkings());
+        for (Integer id : ids) {
+            Parking parking = columns.getParking(id);
+            assertEquals(objects.getParking(id), parking);
+            assertEquals(objects.getParking(id).getVersion(), parking.getVersion());
+        }
+        for (Boolean full : new Boolean[]{null, true, false}) {
+            assertEquals(objects.searchParkings(full, "17.12.2014#10", 41.4, 2.15, 5.0, ParkingSort.DISTANCE,
+                    null, null, null).getParkings(), columns.searchParkings(full, "17.12.2014#10", 41.4, 2.15,
+                    5.0, ParkingSort.DISTANCE, null, null, null).getParkings());
+            assertEquals(objects.searchParkings(full, null, null, null, null, ParkingSort.FREE_PLACES, null, 10,
+                    50).getParkings(), columns.searchParkings(full, null, null, null, null, ParkingSort.FREE_PLACES,
+                    null, 10, 50).getParkings());
+            assertEquals(objects.nearest(41.35, 2.1, 25, full), columns.nearest(41.35, 2.1, 25, full));
+        }
+        //the Parkings returned are copies, modifying them doesn't modify the Central
+        Parking copy = columns.getParking(ids.get(0));
+        copy.setName("Not Stored");
+        assertEquals(objects.getParking(ids.get(0)).getName(), columns.getParking(ids.get(0)).getName());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(columns);
+        out.close();
+        ParkingCentral read = (ParkingCentral) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(ParkingCentral.Storage.COLUMNS, read.getStorage());
+        //without order the Parkings follow the slots, that are assigned again when it is read
+        List<Parking> found = columns.searchParkings(null, null, 41.4, 2.15, 3.0);
+        assertEquals(found.size(), read.searchParkings(null, null, 41.4, 2.15, 3.0).size());
+        assertTrue(read.searchParkings(null, null, 41.4, 2.15, 3.0).containsAll(found));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ParkingCentral central = new ParkingCentral();
+        int id = central.addParking(new Parking(null, "Parking Serialized", 7, 21, 20, 5,
+                Arrays.asList(WeekDay.MONDAY), 41.39, 2.16));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(central);
+        out.close();
+        ParkingCentral read = (ParkingCentral) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(central.getParkingCount(), read.getParkingCount());
+        assertTrue(read.getVersion() >= central.getVersion());
+        assertEquals("Parking Serialized", read.getParking(id).getName());
+        //the indexes are not serialized, they are built again from the Parkings
+        assertTrue(read.searchParkings(null, null, 41.39, 2.16, 0.1).contains(read.getParking(id)));
+        assertTrue(read.searchParkings(false, "15.12.2014#10", null, null, null).contains(read.getParking(id)));
+        assertEquals(central.countFullParkings(), read.countFullParkings());
+        assertTrue(read.addParking(new Parking(null, "After Read", 0, 24, 1, 1, null, 41.0, 2.0)) > id);
+    }
+}
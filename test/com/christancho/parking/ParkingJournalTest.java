@@ -0,0 +1,223 @@
+package com.christancho.parking;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Class used to Test the ParkingJournal
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingJournalTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayAfterCrash() throws Exception {
+        final ParkingCentral central = new ParkingCentral();
+        ParkingJournal journal = new ParkingJournal(directory, ParkingJournal.Durability.EVENT, 0, 2048);
+        assertEquals(0, journal.replay(central, 0));
+        journal.open(central);
+        final int id = central.addParking(new Parking(null, "Parking Journal with a name longer than a record ñ",
+                8, 22, 3000, 3000, null, 41.4, 2.15));
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 600; j++) {
+                        central.changePlaces(id, 1);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        central.editParking(new Parking(1, "Edited", null, null, null, null, null, null, 2.2));
+        central.removeParking(2);
+        assertTrue(journal.getSegments() > 1);
+        assertTrue(journal.getFlushes() <= journal.getAppended());
+
+        //the journal is not closed, like after a crash
+        ParkingCentral restarted = new ParkingCentral();
+        assertTrue(new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048).replay(restarted, 0) > 0);
+        assertSameParkings(central, restarted);
+        assertEquals(Integer.valueOf(600), restarted.getParking(id).getFreePlaces());
+        assertTrue(restarted.getVersion() >= central.getVersion());
+
+        //the segments already in a snapshot are deleted, the snapshot and the journal restore the same state
+        File file = new File(directory, "parkings.snap");
+        ParkingSnapshot snapshot = new ParkingSnapshot(file);
+        snapshot.write(central);
+        assertTrue(journal.compact(snapshot.getVersion()) > 0);
+        assertEquals(1, journal.getSegments());
+        central.changePlaces(id, -5);
+        journal.close();
+        ParkingCentral compacted = new ParkingCentral();
+        snapshot.load(compacted);
+        assertEquals(1, new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048)
+                .replay(compacted, snapshot.getVersion()));
+        assertSameParkings(central, compacted);
+    }
+
+    @Test
+    public void testHours() throws Exception {
+        ParkingCentral central = new ParkingCentral();
+        ParkingJournal journal = new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048);
+        journal.open(central);
+        int id = central.addParking(new Parking(null, "Parking Hours", 0, 24, 10, 5, null, 41.4, 2.15));
+        long appended = journal.getAppended();
+        try {
+            central.editParking(new Parking(id, null, 300, null, null, null, null, null, null));
+            fail("The open hour is out of range");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        //the hour rejected is neither applied nor written
+        assertEquals(appended, journal.getAppended());
+        journal.close();
+        ParkingCentral restored = new ParkingCentral();
+        new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048).replay(restored, 0);
+        assertEquals(Integer.valueOf(0), restored.getParking(id).getOpenHour());
+        assertEquals(Integer.valueOf(24), restored.getParking(id).getCloseHour());
+    }
+
+    @Test
+    public void testWriteFailure() throws Exception {
+        ParkingCentral central = new ParkingCentral();
+        ParkingJournal journal = new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048);
+        journal.open(central);
+        int id = central.addParking(new Parking(null, "Parking Failure", 0, 24, 5000, 5000, null, 41.4, 2.15));
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < ParkingCentral.MAX_NAME_BYTES / 2 + 1; i++) {
+            longName.append('ñ');
+        }
+        long version = central.getVersion();
+        try {
+            central.editParking(new Parking(id, longName.toString(), null, null, null, null, null, null, null));
+            fail("The name is too long for the journal");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_INVALID_VALUE, ex.getCode());
+        }
+        assertEquals(version, central.getVersion());
+        assertEquals("Parking Failure", central.getParking(id).getName());
+
+        //without the directory the next segment can't be created
+        tearDown();
+        int changes = 0;
+        try {
+            while (changes < 4096) {
+                central.changePlaces(id, 1);
+                changes++;
+            }
+            fail("The journal never rotated");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_UNKNOWN, ex.getCode());
+        }
+        //the modification that failed is applied, the next ones are rejected before changing anything
+        assertTrue(journal.isFailed());
+        assertEquals(Integer.valueOf(5000 - changes - 1), central.getParking(id).getFreePlaces());
+        try {
+            central.takePlace(id);
+            fail("The journal failed");
+        } catch (ParkingException ex) {
+            assertEquals("Journal Failed", ex.getDescription());
+        }
+        assertEquals(Integer.valueOf(5000 - changes - 1), central.getParking(id).getFreePlaces());
+        journal.close();
+    }
+
+    @Test
+    public void testConcurrentCheckpoints() throws Exception {
+        final ParkingCentral central = new ParkingCentral();
+        ParkingJournal journal = new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048);
+        journal.open(central);
+        final int id = central.addParking(new Parking(null, "Parking Checkpoint", 0, 24, 10000, 10000, null,
+                41.4, 2.15));
+        //enough Parkings so every snapshot takes several writes of the file
+        for (int i = 0; i < 1000; i++) {
+            central.addParking(new Parking(null, "Parking Checkpoint " + i, 0, 24, 10, 5, null, 41.4, 2.15));
+        }
+        final ParkingSnapshot snapshot = new ParkingSnapshot(new File(directory, "parkings.snap"));
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final boolean writer = i % 2 == 0;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < (writer ? 4000 : 50); j++) {
+                            if (writer)
+                                central.changePlaces(id, 1);
+                            else
+                                snapshot.checkpoint(central);
+                        }
+                    } catch (Throwable ex) {
+                        errors.add(ex);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+        journal.close();
+        //the segments compacted by any checkpoint were in the last snapshot written
+        ParkingCentral restored = new ParkingCentral();
+        snapshot.load(restored);
+        new ParkingJournal(directory, ParkingJournal.Durability.OFF, 0, 2048).replay(restored, snapshot.getVersion());
+        assertSameParkings(central, restored);
+        assertEquals(Integer.valueOf(2000), restored.getParking(id).getFreePlaces());
+    }
+
+    private static void assertSameParkings(ParkingCentral expected, ParkingCentral actual) {
+        List<Parking> expectedParkings = expected.searchParkings(null, null, null, null, null);
+        assertEquals(expectedParkings.size(), actual.searchParkings(null, null, null, null, null).size());
+        for (Parking parking : expectedParkings) {
+            Parking restored = actual.getParking(parking.getId());
+            assertEquals(parking.getName(), restored.getName());
+            assertEquals(parking.getOpenHour(), restored.getOpenHour());
+            assertEquals(parking.getTotalPlaces(), restored.getTotalPlaces());
+            assertEquals(parking.getFreePlaces(), restored.getFreePlaces());
+            assertEquals(parking.getLongitude(), restored.getLongitude());
+            assertEquals(parking.getDaysOpen(), restored.getDaysOpen());
+        }
+    }
+}
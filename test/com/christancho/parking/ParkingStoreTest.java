@@ -0,0 +1,138 @@
+package com.christancho.parking;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Class used to Test the ParkingStore
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingStoreTest {
+
+    @Test
+    public void testAddGetRemove() throws Exception {
+        ParkingStore store = new ParkingObjectStore(16);
+        Map<Integer, Parking> expected = new HashMap<Integer, Parking>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            int id = i % 3 == 0 ? random.nextInt() : i;
+            if (expected.containsKey(id))
+                continue;
+            Parking parking = new Parking(id, "Parking " + id, null, null, null, null, null, null, null);
+            store.add(parking);
+            expected.put(id, parking);
+            //every fourth Parking is removed, so the positions and slots are reused
+            if (i % 4 == 0) {
+                assertTrue(store.remove(id) == parking);
+                assertEquals(-1, parking.getSlot());
+                expected.remove(id);
+            }
+        }
+        assertEquals(expected.size(), store.size());
+        for (Map.Entry<Integer, Parking> entry : expected.entrySet()) {
+            Parking parking = store.get(entry.getKey());
+            assertTrue(parking == entry.getValue());
+            assertTrue(store.getBySlot(parking.getSlot()) == parking);
+        }
+        assertTrue(store.getSlotLimit() <= 20000);
+        assertTrue(store.get(-5) == null || expected.containsKey(-5));
+        assertTrue(store.remove(Integer.MIN_VALUE + 1) == null || expected.containsKey(Integer.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void testColumnStore() throws Exception {
+        ParkingStore store = new ParkingColumnStore(16);
+        Map<Integer, Parking> expected = new HashMap<Integer, Parking>();
+        Random random = new Random(9);
+        for (int i = 0; i < 5000; i++) {
+            int id = i % 3 == 0 ? random.nextInt() : i;
+            if (expected.containsKey(id))
+                continue;
+            Parking parking = i % 5 == 0
+                    ? new Parking(id, "Parking " + id, null, null, null, null, null, null, null)
+                    : new Parking(id, "Parking " + id, i % 24, 24, 100, i % 100,
+                    Arrays.asList(WeekDay.values()).subList(0, i % 8), -60 + i * 0.01, 170 - i * 0.02);
+            int slot = store.add(parking);
+            //the columns keep a copy of the values, not the Parking
+            assertEquals(-1, parking.getSlot());
+            assertEquals(parking, store.getBySlot(slot));
+            assertTrue(store.getBySlot(slot) != store.getBySlot(slot));
+            expected.put(id, parking);
+            if (i % 4 == 0) {
+                assertEquals(parking, store.remove(id));
+                assertTrue(store.getBySlot(slot) == null);
+                expected.remove(id);
+                //the places of a removed Parking are never changed, even if its slot is reused
+                try {
+                    store.takePlace(slot, id);
+                    fail();
+                } catch (ParkingException ex) {
+                    assertEquals(ParkingException.CODE_NOT_FOUND, ex.getCode());
+                }
+            }
+        }
+        assertEquals(expected.size(), store.size());
+        for (Map.Entry<Integer, Parking> entry : expected.entrySet()) {
+            Parking parking = store.get(entry.getKey());
+            assertEquals(entry.getValue(), parking);
+            assertEquals(parking.getDaysOpen(), entry.getValue().getDaysOpen());
+            assertEquals(parking, store.getBySlot(parking.getSlot()));
+        }
+
+        int id = expected.keySet().iterator().next();
+        int slot = store.slotOf(id);
+        store.edit(slot, new Parking(null, null, null, null, 10, null, Arrays.asList(WeekDay.FRIDAY), 40.0, null));
+        Parking edited = store.get(id);
+        assertEquals(Integer.valueOf(10), edited.getTotalPlaces());
+        assertEquals(Arrays.asList(WeekDay.FRIDAY), edited.getDaysOpen());
+        assertEquals(Double.valueOf(40.0), edited.getLatitude());
+        assertEquals(expected.get(id).getName(), edited.getName());
+        assertEquals(expected.get(id).getLongitude(), edited.getLongitude());
+        store.advanceVersion(slot, id, 7);
+        store.advanceVersion(slot, id, 3);
+        assertEquals(7, store.get(id).getVersion());
+    }
+
+    @Test
+    public void testAllocateIdsConcurrently() throws Exception {
+        final ParkingStore store = new ParkingObjectStore(16);
+        store.add(new Parking(41, "Restored", null, null, null, null, null, null, null));
+        final int[][] allocated = new int[4][5000];
+        Thread[] threads = new Thread[allocated.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int[] ids = allocated[i];
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ids.length; j++) {
+                        ids[j] = store.allocateId();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        //the ids are dense after the restored one and never repeated
+        boolean[] seen = new boolean[42 + 4 * 5000];
+        for (int[] ids : allocated) {
+            for (int id : ids) {
+                assertTrue(id > 41 && !seen[id]);
+                seen[id] = true;
+            }
+        }
+        assertEquals(42 + 4 * 5000, store.allocateId());
+    }
+}
@@ -0,0 +1,79 @@
+package com.christancho.parking;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Class used to Test that the ParkingTypeAdapter keeps the Json contract of the ParkingSerializer
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class ParkingTypeAdapterTest {
+
+    private static final Gson treeGson = new GsonBuilder()
+            .registerTypeAdapter(Parking.class, new ParkingSerializer())
+            .create();
+    private static final Gson streamGson = new GsonBuilder()
+            .registerTypeAdapter(Parking.class, new ParkingTypeAdapter())
+            .create();
+    private static final JsonParser parser = new JsonParser();
+
+    @Test
+    public void testWriteSameJson() throws Exception {
+        Parking parking = new Parking(7, "Parking \"Quoted\" <b>", 9, 18, 50, 3,
+                new ArrayList<WeekDay>(Arrays.asList(WeekDay.MONDAY, WeekDay.SUNDAY)), 41.3808, 2.1676);
+        assertEquals(parser.parse(treeGson.toJson(parking)), parser.parse(streamGson.toJson(parking)));
+        Parking empty = new Parking();
+        empty.setId(1);
+        assertEquals(parser.parse(treeGson.toJson(empty)), parser.parse(streamGson.toJson(empty)));
+    }
+
+    @Test
+    public void testReadSameParking() throws Exception {
+        String[] jsons = {
+                "{\"name\":\"A\",\"openHour\":9,\"closeHour\":\"18\",\"totalPlaces\":50,\"freePlaces\":0,"
+                        + "\"latitude\":41.38,\"longitude\":2.16,\"daysOpen\":[\"monday\",\"Friday\",null]}",
+                "{\"id\":3,\"name\":null,\"unknown\":{\"a\":[1,2]},\"daysOpen\":null}",
+                "{\"name\":\"B\",\"daysOpen\":[]}"
+        };
+        for (String json : jsons) {
+            Parking expected = treeGson.fromJson(json, Parking.class);
+            Parking actual = streamGson.fromJson(json, Parking.class);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getCloseHour(), actual.getCloseHour());
+            assertEquals(expected.getFreePlaces(), actual.getFreePlaces());
+            assertEquals(expected.getLatitude(), actual.getLatitude());
+            assertEquals(expected.getDaysOpen(), actual.getDaysOpen());
+        }
+        assertNull(streamGson.fromJson("null", Parking.class));
+    }
+
+    @Test
+    public void testReadErrors() throws Exception {
+        try {
+            streamGson.fromJson("{\"name\":\"A\",\"daysOpen\":[\"Someday\"]}", Parking.class);
+            fail("Invalid Week Day accepted");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_PARSING_JSON, ex.getCode());
+            assertEquals("Invalid Week Day 'Someday'", ex.getMessage());
+        }
+        try {
+            streamGson.fromJson("{\"name\":\"A\",\"openHour\":\"nine\"}", Parking.class);
+            fail("Invalid openHour accepted");
+        } catch (ParkingException ex) {
+            assertEquals(ParkingException.CODE_PARSING_JSON, ex.getCode());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.christancho.parking.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the LatencyHistogram
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/10/14
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        final long[] values = new long[40000];
+        Random random = new Random(3);
+        for (int i = 0; i < values.length; i++) {
+            //log-normal latencies, from microseconds to seconds
+            values[i] = (long) Math.exp(12 + random.nextGaussian() * 2);
+        }
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int first = i * values.length / threads.length;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = first; j < first + values.length / 4; j++) {
+                        histogram.record(values[j]);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + expected + " " + actual,
+                    actual >= expected && actual <= expected * 1.035);
+        }
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+        assertEquals(values.length, histogram.getCountAtOrBelow(histogram.getMax() * 2));
+        long below = histogram.getCountAtOrBelow(values[values.length / 2]);
+        assertTrue(below <= values.length / 2 + 10 && below >= values.length / 2 * 0.95);
+    }
+}
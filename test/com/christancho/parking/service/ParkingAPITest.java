@@ -0,0 +1,122 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingCentral;
+import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the ParkingAPI served by Jersey
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingAPITest {
+
+    private HttpServer httpServer;
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", ContainerFactory.createContainer(HttpHandler.class,
+                new PackagesResourceConfig("com.christancho.parking.service")));
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking ETag", 0, 24, 10, 5, null, 41.38, 2.17));
+        String[] paths = {"/api/parking/" + id, "/api/parking/search?latitude=41.38&longitude=2.17&distance=1"};
+        for (String path : paths) {
+            HttpURLConnection connection = open("GET", path);
+            assertEquals(200, connection.getResponseCode());
+            String etag = connection.getHeaderField("ETag");
+            assertTrue(etag != null);
+            assertTrue(read(connection.getInputStream()).contains("Parking ETag"));
+
+            //the client already has it, nothing is sent
+            connection = open("GET", path);
+            connection.setRequestProperty("If-None-Match", etag);
+            assertEquals(304, connection.getResponseCode());
+            assertEquals(etag, connection.getHeaderField("ETag"));
+
+            //a change of the places gives a new ETag and the whole response again
+            assertEquals("{\"freePlaces\":" + (paths[0].equals(path) ? 4 : 3) + "}",
+                    read(open("GET", "/api/parking/" + id + "/takePlace").getInputStream()));
+            connection = open("GET", path);
+            connection.setRequestProperty("If-None-Match", etag);
+            assertEquals(200, connection.getResponseCode());
+            String newEtag = connection.getHeaderField("ETag");
+            assertTrue(newEtag != null && !newEtag.equals(etag));
+            assertTrue(read(connection.getInputStream()).contains("Parking ETag"));
+        }
+        //the pretty representation has its own ETag
+        HttpURLConnection connection = open("GET", paths[0]);
+        String etag = connection.getHeaderField("ETag");
+        read(connection.getInputStream());
+        connection = open("GET", paths[0] + "?pretty=true");
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(!etag.equals(connection.getHeaderField("ETag")));
+        read(connection.getInputStream());
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testNearestAvailable() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int full = parkingCentral.addParking(new Parking(null, "Nearest Full", 0, 24, 10, 0, null, -33.86, 151.2));
+        int empty = parkingCentral.addParking(new Parking(null, "Nearest Empty", 0, 24, 10, 10, null, -33.87, 151.2));
+        //by default the closest Parking with free places, the one at the point has none
+        String body = read(open("GET", "/api/parking/nearest?latitude=-33.86&longitude=151.2").getInputStream());
+        assertTrue(body, body.contains("\"id\":" + empty + ","));
+        assertFalse(body, body.contains("\"id\":" + full + ","));
+        //complete=true for the ones without free places
+        body = read(open("GET", "/api/parking/nearest?latitude=-33.86&longitude=151.2&k=2&complete=true")
+                .getInputStream());
+        assertTrue(body, body.contains("\"id\":" + full + ","));
+        assertFalse(body, body.contains("\"id\":" + empty + ","));
+        parkingCentral.removeParking(full);
+        parkingCentral.removeParking(empty);
+    }
+
+    private HttpURLConnection open(String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"
+                + httpServer.getAddress().getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return new String(output.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,58 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.GeoRadius;
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingCentral;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the ParkingEventStream
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingEventStreamTest {
+
+    @Test
+    public void testLeaveArea() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking Area", 0, 24, 10, 5, null, -45.0, 170.0));
+        ParkingEventStream stream = new ParkingEventStream(null, new GeoRadius(-45.0, 170.0, 1));
+        stream.start();
+        try {
+            String events = writePending(stream);
+            assertTrue(events, events.startsWith("event: parking\n"));
+            assertTrue(events, events.contains("\"id\":" + id + ","));
+
+            //moved outside the area, the client has to forget it
+            parkingCentral.editParking(new Parking(id, null, null, null, null, null, null, -46.0, null));
+            assertEquals("event: removed\nid: " + parkingCentral.getParking(id).getVersion() + "\ndata: {\"id\":"
+                    + id + "}\n\n", writePending(stream));
+
+            //the changes outside the area are not sent any more
+            parkingCentral.takePlace(id);
+            assertEquals(": heartbeat\n\n", writePending(stream));
+
+            //moved back inside the area
+            parkingCentral.editParking(new Parking(id, null, null, null, null, null, null, -45.0, null));
+            events = writePending(stream);
+            assertTrue(events, events.startsWith("event: parking\n"));
+            assertTrue(events, events.contains("\"freePlaces\":4"));
+        } finally {
+            stream.stop();
+            parkingCentral.removeParking(id);
+        }
+    }
+
+    private static String writePending(ParkingEventStream stream) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        stream.writePending(output, ParkingJsonCache.getInstance());
+        return new String(output.toByteArray(), JsonResponses.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingCentral;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the ParkingJsonCache
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingJsonCacheTest {
+
+    @Test
+    public void testInvalidateOnModification() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        ParkingJsonCache cache = new ParkingJsonCache(1024 * 1024);
+        int id = parkingCentral.addParking(new Parking(null, "Parking Cache", 9, 18, 10, 5, null, 41.38, 2.17));
+        Parking parking = parkingCentral.getParking(id);
+        byte[] first = cache.get(parking);
+        assertTrue(first == cache.get(parking));
+        assertEquals(1, cache.getHits());
+        parkingCentral.takePlace(id);
+        String json = new String(cache.get(parking), JsonResponses.UTF_8);
+        assertTrue(json, json.contains("\"freePlaces\":4"));
+        assertEquals(2, cache.getMisses());
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyRead() throws Exception {
+        ParkingJsonCache cache = new ParkingJsonCache(16 * 1024);
+        List<Parking> parkings = new ArrayList<Parking>();
+        for (int i = 0; i < 1000; i++) {
+            Parking parking = new Parking(i, "Parking " + i, 9, 18, 10, 5, null, 41.38, 2.17);
+            parkings.add(parking);
+            cache.get(parking);
+            //the first Parking is read all the time, so it is never evicted
+            cache.get(parkings.get(0));
+        }
+        assertTrue(cache.getBytes() <= 16 * 1024);
+        long misses = cache.getMisses();
+        cache.get(parkings.get(0));
+        assertEquals(misses, cache.getMisses());
+        cache.get(parkings.get(1));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+}
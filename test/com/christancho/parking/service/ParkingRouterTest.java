@@ -0,0 +1,258 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.Parking;
+import com.christancho.parking.ParkingBinaryReader;
+import com.christancho.parking.ParkingBinaryWriter;
+import com.christancho.parking.ParkingCentral;
+import com.christancho.parking.ParkingException;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the ParkingRouter
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class ParkingRouterTest {
+
+    private HttpServer httpServer;
+
+    @Before
+    public void setUp() throws Exception {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        HttpContext context = httpServer.createContext("/", new ParkingRouter());
+        context.getFilters().add(new MetricsFilter());
+        context.getFilters().add(new CompressionFilter(CompressionFilter.DEFAULT_THRESHOLD, 2));
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void testRoutes() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking Router", 0, 24, 10, 5, null, 41.38, 2.17));
+        HttpURLConnection connection = open("GET", "/api/parking/" + id);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/json", connection.getContentType());
+        assertTrue(connection.getHeaderField("ETag") != null);
+        assertEquals(new String(ParkingJsonCache.getInstance().get(parkingCentral.getParking(id)), "UTF-8"),
+                read(connection.getInputStream()));
+
+        connection = open("GET", "/api/parking/" + id + "/takePlace");
+        assertEquals("{\"freePlaces\":4}", read(connection.getInputStream()));
+        connection = open("GET", "/api/parking/search?limit=1&sort=freePlaces");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getHeaderField(ParkingAPI.HEADER_TOTAL_COUNT) != null);
+
+        //like Jersey, a HEAD has the headers of the GET without the body
+        connection = open("HEAD", "/api/parking/" + id);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("application/json", connection.getContentType());
+        assertEquals(open("GET", "/api/parking/" + id).getHeaderField("ETag"), connection.getHeaderField("ETag"));
+        assertEquals("", read(connection.getInputStream()));
+        connection = open("HEAD", "/api/parking/search?limit=1");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getHeaderField(ParkingAPI.HEADER_TOTAL_COUNT) != null);
+        assertEquals("", read(connection.getInputStream()));
+
+        //the same errors than Jersey for invalid parameters, unknown paths and methods
+        assertEquals(404, open("GET", "/api/parking/abc").getResponseCode());
+        assertEquals(404, open("GET", "/api/parking/search?latitude=x").getResponseCode());
+        assertEquals(404, open("GET", "/api/unknown").getResponseCode());
+        connection = open("DELETE", "/api/parking/search");
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET,HEAD", connection.getHeaderField("Allow"));
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking Metrics", 0, 24, 10, 0, null, 41.38, 2.17));
+        assertEquals(200, open("GET", "/api/parking/" + id).getResponseCode());
+        //a full Parking is an error of the API with code 07, an invalid id is a 404 of the router
+        assertEquals("{\"code\":\"07\",\"description\":\"Invalid Action\","
+                + "\"detailMessage\":\"The Parking is full\"}",
+                read(open("GET", "/api/parking/" + id + "/takePlace").getInputStream()));
+        assertEquals(404, open("GET", "/api/parking/abc/takePlace").getResponseCode());
+        HttpURLConnection connection = open("GET", "/api/metrics");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain;"));
+        assertTrue(connection.getContentType().contains("version=0.0.4"));
+        String metrics = read(connection.getInputStream());
+        assertTrue(metrics.contains("# TYPE parking_request_duration_seconds histogram\n"));
+        assertTrue(metrics.contains("parking_requests_total{operation=\"get\"} "));
+        assertTrue(metrics.contains("parking_errors_total{operation=\"takePlace\",code=\"07\"} "));
+        assertTrue(metrics.contains("parking_errors_total{operation=\"takePlace\",code=\"404\"} "));
+        assertTrue(metrics.contains("parking_request_duration_seconds_bucket{operation=\"get\",le=\"+Inf\"} "));
+        assertEquals("searchParkings", MetricsFilter.operation("GET", "/api/parking/search"));
+        assertEquals("remove", MetricsFilter.operation("DELETE", "/api/parking/7"));
+        assertEquals("unknown", MetricsFilter.operation("GET", "/api/server/anything"));
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int[] ids = new int[20];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = parkingCentral.addParking(new Parking(null, "Parking Gzip " + i, 8, 20, 100, 50, null,
+                    41.38, 2.17));
+        }
+        HttpURLConnection connection = open("GET", "/api/parking/search?pretty=true");
+        String body = read(connection.getInputStream());
+        String etag = connection.getHeaderField("ETag");
+        assertTrue(body.length() > CompressionFilter.DEFAULT_THRESHOLD);
+        assertEquals(null, connection.getHeaderField("Content-Encoding"));
+
+        //the same search compressed, with its own ETag
+        connection = open("GET", "/api/parking/search?pretty=true");
+        connection.setRequestProperty("Accept-Encoding", "deflate, gzip;q=0.8");
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+        String gzipEtag = connection.getHeaderField("ETag");
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", gzipEtag);
+        assertEquals(body, read(new GZIPInputStream(connection.getInputStream())));
+        connection = open("GET", "/api/parking/search?pretty=true");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setRequestProperty("If-None-Match", gzipEtag);
+        assertEquals(304, connection.getResponseCode());
+        assertEquals(gzipEtag, connection.getHeaderField("ETag"));
+
+        //the short responses are not compressed
+        connection = open("GET", "/api/parking/1");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(null, connection.getHeaderField("Content-Encoding"));
+        assertTrue(read(connection.getInputStream()).startsWith("{"));
+        assertTrue(!CompressionFilter.acceptsGzip("gzip;q=0, *"));
+        assertTrue(CompressionFilter.acceptsGzip("br, *;q=0.1"));
+        for (int id : ids) {
+            parkingCentral.removeParking(id);
+        }
+    }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking Binary", 0, 24, 10, 0, null, 41.38, 2.17));
+        HttpURLConnection connection = open("GET", "/api/parking/" + id);
+        connection.setRequestProperty("Accept", ParkingBinaryWriter.MEDIA_TYPE + ", application/json;q=0.5");
+        assertEquals(ParkingBinaryWriter.MEDIA_TYPE, connection.getContentType());
+        String etag = connection.getHeaderField("ETag");
+        Parking parking = (Parking) new ParkingBinaryReader(connection.getInputStream()).read();
+        assertEquals("Parking Binary", parking.getName());
+        assertEquals(Double.valueOf(41.38), parking.getLatitude());
+        //the Json has its own ETag
+        assertTrue(!etag.equals(open("GET", "/api/parking/" + id).getHeaderField("ETag")));
+
+        //the errors have the same fields than the Json ones
+        connection = open("GET", "/api/parking/" + id + "/takePlace");
+        connection.setRequestProperty("Accept", ParkingBinaryWriter.MEDIA_TYPE);
+        ParkingException error = (ParkingException) new ParkingBinaryReader(connection.getInputStream()).read();
+        assertEquals(ParkingException.CODE_INVALID_ACTION, error.getCode());
+        assertEquals("The Parking is full", error.getMessage());
+
+        //the Json is still the default, and the response of the clients that prefer it
+        assertTrue(!BinaryResponses.accepts(null));
+        assertTrue(!BinaryResponses.accepts("*/*"));
+        assertTrue(!BinaryResponses.accepts(ParkingBinaryWriter.MEDIA_TYPE + ";q=0.5, application/json"));
+        assertTrue(!BinaryResponses.accepts(ParkingBinaryWriter.MEDIA_TYPE + ";q=0"));
+        assertTrue(BinaryResponses.accepts("application/json;q=0.9, " + ParkingBinaryWriter.MEDIA_TYPE));
+        parkingCentral.removeParking(id);
+    }
+
+    @Test
+    public void testNearestAvailable() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int full = parkingCentral.addParking(new Parking(null, "Nearest Full", 0, 24, 10, 0, null, -33.86, 151.2));
+        int empty = parkingCentral.addParking(new Parking(null, "Nearest Empty", 0, 24, 10, 10, null, -33.87, 151.2));
+        //by default the closest Parking with free places, the one at the point has none
+        String body = read(open("GET", "/api/parking/nearest?latitude=-33.86&longitude=151.2").getInputStream());
+        assertTrue(body, body.contains("\"id\":" + empty + ","));
+        assertFalse(body, body.contains("\"id\":" + full + ","));
+        //complete=true for the ones without free places
+        body = read(open("GET", "/api/parking/nearest?latitude=-33.86&longitude=151.2&k=2&complete=true")
+                .getInputStream());
+        assertTrue(body, body.contains("\"id\":" + full + ","));
+        assertFalse(body, body.contains("\"id\":" + empty + ","));
+        parkingCentral.removeParking(full);
+        parkingCentral.removeParking(empty);
+    }
+
+    @Test
+    public void testEventStreams() throws Exception {
+        ParkingCentral parkingCentral = ParkingCentral.getInstance();
+        int id = parkingCentral.addParking(new Parking(null, "Parking Events", 0, 24, 10, 5, null, 41.38, 2.17));
+        ParkingEventHub hub = new ParkingEventHub(1);
+        ParkingEventHub.setInstance(hub);
+        try {
+            HttpURLConnection stream = open("GET", "/api/parking/events?ids=" + id);
+            assertEquals(200, stream.getResponseCode());
+            assertEquals("text/event-stream", stream.getContentType());
+            BufferedReader events = new BufferedReader(new InputStreamReader(stream.getInputStream(), "UTF-8"));
+            assertEquals("event: parking", events.readLine());
+            assertTrue(events.readLine().startsWith("id: "));
+            assertTrue(events.readLine().contains("\"id\":" + id + ","));
+            assertEquals("", events.readLine());
+
+            //the stream doesn't keep the thread of the server, which still answers the other requests
+            assertEquals("{\"freePlaces\":4}", read(open("GET", "/api/parking/" + id + "/takePlace").getInputStream()));
+            assertEquals("event: parking", events.readLine());
+            events.readLine();
+            assertTrue(events.readLine().contains("\"freePlaces\":4"));
+            assertEquals(1, hub.getOpenStreams());
+
+            //above the cap the streams are answered with 503
+            HttpURLConnection rejected = open("GET", "/api/parking/events");
+            assertEquals(503, rejected.getResponseCode());
+            assertEquals("1", rejected.getHeaderField("Retry-After"));
+            assertEquals(1, hub.getRejected());
+            stream.disconnect();
+        } finally {
+            ParkingEventHub.setInstance(null);
+            hub.shutdown();
+            parkingCentral.removeParking(id);
+        }
+        assertEquals(0, hub.getOpenStreams());
+    }
+
+    private HttpURLConnection open(String method, String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"
+                + httpServer.getAddress().getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String read(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return new String(output.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,73 @@
+package com.christancho.parking.service;
+
+import com.christancho.parking.ParkingException;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Class used to Test the RequestExecutor and the ServerOptions
+ *
+ * @author Christian Delgado
+ * @version 1.0
+ * @date 12/11/14
+ */
+public class RequestExecutorTest {
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        RequestExecutor executor = new RequestExecutor(RequestExecutor.Mode.POOL, 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final AtomicInteger rejected = new AtomicInteger();
+        Runnable request = new Runnable() {
+            @Override
+            public void run() {
+                if (RequestExecutor.isRejecting()) {
+                    rejected.incrementAndGet();
+                } else {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.countDown();
+            }
+        };
+        executor.execute(request);
+        while (executor.getActiveWorkers() < 1) {
+            Thread.sleep(1);
+        }
+        executor.execute(request);
+        assertEquals(1, executor.getQueueDepth());
+        //the third request doesn't fit in the queue, it is executed as rejected
+        executor.execute(request);
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, rejected.get());
+        assertEquals(1, executor.getRejected());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testParseOptions() throws Exception {
+        ServerOptions options = ServerOptions.parse(new String[]{"--port=9090", "--executor=VIRTUAL",
+                "--threads=8", "--queue=50"});
+        assertEquals(9090, options.getPort());
+        assertEquals(RequestExecutor.Mode.VIRTUAL, options.getExecutor());
+        assertEquals(8, options.getThreads());
+        assertEquals(50, options.getQueue());
+        assertEquals(ServerOptions.DEFAULT_PORT, ServerOptions.parse(new String[0]).getPort());
+    }
+
+    @Test(expected = ParkingException.class)
+    public void testParseInvalidOption() throws Exception {
+        ServerOptions.parse(new String[]{"--threads=0"});
+    }
+}